@@ -37,8 +37,6 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
  */
 public final class FfmpegAudioRenderer extends SimpleDecoderAudioRenderer {
 
-  /** The number of input and output buffers. */
-  private static final int NUM_BUFFERS = 16;
   /** The default input buffer size. */
   private static final int DEFAULT_INPUT_BUFFER_SIZE = 960 * 6;
 
@@ -120,7 +118,11 @@ public final class FfmpegAudioRenderer extends SimpleDecoderAudioRenderer {
         format.maxInputSize != Format.NO_VALUE ? format.maxInputSize : DEFAULT_INPUT_BUFFER_SIZE;
     decoder =
         new FfmpegDecoder(
-            NUM_BUFFERS, NUM_BUFFERS, initialInputBufferSize, format, shouldUseFloatOutput(format));
+            getDecoderInputBufferCount(),
+            getDecoderOutputBufferCount(),
+            initialInputBufferSize,
+            format,
+            shouldUseFloatOutput(format));
     return decoder;
   }
 
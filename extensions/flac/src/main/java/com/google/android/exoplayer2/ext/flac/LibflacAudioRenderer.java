@@ -35,8 +35,6 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 /** Decodes and renders audio using the native Flac decoder. */
 public final class LibflacAudioRenderer extends SimpleDecoderAudioRenderer {
 
-  private static final int NUM_BUFFERS = 16;
-
   @MonotonicNonNull private FlacStreamMetadata streamMetadata;
 
   public LibflacAudioRenderer() {
@@ -110,7 +108,11 @@ public final class LibflacAudioRenderer extends SimpleDecoderAudioRenderer {
   protected FlacDecoder createDecoder(Format format, @Nullable ExoMediaCrypto mediaCrypto)
       throws FlacDecoderException {
     FlacDecoder decoder =
-        new FlacDecoder(NUM_BUFFERS, NUM_BUFFERS, format.maxInputSize, format.initializationData);
+        new FlacDecoder(
+            getDecoderInputBufferCount(),
+            getDecoderOutputBufferCount(),
+            format.maxInputSize,
+            format.initializationData);
     streamMetadata = decoder.getStreamMetadata();
     return decoder;
   }
@@ -30,8 +30,6 @@ import com.google.android.exoplayer2.util.MimeTypes;
 /** Decodes and renders audio using the native Opus decoder. */
 public class LibopusAudioRenderer extends SimpleDecoderAudioRenderer {
 
-  /** The number of input and output buffers. */
-  private static final int NUM_BUFFERS = 16;
   /** The default input buffer size. */
   private static final int DEFAULT_INPUT_BUFFER_SIZE = 960 * 6;
 
@@ -110,8 +108,8 @@ public class LibopusAudioRenderer extends SimpleDecoderAudioRenderer {
         format.maxInputSize != Format.NO_VALUE ? format.maxInputSize : DEFAULT_INPUT_BUFFER_SIZE;
     OpusDecoder decoder =
         new OpusDecoder(
-            NUM_BUFFERS,
-            NUM_BUFFERS,
+            getDecoderInputBufferCount(),
+            getDecoderOutputBufferCount(),
             initialInputBufferSize,
             format.initializationData,
             mediaCrypto);
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import com.google.android.exoplayer2.util.Log;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmark measuring the throughput of each {@link AudioProcessor} used by {@link
+ * DefaultAudioSink}, in multiples of real time.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class AudioProcessorThroughputTest {
+
+  private static final String TAG = "AudioProcessorBenchmark";
+  private static final int SAMPLE_RATE = 48000;
+  private static final int CHANNEL_COUNT = 6;
+  private static final int FRAMES_PER_BUFFER = 1024;
+  private static final int DURATION_SECONDS = 60;
+  private static final float[] TIME_STRETCHING_SPEEDS = new float[] {0.5f, 1.5f, 2f, 3f};
+
+  @Test
+  public void resamplingFromFloat() throws Exception {
+    runBenchmark("Resampling (float)", new ResamplingAudioProcessor(), C.ENCODING_PCM_FLOAT);
+  }
+
+  @Test
+  public void resamplingFrom24Bit() throws Exception {
+    runBenchmark("Resampling (24-bit)", new ResamplingAudioProcessor(), C.ENCODING_PCM_24BIT);
+  }
+
+  @Test
+  public void resamplingFrom24BitWithChannelMapping() throws Exception {
+    ResamplingAudioProcessor resamplingAudioProcessor = new ResamplingAudioProcessor();
+    resamplingAudioProcessor.setChannelMap(new int[] {0, 1});
+    runBenchmark(
+        "Resampling with channel mapping (24-bit)",
+        resamplingAudioProcessor,
+        C.ENCODING_PCM_24BIT);
+  }
+
+  @Test
+  public void floatResamplingFrom24Bit() throws Exception {
+    runBenchmark(
+        "Float resampling (24-bit)", new FloatResamplingAudioProcessor(), C.ENCODING_PCM_24BIT);
+  }
+
+  @Test
+  public void channelMapping() throws Exception {
+    ChannelMappingAudioProcessor channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
+    channelMappingAudioProcessor.setChannelMap(new int[] {0, 1});
+    runBenchmark("Channel mapping", channelMappingAudioProcessor, C.ENCODING_PCM_16BIT);
+  }
+
+  @Test
+  public void trimming() throws Exception {
+    TrimmingAudioProcessor trimmingAudioProcessor = new TrimmingAudioProcessor();
+    trimmingAudioProcessor.setTrimFrameCount(
+        /* trimStartFrames= */ 1024, /* trimEndFrames= */ 1024);
+    runBenchmark("Trimming", trimmingAudioProcessor, C.ENCODING_PCM_16BIT);
+  }
+
+  @Test
+  public void silenceSkipping() throws Exception {
+    SilenceSkippingAudioProcessor silenceSkippingAudioProcessor =
+        new SilenceSkippingAudioProcessor();
+    silenceSkippingAudioProcessor.setEnabled(true);
+    runBenchmark("Silence skipping", silenceSkippingAudioProcessor, C.ENCODING_PCM_16BIT);
+  }
+
+  @Test
+  public void rmsSilenceSkipping() throws Exception {
+    RmsSilenceSkippingAudioProcessor silenceSkippingAudioProcessor =
+        new RmsSilenceSkippingAudioProcessor();
+    silenceSkippingAudioProcessor.setEnabled(true);
+    runBenchmark("RMS silence skipping", silenceSkippingAudioProcessor, C.ENCODING_PCM_16BIT);
+    silenceSkippingAudioProcessor.setEnabled(true);
+    runBenchmark(
+        "RMS silence skipping (float)", silenceSkippingAudioProcessor, C.ENCODING_PCM_FLOAT);
+  }
+
+  @Test
+  public void sonic() throws Exception {
+    for (float speed : TIME_STRETCHING_SPEEDS) {
+      SonicAudioProcessor sonicAudioProcessor = new SonicAudioProcessor();
+      sonicAudioProcessor.setSpeed(speed);
+      runBenchmark("Sonic (" + speed + "x)", sonicAudioProcessor, C.ENCODING_PCM_16BIT);
+    }
+  }
+
+  @Test
+  public void wsola() throws Exception {
+    for (float speed : TIME_STRETCHING_SPEEDS) {
+      WsolaAudioProcessor wsolaAudioProcessor = new WsolaAudioProcessor();
+      wsolaAudioProcessor.setSpeed(speed);
+      runBenchmark("WSOLA (" + speed + "x)", wsolaAudioProcessor, C.ENCODING_PCM_16BIT);
+    }
+  }
+
+  @Test
+  public void loudnessNormalization() throws Exception {
+    runBenchmark(
+        "Loudness normalization",
+        new LoudnessNormalizationAudioProcessor(),
+        C.ENCODING_PCM_16BIT);
+  }
+
+  private static void runBenchmark(
+      String name, AudioProcessor audioProcessor, @C.PcmEncoding int encoding) throws Exception {
+    AudioFormat inputAudioFormat = new AudioFormat(SAMPLE_RATE, CHANNEL_COUNT, encoding);
+    audioProcessor.configure(inputAudioFormat);
+    assertThat(audioProcessor.isActive()).isTrue();
+    audioProcessor.flush();
+
+    int bufferSize = FRAMES_PER_BUFFER * inputAudioFormat.bytesPerFrame;
+    ByteBuffer inputBuffer = createInputBuffer(bufferSize, encoding);
+    int bufferCount = DURATION_SECONDS * SAMPLE_RATE / FRAMES_PER_BUFFER;
+    long outputByteCount = 0;
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < bufferCount; i++) {
+      inputBuffer.position(0);
+      while (inputBuffer.hasRemaining()) {
+        audioProcessor.queueInput(inputBuffer);
+        outputByteCount += audioProcessor.getOutput().remaining();
+      }
+    }
+    audioProcessor.queueEndOfStream();
+    while (!audioProcessor.isEnded()) {
+      outputByteCount += audioProcessor.getOutput().remaining();
+    }
+    long elapsedTimeNs = System.nanoTime() - startTimeNs;
+    audioProcessor.reset();
+
+    assertThat(outputByteCount).isGreaterThan(0);
+    long realtimeFactor = DURATION_SECONDS * C.NANOS_PER_SECOND / elapsedTimeNs;
+    long cpuTimeUsPerSecond = elapsedTimeNs / 1000 / DURATION_SECONDS;
+    Log.i(
+        TAG,
+        name
+            + ": "
+            + realtimeFactor
+            + "x real time, "
+            + cpuTimeUsPerSecond
+            + " us per second of audio");
+  }
+
+  private static ByteBuffer createInputBuffer(int size, @C.PcmEncoding int encoding) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    Random random = new Random(/* seed= */ 0);
+    if (encoding == C.ENCODING_PCM_FLOAT) {
+      while (buffer.hasRemaining()) {
+        buffer.putFloat(random.nextFloat() * 2 - 1);
+      }
+    } else {
+      byte[] data = new byte[size];
+      random.nextBytes(data);
+      buffer.put(data);
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.decoder;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeSimpleDecoder;
+import com.google.android.exoplayer2.util.Log;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmark comparing the buffer throughput of {@link SimpleDecoder} with and without the
+ * lock-free buffer handoff, using a {@link FakeSimpleDecoder}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class SimpleDecoderThroughputTest {
+
+  private static final String TAG = "SimpleDecoderBenchmark";
+  private static final int BUFFER_COUNT = 100_000;
+  private static final int WARM_UP_BUFFER_COUNT = 10_000;
+  private static final int DECODE_DURATION_NS = 5_000;
+
+  @Test
+  public void withLock() throws Exception {
+    runBenchmark(/* useLockFreeHandoff= */ false);
+  }
+
+  @Test
+  public void lockFree() throws Exception {
+    runBenchmark(/* useLockFreeHandoff= */ true);
+  }
+
+  private static void runBenchmark(boolean useLockFreeHandoff) throws Exception {
+    FakeSimpleDecoder decoder =
+        new FakeSimpleDecoder(
+            /* inputBufferCount= */ 16,
+            /* outputBufferCount= */ 16,
+            useLockFreeHandoff,
+            DECODE_DURATION_NS);
+    try {
+      decodeBuffers(decoder, WARM_UP_BUFFER_COUNT);
+      decoder.flush();
+      long startTimeNs = System.nanoTime();
+      decodeBuffers(decoder, BUFFER_COUNT);
+      long elapsedTimeNs = System.nanoTime() - startTimeNs;
+      Log.i(
+          TAG,
+          (useLockFreeHandoff ? "Lock-free" : "With lock")
+              + ": "
+              + (BUFFER_COUNT * C.NANOS_PER_SECOND / elapsedTimeNs)
+              + " buffers/s, "
+              + (elapsedTimeNs / BUFFER_COUNT)
+              + " ns/buffer");
+    } finally {
+      decoder.release();
+    }
+  }
+
+  private static void decodeBuffers(FakeSimpleDecoder decoder, int bufferCount) throws Exception {
+    int queuedBufferCount = 0;
+    int outputBufferCount = 0;
+    while (outputBufferCount < bufferCount) {
+      DecoderInputBuffer inputBuffer;
+      while (queuedBufferCount < bufferCount
+          && (inputBuffer = decoder.dequeueInputBuffer()) != null) {
+        inputBuffer.timeUs = queuedBufferCount;
+        inputBuffer.ensureSpaceForWrite(1);
+        inputBuffer.data.put((byte) queuedBufferCount);
+        inputBuffer.flip();
+        decoder.queueInputBuffer(inputBuffer);
+        queuedBufferCount++;
+      }
+      SimpleOutputBuffer outputBuffer = decoder.dequeueOutputBuffer();
+      if (outputBuffer != null) {
+        assertThat(outputBuffer.timeUs).isEqualTo(outputBufferCount);
+        outputBuffer.release();
+        outputBufferCount++;
+      }
+    }
+  }
+}
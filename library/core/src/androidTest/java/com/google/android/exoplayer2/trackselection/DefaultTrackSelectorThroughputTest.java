@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.RendererCapabilities;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.MimeTypes;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmark measuring the time taken by {@link DefaultTrackSelector} to select tracks for periods
+ * with hundreds of representations, with and without the selection cache. Each selection is made
+ * for a new but equal {@link TrackGroupArray}, as for consecutive items in a playlist of
+ * identically encoded media.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultTrackSelectorThroughputTest {
+
+  private static final String TAG = "TrackSelectorBenchmark";
+  private static final int SELECTION_COUNT = 1_000;
+  private static final int WARM_UP_SELECTION_COUNT = 100;
+  private static final int VIDEO_TRACK_COUNT = 300;
+  private static final int AUDIO_GROUP_COUNT = 40;
+  private static final int TEXT_GROUP_COUNT = 40;
+  private static final String[] VIDEO_MIME_TYPES = {
+    MimeTypes.VIDEO_H264, MimeTypes.VIDEO_H265, MimeTypes.VIDEO_VP9
+  };
+
+  @Test
+  public void withoutSelectionCache() throws Exception {
+    runBenchmark(/* selectionCacheEnabled= */ false);
+  }
+
+  @Test
+  public void withSelectionCache() throws Exception {
+    runBenchmark(/* selectionCacheEnabled= */ true);
+  }
+
+  private static void runBenchmark(boolean selectionCacheEnabled) throws Exception {
+    DefaultTrackSelector trackSelector =
+        new DefaultTrackSelector(ApplicationProvider.getApplicationContext());
+    trackSelector.init(
+        /* listener= */ () -> {},
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext()).build());
+    trackSelector.experimental_setSelectionCacheEnabled(selectionCacheEnabled);
+    RendererCapabilities[] rendererCapabilities = {
+      new FakeRendererCapabilities(C.TRACK_TYPE_VIDEO),
+      new FakeRendererCapabilities(C.TRACK_TYPE_AUDIO),
+      new FakeRendererCapabilities(C.TRACK_TYPE_TEXT)
+    };
+    Timeline timeline = new FakeTimeline(/* windowCount= */ 1);
+    MediaPeriodId periodId = new MediaPeriodId(timeline.getUidOfPeriod(/* periodIndex= */ 0));
+    TrackGroupArray[] trackGroupArrays = new TrackGroupArray[SELECTION_COUNT];
+    for (int i = 0; i < SELECTION_COUNT; i++) {
+      trackGroupArrays[i] = createTrackGroups();
+    }
+
+    for (int i = 0; i < WARM_UP_SELECTION_COUNT; i++) {
+      trackSelector.selectTracks(rendererCapabilities, trackGroupArrays[i], periodId, timeline);
+    }
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < SELECTION_COUNT; i++) {
+      TrackSelectorResult result =
+          trackSelector.selectTracks(rendererCapabilities, trackGroupArrays[i], periodId, timeline);
+      assertThat(result.selections.get(0).length()).isGreaterThan(1);
+    }
+    long elapsedTimeNs = System.nanoTime() - startTimeNs;
+    Log.i(
+        TAG,
+        (selectionCacheEnabled ? "With selection cache" : "Without selection cache")
+            + ": "
+            + (elapsedTimeNs / SELECTION_COUNT / 1000)
+            + " us/selection");
+  }
+
+  /**
+   * Returns a new track group array with an adaptive video group, and single track audio and text
+   * groups in a range of languages.
+   */
+  private static TrackGroupArray createTrackGroups() {
+    Format[] videoFormats = new Format[VIDEO_TRACK_COUNT];
+    for (int i = 0; i < VIDEO_TRACK_COUNT; i++) {
+      int height = 144 + 12 * (i / VIDEO_MIME_TYPES.length);
+      videoFormats[i] =
+          Format.createVideoSampleFormat(
+              /* id= */ "video" + i,
+              VIDEO_MIME_TYPES[i % VIDEO_MIME_TYPES.length],
+              /* codecs= */ null,
+              /* bitrate= */ 100_000 + 20_000 * i,
+              /* maxInputSize= */ Format.NO_VALUE,
+              /* width= */ height * 16 / 9,
+              height,
+              /* frameRate= */ 30,
+              /* initializationData= */ null,
+              /* drmInitData= */ null);
+    }
+    TrackGroup[] trackGroups = new TrackGroup[1 + AUDIO_GROUP_COUNT + TEXT_GROUP_COUNT];
+    trackGroups[0] = new TrackGroup(videoFormats);
+    for (int i = 0; i < AUDIO_GROUP_COUNT; i++) {
+      trackGroups[1 + i] =
+          new TrackGroup(
+              Format.createAudioSampleFormat(
+                  /* id= */ "audio" + i,
+                  MimeTypes.AUDIO_AAC,
+                  /* codecs= */ null,
+                  /* bitrate= */ 128_000,
+                  /* maxInputSize= */ Format.NO_VALUE,
+                  /* channelCount= */ 2,
+                  /* sampleRate= */ 48_000,
+                  /* initializationData= */ null,
+                  /* drmInitData= */ null,
+                  /* selectionFlags= */ 0,
+                  /* language= */ "l" + i));
+    }
+    for (int i = 0; i < TEXT_GROUP_COUNT; i++) {
+      trackGroups[1 + AUDIO_GROUP_COUNT + i] =
+          new TrackGroup(
+              Format.createTextSampleFormat(
+                  /* id= */ "text" + i,
+                  MimeTypes.TEXT_VTT,
+                  /* selectionFlags= */ 0,
+                  /* language= */ "l" + i));
+    }
+    return new TrackGroupArray(trackGroups);
+  }
+
+  /** A {@link RendererCapabilities} that supports all formats of its track type. */
+  private static final class FakeRendererCapabilities implements RendererCapabilities {
+
+    private final int trackType;
+
+    public FakeRendererCapabilities(int trackType) {
+      this.trackType = trackType;
+    }
+
+    @Override
+    public int getTrackType() {
+      return trackType;
+    }
+
+    @Override
+    @Capabilities
+    public int supportsFormat(Format format) {
+      return MimeTypes.getTrackType(format.sampleMimeType) == trackType
+          ? RendererCapabilities.create(FORMAT_HANDLED, ADAPTIVE_SEAMLESS, TUNNELING_NOT_SUPPORTED)
+          : RendererCapabilities.create(FORMAT_UNSUPPORTED_TYPE);
+    }
+
+    @Override
+    @AdaptiveSupport
+    public int supportsMixedMimeTypeAdaptation() {
+      return ADAPTIVE_NOT_SEAMLESS;
+    }
+  }
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import android.os.Handler;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.EventDispatcher;
+import com.google.android.exoplayer2.util.Util;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A {@link LoadControl} that sizes its buffer targets from a memory budget and the bitrate of the
+ * media being buffered.
+ *
+ * <p>The bitrate is the larger of the total bitrate of the currently selected formats and the
+ * bitrate observed from the number of bytes allocated for the buffered media, which accounts for
+ * formats whose actual bitrate exceeds their declared bitrate. The maximum buffer duration is
+ * reduced so that the buffered media fits into the memory budget, and the target buffer size never
+ * exceeds the budget. For low bitrate media, more media is buffered than by {@link
+ * DefaultLoadControl} by default. The targets are updated whenever the bitrate changes by more
+ * than 10%, and each update is reported to registered {@link EventListener}s.
+ */
+public final class AdaptiveLoadControl implements LoadControl {
+
+  /** Listener of {@link AdaptiveLoadControl} events. */
+  public interface EventListener {
+
+    /**
+     * Called on the playback thread when the buffer targets change.
+     *
+     * @param targetBufferBytes The target buffer size in bytes.
+     * @param minBufferUs The minimum duration of media that the player will attempt to ensure is
+     *     buffered, in microseconds.
+     * @param maxBufferUs The maximum duration of media that the player will attempt to buffer, in
+     *     microseconds.
+     * @param bitrate The bitrate of the buffered media that the targets are based on, in bits per
+     *     second, or {@link Format#NO_VALUE} if unknown.
+     */
+    void onBufferTargetsChanged(
+        int targetBufferBytes, long minBufferUs, long maxBufferUs, int bitrate);
+  }
+
+  /** The default fraction of the maximum heap size that may be used for buffered media. */
+  public static final float DEFAULT_MEMORY_BUDGET_FRACTION = 0.25f;
+
+  /**
+   * The default minimum duration of media that the player will attempt to ensure is buffered at all
+   * times, in milliseconds, if it fits into the memory budget.
+   */
+  public static final int DEFAULT_MIN_BUFFER_MS = DefaultLoadControl.DEFAULT_MAX_BUFFER_MS;
+
+  /**
+   * The default maximum duration of media that the player will attempt to buffer, in milliseconds,
+   * if it fits into the memory budget.
+   */
+  public static final int DEFAULT_MAX_BUFFER_MS = 120_000;
+
+  /** Builder for {@link AdaptiveLoadControl}. */
+  public static final class Builder {
+
+    @Nullable private DefaultAllocator allocator;
+    @Nullable private BufferArbitrator bufferArbitrator;
+    private int priority;
+    private int memoryBudgetBytes;
+    private int minBufferMs;
+    private int maxBufferMs;
+    private int bufferForPlaybackMs;
+    private int bufferForPlaybackAfterRebufferMs;
+    private boolean createAdaptiveLoadControlCalled;
+
+    /** Constructs a new instance. */
+    public Builder() {
+      memoryBudgetBytes =
+          (int)
+              Math.min(
+                  Integer.MAX_VALUE,
+                  (long) (Runtime.getRuntime().maxMemory() * DEFAULT_MEMORY_BUDGET_FRACTION));
+      minBufferMs = DEFAULT_MIN_BUFFER_MS;
+      maxBufferMs = DEFAULT_MAX_BUFFER_MS;
+      bufferForPlaybackMs = DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS;
+      bufferForPlaybackAfterRebufferMs =
+          DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS;
+    }
+
+    /**
+     * Sets the {@link DefaultAllocator} used by the loader.
+     *
+     * @param allocator The {@link DefaultAllocator}.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #createAdaptiveLoadControl()} has already been
+     *     called.
+     */
+    public Builder setAllocator(DefaultAllocator allocator) {
+      Assertions.checkState(!createAdaptiveLoadControlCalled);
+      this.allocator = allocator;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of bytes that may be used for buffered media. The default value is
+     * {@link #DEFAULT_MEMORY_BUDGET_FRACTION} of the maximum heap size.
+     *
+     * @param memoryBudgetBytes The memory budget in bytes.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #createAdaptiveLoadControl()} has already been
+     *     called.
+     */
+    public Builder setMemoryBudgetBytes(int memoryBudgetBytes) {
+      Assertions.checkState(!createAdaptiveLoadControlCalled);
+      Assertions.checkArgument(memoryBudgetBytes > 0);
+      this.memoryBudgetBytes = memoryBudgetBytes;
+      return this;
+    }
+
+    /**
+     * Sets a {@link BufferArbitrator} from which the memory budget is obtained, replacing the
+     * budget set by {@link #setMemoryBudgetBytes(int)}. The load control registers with the
+     * arbitrator while the player is prepared. When its share of the budget shrinks below the size
+     * of the buffer, it stops loading and has the player release the media buffered for periods
+     * after the one being read. Media buffered for the period being read isn't released, so the
+     * buffer only falls within the share as that media is played out.
+     *
+     * @param bufferArbitrator The {@link BufferArbitrator}, for example {@link
+     *     BufferArbitrator#getSingletonInstance()}.
+     * @param priority The initial priority with which the budget is requested. See {@link
+     *     AdaptiveLoadControl#setPriority(int)}.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #createAdaptiveLoadControl()} has already been
+     *     called.
+     */
+    public Builder setBufferArbitrator(BufferArbitrator bufferArbitrator, int priority) {
+      Assertions.checkState(!createAdaptiveLoadControlCalled);
+      Assertions.checkArgument(priority > 0);
+      this.bufferArbitrator = bufferArbitrator;
+      this.priority = priority;
+      return this;
+    }
+
+    /**
+     * Sets the buffer duration parameters. The minimum and maximum buffer durations are reduced if
+     * the media doesn't fit into the memory budget.
+     *
+     * @param minBufferMs The minimum duration of media that the player will attempt to ensure is
+     *     buffered at all times, in milliseconds.
+     * @param maxBufferMs The maximum duration of media that the player will attempt to buffer, in
+     *     milliseconds.
+     * @param bufferForPlaybackMs The duration of media that must be buffered for playback to start
+     *     or resume following a user action such as a seek, in milliseconds.
+     * @param bufferForPlaybackAfterRebufferMs The default duration of media that must be buffered
+     *     for playback to resume after a rebuffer, in milliseconds. A rebuffer is defined to be
+     *     caused by buffer depletion rather than a user action.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #createAdaptiveLoadControl()} has already been
+     *     called.
+     */
+    public Builder setBufferDurationsMs(
+        int minBufferMs,
+        int maxBufferMs,
+        int bufferForPlaybackMs,
+        int bufferForPlaybackAfterRebufferMs) {
+      Assertions.checkState(!createAdaptiveLoadControlCalled);
+      Assertions.checkArgument(bufferForPlaybackMs >= 0);
+      Assertions.checkArgument(bufferForPlaybackAfterRebufferMs >= 0);
+      Assertions.checkArgument(minBufferMs >= bufferForPlaybackMs);
+      Assertions.checkArgument(minBufferMs >= bufferForPlaybackAfterRebufferMs);
+      Assertions.checkArgument(maxBufferMs >= minBufferMs);
+      this.minBufferMs = minBufferMs;
+      this.maxBufferMs = maxBufferMs;
+      this.bufferForPlaybackMs = bufferForPlaybackMs;
+      this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+      return this;
+    }
+
+    /** Creates an {@link AdaptiveLoadControl}. */
+    public AdaptiveLoadControl createAdaptiveLoadControl() {
+      Assertions.checkState(!createAdaptiveLoadControlCalled);
+      createAdaptiveLoadControlCalled = true;
+      if (allocator == null) {
+        allocator = new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+      }
+      return new AdaptiveLoadControl(
+          allocator,
+          bufferArbitrator,
+          priority,
+          memoryBudgetBytes,
+          minBufferMs,
+          maxBufferMs,
+          bufferForPlaybackMs,
+          bufferForPlaybackAfterRebufferMs);
+    }
+  }
+
+  /** The minimum buffered duration for which the bitrate of the buffered media is observed. */
+  private static final long MIN_BUFFERED_DURATION_FOR_OBSERVED_BITRATE_US = 2_000_000;
+  /** The relative change in bitrate for which the targets are updated. */
+  private static final float BITRATE_CHANGE_FOR_TARGET_UPDATE = 0.1f;
+  /** The factor by which the target buffer size exceeds the size of the maximum buffer duration. */
+  private static final float TARGET_BUFFER_BYTES_HEADROOM = 1.25f;
+
+  private final DefaultAllocator allocator;
+  @Nullable private final BufferArbitrator bufferArbitrator;
+  private final BufferArbitrator.Participant bufferArbitratorParticipant;
+  private final long minBufferUs;
+  private final long maxBufferUs;
+  private final long bufferForPlaybackUs;
+  private final long bufferForPlaybackAfterRebufferUs;
+  private final EventDispatcher<EventListener> eventDispatcher;
+
+  private volatile int priority;
+  private volatile int memoryBudgetBytes;
+  private volatile boolean memoryBudgetChanged;
+
+  private @NullableType TrackSelection[] trackSelections;
+  private long lastBufferedDurationUs;
+  private int defaultTargetBufferBytes;
+  private boolean hasTargets;
+  private int targetBitrate;
+  private int targetBufferBytes;
+  private long targetMinBufferUs;
+  private long targetMaxBufferUs;
+  private boolean isBuffering;
+
+  private AdaptiveLoadControl(
+      DefaultAllocator allocator,
+      @Nullable BufferArbitrator bufferArbitrator,
+      int priority,
+      int memoryBudgetBytes,
+      int minBufferMs,
+      int maxBufferMs,
+      int bufferForPlaybackMs,
+      int bufferForPlaybackAfterRebufferMs) {
+    this.allocator = allocator;
+    this.bufferArbitrator = bufferArbitrator;
+    this.priority = priority;
+    this.memoryBudgetBytes = memoryBudgetBytes;
+    bufferArbitratorParticipant = this::onMemoryBudgetChanged;
+    this.minBufferUs = C.msToUs(minBufferMs);
+    this.maxBufferUs = C.msToUs(maxBufferMs);
+    this.bufferForPlaybackUs = C.msToUs(bufferForPlaybackMs);
+    this.bufferForPlaybackAfterRebufferUs = C.msToUs(bufferForPlaybackAfterRebufferMs);
+    eventDispatcher = new EventDispatcher<>();
+    trackSelections = new TrackSelection[0];
+  }
+
+  /**
+   * Sets the priority with which the memory budget is requested from the {@link BufferArbitrator},
+   * for example {@link BufferArbitrator#PRIORITY_BACKGROUND} when the player is moved to the
+   * background. Does nothing if no arbitrator is set.
+   *
+   * @param priority The priority. Must be positive.
+   */
+  public void setPriority(int priority) {
+    Assertions.checkArgument(priority > 0);
+    this.priority = priority;
+    if (bufferArbitrator != null) {
+      bufferArbitrator.setPriority(bufferArbitratorParticipant, priority);
+    }
+  }
+
+  /**
+   * Adds a listener to be notified of changes to the buffer targets.
+   *
+   * @param eventHandler A handler for events.
+   * @param eventListener A listener of events.
+   */
+  public void addEventListener(Handler eventHandler, EventListener eventListener) {
+    eventDispatcher.addListener(eventHandler, eventListener);
+  }
+
+  /**
+   * Removes a listener.
+   *
+   * @param eventListener The listener to be removed.
+   */
+  public void removeEventListener(EventListener eventListener) {
+    eventDispatcher.removeListener(eventListener);
+  }
+
+  @Override
+  public void onPrepared() {
+    reset(false);
+    if (bufferArbitrator != null) {
+      bufferArbitrator.register(bufferArbitratorParticipant, priority);
+    }
+  }
+
+  @Override
+  public void onTracksSelected(
+      Renderer[] renderers, TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
+    this.trackSelections = new TrackSelection[renderers.length];
+    defaultTargetBufferBytes = 0;
+    for (int i = 0; i < renderers.length; i++) {
+      @Nullable TrackSelection trackSelection = trackSelections.get(i);
+      if (trackSelection != null) {
+        this.trackSelections[i] = trackSelection;
+        defaultTargetBufferBytes +=
+            DefaultLoadControl.getDefaultBufferSize(renderers[i].getTrackType());
+      }
+    }
+    hasTargets = false;
+    updateTargets(/* bufferedDurationUs= */ 0);
+  }
+
+  @Override
+  public void onStopped() {
+    reset(true);
+    if (bufferArbitrator != null) {
+      bufferArbitrator.unregister(bufferArbitratorParticipant);
+    }
+  }
+
+  @Override
+  public void onReleased() {
+    reset(true);
+    if (bufferArbitrator != null) {
+      bufferArbitrator.unregister(bufferArbitratorParticipant);
+    }
+  }
+
+  @Override
+  public Allocator getAllocator() {
+    return allocator;
+  }
+
+  @Override
+  public long getBackBufferDurationUs() {
+    return 0;
+  }
+
+  @Override
+  public boolean retainBackBufferFromKeyframe() {
+    return false;
+  }
+
+  @Override
+  public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
+    lastBufferedDurationUs = bufferedDurationUs;
+    updateTargets(bufferedDurationUs);
+    long minBufferUs = targetMinBufferUs;
+    if (playbackSpeed > 1) {
+      // The playback speed is faster than real time, so scale up the minimum required media
+      // duration to keep enough media buffered for a playout duration of minBufferUs.
+      long mediaDurationMinBufferUs =
+          Util.getMediaDurationForPlayoutDuration(minBufferUs, playbackSpeed);
+      minBufferUs = Math.min(mediaDurationMinBufferUs, targetMaxBufferUs);
+    }
+    if (allocator.getTotalBytesAllocated() >= targetBufferBytes) {
+      // Never exceed the memory budget, even if less than the minimum duration is buffered.
+      isBuffering = false;
+    } else if (bufferedDurationUs < minBufferUs) {
+      isBuffering = true;
+    } else if (bufferedDurationUs >= targetMaxBufferUs) {
+      isBuffering = false;
+    } // Else don't change the buffering state
+    return isBuffering;
+  }
+
+  @Override
+  public boolean shouldStartPlayback(
+      long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
+    bufferedDurationUs = Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+    long minBufferDurationUs = rebuffering ? bufferForPlaybackAfterRebufferUs : bufferForPlaybackUs;
+    return minBufferDurationUs <= 0
+        || bufferedDurationUs >= minBufferDurationUs
+        || (hasTargets
+            && (bufferedDurationUs >= targetMinBufferUs
+                || allocator.getTotalBytesAllocated() >= targetBufferBytes));
+  }
+
+  @Override
+  public boolean shouldTrimBuffer() {
+    if (hasTargets) {
+      // Apply any change to the memory budget.
+      updateTargets(lastBufferedDurationUs);
+    }
+    return allocator.getTotalBytesAllocated() > memoryBudgetBytes;
+  }
+
+  private void onMemoryBudgetChanged(int memoryBudgetBytes) {
+    this.memoryBudgetBytes = memoryBudgetBytes;
+    memoryBudgetChanged = true;
+  }
+
+  private void updateTargets(long bufferedDurationUs) {
+    if (memoryBudgetChanged) {
+      memoryBudgetChanged = false;
+      hasTargets = false;
+    }
+    int memoryBudgetBytes = this.memoryBudgetBytes;
+    int bitrate = getBufferedMediaBitrate(bufferedDurationUs);
+    if (hasTargets
+        && (bitrate == targetBitrate
+            || (bitrate != Format.NO_VALUE
+                && targetBitrate != Format.NO_VALUE
+                && Math.abs(bitrate - targetBitrate)
+                    <= BITRATE_CHANGE_FOR_TARGET_UPDATE * targetBitrate))) {
+      return;
+    }
+    if (bitrate == Format.NO_VALUE) {
+      targetMaxBufferUs = maxBufferUs;
+      targetBufferBytes = Math.min(memoryBudgetBytes, defaultTargetBufferBytes);
+    } else {
+      long budgetDurationUs =
+          (long) memoryBudgetBytes * C.BITS_PER_BYTE * C.MICROS_PER_SECOND / bitrate;
+      targetMaxBufferUs = Math.min(maxBufferUs, budgetDurationUs);
+      long maxBufferBytes =
+          (long) bitrate * targetMaxBufferUs / (C.BITS_PER_BYTE * C.MICROS_PER_SECOND);
+      targetBufferBytes =
+          (int) Math.min(memoryBudgetBytes, (long) (maxBufferBytes * TARGET_BUFFER_BYTES_HEADROOM));
+    }
+    targetMinBufferUs = Math.min(minBufferUs, targetMaxBufferUs);
+    targetBitrate = bitrate;
+    hasTargets = true;
+    allocator.setTargetBufferSize(targetBufferBytes);
+
+    int targetBufferBytes = this.targetBufferBytes;
+    long targetMinBufferUs = this.targetMinBufferUs;
+    long targetMaxBufferUs = this.targetMaxBufferUs;
+    eventDispatcher.dispatch(
+        listener ->
+            listener.onBufferTargetsChanged(
+                targetBufferBytes, targetMinBufferUs, targetMaxBufferUs, bitrate));
+  }
+
+  private int getBufferedMediaBitrate(long bufferedDurationUs) {
+    long bitrate = 0;
+    for (TrackSelection trackSelection : trackSelections) {
+      if (trackSelection != null) {
+        int selectedBitrate = trackSelection.getSelectedFormat().bitrate;
+        if (selectedBitrate != Format.NO_VALUE) {
+          bitrate += selectedBitrate;
+        }
+      }
+    }
+    if (bufferedDurationUs >= MIN_BUFFERED_DURATION_FOR_OBSERVED_BITRATE_US) {
+      long observedBitrate =
+          allocator.getTotalBytesAllocated()
+              * (long) C.BITS_PER_BYTE
+              * C.MICROS_PER_SECOND
+              / bufferedDurationUs;
+      bitrate = Math.max(bitrate, observedBitrate);
+    }
+    return bitrate == 0 ? Format.NO_VALUE : (int) Math.min(Integer.MAX_VALUE, bitrate);
+  }
+
+  private void reset(boolean resetAllocator) {
+    trackSelections = new TrackSelection[0];
+    lastBufferedDurationUs = 0;
+    hasTargets = false;
+    targetBufferBytes = 0;
+    targetMinBufferUs = 0;
+    targetMaxBufferUs = 0;
+    isBuffering = false;
+    if (resetAllocator) {
+      allocator.reset();
+    }
+  }
+}
@@ -45,6 +45,7 @@ public abstract class BaseRenderer implements Renderer, RendererCapabilities {
   private long readingPositionUs;
   private boolean streamIsFinal;
   private boolean throwRendererExceptionIsExecuting;
+  @Nullable private Object sourceLock;
 
   /**
    * @param trackType The track type that the renderer handles. One of the {@link C}
@@ -140,7 +141,14 @@ public abstract class BaseRenderer implements Renderer, RendererCapabilities {
 
   @Override
   public final void maybeThrowStreamError() throws IOException {
-    stream.maybeThrowError();
+    @Nullable Object sourceLock = this.sourceLock;
+    if (sourceLock == null) {
+      stream.maybeThrowError();
+      return;
+    }
+    synchronized (sourceLock) {
+      stream.maybeThrowError();
+    }
   }
 
   @Override
@@ -376,7 +384,15 @@ public abstract class BaseRenderer implements Renderer, RendererCapabilities {
    */
   protected final int readSource(
       FormatHolder formatHolder, DecoderInputBuffer buffer, boolean formatRequired) {
-    int result = stream.readData(formatHolder, buffer, formatRequired);
+    int result;
+    @Nullable Object sourceLock = this.sourceLock;
+    if (sourceLock == null) {
+      result = stream.readData(formatHolder, buffer, formatRequired);
+    } else {
+      synchronized (sourceLock) {
+        result = stream.readData(formatHolder, buffer, formatRequired);
+      }
+    }
     if (result == C.RESULT_BUFFER_READ) {
       if (buffer.isEndOfStream()) {
         readingPositionUs = C.TIME_END_OF_SOURCE;
@@ -402,14 +418,40 @@ public abstract class BaseRenderer implements Renderer, RendererCapabilities {
    * @return The number of samples that were skipped.
    */
   protected int skipSource(long positionUs) {
-    return stream.skipData(positionUs - streamOffsetUs);
+    @Nullable Object sourceLock = this.sourceLock;
+    if (sourceLock == null) {
+      return stream.skipData(positionUs - streamOffsetUs);
+    }
+    synchronized (sourceLock) {
+      return stream.skipData(positionUs - streamOffsetUs);
+    }
   }
 
   /**
    * Returns whether the upstream source is ready.
    */
   protected final boolean isSourceReady() {
-    return hasReadStreamToEnd() ? streamIsFinal : stream.isReady();
+    if (hasReadStreamToEnd()) {
+      return streamIsFinal;
+    }
+    @Nullable Object sourceLock = this.sourceLock;
+    if (sourceLock == null) {
+      return stream.isReady();
+    }
+    synchronized (sourceLock) {
+      return stream.isReady();
+    }
+  }
+
+  /**
+   * Sets an object on which all access to the enabled stream is synchronized, or null if access
+   * doesn't need to be synchronized. Streams of the same period share state, so access must be
+   * synchronized when renderers reading from the same period are rendered on different threads.
+   *
+   * @param sourceLock The object on which to synchronize, or null.
+   */
+  /* package */ final void setSourceLock(@Nullable Object sourceLock) {
+    this.sourceLock = sourceLock;
   }
 
   /**
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+
+/**
+ * Distributes a memory budget for buffered media between the players of a process.
+ *
+ * <p>Each registered {@link Participant}, typically the {@link AdaptiveLoadControl} of a player,
+ * receives a share of the total budget that's proportional to its priority. Participants are
+ * expected to stop loading when their share is exceeded. An {@link AdaptiveLoadControl} also has
+ * its player release the media buffered for periods after the one being read, but media already
+ * buffered for the period being read is kept and only shrinks as it's played out. Shares are
+ * redistributed whenever a participant registers, unregisters or changes its priority.
+ */
+public final class BufferArbitrator {
+
+  /** Receives the memory budget assigned by a {@link BufferArbitrator}. */
+  public interface Participant {
+
+    /**
+     * Called when the memory budget of the participant changes. May be called on any thread, while
+     * the arbitrator is locked. Implementations must not call back into the arbitrator.
+     *
+     * @param memoryBudgetBytes The memory budget in bytes.
+     */
+    void onMemoryBudgetChanged(int memoryBudgetBytes);
+  }
+
+  /** The priority of a player whose media isn't visible to the user or is paused. */
+  public static final int PRIORITY_BACKGROUND = 1;
+  /** The priority of a player whose media is in the foreground. */
+  public static final int PRIORITY_FOREGROUND = 4;
+
+  @Nullable private static BufferArbitrator singletonInstance;
+
+  /**
+   * Returns a singleton instance, which distributes {@link
+   * AdaptiveLoadControl#DEFAULT_MEMORY_BUDGET_FRACTION} of the maximum heap size.
+   */
+  public static synchronized BufferArbitrator getSingletonInstance() {
+    if (singletonInstance == null) {
+      singletonInstance =
+          new BufferArbitrator(
+              (int)
+                  Math.min(
+                      Integer.MAX_VALUE,
+                      (long)
+                          (Runtime.getRuntime().maxMemory()
+                              * AdaptiveLoadControl.DEFAULT_MEMORY_BUDGET_FRACTION)));
+    }
+    return singletonInstance;
+  }
+
+  private final int totalMemoryBudgetBytes;
+  private final ArrayList<Registration> registrations;
+
+  /**
+   * Creates an instance.
+   *
+   * @param totalMemoryBudgetBytes The memory budget to distribute between participants, in bytes.
+   */
+  public BufferArbitrator(int totalMemoryBudgetBytes) {
+    Assertions.checkArgument(totalMemoryBudgetBytes > 0);
+    this.totalMemoryBudgetBytes = totalMemoryBudgetBytes;
+    registrations = new ArrayList<>();
+  }
+
+  /** Returns the memory budget that's distributed between participants, in bytes. */
+  public int getTotalMemoryBudgetBytes() {
+    return totalMemoryBudgetBytes;
+  }
+
+  /**
+   * Registers a participant, or updates its priority if it's already registered. The budgets of all
+   * participants whose share changes, including the registered participant, are updated before
+   * this method returns.
+   *
+   * @param participant The {@link Participant}.
+   * @param priority The priority of the participant, for example {@link #PRIORITY_FOREGROUND} or
+   *     {@link #PRIORITY_BACKGROUND}. Must be positive.
+   */
+  public synchronized void register(Participant participant, int priority) {
+    Assertions.checkArgument(priority > 0);
+    @Nullable Registration registration = getRegistration(participant);
+    if (registration == null) {
+      registrations.add(new Registration(participant, priority));
+    } else if (registration.priority != priority) {
+      registration.priority = priority;
+    } else {
+      return;
+    }
+    distributeMemoryBudget();
+  }
+
+  /**
+   * Unregisters a participant. Does nothing if the participant isn't registered.
+   *
+   * @param participant The {@link Participant}.
+   */
+  public synchronized void unregister(Participant participant) {
+    @Nullable Registration registration = getRegistration(participant);
+    if (registration != null) {
+      registrations.remove(registration);
+      distributeMemoryBudget();
+    }
+  }
+
+  /**
+   * Updates the priority of a participant. Does nothing if the participant isn't registered.
+   *
+   * @param participant The {@link Participant}.
+   * @param priority The new priority of the participant. Must be positive.
+   */
+  public synchronized void setPriority(Participant participant, int priority) {
+    Assertions.checkArgument(priority > 0);
+    @Nullable Registration registration = getRegistration(participant);
+    if (registration != null && registration.priority != priority) {
+      registration.priority = priority;
+      distributeMemoryBudget();
+    }
+  }
+
+  private void distributeMemoryBudget() {
+    long totalPriority = 0;
+    for (int i = 0; i < registrations.size(); i++) {
+      totalPriority += registrations.get(i).priority;
+    }
+    for (int i = 0; i < registrations.size(); i++) {
+      Registration registration = registrations.get(i);
+      int memoryBudgetBytes =
+          (int) (totalMemoryBudgetBytes * (long) registration.priority / totalPriority);
+      if (memoryBudgetBytes != registration.memoryBudgetBytes) {
+        registration.memoryBudgetBytes = memoryBudgetBytes;
+        registration.participant.onMemoryBudgetChanged(memoryBudgetBytes);
+      }
+    }
+  }
+
+  @Nullable
+  private Registration getRegistration(Participant participant) {
+    for (int i = 0; i < registrations.size(); i++) {
+      if (registrations.get(i).participant == participant) {
+        return registrations.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static final class Registration {
+
+    public final Participant participant;
+    public int priority;
+    public int memoryBudgetBytes;
+
+    public Registration(Participant participant, int priority) {
+      this.participant = participant;
+      this.priority = priority;
+    }
+  }
+}
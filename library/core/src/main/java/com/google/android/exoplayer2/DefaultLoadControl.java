@@ -437,7 +437,7 @@ public class DefaultLoadControl implements LoadControl {
     }
   }
 
-  private static int getDefaultBufferSize(int trackType) {
+  /* package */ static int getDefaultBufferSize(int trackType) {
     switch (trackType) {
       case C.TRACK_TYPE_DEFAULT:
         return DEFAULT_MUXED_BUFFER_SIZE;
@@ -401,4 +401,53 @@ public interface ExoPlayer extends Player {
    *     idle state.
    */
   void setForegroundMode(boolean foregroundMode);
+
+  /**
+   * Sets whether the playback loop is scheduled dynamically, based on the durations reported by
+   * enabled renderers through {@link Renderer#getDurationToProgressUs(long, long)}, rather than at
+   * a fixed interval. Dynamic scheduling reduces the number of playback thread wakeups, and hence
+   * power consumption, when renderers don't need to be serviced frequently (e.g. for audio-only
+   * playbacks). It may reduce the granularity of position updates.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param dynamicSchedulingEnabled Whether dynamic scheduling is enabled.
+   */
+  void experimental_setDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled);
+
+  /**
+   * Sets whether renderers are rendered in parallel, each on its own thread. When enabled, each
+   * iteration of the playback loop renders all enabled renderers concurrently using the same
+   * position from the media clock, so that the iteration takes as long as the slowest renderer
+   * rather than the sum of all renderers' render times. The next iteration only starts once every
+   * renderer has finished, so a renderer that is consistently slow to render (e.g. a software video
+   * renderer) still limits how often the other renderers are rendered. All other renderer methods
+   * continue to be called on the playback thread.
+   *
+   * <p>Renderers used with this mode must not assume that {@link Renderer#render(long, long)} is
+   * called on the playback thread. Reads from the renderers' sample streams are synchronized with
+   * each other, so parallel rendering is only used if all renderers extend {@link BaseRenderer}.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param parallelRenderingEnabled Whether parallel rendering is enabled.
+   */
+  void experimental_setParallelRenderingEnabled(boolean parallelRenderingEnabled);
+
+  /**
+   * Sets the duration for which a renderer that's disabled during playback keeps its resources,
+   * such as its decoder, before being reset. If the renderer is enabled again within this duration,
+   * for example because a playlist has an item without video between two items with video, it can
+   * reuse the decoder if the new format allows, which reduces the time to render the first frame.
+   *
+   * <p>Renderers that are kept alive hold on to their resources whilst other renderers are enabled,
+   * so this should not be used if the device may not be able to provide these resources to several
+   * renderers at once. The default value is 0, meaning that renderers are reset as soon as they're
+   * disabled during playback.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param rendererKeepAliveMs The keep-alive duration for disabled renderers, in milliseconds.
+   */
+  void experimental_setRendererKeepAliveMs(long rendererKeepAliveMs);
 }
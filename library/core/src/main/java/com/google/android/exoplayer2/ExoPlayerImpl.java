@@ -406,6 +406,21 @@ import java.util.concurrent.CopyOnWriteArrayList;
     }
   }
 
+  @Override
+  public void experimental_setDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+    internalPlayer.setDynamicSchedulingEnabled(dynamicSchedulingEnabled);
+  }
+
+  @Override
+  public void experimental_setParallelRenderingEnabled(boolean parallelRenderingEnabled) {
+    internalPlayer.setParallelRenderingEnabled(parallelRenderingEnabled);
+  }
+
+  @Override
+  public void experimental_setRendererKeepAliveMs(long rendererKeepAliveMs) {
+    internalPlayer.setRendererKeepAliveMs(rendererKeepAliveMs);
+  }
+
   @Override
   public void stop(boolean reset) {
     if (reset) {
@@ -32,6 +32,7 @@ import com.google.android.exoplayer2.source.MediaSource.MediaSourceCaller;
 import com.google.android.exoplayer2.source.SampleStream;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.trackselection.TrackSelector;
 import com.google.android.exoplayer2.trackselection.TrackSelectorResult;
 import com.google.android.exoplayer2.upstream.BandwidthMeter;
@@ -43,6 +44,7 @@ import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -80,6 +82,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private static final int MSG_SEND_MESSAGE = 15;
   private static final int MSG_SEND_MESSAGE_TO_TARGET_THREAD = 16;
   private static final int MSG_PLAYBACK_PARAMETERS_CHANGED_INTERNAL = 17;
+  private static final int MSG_SET_DYNAMIC_SCHEDULING_ENABLED = 18;
+  private static final int MSG_SET_PARALLEL_RENDERING_ENABLED = 19;
+  private static final int MSG_SET_RENDERER_KEEP_ALIVE_MS = 20;
+  private static final int MSG_RESET_KEPT_ALIVE_RENDERERS = 21;
 
   private static final int ACTIVE_INTERVAL_MS = 10;
   private static final int IDLE_INTERVAL_MS = 1000;
@@ -102,6 +108,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private final ArrayList<PendingMessageInfo> pendingMessages;
   private final Clock clock;
   private final MediaPeriodQueue queue;
+  private final long[] rendererResetDeadlinesMs;
 
   @SuppressWarnings("unused")
   private SeekParameters seekParameters;
@@ -116,6 +123,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
   @Player.RepeatMode private int repeatMode;
   private boolean shuffleModeEnabled;
   private boolean foregroundMode;
+  private boolean dynamicSchedulingEnabled;
+  @Nullable private ParallelRenderLoop parallelRenderLoop;
+  private long rendererKeepAliveMs;
 
   private int pendingPrepareCount;
   private SeekPosition pendingInitialSeekPosition;
@@ -154,6 +164,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
         PlaybackInfo.createDummy(/* startPositionUs= */ C.TIME_UNSET, emptyTrackSelectorResult);
     playbackInfoUpdate = new PlaybackInfoUpdate();
     rendererCapabilities = new RendererCapabilities[renderers.length];
+    rendererResetDeadlinesMs = new long[renderers.length];
+    Arrays.fill(rendererResetDeadlinesMs, C.TIME_UNSET);
     for (int i = 0; i < renderers.length; i++) {
       renderers[i].setIndex(i);
       rendererCapabilities[i] = renderers[i].getCapabilities();
@@ -220,6 +232,22 @@ import java.util.concurrent.atomic.AtomicBoolean;
     handler.obtainMessage(MSG_SEND_MESSAGE, message).sendToTarget();
   }
 
+  public void setDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+    handler
+        .obtainMessage(MSG_SET_DYNAMIC_SCHEDULING_ENABLED, dynamicSchedulingEnabled ? 1 : 0, 0)
+        .sendToTarget();
+  }
+
+  public void setParallelRenderingEnabled(boolean parallelRenderingEnabled) {
+    handler
+        .obtainMessage(MSG_SET_PARALLEL_RENDERING_ENABLED, parallelRenderingEnabled ? 1 : 0, 0)
+        .sendToTarget();
+  }
+
+  public void setRendererKeepAliveMs(long rendererKeepAliveMs) {
+    handler.obtainMessage(MSG_SET_RENDERER_KEEP_ALIVE_MS, rendererKeepAliveMs).sendToTarget();
+  }
+
   public synchronized void setForegroundMode(boolean foregroundMode) {
     if (released || !internalPlaybackThread.isAlive()) {
       return;
@@ -341,6 +369,19 @@ import java.util.concurrent.atomic.AtomicBoolean;
           setForegroundModeInternal(
               /* foregroundMode= */ msg.arg1 != 0, /* processedFlag= */ (AtomicBoolean) msg.obj);
           break;
+        case MSG_SET_DYNAMIC_SCHEDULING_ENABLED:
+          dynamicSchedulingEnabled = msg.arg1 != 0;
+          break;
+        case MSG_SET_PARALLEL_RENDERING_ENABLED:
+          setParallelRenderingEnabledInternal(/* parallelRenderingEnabled= */ msg.arg1 != 0);
+          break;
+        case MSG_SET_RENDERER_KEEP_ALIVE_MS:
+          rendererKeepAliveMs = (Long) msg.obj;
+          break;
+        case MSG_RESET_KEPT_ALIVE_RENDERERS:
+          maybeResetKeptAliveRenderers(clock.uptimeMillis());
+          scheduleKeptAliveRendererReset();
+          break;
         case MSG_STOP:
           stopInternal(
               /* forceResetRenderers= */ false,
@@ -563,11 +604,14 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private void doSomeWork() throws ExoPlaybackException, IOException {
     long operationStartTimeMs = clock.uptimeMillis();
     updatePeriods();
+    maybeTrimBuffer();
+    maybeResetKeptAliveRenderers(operationStartTimeMs);
 
     if (playbackInfo.playbackState == Player.STATE_IDLE
         || playbackInfo.playbackState == Player.STATE_ENDED) {
       // Remove all messages. Prepare (in case of IDLE) or seek (in case of ENDED) will resume.
       handler.removeMessages(MSG_DO_SOME_WORK);
+      scheduleKeptAliveRendererReset();
       return;
     }
 
@@ -584,19 +628,23 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
     boolean renderersEnded = true;
     boolean renderersAllowPlayback = true;
+    long rendererPositionElapsedRealtimeUs = SystemClock.elapsedRealtime() * 1000;
     if (playingPeriodHolder.prepared) {
-      long rendererPositionElapsedRealtimeUs = SystemClock.elapsedRealtime() * 1000;
       playingPeriodHolder.mediaPeriod.discardBuffer(
           playbackInfo.positionUs - backBufferDurationUs, retainBackBufferFromKeyframe);
+      boolean renderInParallel = parallelRenderLoop != null && !hasProtectedTracksEnabled();
+      if (renderInParallel) {
+        parallelRenderLoop.render(
+            renderers, rendererPositionUs, rendererPositionElapsedRealtimeUs);
+      }
       for (int i = 0; i < renderers.length; i++) {
         Renderer renderer = renderers[i];
         if (renderer.getState() == Renderer.STATE_DISABLED) {
           continue;
         }
-        // TODO: Each renderer should return the maximum delay before which it wishes to be called
-        // again. The minimum of these values should then be used as the delay before the next
-        // invocation of this method.
-        renderer.render(rendererPositionUs, rendererPositionElapsedRealtimeUs);
+        if (!renderInParallel) {
+          renderer.render(rendererPositionUs, rendererPositionElapsedRealtimeUs);
+        }
         renderersEnded = renderersEnded && renderer.isEnded();
         // Determine whether the renderer allows playback to continue. Playback can continue if the
         // renderer is ready or ended. Also continue playback if the renderer is reading ahead into
@@ -648,21 +696,118 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
     if ((playWhenReady && playbackInfo.playbackState == Player.STATE_READY)
         || playbackInfo.playbackState == Player.STATE_BUFFERING) {
-      scheduleNextWork(operationStartTimeMs, ACTIVE_INTERVAL_MS);
+      scheduleNextWork(
+          operationStartTimeMs,
+          getActiveIntervalMs(playingPeriodHolder, rendererPositionElapsedRealtimeUs));
     } else if (enabledRenderers.length != 0 && playbackInfo.playbackState != Player.STATE_ENDED) {
       scheduleNextWork(operationStartTimeMs, IDLE_INTERVAL_MS);
     } else {
       handler.removeMessages(MSG_DO_SOME_WORK);
+      scheduleKeptAliveRendererReset();
     }
 
     TraceUtil.endSection();
   }
 
+  /**
+   * Returns whether any period from which the renderers may currently read has a selected format
+   * with DRM init data. DRM sessions must be acquired on the playback thread, so such periods are
+   * always rendered sequentially.
+   */
+  private boolean hasProtectedTracksEnabled() {
+    @Nullable MediaPeriodHolder periodHolder = queue.getPlayingPeriod();
+    @Nullable MediaPeriodHolder readingPeriodHolder = queue.getReadingPeriod();
+    while (periodHolder != null) {
+      TrackSelectionArray selections = periodHolder.getTrackSelectorResult().selections;
+      for (int i = 0; i < selections.length; i++) {
+        @Nullable TrackSelection selection = selections.get(i);
+        if (selection == null) {
+          continue;
+        }
+        for (int j = 0; j < selection.length(); j++) {
+          if (selection.getFormat(j).drmInitData != null) {
+            return true;
+          }
+        }
+      }
+      if (periodHolder == readingPeriodHolder) {
+        break;
+      }
+      periodHolder = periodHolder.getNext();
+    }
+    return false;
+  }
+
+  private long getActiveIntervalMs(
+      MediaPeriodHolder playingPeriodHolder, long rendererPositionElapsedRealtimeUs) {
+    if (!dynamicSchedulingEnabled
+        || !playingPeriodHolder.prepared
+        || enabledRenderers.length == 0
+        || nextPendingMessageIndex < pendingMessages.size()) {
+      // Position-based messages are only delivered accurately if the loop runs at a fixed rate.
+      return ACTIVE_INTERVAL_MS;
+    }
+    long durationToProgressUs = Long.MAX_VALUE;
+    for (Renderer renderer : enabledRenderers) {
+      durationToProgressUs =
+          Math.min(
+              durationToProgressUs,
+              renderer.getDurationToProgressUs(
+                  rendererPositionUs, rendererPositionElapsedRealtimeUs));
+    }
+    return Util.constrainValue(
+        durationToProgressUs / 1000, ACTIVE_INTERVAL_MS, IDLE_INTERVAL_MS);
+  }
+
+  private void maybeResetKeptAliveRenderers(long nowMs) {
+    for (int i = 0; i < renderers.length; i++) {
+      if (rendererResetDeadlinesMs[i] != C.TIME_UNSET && rendererResetDeadlinesMs[i] <= nowMs) {
+        rendererResetDeadlinesMs[i] = C.TIME_UNSET;
+        // In foreground mode disabled renderers keep their resources until the mode is disabled.
+        if (!foregroundMode && renderers[i].getState() == Renderer.STATE_DISABLED) {
+          renderers[i].reset();
+        }
+      }
+    }
+  }
+
+  /**
+   * Schedules resetting the renderers that are kept alive at the earliest of their deadlines. Called
+   * when the playback loop stops (e.g. because playback has ended or no renderer is enabled), as the
+   * loop only resets kept alive renderers whilst it's running.
+   */
+  private void scheduleKeptAliveRendererReset() {
+    handler.removeMessages(MSG_RESET_KEPT_ALIVE_RENDERERS);
+    long earliestDeadlineMs = C.TIME_UNSET;
+    for (long deadlineMs : rendererResetDeadlinesMs) {
+      if (deadlineMs != C.TIME_UNSET
+          && (earliestDeadlineMs == C.TIME_UNSET || deadlineMs < earliestDeadlineMs)) {
+        earliestDeadlineMs = deadlineMs;
+      }
+    }
+    if (earliestDeadlineMs != C.TIME_UNSET) {
+      handler.sendEmptyMessageAtTime(MSG_RESET_KEPT_ALIVE_RENDERERS, earliestDeadlineMs);
+    }
+  }
+
   private void scheduleNextWork(long thisOperationStartTimeMs, long intervalMs) {
+    // The playback loop resets kept alive renderers whilst it's running.
+    handler.removeMessages(MSG_RESET_KEPT_ALIVE_RENDERERS);
     handler.removeMessages(MSG_DO_SOME_WORK);
     handler.sendEmptyMessageAtTime(MSG_DO_SOME_WORK, thisOperationStartTimeMs + intervalMs);
   }
 
+  private void setParallelRenderingEnabledInternal(boolean parallelRenderingEnabled) {
+    if (parallelRenderingEnabled
+        && parallelRenderLoop == null
+        && ParallelRenderLoop.canRenderInParallel(renderers)) {
+      parallelRenderLoop = new ParallelRenderLoop(renderers);
+    } else if (!parallelRenderingEnabled && parallelRenderLoop != null) {
+      parallelRenderLoop.release();
+      parallelRenderLoop = null;
+    }
+  }
+
   private void seekToInternal(SeekPosition seekPosition) throws ExoPlaybackException {
     playbackInfoUpdate.incrementPendingOperationAcks(/* operationAcks= */ 1);
 
@@ -869,6 +1014,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
         /* resetError= */ false);
     loadControl.onReleased();
     setState(Player.STATE_IDLE);
+    setParallelRenderingEnabledInternal(/* parallelRenderingEnabled= */ false);
     internalPlaybackThread.quit();
     synchronized (this) {
       released = true;
@@ -903,6 +1049,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
           Log.e(TAG, "Reset failed.", e);
         }
       }
+      Arrays.fill(rendererResetDeadlinesMs, C.TIME_UNSET);
+      handler.removeMessages(MSG_RESET_KEPT_ALIVE_RENDERERS);
     }
     enabledRenderers = new Renderer[0];
 
@@ -1532,7 +1680,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
   private void maybeUpdateLoadingPeriod() throws ExoPlaybackException, IOException {
     queue.reevaluateBuffer(rendererPositionUs);
-    if (queue.shouldLoadNextMediaPeriod()) {
+    if (queue.shouldLoadNextMediaPeriod() && !shouldDeferNextMediaPeriod()) {
       MediaPeriodInfo info = queue.getNextMediaPeriodInfo(rendererPositionUs, playbackInfo);
       if (info == null) {
         maybeThrowSourceInfoRefreshError();
@@ -1754,6 +1902,26 @@ import java.util.concurrent.atomic.AtomicBoolean;
     }
   }
 
+  private void maybeTrimBuffer() {
+    @Nullable MediaPeriodHolder readingPeriodHolder = queue.getReadingPeriod();
+    if (readingPeriodHolder == null
+        || readingPeriodHolder.getNext() == null
+        || !loadControl.shouldTrimBuffer()) {
+      return;
+    }
+    // No renderer has read from the periods after the reading period, so they can be released
+    // without affecting playback.
+    queue.removeAfter(readingPeriodHolder);
+    handleLoadingMediaPeriodChanged(/* loadingTrackSelectionChanged= */ false);
+    maybeContinueLoading();
+  }
+
+  private boolean shouldDeferNextMediaPeriod() {
+    // A period enqueued while the buffer should be trimmed would be released again by
+    // maybeTrimBuffer, so wait until the load control no longer asks for it to be trimmed.
+    return queue.getLoadingPeriod() != null && loadControl.shouldTrimBuffer();
+  }
+
   private void maybeContinueLoading() {
     shouldContinueLoading = shouldContinueLoading();
     if (shouldContinueLoading) {
@@ -1838,10 +2006,17 @@ import java.util.concurrent.atomic.AtomicBoolean;
     int enabledRendererCount = 0;
     TrackSelectorResult trackSelectorResult = queue.getPlayingPeriod().getTrackSelectorResult();
     // Reset all disabled renderers before enabling any new ones. This makes sure resources released
-    // by the disabled renderers will be available to renderers that are being enabled.
+    // by the disabled renderers will be available to renderers that are being enabled. If renderers
+    // are kept alive, the reset is deferred so that they can reuse their resources if they're
+    // enabled again before the keep-alive duration has elapsed.
     for (int i = 0; i < renderers.length; i++) {
       if (!trackSelectorResult.isRendererEnabled(i)) {
-        renderers[i].reset();
+        if (rendererKeepAliveMs <= 0) {
+          rendererResetDeadlinesMs[i] = C.TIME_UNSET;
+          renderers[i].reset();
+        } else if (rendererResetDeadlinesMs[i] == C.TIME_UNSET) {
+          rendererResetDeadlinesMs[i] = clock.uptimeMillis() + rendererKeepAliveMs;
+        }
       }
     }
     // Enable the renderers.
@@ -1850,6 +2025,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
         enableRenderer(i, rendererWasEnabledFlags[i], enabledRendererCount++);
       }
     }
+    // Renderers that are enabled again mustn't be reset. The playback loop, or the reset scheduled
+    // when it next stops, resets any other kept alive renderers.
+    handler.removeMessages(MSG_RESET_KEPT_ALIVE_RENDERERS);
   }
 
   private void enableRenderer(
@@ -1858,6 +2036,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
     MediaPeriodHolder playingPeriodHolder = queue.getPlayingPeriod();
     Renderer renderer = renderers[rendererIndex];
     enabledRenderers[enabledRendererIndex] = renderer;
+    rendererResetDeadlinesMs[rendererIndex] = C.TIME_UNSET;
     if (renderer.getState() == Renderer.STATE_DISABLED) {
       TrackSelectorResult trackSelectorResult = playingPeriodHolder.getTrackSelectorResult();
       RendererConfiguration rendererConfiguration =
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * A pool of {@link SimpleExoPlayer} instances that are kept warm between uses.
+ *
+ * <p>Creating a player constructs its renderers, track selector and playback thread, and the first
+ * playback queries the codecs available on the device. A player returned to the pool with {@link
+ * #release(SimpleExoPlayer)} is stopped and reset, but keeps these resources, so that it can be
+ * acquired again to play other media with little reinitialization. If the pool is created to
+ * retain decoders, idle players are put into {@link ExoPlayer#setForegroundMode(boolean) foreground
+ * mode}, so that their renderers also keep their decoders, which are reused if the next media
+ * needs a compatible decoder.
+ *
+ * <p>Players must be acquired from and released to the pool on their application thread. Callers
+ * must remove any listeners they added to a player before releasing it to the pool.
+ */
+public final class ExoPlayerPool {
+
+  /** Creates the players of a pool. */
+  public interface PlayerFactory {
+
+    /** Returns a new {@link SimpleExoPlayer}. */
+    SimpleExoPlayer createPlayer();
+  }
+
+  /** The default maximum number of idle players kept by the pool. */
+  public static final int DEFAULT_MAX_IDLE_PLAYER_COUNT = 2;
+
+  private final PlayerFactory playerFactory;
+  private final int maxIdlePlayerCount;
+  private final boolean retainDecoders;
+  private final ArrayDeque<SimpleExoPlayer> idlePlayers;
+  private final HashMap<SimpleExoPlayer, ForegroundModeReleaser> foregroundModeReleasers;
+
+  /**
+   * Creates a pool that keeps up to {@link #DEFAULT_MAX_IDLE_PLAYER_COUNT} idle players, without
+   * retaining their decoders.
+   *
+   * @param playerFactory The {@link PlayerFactory} that creates the players.
+   */
+  public ExoPlayerPool(PlayerFactory playerFactory) {
+    this(playerFactory, DEFAULT_MAX_IDLE_PLAYER_COUNT, /* retainDecoders= */ false);
+  }
+
+  /**
+   * Creates a pool.
+   *
+   * @param playerFactory The {@link PlayerFactory} that creates the players.
+   * @param maxIdlePlayerCount The maximum number of idle players kept by the pool. Players released
+   *     to a full pool are released.
+   * @param retainDecoders Whether idle players keep their decoders. Decoders are limited resources,
+   *     so this should only be enabled while the application is in the foreground, and with a
+   *     small maximum number of idle players.
+   */
+  public ExoPlayerPool(
+      PlayerFactory playerFactory, int maxIdlePlayerCount, boolean retainDecoders) {
+    Assertions.checkArgument(maxIdlePlayerCount >= 0);
+    this.playerFactory = playerFactory;
+    this.maxIdlePlayerCount = maxIdlePlayerCount;
+    this.retainDecoders = retainDecoders;
+    idlePlayers = new ArrayDeque<>();
+    foregroundModeReleasers = new HashMap<>();
+  }
+
+  /**
+   * Creates players until the pool holds the specified number of idle players, or its maximum
+   * number of idle players.
+   *
+   * @param idlePlayerCount The number of idle players to hold.
+   */
+  public void prewarm(int idlePlayerCount) {
+    idlePlayerCount = Math.min(idlePlayerCount, maxIdlePlayerCount);
+    while (idlePlayers.size() < idlePlayerCount) {
+      idlePlayers.add(playerFactory.createPlayer());
+    }
+  }
+
+  /** Returns the number of idle players held by the pool. */
+  public int getIdlePlayerCount() {
+    return idlePlayers.size();
+  }
+
+  /**
+   * Returns an idle player from the pool, or a new player if the pool is empty. The player is in
+   * the idle state.
+   */
+  public SimpleExoPlayer acquire() {
+    SimpleExoPlayer player = idlePlayers.poll();
+    if (player == null) {
+      return playerFactory.createPlayer();
+    }
+    if (retainDecoders) {
+      ForegroundModeReleaser foregroundModeReleaser = new ForegroundModeReleaser(player);
+      foregroundModeReleasers.put(player, foregroundModeReleaser);
+      player.addListener(foregroundModeReleaser);
+    }
+    return player;
+  }
+
+  /**
+   * Returns a player from the pool that's prepared with the given {@link MediaSource}.
+   *
+   * @param mediaSource The {@link MediaSource} to play.
+   * @return The player.
+   */
+  public SimpleExoPlayer acquire(MediaSource mediaSource) {
+    SimpleExoPlayer player = acquire();
+    player.prepare(mediaSource);
+    return player;
+  }
+
+  /**
+   * Stops and resets a player and returns it to the pool. The player is released instead if the
+   * pool is full.
+   *
+   * @param player The player, which must not have been released.
+   */
+  public void release(SimpleExoPlayer player) {
+    ForegroundModeReleaser foregroundModeReleaser = foregroundModeReleasers.remove(player);
+    if (foregroundModeReleaser != null) {
+      player.removeListener(foregroundModeReleaser);
+    }
+    if (idlePlayers.size() >= maxIdlePlayerCount) {
+      player.release();
+      return;
+    }
+    if (retainDecoders) {
+      player.setForegroundMode(true);
+    }
+    player.stop(/* reset= */ true);
+    player.setPlayWhenReady(false);
+    player.setRepeatMode(Player.REPEAT_MODE_OFF);
+    player.setShuffleModeEnabled(false);
+    player.setPlaybackParameters(null);
+    player.setVolume(1f);
+    player.clearVideoSurface();
+    idlePlayers.add(player);
+  }
+
+  /** Releases all idle players held by the pool. */
+  public void releaseIdlePlayers() {
+    while (!idlePlayers.isEmpty()) {
+      idlePlayers.remove().release();
+    }
+  }
+
+  /**
+   * Disables the foreground mode of a player that left the pool, once its renderers have been
+   * enabled for the new media and have taken over or released the retained decoders.
+   */
+  private final class ForegroundModeReleaser implements Player.EventListener {
+
+    private final SimpleExoPlayer player;
+
+    public ForegroundModeReleaser(SimpleExoPlayer player) {
+      this.player = player;
+    }
+
+    @Override
+    public void onPlayerStateChanged(boolean playWhenReady, @Player.State int playbackState) {
+      if (playbackState == Player.STATE_READY || playbackState == Player.STATE_ENDED) {
+        releaseForegroundMode();
+      }
+    }
+
+    @Override
+    public void onPlayerError(ExoPlaybackException error) {
+      releaseForegroundMode();
+    }
+
+    private void releaseForegroundMode() {
+      foregroundModeReleasers.remove(player);
+      player.removeListener(this);
+      player.setForegroundMode(false);
+    }
+  }
+}
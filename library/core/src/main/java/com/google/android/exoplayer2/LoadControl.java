@@ -110,4 +110,19 @@ public interface LoadControl {
    * @return Whether playback should be allowed to start or resume.
    */
   boolean shouldStartPlayback(long bufferedDurationUs, float playbackSpeed, boolean rebuffering);
+
+  /**
+   * Called repeatedly by the player to determine whether it should release the media buffered for
+   * periods after the one being read by the renderers, to reduce its memory usage. The released
+   * periods are buffered again once {@link #shouldContinueLoading(long, float)} allows it. No
+   * further periods are prepared while this method returns {@code true}. Media buffered for the
+   * period being read isn't released, even ahead of the playback position.
+   *
+   * <p>The default implementation returns {@code false}.
+   *
+   * @return Whether the media buffered for periods after the one being read should be released.
+   */
+  default boolean shouldTrimBuffer() {
+    return false;
+  }
 }
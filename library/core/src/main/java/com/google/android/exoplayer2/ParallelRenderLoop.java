@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * Drives {@link Renderer#render(long, long)} calls for multiple renderers in parallel, using a
+ * dedicated thread per renderer.
+ *
+ * <p>Each iteration of the rendering loop is a fork-join: every enabled renderer is rendered on its
+ * own thread using the same position snapshot taken from the player's media clock, and {@link
+ * #render(Renderer[], long, long)} returns once all of them have finished. An iteration therefore
+ * takes as long as the slowest renderer, rather than the sum of all renderers' render times. The
+ * renderers aren't decoupled across iterations: a renderer that is consistently slow (e.g. a slow
+ * software video decoder) still delays the start of the next iteration for the other renderers.
+ * Since all other renderer methods continue to be called on the playback thread between
+ * iterations, each renderer is still only accessed by one thread at a time.
+ *
+ * <p>The sample streams of a period share state, such as the period's sample queues and loader,
+ * so renderers reading from the same period must not access their streams concurrently. Whilst
+ * the loop is in use, all access to the renderers' streams is synchronized on a lock shared by the
+ * renderers. Only {@link BaseRenderer BaseRenderers} support this, so the loop can only be used if
+ * {@link #canRenderInParallel(Renderer[])} returns true.
+ *
+ * <p>DRM sessions are bound to the playback thread's {@link android.os.Looper}, so the player must
+ * not use this class whilst any of the renderers may read protected content.
+ */
+/* package */ final class ParallelRenderLoop {
+
+  private final BaseRenderer[] renderers;
+  private final HandlerThread[] renderThreads;
+  private final Handler[] renderHandlers;
+  private final RenderTask[] renderTasks;
+  private final Object sourceLock;
+
+  private int pendingTaskCount;
+
+  /**
+   * Returns whether the given renderers can be rendered in parallel.
+   *
+   * @param renderers The renderers of the player.
+   */
+  public static boolean canRenderInParallel(Renderer[] renderers) {
+    for (Renderer renderer : renderers) {
+      if (!(renderer instanceof BaseRenderer)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param renderers The renderers of the player, for which {@link
+   *     #canRenderInParallel(Renderer[])} must return true. A dedicated thread is created for each
+   *     renderer.
+   */
+  public ParallelRenderLoop(Renderer[] renderers) {
+    Assertions.checkArgument(canRenderInParallel(renderers));
+    this.renderers = new BaseRenderer[renderers.length];
+    renderThreads = new HandlerThread[renderers.length];
+    renderHandlers = new Handler[renderers.length];
+    renderTasks = new RenderTask[renderers.length];
+    sourceLock = new Object();
+    for (int i = 0; i < renderers.length; i++) {
+      this.renderers[i] = (BaseRenderer) renderers[i];
+      this.renderers[i].setSourceLock(sourceLock);
+      // Only audio rendering needs the elevated priority of the playback thread.
+      int threadPriority =
+          renderers[i].getTrackType() == C.TRACK_TYPE_AUDIO
+              ? Process.THREAD_PRIORITY_AUDIO
+              : Process.THREAD_PRIORITY_DEFAULT;
+      renderThreads[i] = new HandlerThread("ExoPlayerImplInternal:Renderer:" + i, threadPriority);
+      renderThreads[i].start();
+      renderHandlers[i] = new Handler(renderThreads[i].getLooper());
+      renderTasks[i] = new RenderTask(renderers[i]);
+    }
+  }
+
+  /**
+   * Renders all renderers that are not {@link Renderer#STATE_DISABLED disabled} in parallel, and
+   * blocks until all of them have finished.
+   *
+   * @param renderers The renderers, which must be the renderers passed to the constructor.
+   * @param positionUs The current media time in microseconds.
+   * @param elapsedRealtimeUs {@link android.os.SystemClock#elapsedRealtime()} in microseconds.
+   * @throws ExoPlaybackException If a renderer throws an error. If multiple renderers fail, the
+   *     error of the renderer with the lowest index is thrown.
+   */
+  public void render(Renderer[] renderers, long positionUs, long elapsedRealtimeUs)
+      throws ExoPlaybackException {
+    synchronized (this) {
+      for (int i = 0; i < renderers.length; i++) {
+        if (renderers[i].getState() != Renderer.STATE_DISABLED) {
+          pendingTaskCount++;
+          renderTasks[i].prepare(positionUs, elapsedRealtimeUs);
+          renderHandlers[i].post(renderTasks[i]);
+        }
+      }
+      boolean wasInterrupted = false;
+      while (pendingTaskCount > 0) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          wasInterrupted = true;
+        }
+      }
+      if (wasInterrupted) {
+        // Restore the interrupted status.
+        Thread.currentThread().interrupt();
+      }
+    }
+    for (RenderTask renderTask : renderTasks) {
+      renderTask.maybeThrowError();
+    }
+  }
+
+  /**
+   * Releases the rendering threads, and stops synchronizing access to the renderers' streams. Must
+   * not be called whilst {@link #render} is in progress.
+   */
+  public void release() {
+    for (HandlerThread renderThread : renderThreads) {
+      renderThread.quit();
+    }
+    for (BaseRenderer renderer : renderers) {
+      renderer.setSourceLock(null);
+    }
+  }
+
+  private synchronized void onTaskFinished() {
+    pendingTaskCount--;
+    if (pendingTaskCount == 0) {
+      notifyAll();
+    }
+  }
+
+  private final class RenderTask implements Runnable {
+
+    private final Renderer renderer;
+
+    private long positionUs;
+    private long elapsedRealtimeUs;
+    @Nullable private ExoPlaybackException exoPlaybackException;
+    @Nullable private RuntimeException runtimeException;
+    @Nullable private Error error;
+
+    public RenderTask(Renderer renderer) {
+      this.renderer = renderer;
+    }
+
+    public void prepare(long positionUs, long elapsedRealtimeUs) {
+      this.positionUs = positionUs;
+      this.elapsedRealtimeUs = elapsedRealtimeUs;
+    }
+
+    @Override
+    public void run() {
+      try {
+        renderer.render(positionUs, elapsedRealtimeUs);
+      } catch (ExoPlaybackException e) {
+        exoPlaybackException = e;
+      } catch (RuntimeException e) {
+        runtimeException = e;
+      } catch (Error e) {
+        error = e;
+      } finally {
+        onTaskFinished();
+      }
+    }
+
+    public void maybeThrowError() throws ExoPlaybackException {
+      @Nullable ExoPlaybackException exoPlaybackException = this.exoPlaybackException;
+      @Nullable RuntimeException runtimeException = this.runtimeException;
+      @Nullable Error error = this.error;
+      this.exoPlaybackException = null;
+      this.runtimeException = null;
+      this.error = null;
+      if (exoPlaybackException != null) {
+        throw exoPlaybackException;
+      } else if (runtimeException != null) {
+        throw runtimeException;
+      } else if (error != null) {
+        throw error;
+      }
+    }
+  }
+}
@@ -63,6 +63,12 @@ public interface Renderer extends PlayerMessage.Target {
    */
   int STATE_STARTED = 2;
 
+  /**
+   * The default duration after which {@link #render(long, long)} should be called again, as
+   * returned by {@link #getDurationToProgressUs(long, long)}, in microseconds.
+   */
+  long DEFAULT_DURATION_TO_PROGRESS_US = 10_000;
+
   /**
    * Returns the track type that the {@link Renderer} handles. For example, a video renderer will
    * return {@link C#TRACK_TYPE_VIDEO}, an audio renderer will return {@link C#TRACK_TYPE_AUDIO}, a
@@ -248,6 +254,32 @@ public interface Renderer extends PlayerMessage.Target {
    */
   void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException;
 
+  /**
+   * Returns the maximum duration for which the renderer can wait before {@link #render(long,
+   * long)} should be called again without the renderer being starved, or otherwise failing to make
+   * timely progress. The duration is measured in real time from the most recent call to {@link
+   * #render(long, long)}.
+   *
+   * <p>The player may use the minimum of the values returned by its enabled renderers to schedule
+   * the next iteration of the rendering loop. Renderers should return a conservative value, since
+   * the player is not obliged to call {@link #render(long, long)} earlier than requested.
+   *
+   * <p>The default implementation returns {@link #DEFAULT_DURATION_TO_PROGRESS_US}.
+   *
+   * <p>This method may be called when the renderer is in the following states: {@link
+   * #STATE_ENABLED}, {@link #STATE_STARTED}.
+   *
+   * @param positionUs The current media time in microseconds, as passed to the most recent call to
+   *     {@link #render(long, long)}.
+   * @param elapsedRealtimeUs {@link android.os.SystemClock#elapsedRealtime()} in microseconds, as
+   *     passed to the most recent call to {@link #render(long, long)}.
+   * @return The duration after which {@link #render(long, long)} should be called again, in
+   *     microseconds.
+   */
+  default long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    return DEFAULT_DURATION_TO_PROGRESS_US;
+  }
+
   /**
    * Whether the renderer is able to immediately render media from the current position.
    * <p>
@@ -454,6 +454,9 @@ public class SimpleExoPlayer extends BasePlayer
     audioListeners.add(analyticsCollector);
     addMetadataOutput(analyticsCollector);
     bandwidthMeter.addEventListener(eventHandler, analyticsCollector);
+    if (loadControl instanceof AdaptiveLoadControl) {
+      ((AdaptiveLoadControl) loadControl).addEventListener(eventHandler, analyticsCollector);
+    }
     if (drmSessionManager instanceof DefaultDrmSessionManager) {
       ((DefaultDrmSessionManager) drmSessionManager).addListener(eventHandler, analyticsCollector);
     }
@@ -1276,6 +1279,24 @@ public class SimpleExoPlayer extends BasePlayer
     player.setForegroundMode(foregroundMode);
   }
 
+  @Override
+  public void experimental_setDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+    verifyApplicationThread();
+    player.experimental_setDynamicSchedulingEnabled(dynamicSchedulingEnabled);
+  }
+
+  @Override
+  public void experimental_setParallelRenderingEnabled(boolean parallelRenderingEnabled) {
+    verifyApplicationThread();
+    player.experimental_setParallelRenderingEnabled(parallelRenderingEnabled);
+  }
+
+  @Override
+  public void experimental_setRendererKeepAliveMs(long rendererKeepAliveMs) {
+    verifyApplicationThread();
+    player.experimental_setRendererKeepAliveMs(rendererKeepAliveMs);
+  }
+
   @Override
   public void stop(boolean reset) {
     verifyApplicationThread();
@@ -1731,6 +1752,13 @@ public class SimpleExoPlayer extends BasePlayer
       }
     }
 
+    @Override
+    public void onSilenceSkipped(long skippedDurationUs) {
+      for (AudioRendererEventListener audioDebugListener : audioDebugListeners) {
+        audioDebugListener.onSilenceSkipped(skippedDurationUs);
+      }
+    }
+
     @Override
     public void onAudioDisabled(DecoderCounters counters) {
       for (AudioRendererEventListener audioDebugListener : audioDebugListeners) {
@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.analytics;
 
 import android.view.Surface;
 import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.AdaptiveLoadControl;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.Format;
@@ -64,6 +65,7 @@ public class AnalyticsCollector
         VideoRendererEventListener,
         MediaSourceEventListener,
         BandwidthMeter.EventListener,
+        AdaptiveLoadControl.EventListener,
         DefaultDrmSessionEventListener,
         VideoListener,
         AudioListener {
@@ -194,6 +196,14 @@ public class AnalyticsCollector
     }
   }
 
+  @Override
+  public final void onSilenceSkipped(long skippedDurationUs) {
+    EventTime eventTime = generateReadingMediaPeriodEventTime();
+    for (AnalyticsListener listener : listeners) {
+      listener.onSilenceSkipped(eventTime, skippedDurationUs);
+    }
+  }
+
   @Override
   public final void onAudioDisabled(DecoderCounters counters) {
     // The renderers are disabled after we changed the playing media period on the playback thread
@@ -527,6 +537,18 @@ public class AnalyticsCollector
     }
   }
 
+  // AdaptiveLoadControl.EventListener implementation.
+
+  @Override
+  public final void onBufferTargetsChanged(
+      int targetBufferBytes, long minBufferUs, long maxBufferUs, int bitrate) {
+    EventTime eventTime = generateLoadingMediaPeriodEventTime();
+    for (AnalyticsListener listener : listeners) {
+      listener.onBufferTargetsChanged(
+          eventTime, targetBufferBytes, minBufferUs, maxBufferUs, bitrate);
+    }
+  }
+
   // DefaultDrmSessionManager.EventListener implementation.
 
   @Override
@@ -327,6 +327,26 @@ public interface AnalyticsListener {
   default void onBandwidthEstimate(
       EventTime eventTime, int totalLoadTimeMs, long totalBytesLoaded, long bitrateEstimate) {}
 
+  /**
+   * Called when the buffer targets of an {@link com.google.android.exoplayer2.AdaptiveLoadControl}
+   * change.
+   *
+   * @param eventTime The event time.
+   * @param targetBufferBytes The target buffer size in bytes.
+   * @param minBufferUs The minimum duration of media that the player will attempt to ensure is
+   *     buffered, in microseconds.
+   * @param maxBufferUs The maximum duration of media that the player will attempt to buffer, in
+   *     microseconds.
+   * @param bitrate The bitrate of the buffered media that the targets are based on, in bits per
+   *     second, or {@link Format#NO_VALUE} if unknown.
+   */
+  default void onBufferTargetsChanged(
+      EventTime eventTime,
+      int targetBufferBytes,
+      long minBufferUs,
+      long maxBufferUs,
+      int bitrate) {}
+
   /**
    * Called when the output surface size changed.
    *
@@ -427,6 +447,14 @@ public interface AnalyticsListener {
   default void onAudioUnderrun(
       EventTime eventTime, int bufferSize, long bufferSizeMs, long elapsedSinceLastFeedMs) {}
 
+  /**
+   * Called when the audio renderer skips a section of silence in the audio.
+   *
+   * @param eventTime The event time.
+   * @param skippedDurationUs The duration of media that was skipped, in microseconds.
+   */
+  default void onSilenceSkipped(EventTime eventTime, long skippedDurationUs) {}
+
   /**
    * Called after video frames have been dropped.
    *
@@ -77,6 +77,13 @@ public interface AudioRendererEventListener {
   default void onAudioSinkUnderrun(
       int bufferSize, long bufferSizeMs, long elapsedSinceLastFeedMs) {}
 
+  /**
+   * Called when the {@link AudioSink} skips a section of silence in the input.
+   *
+   * @param skippedDurationUs The duration of media that was skipped, in microseconds.
+   */
+  default void onSilenceSkipped(long skippedDurationUs) {}
+
   /**
    * Called when the renderer is disabled.
    *
@@ -148,6 +155,15 @@ public interface AudioRendererEventListener {
       }
     }
 
+    /**
+     * Invokes {@link AudioRendererEventListener#onSilenceSkipped(long)}.
+     */
+    public void silenceSkipped(final long skippedDurationUs) {
+      if (handler != null) {
+        handler.post(() -> castNonNull(listener).onSilenceSkipped(skippedDurationUs));
+      }
+    }
+
     /**
      * Invokes {@link AudioRendererEventListener#onAudioDisabled(DecoderCounters)}.
      */
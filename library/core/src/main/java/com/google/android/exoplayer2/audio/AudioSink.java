@@ -20,6 +20,7 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.metadata.Metadata;
 import java.nio.ByteBuffer;
 
 /**
@@ -83,6 +84,17 @@ public interface AudioSink {
      */
     void onUnderrun(int bufferSize, long bufferSizeMs, long elapsedSinceLastFeedMs);
 
+    /**
+     * Called when the audio sink skips a section of silence in its input. The sink may report a
+     * section once it has ended, or in several parts.
+     *
+     * <p>An audio sink implementation may never call this method, for example if it doesn't skip
+     * silence.
+     *
+     * @param skippedDurationUs The duration of media that was skipped, in microseconds.
+     */
+    default void onSilenceSkipped(long skippedDurationUs) {}
+
   }
 
   /**
@@ -184,6 +196,19 @@ public interface AudioSink {
    */
   long getCurrentPositionUs(boolean sourceEnded);
 
+  /**
+   * Sets the metadata of the input. If called before {@link #configure}, the metadata applies to
+   * the input passed after the configuration takes effect. Otherwise it applies to the stream
+   * starting with the next buffer passed to {@link #handleBuffer(ByteBuffer, long)}. Sinks may use
+   * it to adapt their processing to the stream, for example to apply a gain read from ReplayGain
+   * tags.
+   *
+   * <p>The default implementation does nothing.
+   *
+   * @param metadata The input's metadata, or {@code null} if it has none.
+   */
+  default void setInputMetadata(@Nullable Metadata metadata) {}
+
   /**
    * Configures (or reconfigures) the sink.
    *
@@ -221,6 +246,17 @@ public interface AudioSink {
   /** Signals to the sink that the next buffer may be discontinuous with the previous buffer. */
   void handleDiscontinuity();
 
+  /**
+   * Signals to the sink that the next buffer is the start of a new stream that follows on from the
+   * previous buffer, for example the next item in a playlist. Sinks may use this to crossfade
+   * between the streams.
+   *
+   * <p>The default implementation calls {@link #handleDiscontinuity()}.
+   */
+  default void handleStreamTransition() {
+    handleDiscontinuity();
+  }
+
   /**
    * Attempts to process data from a {@link ByteBuffer}, starting from its current position and
    * ending at its limit (exclusive). The position of the {@link ByteBuffer} is advanced by the
@@ -258,6 +294,16 @@ public interface AudioSink {
    */
   boolean hasPendingData();
 
+  /**
+   * Returns the size of the underlying {@link AudioTrack} buffer in microseconds, or {@link
+   * C#TIME_UNSET} if the sink is not initialized or the buffer duration is not known.
+   *
+   * <p>The default implementation returns {@link C#TIME_UNSET}.
+   */
+  default long getAudioTrackBufferSizeUs() {
+    return C.TIME_UNSET;
+  }
+
   /**
    * Attempts to set the playback parameters. The audio sink may override these parameters if they
    * are not supported.
@@ -30,6 +30,14 @@ import java.nio.ByteBuffer;
   @Nullable private int[] pendingOutputChannels;
   @Nullable private int[] outputChannels;
 
+  private short[] inputSamples;
+  private short[] outputSamples;
+
+  public ChannelMappingAudioProcessor() {
+    inputSamples = new short[0];
+    outputSamples = new short[0];
+  }
+
   /**
    * Resets the channel mapping. After calling this method, call {@link #configure(AudioFormat)} to
    * start using the new channel map.
@@ -73,16 +81,21 @@ import java.nio.ByteBuffer;
     int position = inputBuffer.position();
     int limit = inputBuffer.limit();
     int frameCount = (limit - position) / inputAudioFormat.bytesPerFrame;
-    int outputSize = frameCount * outputAudioFormat.bytesPerFrame;
-    ByteBuffer buffer = replaceOutputBuffer(outputSize);
-    while (position < limit) {
-      for (int channelIndex : outputChannels) {
-        buffer.putShort(inputBuffer.getShort(position + 2 * channelIndex));
-      }
-      position += inputAudioFormat.bytesPerFrame;
+    int inputSampleCount = frameCount * inputAudioFormat.channelCount;
+    int outputSampleCount = frameCount * outputChannels.length;
+    if (inputSamples.length < inputSampleCount) {
+      inputSamples = new short[inputSampleCount];
+    }
+    if (outputSamples.length < outputSampleCount) {
+      outputSamples = new short[outputSampleCount];
     }
+    inputBuffer.asShortBuffer().get(inputSamples, 0, inputSampleCount);
+    mapChannels(
+        inputSamples, frameCount, inputAudioFormat.channelCount, outputChannels, outputSamples);
+    ByteBuffer buffer = replaceOutputBuffer(outputSampleCount * 2);
+    buffer.asShortBuffer().put(outputSamples, 0, outputSampleCount);
+    buffer.limit(outputSampleCount * 2);
     inputBuffer.position(limit);
-    buffer.flip();
   }
 
   @Override
@@ -94,6 +107,33 @@ import java.nio.ByteBuffer;
   protected void onReset() {
     outputChannels = null;
     pendingOutputChannels = null;
+    inputSamples = new short[0];
+    outputSamples = new short[0];
+  }
+
+  /**
+   * Applies a channel mapping to interleaved 16-bit samples.
+   *
+   * @param input The input samples.
+   * @param frameCount The number of frames to map.
+   * @param inputChannelCount The number of channels in {@code input}.
+   * @param outputChannels The mapping from input to output channel indices.
+   * @param output The array into which mapped samples are written. Must have space for {@code
+   *     frameCount * outputChannels.length} samples.
+   */
+  /* package */ static void mapChannels(
+      short[] input, int frameCount, int inputChannelCount, int[] outputChannels, short[] output) {
+    int outputChannelCount = outputChannels.length;
+    for (int channel = 0; channel < outputChannelCount; channel++) {
+      // Iterating over channels in the outer loop keeps the inner loop free of indirection.
+      int inputIndex = outputChannels[channel];
+      int outputIndex = channel;
+      for (int frame = 0; frame < frameCount; frame++) {
+        output[outputIndex] = input[inputIndex];
+        inputIndex += inputChannelCount;
+        outputIndex += outputChannelCount;
+      }
+    }
   }
 
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+
+/**
+ * Audio processor that overlaps the end of one stream with the start of the next. Input and output
+ * are 16-bit PCM.
+ *
+ * <p>The most recent input is held back for the crossfade duration. When {@link #startCrossfade()}
+ * is called, the held back audio is faded out while the following input is faded in, so the
+ * output is shorter than the input by the overlapped duration.
+ */
+/* package */ final class CrossfadeAudioProcessor extends BaseAudioProcessor {
+
+  private long crossfadeDurationUs;
+
+  private int crossfadeFrameCount;
+  /** Ring buffer holding the most recent input frames. */
+  private short[] heldSamples;
+  private int heldFrameStart;
+  private int heldFrameCount;
+  /** The held frames of the previous stream, which are being faded out. */
+  private short[] fadeOutSamples;
+  private int fadeOutFrameStart;
+  private int fadeOutFrameCount;
+  private int fadeOutFramePosition;
+  private long overlappedFrameCount;
+
+  /** Creates a new crossfade audio processor. */
+  public CrossfadeAudioProcessor() {
+    heldSamples = new short[0];
+    fadeOutSamples = new short[0];
+  }
+
+  /**
+   * Sets the duration of crossfades between streams. After calling this method, call {@link
+   * #configure(AudioFormat)} to apply the new duration.
+   *
+   * @param crossfadeDurationUs The crossfade duration in microseconds, or zero to disable
+   *     crossfading.
+   */
+  public void setCrossfadeDurationUs(long crossfadeDurationUs) {
+    this.crossfadeDurationUs = crossfadeDurationUs;
+  }
+
+  /**
+   * Starts a crossfade from the held back audio to the input that follows. Has no effect if no
+   * audio is held back or a crossfade is already in progress.
+   */
+  public void startCrossfade() {
+    if (!isActive() || heldFrameCount == 0 || fadeOutFramePosition < fadeOutFrameCount) {
+      return;
+    }
+    short[] samples = fadeOutSamples;
+    fadeOutSamples = heldSamples;
+    heldSamples = samples;
+    fadeOutFrameStart = heldFrameStart;
+    fadeOutFrameCount = heldFrameCount;
+    fadeOutFramePosition = 0;
+    heldFrameStart = 0;
+    heldFrameCount = 0;
+  }
+
+  /**
+   * Returns the number of input frames that have been overlapped with other input frames since the
+   * last call to {@link #flush()}. The output is shorter than the input by this number of frames.
+   */
+  public long getOverlappedFrameCount() {
+    return overlappedFrameCount;
+  }
+
+  // AudioProcessor implementation.
+
+  @Override
+  public AudioFormat onConfigure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT) {
+      throw new UnhandledAudioFormatException(inputAudioFormat);
+    }
+    return crossfadeDurationUs > 0 ? inputAudioFormat : AudioFormat.NOT_SET;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int channelCount = inputAudioFormat.channelCount;
+    int frameCount = inputBuffer.remaining() / inputAudioFormat.bytesPerFrame;
+    int outputFrameCount = Math.max(0, heldFrameCount + frameCount - crossfadeFrameCount);
+    ByteBuffer buffer = replaceOutputBuffer(outputFrameCount * inputAudioFormat.bytesPerFrame);
+    for (int frame = 0; frame < frameCount; frame++) {
+      if (heldFrameCount == crossfadeFrameCount) {
+        outputHeldFrame(buffer);
+      }
+      int heldSampleIndex =
+          ((heldFrameStart + heldFrameCount) % crossfadeFrameCount) * channelCount;
+      if (fadeOutFramePosition < fadeOutFrameCount) {
+        double phase = (fadeOutFramePosition + 0.5) / fadeOutFrameCount * Math.PI / 2;
+        float fadeInGain = (float) Math.sin(phase);
+        float fadeOutGain = (float) Math.cos(phase);
+        int fadeOutSampleIndex =
+            ((fadeOutFrameStart + fadeOutFramePosition) % crossfadeFrameCount) * channelCount;
+        for (int channel = 0; channel < channelCount; channel++) {
+          float sample =
+              inputBuffer.getShort() * fadeInGain
+                  + fadeOutSamples[fadeOutSampleIndex + channel] * fadeOutGain;
+          heldSamples[heldSampleIndex + channel] =
+              (short) Util.constrainValue((int) sample, Short.MIN_VALUE, Short.MAX_VALUE);
+        }
+        fadeOutFramePosition++;
+        overlappedFrameCount++;
+      } else {
+        for (int channel = 0; channel < channelCount; channel++) {
+          heldSamples[heldSampleIndex + channel] = inputBuffer.getShort();
+        }
+      }
+      heldFrameCount++;
+    }
+    buffer.flip();
+  }
+
+  @Override
+  protected void onQueueEndOfStream() {
+    int channelCount = inputAudioFormat.channelCount;
+    int remainingFadeOutFrameCount = fadeOutFrameCount - fadeOutFramePosition;
+    ByteBuffer buffer =
+        replaceOutputBuffer(
+            (heldFrameCount + remainingFadeOutFrameCount) * inputAudioFormat.bytesPerFrame);
+    // Complete any crossfade in progress against silence. The faded frames follow the frames that
+    // are already held back, which may be shorter than the crossfade, so they're held back too.
+    while (fadeOutFramePosition < fadeOutFrameCount) {
+      if (heldFrameCount == crossfadeFrameCount) {
+        outputHeldFrame(buffer);
+      }
+      double phase = (fadeOutFramePosition + 0.5) / fadeOutFrameCount * Math.PI / 2;
+      float fadeOutGain = (float) Math.cos(phase);
+      int heldSampleIndex =
+          ((heldFrameStart + heldFrameCount) % crossfadeFrameCount) * channelCount;
+      int fadeOutSampleIndex =
+          ((fadeOutFrameStart + fadeOutFramePosition) % crossfadeFrameCount) * channelCount;
+      for (int channel = 0; channel < channelCount; channel++) {
+        heldSamples[heldSampleIndex + channel] =
+            (short) (fadeOutSamples[fadeOutSampleIndex + channel] * fadeOutGain);
+      }
+      fadeOutFramePosition++;
+      heldFrameCount++;
+    }
+    // Output the held back audio.
+    while (heldFrameCount > 0) {
+      outputHeldFrame(buffer);
+    }
+    buffer.flip();
+  }
+
+  @Override
+  protected void onFlush() {
+    if (isActive()) {
+      crossfadeFrameCount =
+          Math.max(
+              1, (int) (crossfadeDurationUs * inputAudioFormat.sampleRate / C.MICROS_PER_SECOND));
+      int sampleCount = crossfadeFrameCount * inputAudioFormat.channelCount;
+      if (heldSamples.length != sampleCount) {
+        heldSamples = new short[sampleCount];
+        fadeOutSamples = new short[sampleCount];
+      }
+    }
+    heldFrameStart = 0;
+    heldFrameCount = 0;
+    fadeOutFrameStart = 0;
+    fadeOutFrameCount = 0;
+    fadeOutFramePosition = 0;
+    overlappedFrameCount = 0;
+  }
+
+  @Override
+  protected void onReset() {
+    crossfadeDurationUs = 0;
+    crossfadeFrameCount = 0;
+    heldSamples = new short[0];
+    fadeOutSamples = new short[0];
+  }
+
+  // Internal methods.
+
+  /** Moves the oldest held frame to {@code buffer}. */
+  private void outputHeldFrame(ByteBuffer buffer) {
+    int channelCount = inputAudioFormat.channelCount;
+    int heldSampleIndex = heldFrameStart * channelCount;
+    for (int channel = 0; channel < channelCount; channel++) {
+      buffer.putShort(heldSamples[heldSampleIndex + channel]);
+    }
+    heldFrameStart = (heldFrameStart + 1) % crossfadeFrameCount;
+    heldFrameCount--;
+  }
+}
@@ -29,6 +29,7 @@ import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.PlaybackParameters;
 import com.google.android.exoplayer2.audio.AudioProcessor.UnhandledAudioFormatException;
 import com.google.android.exoplayer2.extractor.MpegAudioHeader;
+import com.google.android.exoplayer2.metadata.Metadata;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.Util;
@@ -115,7 +116,8 @@ public final class DefaultAudioSink implements AudioSink {
   public static class DefaultAudioProcessorChain implements AudioProcessorChain {
 
     private final AudioProcessor[] audioProcessors;
-    private final SilenceSkippingAudioProcessor silenceSkippingAudioProcessor;
+    @Nullable private final SilenceSkippingAudioProcessor silenceSkippingAudioProcessor;
+    @Nullable private final RmsSilenceSkippingAudioProcessor rmsSilenceSkippingAudioProcessor;
     private final SonicAudioProcessor sonicAudioProcessor;
 
     /**
@@ -123,9 +125,106 @@ public final class DefaultAudioSink implements AudioSink {
      * audioProcessors} applied before silence skipping and playback parameters.
      */
     public DefaultAudioProcessorChain(AudioProcessor... audioProcessors) {
+      silenceSkippingAudioProcessor = new SilenceSkippingAudioProcessor();
+      rmsSilenceSkippingAudioProcessor = null;
+      sonicAudioProcessor = new SonicAudioProcessor();
+      this.audioProcessors =
+          createAudioProcessors(
+              audioProcessors, silenceSkippingAudioProcessor, sonicAudioProcessor);
+    }
+
+    /**
+     * Creates a new default chain of audio processors, with the user-defined {@code
+     * audioProcessors} applied before silence skipping and playback parameters. Silence is skipped
+     * using the specified {@link RmsSilenceSkippingAudioProcessor}, which allows the silence
+     * threshold and durations to be customized.
+     *
+     * @param audioProcessors The user-defined audio processors.
+     * @param silenceSkippingAudioProcessor The processor to use for skipping silence.
+     */
+    public DefaultAudioProcessorChain(
+        AudioProcessor[] audioProcessors,
+        RmsSilenceSkippingAudioProcessor silenceSkippingAudioProcessor) {
+      this.silenceSkippingAudioProcessor = null;
+      rmsSilenceSkippingAudioProcessor = silenceSkippingAudioProcessor;
+      sonicAudioProcessor = new SonicAudioProcessor();
+      this.audioProcessors =
+          createAudioProcessors(
+              audioProcessors, silenceSkippingAudioProcessor, sonicAudioProcessor);
+    }
+
+    @Override
+    public AudioProcessor[] getAudioProcessors() {
+      return audioProcessors;
+    }
+
+    @Override
+    public PlaybackParameters applyPlaybackParameters(PlaybackParameters playbackParameters) {
+      if (silenceSkippingAudioProcessor != null) {
+        silenceSkippingAudioProcessor.setEnabled(playbackParameters.skipSilence);
+      } else {
+        Assertions.checkNotNull(rmsSilenceSkippingAudioProcessor)
+            .setEnabled(playbackParameters.skipSilence);
+      }
+      return new PlaybackParameters(
+          sonicAudioProcessor.setSpeed(playbackParameters.speed),
+          sonicAudioProcessor.setPitch(playbackParameters.pitch),
+          playbackParameters.skipSilence);
+    }
+
+    @Override
+    public long getMediaDuration(long playoutDuration) {
+      return sonicAudioProcessor.scaleDurationForSpeedup(playoutDuration);
+    }
+
+    @Override
+    public long getSkippedOutputFrameCount() {
+      return silenceSkippingAudioProcessor != null
+          ? silenceSkippingAudioProcessor.getSkippedFrames()
+          : Assertions.checkNotNull(rmsSilenceSkippingAudioProcessor).getSkippedFrames();
+    }
+
+    private static AudioProcessor[] createAudioProcessors(
+        AudioProcessor[] audioProcessors,
+        AudioProcessor silenceSkippingAudioProcessor,
+        SonicAudioProcessor sonicAudioProcessor) {
       // The passed-in type may be more specialized than AudioProcessor[], so allocate a new array
       // rather than using Arrays.copyOf.
-      this.audioProcessors = new AudioProcessor[audioProcessors.length + 2];
+      AudioProcessor[] allAudioProcessors = new AudioProcessor[audioProcessors.length + 2];
+      System.arraycopy(
+          /* src= */ audioProcessors,
+          /* srcPos= */ 0,
+          /* dest= */ allAudioProcessors,
+          /* destPos= */ 0,
+          /* length= */ audioProcessors.length);
+      allAudioProcessors[audioProcessors.length] = silenceSkippingAudioProcessor;
+      allAudioProcessors[audioProcessors.length + 1] = sonicAudioProcessor;
+      return allAudioProcessors;
+    }
+  }
+
+  /**
+   * An audio processor chain that applies a (possibly empty) chain of user-defined audio processors
+   * followed by {@link SilenceSkippingAudioProcessor}, {@link WsolaAudioProcessor} and {@link
+   * SonicAudioProcessor}. The speed is applied by the {@link WsolaAudioProcessor}, which gives
+   * higher quality output than {@link DefaultAudioProcessorChain} at large speed changes. The
+   * {@link SonicAudioProcessor} is only used to apply the pitch.
+   */
+  public static class WsolaAudioProcessorChain implements AudioProcessorChain {
+
+    private final AudioProcessor[] audioProcessors;
+    private final SilenceSkippingAudioProcessor silenceSkippingAudioProcessor;
+    private final WsolaAudioProcessor wsolaAudioProcessor;
+    private final SonicAudioProcessor sonicAudioProcessor;
+
+    /**
+     * Creates a new chain of audio processors, with the user-defined {@code audioProcessors}
+     * applied before silence skipping and playback parameters.
+     */
+    public WsolaAudioProcessorChain(AudioProcessor... audioProcessors) {
+      // The passed-in type may be more specialized than AudioProcessor[], so allocate a new array
+      // rather than using Arrays.copyOf.
+      this.audioProcessors = new AudioProcessor[audioProcessors.length + 3];
       System.arraycopy(
           /* src= */ audioProcessors,
           /* srcPos= */ 0,
@@ -133,9 +232,11 @@ public final class DefaultAudioSink implements AudioSink {
           /* destPos= */ 0,
           /* length= */ audioProcessors.length);
       silenceSkippingAudioProcessor = new SilenceSkippingAudioProcessor();
+      wsolaAudioProcessor = new WsolaAudioProcessor();
       sonicAudioProcessor = new SonicAudioProcessor();
       this.audioProcessors[audioProcessors.length] = silenceSkippingAudioProcessor;
-      this.audioProcessors[audioProcessors.length + 1] = sonicAudioProcessor;
+      this.audioProcessors[audioProcessors.length + 1] = wsolaAudioProcessor;
+      this.audioProcessors[audioProcessors.length + 2] = sonicAudioProcessor;
     }
 
     @Override
@@ -147,14 +248,15 @@ public final class DefaultAudioSink implements AudioSink {
     public PlaybackParameters applyPlaybackParameters(PlaybackParameters playbackParameters) {
       silenceSkippingAudioProcessor.setEnabled(playbackParameters.skipSilence);
       return new PlaybackParameters(
-          sonicAudioProcessor.setSpeed(playbackParameters.speed),
+          wsolaAudioProcessor.setSpeed(playbackParameters.speed),
           sonicAudioProcessor.setPitch(playbackParameters.pitch),
           playbackParameters.skipSilence);
     }
 
     @Override
     public long getMediaDuration(long playoutDuration) {
-      return sonicAudioProcessor.scaleDurationForSpeedup(playoutDuration);
+      return wsolaAudioProcessor.scaleDurationForSpeedup(
+          sonicAudioProcessor.scaleDurationForSpeedup(playoutDuration));
     }
 
     @Override
@@ -239,8 +341,11 @@ public final class DefaultAudioSink implements AudioSink {
   @Nullable private final AudioCapabilities audioCapabilities;
   private final AudioProcessorChain audioProcessorChain;
   private final boolean enableFloatOutput;
+  private final ResamplingAudioProcessor resamplingAudioProcessor;
   private final ChannelMappingAudioProcessor channelMappingAudioProcessor;
   private final TrimmingAudioProcessor trimmingAudioProcessor;
+  private final SampleRateConversionAudioProcessor sampleRateConversionAudioProcessor;
+  private final CrossfadeAudioProcessor crossfadeAudioProcessor;
   private final AudioProcessor[] toIntPcmAvailableAudioProcessors;
   private final AudioProcessor[] toFloatPcmAvailableAudioProcessors;
   private final ConditionVariable releasingConditionVariable;
@@ -248,6 +353,21 @@ public final class DefaultAudioSink implements AudioSink {
   private final ArrayDeque<PlaybackParametersCheckpoint> playbackParametersCheckpoints;
 
   @Nullable private Listener listener;
+  @Nullable private Metadata inputMetadata;
+  private boolean inputMetadataChangePending;
+  private long crossfadeDurationUs;
+  private boolean reuseAudioTrackOnSampleRateChange;
+  // The arguments of the most recent call to configure, used to stop converting the sample rate
+  // once the audio track is recreated.
+  @C.Encoding private int configuredInputEncoding;
+  private int configuredInputChannelCount;
+  private int configuredInputSampleRate;
+  private int configuredSpecifiedBufferSize;
+  @Nullable private int[] configuredOutputChannels;
+  private int configuredTrimEndFrames;
+  private boolean convertingSampleRate;
+  private long lastSkippedOutputFrameCount;
+  private long reportedSkippedOutputFrameCount;
   /** Used to keep the audio session active on pre-V21 builds (see {@link #initialize(long)}). */
   @Nullable private AudioTrack keepSessionIdAudioTrack;
 
@@ -343,14 +463,19 @@ public final class DefaultAudioSink implements AudioSink {
     this.enableFloatOutput = enableFloatOutput;
     releasingConditionVariable = new ConditionVariable(true);
     audioTrackPositionTracker = new AudioTrackPositionTracker(new PositionTrackerListener());
+    resamplingAudioProcessor = new ResamplingAudioProcessor();
     channelMappingAudioProcessor = new ChannelMappingAudioProcessor();
     trimmingAudioProcessor = new TrimmingAudioProcessor();
+    sampleRateConversionAudioProcessor = new SampleRateConversionAudioProcessor();
+    crossfadeAudioProcessor = new CrossfadeAudioProcessor();
     ArrayList<AudioProcessor> toIntPcmAudioProcessors = new ArrayList<>();
     Collections.addAll(
         toIntPcmAudioProcessors,
-        new ResamplingAudioProcessor(),
+        resamplingAudioProcessor,
         channelMappingAudioProcessor,
-        trimmingAudioProcessor);
+        trimmingAudioProcessor,
+        sampleRateConversionAudioProcessor,
+        crossfadeAudioProcessor);
     Collections.addAll(toIntPcmAudioProcessors, audioProcessorChain.getAudioProcessors());
     toIntPcmAvailableAudioProcessors = toIntPcmAudioProcessors.toArray(new AudioProcessor[0]);
     toFloatPcmAvailableAudioProcessors = new AudioProcessor[] {new FloatResamplingAudioProcessor()};
@@ -366,6 +491,39 @@ public final class DefaultAudioSink implements AudioSink {
     playbackParametersCheckpoints = new ArrayDeque<>();
   }
 
+  /**
+   * Sets the duration over which to crossfade between consecutive streams, for example items in a
+   * playlist, or zero to disable crossfading. Crossfading applies to 16-bit PCM output and to
+   * transitions that don't require reconfiguring the sink. Audio is held back for the crossfade
+   * duration, so the value should be small compared to the audio track buffer duration. Takes
+   * effect from the next call to {@link #configure(int, int, int, int, int[], int, int)}.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param crossfadeDurationUs The crossfade duration in microseconds.
+   */
+  public void experimental_setCrossfadeDurationUs(long crossfadeDurationUs) {
+    this.crossfadeDurationUs = crossfadeDurationUs;
+  }
+
+  /**
+   * Sets whether to keep using the current {@link AudioTrack} when the input sample rate changes,
+   * by converting the input to the sample rate of the current track. This avoids the gap caused by
+   * draining and recreating the track, for example between playlist items with different sample
+   * rates. Applies to 16-bit PCM output. Takes effect from the next call to {@link
+   * #configure(int, int, int, int, int[], int, int)}. The conversion stops when the track is next
+   * recreated, for example after a {@link #flush()}.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param reuseAudioTrackOnSampleRateChange Whether to convert the sample rate of the input to
+   *     reuse the current track.
+   */
+  public void experimental_setReuseAudioTrackOnSampleRateChange(
+      boolean reuseAudioTrackOnSampleRateChange) {
+    this.reuseAudioTrackOnSampleRateChange = reuseAudioTrackOnSampleRateChange;
+  }
+
   // AudioSink implementation.
 
   @Override
@@ -399,6 +557,22 @@ public final class DefaultAudioSink implements AudioSink {
     return startMediaTimeUs + applySkipping(applySpeedup(positionUs));
   }
 
+  @Override
+  public void setInputMetadata(@Nullable Metadata metadata) {
+    if (Util.areEqual(metadata, inputMetadata)) {
+      return;
+    }
+    inputMetadata = metadata;
+    for (AudioProcessor audioProcessor : toIntPcmAvailableAudioProcessors) {
+      if (audioProcessor instanceof LoudnessNormalizationAudioProcessor) {
+        ((LoudnessNormalizationAudioProcessor) audioProcessor).setMetadata(metadata);
+      }
+    }
+    // If a configuration is pending, the metadata takes effect when it's applied. Otherwise a new
+    // stream is starting with the next input buffer without the processors being flushed.
+    inputMetadataChangePending = isInitialized() && pendingConfiguration == null;
+  }
+
   @Override
   public void configure(
       @C.Encoding int inputEncoding,
@@ -418,6 +592,13 @@ public final class DefaultAudioSink implements AudioSink {
       }
     }
 
+    configuredInputEncoding = inputEncoding;
+    configuredInputChannelCount = inputChannelCount;
+    configuredInputSampleRate = inputSampleRate;
+    configuredSpecifiedBufferSize = specifiedBufferSize;
+    configuredOutputChannels = outputChannels;
+    configuredTrimEndFrames = trimEndFrames;
+
     boolean isInputPcm = Util.isEncodingLinearPcm(inputEncoding);
     boolean processingEnabled = isInputPcm;
     int sampleRate = inputSampleRate;
@@ -429,12 +610,34 @@ public final class DefaultAudioSink implements AudioSink {
             && Util.isEncodingHighResolutionPcm(inputEncoding);
     AudioProcessor[] availableAudioProcessors =
         useFloatOutput ? toFloatPcmAvailableAudioProcessors : toIntPcmAvailableAudioProcessors;
+    convertingSampleRate = false;
     if (processingEnabled) {
       trimmingAudioProcessor.setTrimFrameCount(trimStartFrames, trimEndFrames);
-      channelMappingAudioProcessor.setChannelMap(outputChannels);
+      crossfadeAudioProcessor.setCrossfadeDurationUs(crossfadeDurationUs);
+      // Convert to the sample rate of the current track, if any, so that it can be reused.
+      boolean convertSampleRate =
+          reuseAudioTrackOnSampleRateChange
+              && !useFloatOutput
+              && isInitialized()
+              && configuration.processingEnabled
+              && configuration.outputEncoding == C.ENCODING_PCM_16BIT;
+      convertingSampleRate =
+          convertSampleRate && inputSampleRate != configuration.outputSampleRate;
+      sampleRateConversionAudioProcessor.setOutputSampleRateHz(
+          convertSampleRate
+              ? configuration.outputSampleRate
+              : SampleRateConversionAudioProcessor.SAMPLE_RATE_NO_CHANGE);
+      // If the input needs converting to 16-bit PCM, apply any channel mapping in the same pass to
+      // avoid an intermediate buffer.
+      boolean mapChannelsWhenResampling = inputEncoding != C.ENCODING_PCM_16BIT;
+      resamplingAudioProcessor.setChannelMap(mapChannelsWhenResampling ? outputChannels : null);
+      channelMappingAudioProcessor.setChannelMap(mapChannelsWhenResampling ? null : outputChannels);
       AudioProcessor.AudioFormat outputFormat =
           new AudioProcessor.AudioFormat(sampleRate, channelCount, encoding);
       for (AudioProcessor audioProcessor : availableAudioProcessors) {
+        if (audioProcessor instanceof LoudnessNormalizationAudioProcessor) {
+          ((LoudnessNormalizationAudioProcessor) audioProcessor).setMetadata(inputMetadata);
+        }
         try {
           AudioProcessor.AudioFormat nextFormat = audioProcessor.configure(outputFormat);
           if (audioProcessor.isActive()) {
@@ -496,6 +699,11 @@ public final class DefaultAudioSink implements AudioSink {
   }
 
   private void flushAudioProcessors() {
+    maybeReportSilenceSkipped(/* force= */ true);
+    lastSkippedOutputFrameCount = 0;
+    reportedSkippedOutputFrameCount = 0;
+    // Flushing applies the latest input metadata.
+    inputMetadataChangePending = false;
     for (int i = 0; i < activeAudioProcessors.length; i++) {
       AudioProcessor audioProcessor = activeAudioProcessors[i];
       audioProcessor.flush();
@@ -567,6 +775,12 @@ public final class DefaultAudioSink implements AudioSink {
     }
   }
 
+  @Override
+  public void handleStreamTransition() {
+    handleDiscontinuity();
+    crossfadeAudioProcessor.startCrossfade();
+  }
+
   @Override
   @SuppressWarnings("ReferenceEquality")
   public boolean handleBuffer(ByteBuffer buffer, long presentationTimeUs)
@@ -633,6 +847,11 @@ public final class DefaultAudioSink implements AudioSink {
         applyPlaybackParameters(newPlaybackParameters, presentationTimeUs);
       }
 
+      if (inputMetadataChangePending && !maybeApplyInputMetadataChange(presentationTimeUs)) {
+        // Don't process any more input until the previous stream's data has been processed.
+        return false;
+      }
+
       if (startMediaTimeState == START_NOT_SET) {
         startMediaTimeUs = Math.max(0, presentationTimeUs);
         startMediaTimeState = START_IN_SYNC;
@@ -671,6 +890,7 @@ public final class DefaultAudioSink implements AudioSink {
 
     if (configuration.processingEnabled) {
       processBuffers(presentationTimeUs);
+      maybeReportSilenceSkipped(/* force= */ false);
     } else {
       writeBuffer(inputBuffer, presentationTimeUs);
     }
@@ -719,6 +939,31 @@ public final class DefaultAudioSink implements AudioSink {
     }
   }
 
+  /**
+   * Starts the stream with the new {@link #inputMetadata} in any loudness normalization processor,
+   * once data queued before it has been processed up to that processor.
+   *
+   * @return Whether the change was applied.
+   */
+  private boolean maybeApplyInputMetadataChange(long avSyncPresentationTimeUs)
+      throws WriteException {
+    if (configuration.processingEnabled) {
+      processBuffers(avSyncPresentationTimeUs);
+    }
+    for (int i = 0; i < activeAudioProcessors.length; i++) {
+      AudioProcessor audioProcessor = activeAudioProcessors[i];
+      if (audioProcessor instanceof LoudnessNormalizationAudioProcessor) {
+        ((LoudnessNormalizationAudioProcessor) audioProcessor).startStream(inputMetadata);
+        break;
+      }
+      if (outputBuffers[i].hasRemaining()) {
+        return false;
+      }
+    }
+    inputMetadataChangePending = false;
+    return true;
+  }
+
   @SuppressWarnings("ReferenceEquality")
   private void writeBuffer(ByteBuffer buffer, long avSyncPresentationTimeUs) throws WriteException {
     if (!buffer.hasRemaining()) {
@@ -826,6 +1071,15 @@ public final class DefaultAudioSink implements AudioSink {
     return isInitialized() && audioTrackPositionTracker.hasPendingData(getWrittenFrames());
   }
 
+  @Override
+  public long getAudioTrackBufferSizeUs() {
+    if (!isInitialized() || !configuration.isInputPcm) {
+      return C.TIME_UNSET;
+    }
+    return configuration.framesToDurationUs(
+        configuration.bufferSize / configuration.outputPcmFrameSize);
+  }
+
   @Override
   public void setPlaybackParameters(PlaybackParameters playbackParameters) {
     if (configuration != null && !configuration.canApplyPlaybackParameters) {
@@ -978,6 +1232,10 @@ public final class DefaultAudioSink implements AudioSink {
         configuration = pendingConfiguration;
         pendingConfiguration = null;
       }
+      if (convertingSampleRate) {
+        // The next audio track can use the input sample rate, so there's no need to convert it.
+        reconfigureWithoutSampleRateConversion();
+      }
       audioTrackPositionTracker.reset();
       releasingConditionVariable.close();
       new Thread() {
@@ -1027,6 +1285,24 @@ public final class DefaultAudioSink implements AudioSink {
     }.start();
   }
 
+  private void reconfigureWithoutSampleRateConversion() {
+    // The audio track has been released, so configuring the sink doesn't convert the sample rate.
+    // The start of the stream isn't trimmed again, as playback continues from a later position.
+    try {
+      configure(
+          configuredInputEncoding,
+          configuredInputChannelCount,
+          configuredInputSampleRate,
+          configuredSpecifiedBufferSize,
+          configuredOutputChannels,
+          /* trimStartFrames= */ 0,
+          configuredTrimEndFrames);
+    } catch (ConfigurationException e) {
+      // Keep converting to the sample rate of the released audio track.
+      Log.w(TAG, "Failed to reconfigure without sample rate conversion", e);
+    }
+  }
+
   private void applyPlaybackParameters(
       PlaybackParameters playbackParameters, long presentationTimeUs) {
     PlaybackParameters newPlaybackParameters =
@@ -1070,9 +1346,34 @@ public final class DefaultAudioSink implements AudioSink {
             positionUs - playbackParametersPositionUs, playbackParameters.speed);
   }
 
+  /**
+   * Reports silence skipped by the audio processor chain once a skipped section ends, so that each
+   * section is reported once rather than for every buffer within it.
+   *
+   * @param force Whether to report skipped silence even if the section may not have ended.
+   */
+  private void maybeReportSilenceSkipped(boolean force) {
+    long skippedOutputFrameCount = audioProcessorChain.getSkippedOutputFrameCount();
+    if (skippedOutputFrameCount > lastSkippedOutputFrameCount) {
+      lastSkippedOutputFrameCount = skippedOutputFrameCount;
+      if (!force) {
+        return;
+      }
+    }
+    if (lastSkippedOutputFrameCount > reportedSkippedOutputFrameCount) {
+      long skippedFrameCount = lastSkippedOutputFrameCount - reportedSkippedOutputFrameCount;
+      reportedSkippedOutputFrameCount = lastSkippedOutputFrameCount;
+      if (listener != null) {
+        listener.onSilenceSkipped(configuration.framesToDurationUs(skippedFrameCount));
+      }
+    }
+  }
+
   private long applySkipping(long positionUs) {
     return positionUs
-        + configuration.framesToDurationUs(audioProcessorChain.getSkippedOutputFrameCount());
+        + configuration.framesToDurationUs(
+            audioProcessorChain.getSkippedOutputFrameCount()
+                + crossfadeAudioProcessor.getOverlappedFrameCount());
   }
 
   private boolean isInitialized() {
@@ -35,6 +35,14 @@ import java.nio.ByteBuffer;
   private static final int FLOAT_NAN_AS_INT = Float.floatToIntBits(Float.NaN);
   private static final double PCM_32_BIT_INT_TO_PCM_32_BIT_FLOAT_FACTOR = 1.0 / 0x7FFFFFFF;
 
+  private byte[] byteSamples;
+  private float[] floatSamples;
+
+  public FloatResamplingAudioProcessor() {
+    byteSamples = Util.EMPTY_BYTE_ARRAY;
+    floatSamples = new float[0];
+  }
+
   @Override
   public AudioFormat onConfigure(AudioFormat inputAudioFormat)
       throws UnhandledAudioFormatException {
@@ -53,28 +61,35 @@ import java.nio.ByteBuffer;
     int position = inputBuffer.position();
     int limit = inputBuffer.limit();
     int size = limit - position;
+    if (byteSamples.length < size) {
+      byteSamples = new byte[size];
+    }
+    byte[] bytes = byteSamples;
+    inputBuffer.get(bytes, 0, size);
 
-    ByteBuffer buffer;
+    int sampleCount;
     switch (inputAudioFormat.encoding) {
       case C.ENCODING_PCM_24BIT:
-        buffer = replaceOutputBuffer((size / 3) * 4);
-        for (int i = position; i < limit; i += 3) {
+        sampleCount = size / 3;
+        ensureFloatSamplesCapacity(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
           int pcm32BitInteger =
-              ((inputBuffer.get(i) & 0xFF) << 8)
-                  | ((inputBuffer.get(i + 1) & 0xFF) << 16)
-                  | ((inputBuffer.get(i + 2) & 0xFF) << 24);
-          writePcm32BitFloat(pcm32BitInteger, buffer);
+              ((bytes[3 * i] & 0xFF) << 8)
+                  | ((bytes[3 * i + 1] & 0xFF) << 16)
+                  | ((bytes[3 * i + 2] & 0xFF) << 24);
+          floatSamples[i] = toPcm32BitFloat(pcm32BitInteger);
         }
         break;
       case C.ENCODING_PCM_32BIT:
-        buffer = replaceOutputBuffer(size);
-        for (int i = position; i < limit; i += 4) {
+        sampleCount = size / 4;
+        ensureFloatSamplesCapacity(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
           int pcm32BitInteger =
-              (inputBuffer.get(i) & 0xFF)
-                  | ((inputBuffer.get(i + 1) & 0xFF) << 8)
-                  | ((inputBuffer.get(i + 2) & 0xFF) << 16)
-                  | ((inputBuffer.get(i + 3) & 0xFF) << 24);
-          writePcm32BitFloat(pcm32BitInteger, buffer);
+              (bytes[4 * i] & 0xFF)
+                  | ((bytes[4 * i + 1] & 0xFF) << 8)
+                  | ((bytes[4 * i + 2] & 0xFF) << 16)
+                  | ((bytes[4 * i + 3] & 0xFF) << 24);
+          floatSamples[i] = toPcm32BitFloat(pcm32BitInteger);
         }
         break;
       case C.ENCODING_PCM_8BIT:
@@ -88,22 +103,35 @@ import java.nio.ByteBuffer;
         throw new IllegalStateException();
     }
 
-    inputBuffer.position(inputBuffer.limit());
-    buffer.flip();
+    ByteBuffer buffer = replaceOutputBuffer(sampleCount * 4);
+    buffer.asFloatBuffer().put(floatSamples, 0, sampleCount);
+    buffer.limit(sampleCount * 4);
+    inputBuffer.position(limit);
+  }
+
+  @Override
+  protected void onReset() {
+    byteSamples = Util.EMPTY_BYTE_ARRAY;
+    floatSamples = new float[0];
+  }
+
+  private void ensureFloatSamplesCapacity(int sampleCount) {
+    if (floatSamples.length < sampleCount) {
+      floatSamples = new float[sampleCount];
+    }
   }
 
   /**
-   * Converts the provided 32-bit integer to a 32-bit float value and writes it to {@code buffer}.
+   * Converts the provided 32-bit integer to a 32-bit float value.
    *
    * @param pcm32BitInt The 32-bit integer value to convert to 32-bit float in [-1.0, 1.0].
-   * @param buffer The output buffer.
+   * @return The 32-bit float value.
    */
-  private static void writePcm32BitFloat(int pcm32BitInt, ByteBuffer buffer) {
+  private static float toPcm32BitFloat(int pcm32BitInt) {
     float pcm32BitFloat = (float) (PCM_32_BIT_INT_TO_PCM_32_BIT_FLOAT_FACTOR * pcm32BitInt);
-    int floatBits = Float.floatToIntBits(pcm32BitFloat);
-    if (floatBits == FLOAT_NAN_AS_INT) {
-      floatBits = Float.floatToIntBits((float) 0.0);
+    if (Float.floatToIntBits(pcm32BitFloat) == FLOAT_NAN_AS_INT) {
+      pcm32BitFloat = 0f;
     }
-    buffer.putInt(floatBits);
+    return pcm32BitFloat;
   }
 }
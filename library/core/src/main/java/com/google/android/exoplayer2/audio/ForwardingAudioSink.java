@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.audio;
 
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.metadata.Metadata;
 import java.nio.ByteBuffer;
 
 /** An overridable {@link AudioSink} implementation forwarding all methods to another sink. */
@@ -43,6 +44,11 @@ public class ForwardingAudioSink implements AudioSink {
     return sink.getCurrentPositionUs(sourceEnded);
   }
 
+  @Override
+  public void setInputMetadata(@Nullable Metadata metadata) {
+    sink.setInputMetadata(metadata);
+  }
+
   @Override
   public void configure(
       int inputEncoding,
@@ -73,6 +79,11 @@ public class ForwardingAudioSink implements AudioSink {
     sink.handleDiscontinuity();
   }
 
+  @Override
+  public void handleStreamTransition() {
+    sink.handleStreamTransition();
+  }
+
   @Override
   public boolean handleBuffer(ByteBuffer buffer, long presentationTimeUs)
       throws InitializationException, WriteException {
@@ -94,6 +105,11 @@ public class ForwardingAudioSink implements AudioSink {
     return sink.hasPendingData();
   }
 
+  @Override
+  public long getAudioTrackBufferSizeUs() {
+    return sink.getAudioTrackBufferSizeUs();
+  }
+
   @Override
   public void setPlaybackParameters(PlaybackParameters playbackParameters) {
     sink.setPlaybackParameters(playbackParameters);
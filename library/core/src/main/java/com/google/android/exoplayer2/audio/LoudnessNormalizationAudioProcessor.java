@@ -0,0 +1,541 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.metadata.Metadata;
+import com.google.android.exoplayer2.metadata.flac.VorbisComment;
+import com.google.android.exoplayer2.metadata.id3.CommentFrame;
+import com.google.android.exoplayer2.metadata.id3.InternalFrame;
+import com.google.android.exoplayer2.metadata.id3.TextInformationFrame;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An {@link AudioProcessor} that normalizes the loudness of its input towards a target loudness.
+ * Input and output are 16-bit PCM.
+ *
+ * <p>If the stream's metadata carries a ReplayGain or iTunes Sound Check (iTunNORM) tag, the gain
+ * is computed up front from the tag and applied as a constant. Otherwise the integrated loudness is
+ * measured incrementally as defined by EBU R128 (ITU-R BS.1770 K-weighting with absolute and
+ * relative gating), and the gain moves slowly towards the value that would bring the measured
+ * loudness to the target. Whatever the source of the gain, a peak limiter reduces it for frames
+ * that would otherwise clip. Processing doesn't allocate once the processor has been flushed.
+ */
+public final class LoudnessNormalizationAudioProcessor extends BaseAudioProcessor {
+
+  /**
+   * The default target loudness, in LUFS. This is the reference loudness used by ReplayGain 2.0.
+   */
+  public static final float DEFAULT_TARGET_LOUDNESS_LUFS = -18f;
+  /** The maximum gain that will be applied, in decibels. */
+  public static final float MAXIMUM_GAIN_DB = 12f;
+  /** The minimum gain (maximum attenuation) that will be applied, in decibels. */
+  public static final float MINIMUM_GAIN_DB = -30f;
+
+  /** The loudness that ReplayGain and Sound Check gains normalize to, in LUFS. */
+  private static final float REPLAY_GAIN_REFERENCE_LUFS = -18f;
+  /** The maximum rate at which the gain changes while measuring loudness, in decibels/second. */
+  private static final float MAXIMUM_GAIN_CHANGE_DB_PER_SECOND = 2f;
+  /** The duration of one gating sub-block, in microseconds. Gating blocks are four sub-blocks. */
+  private static final long SUB_BLOCK_DURATION_US = 100_000;
+  /** The number of sub-blocks per gating block (400 ms blocks overlapping by 75%). */
+  private static final int SUB_BLOCKS_PER_BLOCK = 4;
+  /** Blocks quieter than this loudness, in LUFS, are ignored. */
+  private static final float ABSOLUTE_GATE_LUFS = -70f;
+  /** Blocks quieter than the ungated loudness minus this value, in LU, are ignored. */
+  private static final float RELATIVE_GATE_LU = 10f;
+  /** The loudness histogram's upper bound, in LUFS. Louder blocks go into the last bin. */
+  private static final float HISTOGRAM_MAXIMUM_LUFS = 5f;
+  /** The number of histogram bins per LU. */
+  private static final int HISTOGRAM_BINS_PER_LU = 10;
+  /** The number of gating blocks that must be measured before the gain starts moving. */
+  private static final int MINIMUM_MEASURED_BLOCK_COUNT = 10;
+  /** The time constant with which the limiter releases its gain reduction, in microseconds. */
+  private static final long LIMITER_RELEASE_TIME_US = 50_000;
+
+  private static final String REPLAY_GAIN_TRACK_GAIN = "REPLAYGAIN_TRACK_GAIN";
+  private static final String REPLAY_GAIN_TRACK_PEAK = "REPLAYGAIN_TRACK_PEAK";
+  private static final String SOUND_CHECK_DESCRIPTION = "iTunNORM";
+  private static final String SOUND_CHECK_DOMAIN = "com.apple.iTunes";
+  private static final Pattern SOUND_CHECK_PATTERN =
+      Pattern.compile("^\\s*([0-9a-fA-F]{8})\\s+([0-9a-fA-F]{8})");
+
+  private float targetLoudnessLufs;
+  @Nullable private Metadata pendingMetadata;
+
+  private boolean measuring;
+  private float desiredGainDb;
+  private float gainDb;
+  private float appliedGainDb;
+  private float limiterGain;
+  private float limiterReleaseCoefficient;
+  private short[] samples;
+
+  // K-weighting filter coefficients, for the cascade of the shelving and high-pass stages.
+  private double shelvingB0;
+  private double shelvingB1;
+  private double shelvingB2;
+  private double shelvingA1;
+  private double shelvingA2;
+  private double highPassA1;
+  private double highPassA2;
+  /** Per channel filter state: four values for each of the two filter stages. */
+  private double[] filterState;
+  private float[] channelWeights;
+
+  private int subBlockFrameCount;
+  private int subBlockFramesRemaining;
+  private double subBlockEnergy;
+  private double[] recentSubBlockEnergies;
+  private int subBlockCount;
+  private int[] histogramCounts;
+  private double[] histogramEnergies;
+  private int measuredBlockCount;
+
+  /** Creates a new loudness normalization audio processor. */
+  public LoudnessNormalizationAudioProcessor() {
+    targetLoudnessLufs = DEFAULT_TARGET_LOUDNESS_LUFS;
+    limiterGain = 1f;
+    samples = new short[0];
+    filterState = new double[0];
+    channelWeights = new float[0];
+    recentSubBlockEnergies = new double[SUB_BLOCKS_PER_BLOCK];
+    int binCount = (int) ((HISTOGRAM_MAXIMUM_LUFS - ABSOLUTE_GATE_LUFS) * HISTOGRAM_BINS_PER_LU);
+    histogramCounts = new int[binCount];
+    histogramEnergies = new double[binCount];
+  }
+
+  /**
+   * Sets the target loudness, in LUFS. The default is {@link #DEFAULT_TARGET_LOUDNESS_LUFS}. Takes
+   * effect when the processor is next {@link #flush() flushed}.
+   *
+   * @param targetLoudnessLufs The target loudness, in LUFS.
+   */
+  public void setTargetLoudnessLufs(float targetLoudnessLufs) {
+    this.targetLoudnessLufs = targetLoudnessLufs;
+  }
+
+  /**
+   * Sets the metadata of the stream that will be processed after the processor is next {@link
+   * #flush() flushed}. If the metadata contains a gain tag (see {@link
+   * #getTrackGainDbFromMetadata(Metadata)}) the gain is taken from the tag, otherwise the loudness
+   * is measured.
+   *
+   * @param metadata The stream's metadata, or {@code null} if it has none.
+   */
+  public void setMetadata(@Nullable Metadata metadata) {
+    pendingMetadata = metadata;
+  }
+
+  /**
+   * Switches to a new stream whose audio starts with the next input queued, without flushing. The
+   * gain is derived from {@code metadata} as for {@link #setMetadata(Metadata)}, and ramps from the
+   * previous stream's gain over the next input buffer.
+   *
+   * @param metadata The new stream's metadata, or {@code null} if it has none.
+   */
+  public void startStream(@Nullable Metadata metadata) {
+    pendingMetadata = metadata;
+    if (isActive()) {
+      updateGainForPendingMetadata();
+    }
+  }
+
+  /** Returns the gain currently being applied, in decibels. */
+  public float getGainDb() {
+    return gainDb;
+  }
+
+  /**
+   * Returns the track gain in decibels read from a ReplayGain tag (a {@link VorbisComment}, an ID3
+   * TXXX {@link TextInformationFrame} or an MPEG 4 {@link InternalFrame}) or an iTunes Sound Check
+   * tag (a {@link CommentFrame} or {@link InternalFrame}) in {@code metadata}, or {@code null} if
+   * there is no such tag. The gain is relative to a loudness of -18 LUFS. If the ReplayGain track
+   * peak is also known, the gain is limited so that the peak doesn't clip.
+   *
+   * @param metadata The metadata from which to read the gain.
+   * @return The track gain in decibels, or {@code null} if it is not known.
+   */
+  @Nullable
+  public static Float getTrackGainDbFromMetadata(Metadata metadata) {
+    @Nullable Float replayGainDb = null;
+    @Nullable Float replayGainPeak = null;
+    @Nullable Float soundCheckGainDb = null;
+    for (int i = 0; i < metadata.length(); i++) {
+      Metadata.Entry entry = metadata.get(i);
+      @Nullable String key = null;
+      @Nullable String value = null;
+      if (entry instanceof VorbisComment) {
+        key = ((VorbisComment) entry).key;
+        value = ((VorbisComment) entry).value;
+      } else if (entry instanceof TextInformationFrame) {
+        key = ((TextInformationFrame) entry).description;
+        value = ((TextInformationFrame) entry).value;
+      } else if (entry instanceof InternalFrame) {
+        InternalFrame internalFrame = (InternalFrame) entry;
+        key = internalFrame.description;
+        value = internalFrame.text;
+        if (SOUND_CHECK_DOMAIN.equals(internalFrame.domain)
+            && SOUND_CHECK_DESCRIPTION.equals(key)) {
+          soundCheckGainDb = parseSoundCheckGainDb(value);
+        }
+      } else if (entry instanceof CommentFrame) {
+        CommentFrame commentFrame = (CommentFrame) entry;
+        if (SOUND_CHECK_DESCRIPTION.equals(commentFrame.description)) {
+          soundCheckGainDb = parseSoundCheckGainDb(commentFrame.text);
+        }
+      }
+      if (key == null || value == null) {
+        continue;
+      }
+      if (REPLAY_GAIN_TRACK_GAIN.equalsIgnoreCase(key)) {
+        replayGainDb = parseFloat(value);
+      } else if (REPLAY_GAIN_TRACK_PEAK.equalsIgnoreCase(key)) {
+        replayGainPeak = parseFloat(value);
+      }
+    }
+    if (replayGainDb == null) {
+      return soundCheckGainDb;
+    }
+    if (replayGainPeak != null && replayGainPeak > 0) {
+      return Math.min(replayGainDb, -linearToDb(replayGainPeak));
+    }
+    return replayGainDb;
+  }
+
+  // AudioProcessor implementation.
+
+  @Override
+  public AudioFormat onConfigure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT) {
+      throw new UnhandledAudioFormatException(inputAudioFormat);
+    }
+    return inputAudioFormat;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int position = inputBuffer.position();
+    int limit = inputBuffer.limit();
+    int sampleCount = (limit - position) / 2;
+    if (samples.length < sampleCount) {
+      samples = new short[sampleCount];
+    }
+    inputBuffer.asShortBuffer().get(samples, 0, sampleCount);
+    inputBuffer.position(limit);
+
+    int channelCount = inputAudioFormat.channelCount;
+    int frameCount = sampleCount / channelCount;
+    float startGainDb = appliedGainDb;
+    if (measuring) {
+      measure(frameCount);
+      float maximumGainChangeDb =
+          MAXIMUM_GAIN_CHANGE_DB_PER_SECOND * frameCount / inputAudioFormat.sampleRate;
+      gainDb +=
+          Util.constrainValue(desiredGainDb - gainDb, -maximumGainChangeDb, maximumGainChangeDb);
+    }
+    applyGain(frameCount, dbToLinear(startGainDb), dbToLinear(gainDb));
+    appliedGainDb = gainDb;
+
+    ByteBuffer buffer = replaceOutputBuffer(sampleCount * 2);
+    buffer.asShortBuffer().put(samples, 0, sampleCount);
+    buffer.limit(sampleCount * 2);
+  }
+
+  @Override
+  protected void onFlush() {
+    if (!isActive()) {
+      return;
+    }
+    updateGainForPendingMetadata();
+    appliedGainDb = gainDb;
+    limiterGain = 1f;
+    double limiterReleaseFrameCount =
+        (double) LIMITER_RELEASE_TIME_US * inputAudioFormat.sampleRate / C.MICROS_PER_SECOND;
+    limiterReleaseCoefficient = (float) Math.exp(-1 / limiterReleaseFrameCount);
+  }
+
+  @Override
+  protected void onReset() {
+    pendingMetadata = null;
+    measuring = false;
+    gainDb = 0;
+    desiredGainDb = 0;
+    appliedGainDb = 0;
+    limiterGain = 1f;
+    samples = new short[0];
+    filterState = new double[0];
+    channelWeights = new float[0];
+  }
+
+  // Internal methods.
+
+  /** Sets the gain from {@link #pendingMetadata}, starting a new measurement if it has no tag. */
+  private void updateGainForPendingMetadata() {
+    @Nullable
+    Float trackGainDb =
+        pendingMetadata != null ? getTrackGainDbFromMetadata(pendingMetadata) : null;
+    measuring = trackGainDb == null;
+    if (measuring) {
+      gainDb = 0;
+      desiredGainDb = 0;
+      resetMeasurement();
+    } else {
+      gainDb =
+          constrainGainDb(trackGainDb + targetLoudnessLufs - REPLAY_GAIN_REFERENCE_LUFS);
+      desiredGainDb = gainDb;
+    }
+  }
+
+  /** Resets the loudness measurement and sets up the K-weighting filter for the input format. */
+  private void resetMeasurement() {
+    int channelCount = inputAudioFormat.channelCount;
+    int sampleRate = inputAudioFormat.sampleRate;
+    if (filterState.length != channelCount * 8) {
+      filterState = new double[channelCount * 8];
+      channelWeights = new float[channelCount];
+    } else {
+      Arrays.fill(filterState, 0);
+    }
+    for (int channel = 0; channel < channelCount; channel++) {
+      channelWeights[channel] = getChannelWeight(channel, channelCount);
+    }
+
+    // Coefficients for the high shelf and high-pass stages of the K-weighting filter, derived for
+    // the input sample rate from the analog prototypes in ITU-R BS.1770.
+    double k = Math.tan(Math.PI * 1681.974450955533 / sampleRate);
+    double q = 0.7071752369554196;
+    double vh = Math.pow(10, 3.999843853973347 / 20);
+    double vb = Math.pow(vh, 0.4996667741545416);
+    double a0 = 1 + k / q + k * k;
+    shelvingB0 = (vh + vb * k / q + k * k) / a0;
+    shelvingB1 = 2 * (k * k - vh) / a0;
+    shelvingB2 = (vh - vb * k / q + k * k) / a0;
+    shelvingA1 = 2 * (k * k - 1) / a0;
+    shelvingA2 = (1 - k / q + k * k) / a0;
+    k = Math.tan(Math.PI * 38.13547087602444 / sampleRate);
+    q = 0.5003270373238773;
+    a0 = 1 + k / q + k * k;
+    highPassA1 = 2 * (k * k - 1) / a0;
+    highPassA2 = (1 - k / q + k * k) / a0;
+
+    subBlockFrameCount = (int) (SUB_BLOCK_DURATION_US * sampleRate / C.MICROS_PER_SECOND);
+    subBlockFramesRemaining = subBlockFrameCount;
+    subBlockEnergy = 0;
+    subBlockCount = 0;
+    measuredBlockCount = 0;
+    Arrays.fill(histogramCounts, 0);
+    Arrays.fill(histogramEnergies, 0);
+  }
+
+  /** Feeds {@code frameCount} frames of {@link #samples} into the loudness measurement. */
+  private void measure(int frameCount) {
+    int channelCount = inputAudioFormat.channelCount;
+    for (int frame = 0; frame < frameCount; frame++) {
+      int sampleIndex = frame * channelCount;
+      double frameEnergy = 0;
+      for (int channel = 0; channel < channelCount; channel++) {
+        float weight = channelWeights[channel];
+        if (weight == 0) {
+          continue;
+        }
+        int stateIndex = channel * 8;
+        double x = samples[sampleIndex + channel] / 32768.0;
+        double x1 = filterState[stateIndex];
+        double x2 = filterState[stateIndex + 1];
+        double y1 = filterState[stateIndex + 2];
+        double y2 = filterState[stateIndex + 3];
+        double y =
+            shelvingB0 * x + shelvingB1 * x1 + shelvingB2 * x2 - shelvingA1 * y1 - shelvingA2 * y2;
+        filterState[stateIndex] = x;
+        filterState[stateIndex + 1] = x1;
+        filterState[stateIndex + 2] = y;
+        filterState[stateIndex + 3] = y1;
+        x = y;
+        x1 = filterState[stateIndex + 4];
+        x2 = filterState[stateIndex + 5];
+        y1 = filterState[stateIndex + 6];
+        y2 = filterState[stateIndex + 7];
+        y = x - 2 * x1 + x2 - highPassA1 * y1 - highPassA2 * y2;
+        filterState[stateIndex + 4] = x;
+        filterState[stateIndex + 5] = x1;
+        filterState[stateIndex + 6] = y;
+        filterState[stateIndex + 7] = y1;
+        frameEnergy += weight * y * y;
+      }
+      subBlockEnergy += frameEnergy;
+      if (--subBlockFramesRemaining == 0) {
+        onSubBlockEnded();
+      }
+    }
+  }
+
+  private void onSubBlockEnded() {
+    recentSubBlockEnergies[subBlockCount % SUB_BLOCKS_PER_BLOCK] =
+        subBlockEnergy / subBlockFrameCount;
+    subBlockCount++;
+    subBlockEnergy = 0;
+    subBlockFramesRemaining = subBlockFrameCount;
+    if (subBlockCount < SUB_BLOCKS_PER_BLOCK) {
+      return;
+    }
+    double blockEnergy = 0;
+    for (double energy : recentSubBlockEnergies) {
+      blockEnergy += energy;
+    }
+    blockEnergy /= SUB_BLOCKS_PER_BLOCK;
+    double blockLoudness = energyToLoudness(blockEnergy);
+    if (blockLoudness <= ABSOLUTE_GATE_LUFS) {
+      return;
+    }
+    int bin = getHistogramBin(blockLoudness);
+    histogramCounts[bin]++;
+    histogramEnergies[bin] += blockEnergy;
+    measuredBlockCount++;
+    if (measuredBlockCount >= MINIMUM_MEASURED_BLOCK_COUNT) {
+      desiredGainDb = constrainGainDb((float) (targetLoudnessLufs - getIntegratedLoudness()));
+    }
+  }
+
+  /** Returns the gated integrated loudness of the blocks measured so far, in LUFS. */
+  private double getIntegratedLoudness() {
+    long count = 0;
+    double energy = 0;
+    for (int i = 0; i < histogramCounts.length; i++) {
+      count += histogramCounts[i];
+      energy += histogramEnergies[i];
+    }
+    double relativeGateLufs = energyToLoudness(energy / count) - RELATIVE_GATE_LU;
+    count = 0;
+    energy = 0;
+    for (int i = getHistogramBin(relativeGateLufs); i < histogramCounts.length; i++) {
+      count += histogramCounts[i];
+      energy += histogramEnergies[i];
+    }
+    return energyToLoudness(energy / count);
+  }
+
+  /**
+   * Scales {@code frameCount} frames of {@link #samples} by a gain that moves linearly from {@code
+   * startGain} to {@code endGain}. The limiter reduces the gain immediately for any frame whose
+   * peak would exceed full scale, and releases the reduction exponentially afterwards.
+   */
+  private void applyGain(int frameCount, float startGain, float endGain) {
+    if (startGain == 1f && endGain == 1f && limiterGain == 1f) {
+      return;
+    }
+    int channelCount = inputAudioFormat.channelCount;
+    float gain = startGain;
+    float gainIncrement = frameCount > 0 ? (endGain - startGain) / frameCount : 0;
+    for (int frame = 0; frame < frameCount; frame++) {
+      int sampleIndex = frame * channelCount;
+      int peak = 0;
+      for (int channel = 0; channel < channelCount; channel++) {
+        peak = Math.max(peak, Math.abs(samples[sampleIndex + channel]));
+      }
+      float frameGain = gain * limiterGain;
+      if (peak * frameGain > Short.MAX_VALUE) {
+        limiterGain = Short.MAX_VALUE / (peak * gain);
+        frameGain = gain * limiterGain;
+      }
+      for (int channel = 0; channel < channelCount; channel++) {
+        int sample = (int) (samples[sampleIndex + channel] * frameGain);
+        samples[sampleIndex + channel] =
+            (short) Util.constrainValue(sample, Short.MIN_VALUE, Short.MAX_VALUE);
+      }
+      limiterGain = 1f - (1f - limiterGain) * limiterReleaseCoefficient;
+      gain += gainIncrement;
+    }
+  }
+
+  private static int getHistogramBin(double loudnessLufs) {
+    int bin = (int) ((loudnessLufs - ABSOLUTE_GATE_LUFS) * HISTOGRAM_BINS_PER_LU);
+    int binCount = (int) ((HISTOGRAM_MAXIMUM_LUFS - ABSOLUTE_GATE_LUFS) * HISTOGRAM_BINS_PER_LU);
+    return Util.constrainValue(bin, 0, binCount - 1);
+  }
+
+  /**
+   * Returns the BS.1770 weight for a channel. The low frequency effects channel of a 5.1 layout is
+   * ignored, and its surround channels are weighted by +1.5 dB.
+   */
+  private static float getChannelWeight(int channel, int channelCount) {
+    if (channelCount != 6) {
+      return 1f;
+    }
+    switch (channel) {
+      case 3:
+        return 0f;
+      case 4:
+      case 5:
+        return 1.41f;
+      default:
+        return 1f;
+    }
+  }
+
+  private static float constrainGainDb(float gainDb) {
+    return Util.constrainValue(gainDb, MINIMUM_GAIN_DB, MAXIMUM_GAIN_DB);
+  }
+
+  private static double energyToLoudness(double energy) {
+    return -0.691 + 10 * Math.log10(energy);
+  }
+
+  private static float dbToLinear(float db) {
+    return (float) Math.pow(10, db / 20);
+  }
+
+  private static float linearToDb(float linear) {
+    return (float) (20 * Math.log10(linear));
+  }
+
+  /**
+   * Returns the gain in decibels encoded in an iTunes Sound Check comment, or {@code null} if the
+   * comment is malformed. The comment's first two values are the left and right channel scale
+   * factors, in thousandths.
+   */
+  @Nullable
+  private static Float parseSoundCheckGainDb(String comment) {
+    Matcher matcher = SOUND_CHECK_PATTERN.matcher(comment);
+    if (!matcher.find()) {
+      return null;
+    }
+    long left = Long.parseLong(matcher.group(1), 16);
+    long right = Long.parseLong(matcher.group(2), 16);
+    long scale = Math.max(left, right);
+    return scale > 0 ? (float) (-10 * Math.log10(scale / 1000.0)) : null;
+  }
+
+  /** Parses a float such as {@code "-6.5 dB"}, or returns {@code null} if it is malformed. */
+  @Nullable
+  private static Float parseFloat(String value) {
+    String trimmedValue = value.trim();
+    if (Util.toLowerInvariant(trimmedValue).endsWith("db")) {
+      trimmedValue = trimmedValue.substring(0, trimmedValue.length() - 2).trim();
+    }
+    try {
+      return Float.parseFloat(trimmedValue);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
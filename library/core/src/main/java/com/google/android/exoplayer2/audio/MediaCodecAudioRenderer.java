@@ -96,11 +96,13 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
   private boolean codecNeedsEosBufferTimestampWorkaround;
   private android.media.MediaFormat passthroughMediaFormat;
   @Nullable private Format inputFormat;
+  @Nullable private Format audioSinkMetadataFormat;
   private long currentPositionUs;
   private boolean allowFirstBufferPositionDiscontinuity;
   private boolean allowPositionDiscontinuity;
   private long lastInputTimeUs;
   private int pendingStreamChangeCount;
+  private boolean audioSinkBufferFull;
 
   /**
    * @param context A context.
@@ -524,6 +526,29 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
         && !MimeTypes.AUDIO_OPUS.equals(oldFormat.sampleMimeType);
   }
 
+  @Override
+  protected long getBatchedInputSampleDurationUs(
+      MediaCodecInfo codecInfo, Format format, int sampleSize) {
+    if (codecInfo.passthrough || format.sampleRate == Format.NO_VALUE) {
+      return C.TIME_UNSET;
+    }
+    if (MimeTypes.AUDIO_RAW.equals(format.sampleMimeType)
+        && Util.isEncodingLinearPcm(format.pcmEncoding)
+        && format.channelCount != Format.NO_VALUE) {
+      // The raw decoder copies its input, so a buffer can hold any number of whole PCM frames.
+      int pcmFrameSize = Util.getPcmFrameSize(format.pcmEncoding, format.channelCount);
+      return sampleSize % pcmFrameSize == 0
+          ? (sampleSize / pcmFrameSize) * C.MICROS_PER_SECOND / format.sampleRate
+          : C.TIME_UNSET;
+    } else if (MimeTypes.AUDIO_MPEG.equals(format.sampleMimeType) && codecInfo.softwareOnly) {
+      // The platform's software MP3 decoders decode all the frames in an input buffer. Each MPEG-1
+      // Layer III frame holds 1152 samples, and each MPEG-2 (or 2.5) Layer III frame holds 576.
+      int samplesPerFrame = format.sampleRate >= 32000 ? 1152 : 576;
+      return samplesPerFrame * C.MICROS_PER_SECOND / format.sampleRate;
+    }
+    return C.TIME_UNSET;
+  }
+
   @Override
   @Nullable
   public MediaClock getMediaClock() {
@@ -590,6 +615,8 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     }
 
     try {
+      audioSink.setInputMetadata(inputFormat.metadata);
+      audioSinkMetadataFormat = inputFormat;
       audioSink.configure(
           encoding,
           channelCount,
@@ -691,6 +718,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     allowPositionDiscontinuity = true;
     lastInputTimeUs = C.TIME_UNSET;
     pendingStreamChangeCount = 0;
+    audioSinkBufferFull = false;
   }
 
   @Override
@@ -710,7 +738,9 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
   protected void onDisabled() {
     try {
       lastInputTimeUs = C.TIME_UNSET;
+      audioSinkMetadataFormat = null;
       pendingStreamChangeCount = 0;
+      audioSinkBufferFull = false;
       audioSink.flush();
     } finally {
       try {
@@ -740,6 +770,21 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
     return audioSink.hasPendingData() || super.isReady();
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    long audioTrackBufferSizeUs = audioSink.getAudioTrackBufferSizeUs();
+    // The renderer isn't started whilst the player is buffering, in which case the player needs to
+    // check frequently whether playback can start.
+    if (!audioSinkBufferFull
+        || audioTrackBufferSizeUs == C.TIME_UNSET
+        || getState() != STATE_STARTED) {
+      return super.getDurationToProgressUs(positionUs, elapsedRealtimeUs);
+    }
+    // The sink won't accept more data until some of its buffer has been played out, so there's no
+    // need to render again until around half of the buffer has drained.
+    return audioTrackBufferSizeUs / 2;
+  }
+
   @Override
   public long getPositionUs() {
     if (getState() == STATE_STARTED) {
@@ -776,7 +821,7 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
   @Override
   protected void onProcessedOutputBuffer(long presentationTimeUs) {
     while (pendingStreamChangeCount != 0 && presentationTimeUs >= pendingStreamChangeTimesUs[0]) {
-      audioSink.handleDiscontinuity();
+      audioSink.handleStreamTransition();
       pendingStreamChangeCount--;
       System.arraycopy(
           pendingStreamChangeTimesUs,
@@ -820,16 +865,25 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
       return true;
     }
 
+    if (format != audioSinkMetadataFormat) {
+      // The codec may be kept across streams without its output format changing, so pass each
+      // stream's metadata to the sink along with the stream's first output buffer.
+      audioSink.setInputMetadata(format.metadata);
+      audioSinkMetadataFormat = format;
+    }
+
     try {
       if (audioSink.handleBuffer(buffer, bufferPresentationTimeUs)) {
         codec.releaseOutputBuffer(bufferIndex, false);
         decoderCounters.renderedOutputBufferCount++;
+        audioSinkBufferFull = false;
         return true;
       }
     } catch (AudioSink.InitializationException | AudioSink.WriteException e) {
       // TODO(internal: b/145658993) Use outputFormat instead.
       throw createRendererException(e, inputFormat);
     }
+    audioSinkBufferFull = true;
     return false;
   }
 
@@ -1031,6 +1085,11 @@ public class MediaCodecAudioRenderer extends MediaCodecRenderer implements Media
       onAudioTrackUnderrun(bufferSize, bufferSizeMs, elapsedSinceLastFeedMs);
     }
 
+    @Override
+    public void onSilenceSkipped(long skippedDurationUs) {
+      eventDispatcher.silenceSkipped(skippedDurationUs);
+    }
+
   }
 
 }
@@ -15,8 +15,10 @@
  */
 package com.google.android.exoplayer2.audio;
 
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.Util;
 import java.nio.ByteBuffer;
 
 /**
@@ -31,9 +33,44 @@ import java.nio.ByteBuffer;
  *   <li>{@link C#ENCODING_PCM_32BIT}
  *   <li>{@link C#ENCODING_PCM_FLOAT}
  * </ul>
+ *
+ * <p>The processor can optionally apply a channel mapping in the same pass, which avoids the need
+ * for a separate {@link ChannelMappingAudioProcessor} and its intermediate buffer when the input
+ * needs to be converted anyway.
+ *
+ * <p>Input is converted in batches: each input buffer is bulk-read into a reusable primitive array,
+ * converted using simple loops over arrays, and bulk-written to the output buffer.
  */
 /* package */ final class ResamplingAudioProcessor extends BaseAudioProcessor {
 
+  @Nullable private int[] pendingOutputChannels;
+  @Nullable private int[] outputChannels;
+
+  private byte[] byteSamples;
+  private float[] floatSamples;
+  private short[] shortSamples;
+  private short[] mappedSamples;
+
+  public ResamplingAudioProcessor() {
+    byteSamples = Util.EMPTY_BYTE_ARRAY;
+    floatSamples = new float[0];
+    shortSamples = new short[0];
+    mappedSamples = new short[0];
+  }
+
+  /**
+   * Sets a channel mapping to apply to the converted audio. The mapping is only applied if the
+   * processor is active. After calling this method, call {@link #configure(AudioFormat)} to start
+   * using the new channel map.
+   *
+   * @param outputChannels The mapping from input to output channel indices, or {@code null} to
+   *     leave the channels unchanged.
+   * @see ChannelMappingAudioProcessor#setChannelMap(int[])
+   */
+  public void setChannelMap(@Nullable int[] outputChannels) {
+    pendingOutputChannels = outputChannels;
+  }
+
   @Override
   public AudioFormat onConfigure(AudioFormat inputAudioFormat)
       throws UnhandledAudioFormatException {
@@ -46,78 +83,78 @@ import java.nio.ByteBuffer;
         && encoding != C.ENCODING_PCM_FLOAT) {
       throw new UnhandledAudioFormatException(inputAudioFormat);
     }
-    return encoding != C.ENCODING_PCM_16BIT
-        ? new AudioFormat(
-            inputAudioFormat.sampleRate, inputAudioFormat.channelCount, C.ENCODING_PCM_16BIT)
-        : AudioFormat.NOT_SET;
+    if (encoding == C.ENCODING_PCM_16BIT) {
+      return AudioFormat.NOT_SET;
+    }
+    int outputChannelCount = inputAudioFormat.channelCount;
+    @Nullable int[] outputChannels = pendingOutputChannels;
+    if (outputChannels != null) {
+      for (int channelIndex : outputChannels) {
+        if (channelIndex >= inputAudioFormat.channelCount) {
+          throw new UnhandledAudioFormatException(inputAudioFormat);
+        }
+      }
+      outputChannelCount = outputChannels.length;
+    }
+    return new AudioFormat(inputAudioFormat.sampleRate, outputChannelCount, C.ENCODING_PCM_16BIT);
   }
 
   @Override
   public void queueInput(ByteBuffer inputBuffer) {
-    // Prepare the output buffer.
     int position = inputBuffer.position();
     int limit = inputBuffer.limit();
     int size = limit - position;
-    int resampledSize;
-    switch (inputAudioFormat.encoding) {
-      case C.ENCODING_PCM_8BIT:
-        resampledSize = size * 2;
-        break;
-      case C.ENCODING_PCM_16BIT_BIG_ENDIAN:
-        resampledSize = size;
-        break;
-      case C.ENCODING_PCM_24BIT:
-        resampledSize = (size / 3) * 2;
-        break;
-      case C.ENCODING_PCM_32BIT:
-      case C.ENCODING_PCM_FLOAT:
-        resampledSize = size / 2;
-        break;
-      case C.ENCODING_PCM_16BIT:
-      case C.ENCODING_INVALID:
-      case Format.NO_VALUE:
-      default:
-        throw new IllegalStateException();
-    }
-
-    // Resample the little endian input and update the input/output buffers.
-    ByteBuffer buffer = replaceOutputBuffer(resampledSize);
+    int sampleCount;
+    short[] samples;
     switch (inputAudioFormat.encoding) {
       case C.ENCODING_PCM_8BIT:
         // 8 -> 16 bit resampling. Shift each byte from [0, 256) to [-128, 128) and scale up.
-        for (int i = position; i < limit; i++) {
-          buffer.put((byte) 0);
-          buffer.put((byte) ((inputBuffer.get(i) & 0xFF) - 128));
+        sampleCount = size;
+        byte[] bytes = readBytes(inputBuffer, size);
+        samples = ensureShortSamplesCapacity(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+          samples[i] = (short) (((bytes[i] & 0xFF) - 128) << 8);
         }
         break;
       case C.ENCODING_PCM_16BIT_BIG_ENDIAN:
         // Big endian to little endian resampling. Swap the byte order.
-        for (int i = position; i < limit; i += 2) {
-          buffer.put(inputBuffer.get(i + 1));
-          buffer.put(inputBuffer.get(i));
+        sampleCount = size / 2;
+        bytes = readBytes(inputBuffer, size);
+        samples = ensureShortSamplesCapacity(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+          samples[i] = (short) ((bytes[2 * i] << 8) | (bytes[2 * i + 1] & 0xFF));
         }
         break;
       case C.ENCODING_PCM_24BIT:
         // 24 -> 16 bit resampling. Drop the least significant byte.
-        for (int i = position; i < limit; i += 3) {
-          buffer.put(inputBuffer.get(i + 1));
-          buffer.put(inputBuffer.get(i + 2));
+        sampleCount = size / 3;
+        bytes = readBytes(inputBuffer, size);
+        samples = ensureShortSamplesCapacity(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+          samples[i] = (short) ((bytes[3 * i + 1] & 0xFF) | (bytes[3 * i + 2] << 8));
         }
         break;
       case C.ENCODING_PCM_32BIT:
         // 32 -> 16 bit resampling. Drop the two least significant bytes.
-        for (int i = position; i < limit; i += 4) {
-          buffer.put(inputBuffer.get(i + 2));
-          buffer.put(inputBuffer.get(i + 3));
+        sampleCount = size / 4;
+        bytes = readBytes(inputBuffer, size);
+        samples = ensureShortSamplesCapacity(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+          samples[i] = (short) ((bytes[4 * i + 2] & 0xFF) | (bytes[4 * i + 3] << 8));
         }
         break;
       case C.ENCODING_PCM_FLOAT:
         // 32 bit floating point -> 16 bit resampling. Floating point values are in the range
         // [-1.0, 1.0], so need to be scaled by Short.MAX_VALUE.
-        for (int i = position; i < limit; i += 4) {
-          short value = (short) (inputBuffer.getFloat(i) * Short.MAX_VALUE);
-          buffer.put((byte) (value & 0xFF));
-          buffer.put((byte) ((value >> 8) & 0xFF));
+        sampleCount = size / 4;
+        if (floatSamples.length < sampleCount) {
+          floatSamples = new float[sampleCount];
+        }
+        float[] floats = floatSamples;
+        inputBuffer.asFloatBuffer().get(floats, 0, sampleCount);
+        samples = ensureShortSamplesCapacity(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+          samples[i] = (short) (floats[i] * Short.MAX_VALUE);
         }
         break;
       case C.ENCODING_PCM_16BIT:
@@ -127,8 +164,54 @@ import java.nio.ByteBuffer;
         // Never happens.
         throw new IllegalStateException();
     }
-    inputBuffer.position(inputBuffer.limit());
-    buffer.flip();
+
+    @Nullable int[] outputChannels = this.outputChannels;
+    if (outputChannels != null) {
+      int frameCount = sampleCount / inputAudioFormat.channelCount;
+      int mappedSampleCount = frameCount * outputChannels.length;
+      if (mappedSamples.length < mappedSampleCount) {
+        mappedSamples = new short[mappedSampleCount];
+      }
+      ChannelMappingAudioProcessor.mapChannels(
+          samples, frameCount, inputAudioFormat.channelCount, outputChannels, mappedSamples);
+      samples = mappedSamples;
+      sampleCount = mappedSampleCount;
+    }
+
+    // Write the little endian output and update the input/output buffers.
+    ByteBuffer buffer = replaceOutputBuffer(sampleCount * 2);
+    buffer.asShortBuffer().put(samples, 0, sampleCount);
+    buffer.limit(sampleCount * 2);
+    inputBuffer.position(limit);
   }
 
+  @Override
+  protected void onFlush() {
+    outputChannels = isActive() ? pendingOutputChannels : null;
+  }
+
+  @Override
+  protected void onReset() {
+    outputChannels = null;
+    pendingOutputChannels = null;
+    byteSamples = Util.EMPTY_BYTE_ARRAY;
+    floatSamples = new float[0];
+    shortSamples = new short[0];
+    mappedSamples = new short[0];
+  }
+
+  private byte[] readBytes(ByteBuffer inputBuffer, int size) {
+    if (byteSamples.length < size) {
+      byteSamples = new byte[size];
+    }
+    inputBuffer.get(byteSamples, 0, size);
+    return byteSamples;
+  }
+
+  private short[] ensureShortSamplesCapacity(int sampleCount) {
+    if (shortSamples.length < sampleCount) {
+      shortSamples = new short[sampleCount];
+    }
+    return shortSamples;
+  }
 }
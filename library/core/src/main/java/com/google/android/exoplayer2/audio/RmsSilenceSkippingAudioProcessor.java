@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An {@link AudioProcessor} that skips silence in the input stream, classifying audio as silent
+ * based on its RMS level. Input and output are 16-bit or float PCM.
+ *
+ * <p>The input is analyzed in short windows, computing the RMS level of each window in a single
+ * pass. Once the input has been silent for the minimum silence duration, further silent input is
+ * skipped. When the input becomes noisy again, output resumes with the padding duration of silence
+ * before the first sample that exceeds the threshold. Input that isn't skipped is never buffered,
+ * and only the most recent skipped input is retained to provide the padding.
+ */
+public final class RmsSilenceSkippingAudioProcessor extends BaseAudioProcessor {
+
+  /** The default minimum duration of silence that is output before skipping starts. */
+  public static final long DEFAULT_MINIMUM_SILENCE_DURATION_US = 100_000;
+  /** The default duration of silence that is output before input that follows skipped silence. */
+  public static final long DEFAULT_PADDING_SILENCE_DURATION_US = 20_000;
+  /** The default RMS level below which audio is classified as silent, in dBFS. */
+  public static final float DEFAULT_SILENCE_THRESHOLD_DBFS = -40f;
+
+  /** The duration of the windows over which the RMS level is computed, in microseconds. */
+  private static final long ANALYSIS_WINDOW_DURATION_US = 10_000;
+
+  private final long minimumSilenceDurationUs;
+  private final long paddingSilenceDurationUs;
+  private final double silenceThresholdLevel;
+
+  private boolean enabled;
+
+  private boolean isFloat;
+  private int bytesPerFrame;
+  private int windowFrameCount;
+  private int minimumSilenceFrameCount;
+  private int paddingFrameCount;
+
+  private boolean skipping;
+  private int windowFramesRemaining;
+  private double windowSumOfSquares;
+  private int silentFrameCount;
+
+  /**
+   * Holds the most recent skipped input, which is the current analysis window preceded by the
+   * padding duration of audio.
+   */
+  private byte[] skippedBuffer;
+  private ByteBuffer skippedByteBuffer;
+  private int skippedBufferSize;
+  private long skippedFrames;
+
+  /** Creates a new silence skipping audio processor with default thresholds and durations. */
+  public RmsSilenceSkippingAudioProcessor() {
+    this(
+        DEFAULT_MINIMUM_SILENCE_DURATION_US,
+        DEFAULT_PADDING_SILENCE_DURATION_US,
+        DEFAULT_SILENCE_THRESHOLD_DBFS);
+  }
+
+  /**
+   * Creates a new silence skipping audio processor.
+   *
+   * @param minimumSilenceDurationUs The duration of silence that is output before the rest of the
+   *     silence is skipped, in microseconds.
+   * @param paddingSilenceDurationUs The duration of silence that is output before input that
+   *     follows skipped silence, in microseconds. Must not exceed {@code
+   *     minimumSilenceDurationUs}.
+   * @param silenceThresholdDbfs The RMS level below which audio is classified as silent, in dBFS.
+   */
+  public RmsSilenceSkippingAudioProcessor(
+      long minimumSilenceDurationUs, long paddingSilenceDurationUs, float silenceThresholdDbfs) {
+    Assertions.checkArgument(paddingSilenceDurationUs <= minimumSilenceDurationUs);
+    this.minimumSilenceDurationUs = minimumSilenceDurationUs;
+    this.paddingSilenceDurationUs = paddingSilenceDurationUs;
+    silenceThresholdLevel = Math.pow(10, silenceThresholdDbfs / 20);
+    skippedBuffer = Util.EMPTY_BYTE_ARRAY;
+    skippedByteBuffer = EMPTY_BUFFER;
+  }
+
+  /**
+   * Sets whether to skip silence in the input. This method may only be called after draining data
+   * through the processor. The value returned by {@link #isActive()} may change, and the processor
+   * must be {@link #flush() flushed} before queueing more data.
+   *
+   * @param enabled Whether to skip silence in the input.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Returns the total number of frames of input audio that were skipped due to being classified as
+   * silence since the last call to {@link #flush()}.
+   */
+  public long getSkippedFrames() {
+    return skippedFrames;
+  }
+
+  // AudioProcessor implementation.
+
+  @Override
+  public AudioFormat onConfigure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT
+        && inputAudioFormat.encoding != C.ENCODING_PCM_FLOAT) {
+      throw new UnhandledAudioFormatException(inputAudioFormat);
+    }
+    return enabled ? inputAudioFormat : AudioFormat.NOT_SET;
+  }
+
+  @Override
+  public boolean isActive() {
+    return enabled;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int position = inputBuffer.position();
+    int limit = inputBuffer.limit();
+    ByteBuffer buffer = replaceOutputBuffer(skippedBuffer.length + limit - position);
+    while (position < limit) {
+      int chunkSize = Math.min(windowFramesRemaining * bytesPerFrame, limit - position);
+      accumulateSumOfSquares(inputBuffer, position, position + chunkSize);
+      windowFramesRemaining -= chunkSize / bytesPerFrame;
+      if (skipping) {
+        appendToSkippedBuffer(inputBuffer, position, chunkSize);
+      } else {
+        inputBuffer.limit(position + chunkSize);
+        inputBuffer.position(position);
+        buffer.put(inputBuffer);
+        inputBuffer.limit(limit);
+      }
+      position += chunkSize;
+      if (windowFramesRemaining == 0) {
+        onWindowEnded(buffer);
+      }
+    }
+    inputBuffer.position(limit);
+    buffer.flip();
+  }
+
+  @Override
+  protected void onQueueEndOfStream() {
+    if (skipping) {
+      skippedFrames += skippedBufferSize / bytesPerFrame;
+      skippedBufferSize = 0;
+    }
+  }
+
+  @Override
+  protected void onFlush() {
+    if (enabled) {
+      isFloat = inputAudioFormat.encoding == C.ENCODING_PCM_FLOAT;
+      bytesPerFrame = inputAudioFormat.bytesPerFrame;
+      windowFrameCount = Math.max(1, durationUsToFrames(ANALYSIS_WINDOW_DURATION_US));
+      minimumSilenceFrameCount = durationUsToFrames(minimumSilenceDurationUs);
+      paddingFrameCount = durationUsToFrames(paddingSilenceDurationUs);
+      int skippedBufferLength = (paddingFrameCount + windowFrameCount) * bytesPerFrame;
+      if (skippedBuffer.length != skippedBufferLength) {
+        skippedBuffer = new byte[skippedBufferLength];
+        skippedByteBuffer = ByteBuffer.wrap(skippedBuffer).order(ByteOrder.nativeOrder());
+      }
+    }
+    skipping = false;
+    windowFramesRemaining = windowFrameCount;
+    windowSumOfSquares = 0;
+    silentFrameCount = 0;
+    skippedBufferSize = 0;
+    skippedFrames = 0;
+  }
+
+  @Override
+  protected void onReset() {
+    enabled = false;
+    windowFrameCount = 0;
+    skippedBuffer = Util.EMPTY_BYTE_ARRAY;
+    skippedByteBuffer = EMPTY_BUFFER;
+  }
+
+  // Internal methods.
+
+  /** Classifies the analysis window that just ended, updating the state if needed. */
+  private void onWindowEnded(ByteBuffer outputBuffer) {
+    double meanSquare =
+        windowSumOfSquares / ((long) windowFrameCount * inputAudioFormat.channelCount);
+    boolean silent = meanSquare < silenceThresholdLevel * silenceThresholdLevel;
+    windowFramesRemaining = windowFrameCount;
+    windowSumOfSquares = 0;
+    if (!skipping) {
+      silentFrameCount = silent ? silentFrameCount + windowFrameCount : 0;
+      skipping = silentFrameCount >= minimumSilenceFrameCount;
+    } else if (!silent) {
+      // Resume output from the padding duration before the first sample over the threshold.
+      int windowStart = skippedBufferSize - windowFrameCount * bytesPerFrame;
+      int noisePosition = findNoisePosition(windowStart);
+      int outputStart = Math.max(0, noisePosition - paddingFrameCount * bytesPerFrame);
+      skippedFrames += outputStart / bytesPerFrame;
+      outputBuffer.put(skippedBuffer, outputStart, skippedBufferSize - outputStart);
+      skippedBufferSize = 0;
+      silentFrameCount = 0;
+      skipping = false;
+    }
+  }
+
+  /** Adds the sum of the squares of samples in [start, end) of {@code buffer} to the window. */
+  private void accumulateSumOfSquares(ByteBuffer buffer, int start, int end) {
+    double sumOfSquares = 0;
+    if (isFloat) {
+      for (int i = start; i < end; i += 4) {
+        float sample = buffer.getFloat(i);
+        sumOfSquares += sample * sample;
+      }
+    } else {
+      long integerSumOfSquares = 0;
+      for (int i = start; i < end; i += 2) {
+        int sample = buffer.getShort(i);
+        integerSumOfSquares += sample * sample;
+      }
+      sumOfSquares = integerSumOfSquares / (32768.0 * 32768.0);
+    }
+    windowSumOfSquares += sumOfSquares;
+  }
+
+  /**
+   * Appends {@code size} bytes of {@code buffer} from {@code position} to {@link #skippedBuffer},
+   * discarding its oldest contents if needed. Discarded frames are counted as skipped.
+   */
+  private void appendToSkippedBuffer(ByteBuffer buffer, int position, int size) {
+    int discardSize = Math.max(0, skippedBufferSize + size - skippedBuffer.length);
+    if (discardSize > 0) {
+      System.arraycopy(
+          skippedBuffer, discardSize, skippedBuffer, 0, skippedBufferSize - discardSize);
+      skippedBufferSize -= discardSize;
+      skippedFrames += discardSize / bytesPerFrame;
+    }
+    int limit = buffer.limit();
+    buffer.limit(position + size);
+    buffer.position(position);
+    buffer.get(skippedBuffer, skippedBufferSize, size);
+    buffer.limit(limit);
+    skippedBufferSize += size;
+  }
+
+  /**
+   * Returns the position in {@link #skippedBuffer} of the first frame at or after {@code start}
+   * with a sample whose magnitude exceeds the silence threshold level, or the position of the last
+   * frame if there is no such frame.
+   */
+  private int findNoisePosition(int start) {
+    int channelCount = inputAudioFormat.channelCount;
+    int bytesPerSample = bytesPerFrame / channelCount;
+    for (int position = start; position < skippedBufferSize; position += bytesPerFrame) {
+      for (int channel = 0; channel < channelCount; channel++) {
+        if (getSampleMagnitude(position + channel * bytesPerSample) > silenceThresholdLevel) {
+          return position;
+        }
+      }
+    }
+    return skippedBufferSize - bytesPerFrame;
+  }
+
+  /** Returns the magnitude of the sample at {@code position} in {@link #skippedBuffer}. */
+  private double getSampleMagnitude(int position) {
+    if (isFloat) {
+      return Math.abs(skippedByteBuffer.getFloat(position));
+    }
+    return Math.abs(skippedByteBuffer.getShort(position)) / 32768.0;
+  }
+
+  /**
+   * Returns the number of input frames corresponding to {@code durationUs} microseconds of audio.
+   */
+  private int durationUsToFrames(long durationUs) {
+    return (int) ((durationUs * inputAudioFormat.sampleRate) / C.MICROS_PER_SECOND);
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+
+/**
+ * Audio processor that converts audio to a different sample rate using windowed sinc
+ * interpolation. Input and output are 16-bit PCM.
+ */
+/* package */ final class SampleRateConversionAudioProcessor extends BaseAudioProcessor {
+
+  /** Indicates that the output sample rate should be the same as the input. */
+  public static final int SAMPLE_RATE_NO_CHANGE = Format.NO_VALUE;
+
+  /** The number of input frames on each side of the output position used for interpolation. */
+  private static final int HALF_FILTER_LENGTH = 16;
+  /** The number of input frames used to compute each output frame. */
+  private static final int FILTER_LENGTH = 2 * HALF_FILTER_LENGTH;
+  /** The number of fractional positions between input frames for which the filter is tabulated. */
+  private static final int PHASE_COUNT = 256;
+  /** The filter cutoff relative to the lower of the input and output Nyquist frequencies. */
+  private static final double CUTOFF = 0.95;
+
+  private int pendingOutputSampleRate;
+
+  private float[] filter;
+  /** Input samples that haven't been fully consumed, preceded by the history used for filtering. */
+  private float[] inputSamples;
+  private int inputFrameCount;
+  /** The index in {@link #inputSamples} of the frame at or before the next output position. */
+  private int inputFrameIndex;
+  /** The fractional part of the next output position, in units of the output sample rate. */
+  private long positionRemainder;
+  /** The number of frames in {@link #inputSamples} that were queued as input, not padding. */
+  private int queuedFrameLimit;
+
+  /** Creates a new sample rate conversion audio processor. */
+  public SampleRateConversionAudioProcessor() {
+    pendingOutputSampleRate = SAMPLE_RATE_NO_CHANGE;
+    filter = new float[0];
+    inputSamples = new float[0];
+  }
+
+  /**
+   * Sets the sample rate for output audio, in Hertz. Pass {@link #SAMPLE_RATE_NO_CHANGE} to output
+   * audio at the same sample rate as the input. After calling this method, call {@link
+   * #configure(AudioFormat)} to configure the processor with the new sample rate.
+   *
+   * @param sampleRateHz The sample rate for output audio, in Hertz.
+   */
+  public void setOutputSampleRateHz(int sampleRateHz) {
+    pendingOutputSampleRate = sampleRateHz;
+  }
+
+  // AudioProcessor implementation.
+
+  @Override
+  public AudioFormat onConfigure(AudioFormat inputAudioFormat)
+      throws UnhandledAudioFormatException {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT) {
+      throw new UnhandledAudioFormatException(inputAudioFormat);
+    }
+    if (pendingOutputSampleRate == SAMPLE_RATE_NO_CHANGE
+        || pendingOutputSampleRate == inputAudioFormat.sampleRate) {
+      return AudioFormat.NOT_SET;
+    }
+    return new AudioFormat(
+        pendingOutputSampleRate, inputAudioFormat.channelCount, C.ENCODING_PCM_16BIT);
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    int channelCount = inputAudioFormat.channelCount;
+    int frameCount = inputBuffer.remaining() / inputAudioFormat.bytesPerFrame;
+    ensureInputCapacity(frameCount);
+    int sampleIndex = inputFrameCount * channelCount;
+    for (int i = 0; i < frameCount * channelCount; i++) {
+      inputSamples[sampleIndex++] = inputBuffer.getShort();
+    }
+    inputFrameCount += frameCount;
+    queuedFrameLimit = inputFrameCount;
+    produceOutput();
+  }
+
+  @Override
+  protected void onQueueEndOfStream() {
+    // Pad with silence so that the filter reaches the end of the input.
+    int channelCount = inputAudioFormat.channelCount;
+    ensureInputCapacity(HALF_FILTER_LENGTH);
+    int sampleIndex = inputFrameCount * channelCount;
+    for (int i = 0; i < HALF_FILTER_LENGTH * channelCount; i++) {
+      inputSamples[sampleIndex++] = 0;
+    }
+    inputFrameCount += HALF_FILTER_LENGTH;
+    produceOutput();
+  }
+
+  @Override
+  protected void onFlush() {
+    if (isActive()) {
+      int inputSampleRate = inputAudioFormat.sampleRate;
+      int outputSampleRate = outputAudioFormat.sampleRate;
+      double cutoff = CUTOFF * Math.min(1, (double) outputSampleRate / inputSampleRate);
+      filter = createFilter(cutoff);
+    }
+    // Start with history of silence so that the first output frame aligns with the first input.
+    int historySampleCount = (HALF_FILTER_LENGTH - 1) * Math.max(0, inputAudioFormat.channelCount);
+    if (inputSamples.length < historySampleCount) {
+      inputSamples = new float[historySampleCount];
+    }
+    for (int i = 0; i < historySampleCount; i++) {
+      inputSamples[i] = 0;
+    }
+    inputFrameCount = HALF_FILTER_LENGTH - 1;
+    inputFrameIndex = HALF_FILTER_LENGTH - 1;
+    queuedFrameLimit = inputFrameCount;
+    positionRemainder = 0;
+  }
+
+  @Override
+  protected void onReset() {
+    pendingOutputSampleRate = SAMPLE_RATE_NO_CHANGE;
+    filter = new float[0];
+    inputSamples = new float[0];
+  }
+
+  // Internal methods.
+
+  /**
+   * Outputs all frames whose filter support lies within the buffered input and that correspond to
+   * queued input, then discards input that is no longer needed.
+   */
+  private void produceOutput() {
+    int channelCount = inputAudioFormat.channelCount;
+    int inputSampleRate = inputAudioFormat.sampleRate;
+    int outputSampleRate = outputAudioFormat.sampleRate;
+
+    // Count the output frames that can be produced, then produce them.
+    int outputFrameCount = 0;
+    int frameIndex = inputFrameIndex;
+    long remainder = positionRemainder;
+    while (frameIndex + HALF_FILTER_LENGTH < inputFrameCount && frameIndex < queuedFrameLimit) {
+      outputFrameCount++;
+      remainder += inputSampleRate;
+      frameIndex += (int) (remainder / outputSampleRate);
+      remainder %= outputSampleRate;
+    }
+    ByteBuffer buffer = replaceOutputBuffer(outputFrameCount * outputAudioFormat.bytesPerFrame);
+    for (int i = 0; i < outputFrameCount; i++) {
+      int phase = (int) (positionRemainder * PHASE_COUNT / outputSampleRate);
+      int filterOffset = phase * FILTER_LENGTH;
+      int firstSampleIndex = (inputFrameIndex - HALF_FILTER_LENGTH + 1) * channelCount;
+      for (int channel = 0; channel < channelCount; channel++) {
+        float sum = 0;
+        int sampleIndex = firstSampleIndex + channel;
+        for (int tap = 0; tap < FILTER_LENGTH; tap++) {
+          sum += inputSamples[sampleIndex] * filter[filterOffset + tap];
+          sampleIndex += channelCount;
+        }
+        int sample = Math.round(sum);
+        buffer.putShort((short) Util.constrainValue(sample, Short.MIN_VALUE, Short.MAX_VALUE));
+      }
+      positionRemainder += inputSampleRate;
+      inputFrameIndex += (int) (positionRemainder / outputSampleRate);
+      positionRemainder %= outputSampleRate;
+    }
+    buffer.flip();
+
+    // Discard input frames that are before the filter support of the next output frame.
+    int discardFrameCount = Math.min(inputFrameIndex - HALF_FILTER_LENGTH + 1, inputFrameCount);
+    if (discardFrameCount > 0) {
+      System.arraycopy(
+          inputSamples,
+          discardFrameCount * channelCount,
+          inputSamples,
+          0,
+          (inputFrameCount - discardFrameCount) * channelCount);
+      inputFrameCount -= discardFrameCount;
+      inputFrameIndex -= discardFrameCount;
+      queuedFrameLimit -= discardFrameCount;
+    }
+  }
+
+  private void ensureInputCapacity(int additionalFrameCount) {
+    int requiredSampleCount =
+        (inputFrameCount + additionalFrameCount) * inputAudioFormat.channelCount;
+    if (inputSamples.length < requiredSampleCount) {
+      float[] newInputSamples = new float[requiredSampleCount];
+      System.arraycopy(
+          inputSamples, 0, newInputSamples, 0, inputFrameCount * inputAudioFormat.channelCount);
+      inputSamples = newInputSamples;
+    }
+  }
+
+  /**
+   * Returns a table of Blackman windowed sinc filter coefficients for each phase, normalized to
+   * unity gain at DC.
+   *
+   * @param cutoff The cutoff frequency relative to the input Nyquist frequency.
+   */
+  private static float[] createFilter(double cutoff) {
+    float[] filter = new float[PHASE_COUNT * FILTER_LENGTH];
+    for (int phase = 0; phase < PHASE_COUNT; phase++) {
+      double fraction = (double) phase / PHASE_COUNT;
+      double sum = 0;
+      for (int tap = 0; tap < FILTER_LENGTH; tap++) {
+        // Distance from the output position to the input frame used by this tap.
+        double x = HALF_FILTER_LENGTH - 1 - tap + fraction;
+        double sinc = x == 0 ? 1 : Math.sin(Math.PI * cutoff * x) / (Math.PI * cutoff * x);
+        double windowPosition = (x + HALF_FILTER_LENGTH) / FILTER_LENGTH;
+        double window =
+            0.42
+                - 0.5 * Math.cos(2 * Math.PI * windowPosition)
+                + 0.08 * Math.cos(4 * Math.PI * windowPosition);
+        double coefficient = sinc * window;
+        filter[phase * FILTER_LENGTH + tap] = (float) coefficient;
+        sum += coefficient;
+      }
+      for (int tap = 0; tap < FILTER_LENGTH; tap++) {
+        filter[phase * FILTER_LENGTH + tap] /= sum;
+      }
+    }
+    return filter;
+  }
+}
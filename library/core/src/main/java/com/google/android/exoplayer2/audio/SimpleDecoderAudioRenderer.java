@@ -66,6 +66,9 @@ import java.lang.annotation.RetentionPolicy;
  */
 public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements MediaClock {
 
+  /** The default number of input and output buffers allocated for each decoder. */
+  public static final int DEFAULT_DECODER_BUFFER_COUNT = 16;
+
   @Documented
   @Retention(RetentionPolicy.SOURCE)
   @IntDef({
@@ -119,6 +122,15 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
   private boolean inputStreamEnded;
   private boolean outputStreamEnded;
   private boolean waitingForKeys;
+  private boolean audioSinkBufferFull;
+
+  private int decoderInputBufferCount;
+  private int decoderOutputBufferCount;
+  private int decodeAheadBufferCount;
+  private int pendingDecodeCount;
+  private boolean decoderStarved;
+  private boolean sinkStarved;
+  private long lastRenderElapsedRealtimeUs;
 
   public SimpleDecoderAudioRenderer() {
     this(/* eventHandler= */ null, /* eventListener= */ null);
@@ -216,6 +228,46 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
     flagsOnlyBuffer = DecoderInputBuffer.newFlagsOnlyInstance();
     decoderReinitializationState = REINITIALIZATION_STATE_NONE;
     audioTrackNeedsConfigure = true;
+    decoderInputBufferCount = DEFAULT_DECODER_BUFFER_COUNT;
+    decoderOutputBufferCount = DEFAULT_DECODER_BUFFER_COUNT;
+    decodeAheadBufferCount = C.LENGTH_UNSET;
+    lastRenderElapsedRealtimeUs = C.TIME_UNSET;
+  }
+
+  /**
+   * Sets the number of input and output buffers to allocate for each decoder. Larger counts allow
+   * the decoder to get further ahead of the sink, at the cost of memory. The counts take effect
+   * when the next decoder is created.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release. It should
+   * only be called before the renderer is used.
+   *
+   * @param inputBufferCount The number of input buffers.
+   * @param outputBufferCount The number of output buffers.
+   */
+  public void experimental_setDecoderBufferCounts(int inputBufferCount, int outputBufferCount) {
+    Assertions.checkArgument(inputBufferCount > 0 && outputBufferCount > 0);
+    decoderInputBufferCount = inputBufferCount;
+    decoderOutputBufferCount = outputBufferCount;
+  }
+
+  /**
+   * Sets the maximum number of input buffers that may be queued to the decoder ahead of the output
+   * that has been drained from it, at normal playback speed. The limit is scaled up in proportion
+   * to the playback speed when playing faster, so that decoding keeps ahead of the sink, and is
+   * always bounded by the number of input buffers.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release. It should
+   * only be called before the renderer is used.
+   *
+   * @param decodeAheadBufferCount The maximum number of input buffers to decode ahead at normal
+   *     playback speed, or {@link C#LENGTH_UNSET} to queue input whenever an input buffer is
+   *     available.
+   */
+  public void experimental_setDecodeAheadBufferCount(int decodeAheadBufferCount) {
+    Assertions.checkArgument(
+        decodeAheadBufferCount > 0 || decodeAheadBufferCount == C.LENGTH_UNSET);
+    this.decodeAheadBufferCount = decodeAheadBufferCount;
   }
 
   @Override
@@ -259,8 +311,30 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
     return audioSink.supportsOutput(channelCount, encoding);
   }
 
+  /**
+   * Returns the number of input buffers that {@link #createDecoder(Format, ExoMediaCrypto)} should
+   * allocate.
+   *
+   * @see #experimental_setDecoderBufferCounts(int, int)
+   */
+  protected final int getDecoderInputBufferCount() {
+    return decoderInputBufferCount;
+  }
+
+  /**
+   * Returns the number of output buffers that {@link #createDecoder(Format, ExoMediaCrypto)} should
+   * allocate.
+   *
+   * @see #experimental_setDecoderBufferCounts(int, int)
+   */
+  protected final int getDecoderOutputBufferCount() {
+    return decoderOutputBufferCount;
+  }
+
   @Override
   public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+    decoderCounters.renderCount++;
+    updateStarvedTime(elapsedRealtimeUs);
     if (outputStreamEnded) {
       try {
         audioSink.playToEndOfStream();
@@ -297,6 +371,7 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
       try {
         // Rendering loop.
         TraceUtil.beginSection("drainAndFeed");
+        decoderStarved = false;
         while (drainOutputBuffer()) {}
         while (feedInputBuffer()) {}
         TraceUtil.endSection();
@@ -304,6 +379,13 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
           | AudioSink.InitializationException | AudioSink.WriteException e) {
         throw createRendererException(e, inputFormat);
       }
+      // The sink is starved if it could accept more data but the decoder hasn't caught up with the
+      // input that has been queued to it.
+      sinkStarved =
+          outputBuffer == null
+              && !audioSinkBufferFull
+              && !outputStreamEnded
+              && getPendingDecodeCount() > 0;
       decoderCounters.ensureUpdated();
     }
   }
@@ -374,6 +456,9 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
       if (outputBuffer == null) {
         return false;
       }
+      // Each queued input buffer results in one output buffer, which may have been skipped.
+      pendingDecodeCount =
+          Math.max(0, pendingDecodeCount - 1 - outputBuffer.skippedOutputBufferCount);
       if (outputBuffer.skippedOutputBufferCount > 0) {
         decoderCounters.skippedOutputBufferCount += outputBuffer.skippedOutputBufferCount;
         audioSink.handleDiscontinuity();
@@ -397,6 +482,7 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
 
     if (audioTrackNeedsConfigure) {
       Format outputFormat = getOutputFormat();
+      audioSink.setInputMetadata(inputFormat.metadata);
       audioSink.configure(outputFormat.pcmEncoding, outputFormat.channelCount,
           outputFormat.sampleRate, 0, null, encoderDelay, encoderPadding);
       audioTrackNeedsConfigure = false;
@@ -406,9 +492,11 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
       decoderCounters.renderedOutputBufferCount++;
       outputBuffer.release();
       outputBuffer = null;
+      audioSinkBufferFull = false;
       return true;
     }
 
+    audioSinkBufferFull = true;
     return false;
   }
 
@@ -419,6 +507,10 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
       return false;
     }
 
+    if (isDecodeAheadLimitReached()) {
+      return false;
+    }
+
     if (inputBuffer == null) {
       inputBuffer = decoder.dequeueInputBuffer();
       if (inputBuffer == null) {
@@ -444,6 +536,7 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
     }
 
     if (result == C.RESULT_NOTHING_READ) {
+      decoderStarved = true;
       return false;
     }
     if (result == C.RESULT_FORMAT_READ) {
@@ -465,6 +558,7 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
     onQueueInputBuffer(inputBuffer);
     decoder.queueInputBuffer(inputBuffer);
     decoderReceivedBuffers = true;
+    pendingDecodeCount++;
     decoderCounters.inputBufferCount++;
     inputBuffer = null;
     return true;
@@ -506,7 +600,38 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
       }
       decoder.flush();
       decoderReceivedBuffers = false;
+      pendingDecodeCount = 0;
+    }
+  }
+
+  private boolean isDecodeAheadLimitReached() {
+    if (decodeAheadBufferCount == C.LENGTH_UNSET) {
+      return false;
     }
+    float speed = Math.max(1f, audioSink.getPlaybackParameters().speed);
+    int decodeAheadLimit = (int) Math.ceil(decodeAheadBufferCount * speed);
+    return getPendingDecodeCount() >= decodeAheadLimit;
+  }
+
+  private int getPendingDecodeCount() {
+    // Decode-only output buffers are dropped by the decoder, and are only reported through the
+    // next output buffer that's dequeued. They must not count towards the limit in the meantime,
+    // else feeding could stop after a seek before any output is available to drain.
+    return Math.max(0, pendingDecodeCount - decoder.getPendingSkippedOutputBufferCount());
+  }
+
+  private void updateStarvedTime(long elapsedRealtimeUs) {
+    if (lastRenderElapsedRealtimeUs != C.TIME_UNSET) {
+      long elapsedSinceLastRenderUs = elapsedRealtimeUs - lastRenderElapsedRealtimeUs;
+      if (decoderStarved) {
+        decoderCounters.decoderStarvedTimeUs += elapsedSinceLastRenderUs;
+      }
+      if (sinkStarved) {
+        decoderCounters.sinkStarvedTimeUs += elapsedSinceLastRenderUs;
+      }
+    }
+    lastRenderElapsedRealtimeUs =
+        getState() == STATE_STARTED ? elapsedRealtimeUs : C.TIME_UNSET;
   }
 
   @Override
@@ -528,6 +653,21 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
     return currentPositionUs;
   }
 
+  @Override
+  public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+    long audioTrackBufferSizeUs = audioSink.getAudioTrackBufferSizeUs();
+    // The renderer isn't started whilst the player is buffering, in which case the player needs to
+    // check frequently whether playback can start.
+    if (!audioSinkBufferFull
+        || audioTrackBufferSizeUs == C.TIME_UNSET
+        || getState() != STATE_STARTED) {
+      return super.getDurationToProgressUs(positionUs, elapsedRealtimeUs);
+    }
+    // The sink won't accept more data until some of its buffer has been played out, so there's no
+    // need to render again until around half of the buffer has drained.
+    return audioTrackBufferSizeUs / 2;
+  }
+
   @Override
   public void setPlaybackParameters(PlaybackParameters playbackParameters) {
     audioSink.setPlaybackParameters(playbackParameters);
@@ -562,6 +702,8 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
     allowPositionDiscontinuity = true;
     inputStreamEnded = false;
     outputStreamEnded = false;
+    audioSinkBufferFull = false;
+    resetStarvedState();
     if (decoder != null) {
       flushDecoder();
     }
@@ -576,6 +718,7 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
   protected void onStopped() {
     updateCurrentPosition();
     audioSink.pause();
+    resetStarvedState();
   }
 
   @Override
@@ -583,6 +726,8 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
     inputFormat = null;
     audioTrackNeedsConfigure = true;
     waitingForKeys = false;
+    audioSinkBufferFull = false;
+    resetStarvedState();
     try {
       setSourceDrmSession(null);
       releaseDecoder();
@@ -661,6 +806,9 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
     outputBuffer = null;
     decoderReinitializationState = REINITIALIZATION_STATE_NONE;
     decoderReceivedBuffers = false;
+    pendingDecodeCount = 0;
+    decoderStarved = false;
+    sinkStarved = false;
     if (decoder != null) {
       decoder.release();
       decoder = null;
@@ -721,6 +869,12 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
     }
   }
 
+  private void resetStarvedState() {
+    decoderStarved = false;
+    sinkStarved = false;
+    lastRenderElapsedRealtimeUs = C.TIME_UNSET;
+  }
+
   private void updateCurrentPosition() {
     long newCurrentPositionUs = audioSink.getCurrentPositionUs(isEnded());
     if (newCurrentPositionUs != AudioSink.CURRENT_POSITION_NOT_SET) {
@@ -753,6 +907,11 @@ public abstract class SimpleDecoderAudioRenderer extends BaseRenderer implements
       onAudioTrackUnderrun(bufferSize, bufferSizeMs, elapsedSinceLastFeedMs);
     }
 
+    @Override
+    public void onSilenceSkipped(long skippedDurationUs) {
+      eventDispatcher.silenceSkipped(skippedDurationUs);
+    }
+
   }
 
 }
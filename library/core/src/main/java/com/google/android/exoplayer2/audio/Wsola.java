@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Time stretcher based on waveform similarity overlap-add (WSOLA).
+ *
+ * <p>Output is synthesized from Hann-windowed segments of the input that overlap by half a window.
+ * Segments are read from the input at a hop size scaled by the speed, and each segment's position
+ * is adjusted within a tolerance so that it best continues the previously output segment. This
+ * keeps the pitch unchanged and avoids the phasing artifacts of plain overlap-add, including at
+ * high speeds where large parts of the input are skipped.
+ *
+ * <p>Audio is processed as planar float samples. The similarity search runs on a decimated mono
+ * mixdown of the input and is then refined at full resolution, and all working buffers are reused
+ * between segments.
+ */
+/* package */ final class Wsola {
+
+  /** The target window duration, in milliseconds. The window length is a power of two. */
+  private static final int TARGET_WINDOW_DURATION_MS = 30;
+  /** The sample rate at which the coarse similarity search is performed, in hertz. */
+  private static final int SEARCH_SAMPLE_RATE_HZ = 12000;
+
+  private final int channelCount;
+  private final float speed;
+  private final int windowLength;
+  private final int synthesisHop;
+  private final double analysisHop;
+  private final int tolerance;
+  private final int decimationFactor;
+  private final float[] window;
+  private final float[][] overlapBuffer;
+  private final float[] decimatedTemplate;
+  private final float[] decimatedCandidates;
+
+  private short[] interleavedInputBuffer;
+  private float[][] inputBuffer;
+  private int inputFrameCount;
+  private long inputStartPosition;
+  private short[] outputBuffer;
+  private int outputFrameCount;
+
+  private boolean isFirstSegment;
+  private double nominalPosition;
+  private long previousPosition;
+  private long totalInputFrameCount;
+  private long totalOutputFrameCount;
+
+  /**
+   * Creates a new WSOLA time stretcher.
+   *
+   * @param sampleRateHz The sample rate of the audio, in hertz.
+   * @param channelCount The number of channels in the audio.
+   * @param speed The speedup factor for output audio.
+   */
+  public Wsola(int sampleRateHz, int channelCount, float speed) {
+    this.channelCount = channelCount;
+    this.speed = speed;
+    windowLength =
+        Math.max(64, Integer.highestOneBit(sampleRateHz * TARGET_WINDOW_DURATION_MS / 1000));
+    synthesisHop = windowLength / 2;
+    analysisHop = synthesisHop * (double) speed;
+    tolerance = windowLength / 4;
+    decimationFactor = Math.max(1, sampleRateHz / SEARCH_SAMPLE_RATE_HZ);
+    window = new float[windowLength];
+    for (int i = 0; i < windowLength; i++) {
+      // A periodic Hann window, whose copies sum to one when overlapping by half a window.
+      window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / windowLength));
+    }
+    overlapBuffer = new float[channelCount][synthesisHop];
+    decimatedTemplate = new float[windowLength / decimationFactor];
+    decimatedCandidates = new float[(2 * tolerance + windowLength) / decimationFactor + 1];
+    interleavedInputBuffer = new short[0];
+    inputBuffer = new float[channelCount][getMaxRequiredFrameCount()];
+    outputBuffer = new short[synthesisHop * channelCount];
+    isFirstSegment = true;
+  }
+
+  /**
+   * Queues remaining data from {@code buffer}, and advances its position by the number of bytes
+   * consumed.
+   *
+   * @param buffer A {@link ShortBuffer} containing input data between its position and limit.
+   */
+  public void queueInput(ShortBuffer buffer) {
+    int framesToWrite = buffer.remaining() / channelCount;
+    int samplesToWrite = framesToWrite * channelCount;
+    if (interleavedInputBuffer.length < samplesToWrite) {
+      interleavedInputBuffer = new short[samplesToWrite];
+    }
+    buffer.get(interleavedInputBuffer, 0, samplesToWrite);
+    discardConsumedInput();
+    ensureInputCapacity(inputFrameCount + framesToWrite);
+    for (int channel = 0; channel < channelCount; channel++) {
+      float[] samples = inputBuffer[channel];
+      int inputIndex = channel;
+      for (int frame = inputFrameCount; frame < inputFrameCount + framesToWrite; frame++) {
+        samples[frame] = interleavedInputBuffer[inputIndex] / 32768f;
+        inputIndex += channelCount;
+      }
+    }
+    inputFrameCount += framesToWrite;
+    totalInputFrameCount += framesToWrite;
+    processStreamInput();
+  }
+
+  /**
+   * Gets available output, outputting to the start of {@code buffer}. The buffer's position will be
+   * advanced by the number of bytes written.
+   *
+   * @param buffer A {@link ShortBuffer} into which output will be written.
+   */
+  public void getOutput(ShortBuffer buffer) {
+    int framesToRead = Math.min(buffer.remaining() / channelCount, outputFrameCount);
+    buffer.put(outputBuffer, 0, framesToRead * channelCount);
+    outputFrameCount -= framesToRead;
+    System.arraycopy(
+        outputBuffer,
+        framesToRead * channelCount,
+        outputBuffer,
+        0,
+        outputFrameCount * channelCount);
+  }
+
+  /**
+   * Forces generating output using whatever data has been queued already. The output is truncated
+   * so that its duration matches the duration of the input scaled by the speed.
+   */
+  public void queueEndOfStream() {
+    long expectedOutputFrameCount = (long) (totalInputFrameCount / (double) speed + 0.5);
+    // Add enough silence for segments covering all of the input to be output.
+    int silenceFrameCount = getMaxRequiredFrameCount() + (int) Math.ceil(analysisHop);
+    discardConsumedInput();
+    ensureInputCapacity(inputFrameCount + silenceFrameCount);
+    for (int channel = 0; channel < channelCount; channel++) {
+      Arrays.fill(inputBuffer[channel], inputFrameCount, inputFrameCount + silenceFrameCount, 0f);
+    }
+    inputFrameCount += silenceFrameCount;
+    while (totalOutputFrameCount < expectedOutputFrameCount && processSegment()) {}
+    // Throw away any extra frames generated due to the added silence.
+    long extraFrameCount = totalOutputFrameCount - expectedOutputFrameCount;
+    if (extraFrameCount > 0) {
+      outputFrameCount -= (int) Math.min(extraFrameCount, outputFrameCount);
+    }
+    totalInputFrameCount = 0;
+    totalOutputFrameCount = 0;
+  }
+
+  /** Clears state in preparation for receiving a new stream of input buffers. */
+  public void flush() {
+    inputFrameCount = 0;
+    inputStartPosition = 0;
+    outputFrameCount = 0;
+    isFirstSegment = true;
+    nominalPosition = 0;
+    previousPosition = 0;
+    totalInputFrameCount = 0;
+    totalOutputFrameCount = 0;
+  }
+
+  /** Returns the size of output that can be read with {@link #getOutput(ShortBuffer)}, in bytes. */
+  public int getOutputSize() {
+    return outputFrameCount * channelCount * 2;
+  }
+
+  // Internal methods.
+
+  private int getMaxRequiredFrameCount() {
+    // The template starts up to one synthesis hop after the candidate search range.
+    return 2 * tolerance + synthesisHop + windowLength;
+  }
+
+  private void processStreamInput() {
+    while (processSegment()) {}
+  }
+
+  /**
+   * Outputs the next segment if enough input is available.
+   *
+   * @return Whether a segment was output.
+   */
+  private boolean processSegment() {
+    long nominalSegmentPosition = Math.round(nominalPosition);
+    long inputEndPosition = inputStartPosition + inputFrameCount;
+    long segmentPosition;
+    if (isFirstSegment) {
+      if (nominalSegmentPosition + windowLength > inputEndPosition) {
+        return false;
+      }
+      segmentPosition = nominalSegmentPosition;
+    } else {
+      long templatePosition = previousPosition + synthesisHop;
+      long minPosition = Math.max(inputStartPosition, nominalSegmentPosition - tolerance);
+      long maxPosition = nominalSegmentPosition + tolerance;
+      if (Math.max(maxPosition, templatePosition) + windowLength > inputEndPosition) {
+        return false;
+      }
+      segmentPosition =
+          findBestSegmentPosition(
+              (int) (templatePosition - inputStartPosition),
+              (int) (minPosition - inputStartPosition),
+              (int) (maxPosition - inputStartPosition));
+    }
+    overlapAddSegment((int) (segmentPosition - inputStartPosition));
+    isFirstSegment = false;
+    previousPosition = segmentPosition;
+    nominalPosition += analysisHop;
+    return true;
+  }
+
+  /**
+   * Returns the position of the segment between {@code minOffset} and {@code maxOffset} that is
+   * most similar to the template at {@code templateOffset}, as an absolute input position.
+   */
+  private long findBestSegmentPosition(int templateOffset, int minOffset, int maxOffset) {
+    // Coarse search on a decimated mono mixdown.
+    int decimatedLength = decimatedTemplate.length;
+    int decimatedLagCount = (maxOffset - minOffset) / decimationFactor + 1;
+    decimate(templateOffset, decimatedLength, decimatedTemplate);
+    decimate(minOffset, decimatedLagCount + decimatedLength - 1, decimatedCandidates);
+    float energy = 0;
+    for (int i = 0; i < decimatedLength; i++) {
+      energy += decimatedCandidates[i] * decimatedCandidates[i];
+    }
+    int bestLag = 0;
+    float bestScore = Float.NEGATIVE_INFINITY;
+    for (int lag = 0; lag < decimatedLagCount; lag++) {
+      if (lag > 0) {
+        float removed = decimatedCandidates[lag - 1];
+        float added = decimatedCandidates[lag + decimatedLength - 1];
+        energy += added * added - removed * removed;
+      }
+      float correlation = 0;
+      for (int i = 0; i < decimatedLength; i++) {
+        correlation += decimatedTemplate[i] * decimatedCandidates[lag + i];
+      }
+      float score = correlation / (float) Math.sqrt(Math.max(energy, 1e-9f));
+      if (score > bestScore) {
+        bestScore = score;
+        bestLag = lag;
+      }
+    }
+    int bestOffset = minOffset + bestLag * decimationFactor;
+    if (decimationFactor > 1) {
+      bestOffset =
+          refineSegmentOffset(
+              templateOffset,
+              Math.max(minOffset, bestOffset - decimationFactor + 1),
+              Math.min(maxOffset, bestOffset + decimationFactor - 1));
+    }
+    return inputStartPosition + bestOffset;
+  }
+
+  /** Refines the segment offset at full resolution, using unnormalized correlation. */
+  private int refineSegmentOffset(int templateOffset, int minOffset, int maxOffset) {
+    int bestOffset = minOffset;
+    float bestCorrelation = Float.NEGATIVE_INFINITY;
+    for (int offset = minOffset; offset <= maxOffset; offset++) {
+      float correlation = 0;
+      for (int channel = 0; channel < channelCount; channel++) {
+        float[] samples = inputBuffer[channel];
+        for (int i = 0; i < windowLength; i++) {
+          correlation += samples[templateOffset + i] * samples[offset + i];
+        }
+      }
+      if (correlation > bestCorrelation) {
+        bestCorrelation = correlation;
+        bestOffset = offset;
+      }
+    }
+    return bestOffset;
+  }
+
+  /** Writes {@code length} decimated mono samples starting at {@code offset} to {@code output}. */
+  private void decimate(int offset, int length, float[] output) {
+    Arrays.fill(output, 0, length, 0f);
+    for (int channel = 0; channel < channelCount; channel++) {
+      float[] samples = inputBuffer[channel];
+      int inputIndex = offset;
+      for (int i = 0; i < length; i++) {
+        float sum = 0;
+        for (int j = 0; j < decimationFactor; j++) {
+          sum += samples[inputIndex++];
+        }
+        output[i] += sum;
+      }
+    }
+  }
+
+  private void overlapAddSegment(int offset) {
+    ensureOutputCapacity(outputFrameCount + synthesisHop);
+    int outputIndex = outputFrameCount * channelCount;
+    for (int channel = 0; channel < channelCount; channel++) {
+      float[] samples = inputBuffer[channel];
+      float[] overlap = overlapBuffer[channel];
+      for (int i = 0; i < synthesisHop; i++) {
+        float sample =
+            isFirstSegment ? samples[offset + i] : overlap[i] + window[i] * samples[offset + i];
+        overlap[i] = window[synthesisHop + i] * samples[offset + synthesisHop + i];
+        outputBuffer[outputIndex + i * channelCount + channel] = toShort(sample);
+      }
+    }
+    outputFrameCount += synthesisHop;
+    totalOutputFrameCount += synthesisHop;
+  }
+
+  /** Discards input that can no longer be part of a segment or template. */
+  private void discardConsumedInput() {
+    long firstRequiredPosition =
+        isFirstSegment
+            ? Math.round(nominalPosition)
+            : Math.min(
+                previousPosition + synthesisHop, Math.round(nominalPosition) - tolerance);
+    int discardFrameCount =
+        (int) Math.min(Math.max(0, firstRequiredPosition - inputStartPosition), inputFrameCount);
+    if (discardFrameCount == 0) {
+      return;
+    }
+    inputFrameCount -= discardFrameCount;
+    for (int channel = 0; channel < channelCount; channel++) {
+      System.arraycopy(
+          inputBuffer[channel], discardFrameCount, inputBuffer[channel], 0, inputFrameCount);
+    }
+    inputStartPosition += discardFrameCount;
+  }
+
+  private void ensureInputCapacity(int frameCount) {
+    if (inputBuffer[0].length < frameCount) {
+      int newLength = Math.max(frameCount, inputBuffer[0].length * 3 / 2);
+      for (int channel = 0; channel < channelCount; channel++) {
+        inputBuffer[channel] = Arrays.copyOf(inputBuffer[channel], newLength);
+      }
+    }
+  }
+
+  private void ensureOutputCapacity(int frameCount) {
+    if (outputBuffer.length < frameCount * channelCount) {
+      int newLength = Math.max(frameCount, (outputBuffer.length / channelCount) * 3 / 2);
+      outputBuffer = Arrays.copyOf(outputBuffer, newLength * channelCount);
+    }
+  }
+
+  private static short toShort(float sample) {
+    float scaled = sample * 32768f;
+    if (scaled >= Short.MAX_VALUE) {
+      return Short.MAX_VALUE;
+    } else if (scaled <= Short.MIN_VALUE) {
+      return Short.MIN_VALUE;
+    }
+    return (short) scaled;
+  }
+}
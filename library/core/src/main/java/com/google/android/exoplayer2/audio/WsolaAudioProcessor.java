@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * An {@link AudioProcessor} that changes the speed of audio without changing its pitch, using
+ * waveform similarity overlap-add (WSOLA).
+ *
+ * <p>Compared to {@link SonicAudioProcessor}, this processor gives higher quality output at large
+ * speed changes (for example above 2x), but doesn't support changing the pitch or sample rate.
+ */
+public final class WsolaAudioProcessor implements AudioProcessor {
+
+  /** The maximum allowed playback speed in {@link #setSpeed(float)}. */
+  public static final float MAXIMUM_SPEED = 8.0f;
+  /** The minimum allowed playback speed in {@link #setSpeed(float)}. */
+  public static final float MINIMUM_SPEED = 0.1f;
+
+  /** The threshold below which the difference between two speed factors is negligible. */
+  private static final float CLOSE_THRESHOLD = 0.01f;
+
+  /**
+   * The minimum number of output bytes at which the speedup is calculated using the input/output
+   * byte counts, rather than using the current playback parameters speed.
+   */
+  private static final int MIN_BYTES_FOR_SPEEDUP_CALCULATION = 1024;
+
+  private float speed;
+
+  private AudioFormat pendingAudioFormat;
+  private AudioFormat audioFormat;
+
+  private boolean pendingWsolaRecreation;
+  @Nullable private Wsola wsola;
+  private ByteBuffer buffer;
+  private ShortBuffer shortBuffer;
+  private ByteBuffer outputBuffer;
+  private long inputBytes;
+  private long outputBytes;
+  private boolean inputEnded;
+
+  /** Creates a new WSOLA audio processor. */
+  public WsolaAudioProcessor() {
+    speed = 1f;
+    pendingAudioFormat = AudioFormat.NOT_SET;
+    audioFormat = AudioFormat.NOT_SET;
+    buffer = EMPTY_BUFFER;
+    shortBuffer = buffer.asShortBuffer();
+    outputBuffer = EMPTY_BUFFER;
+  }
+
+  /**
+   * Sets the playback speed. This method may only be called after draining data through the
+   * processor. The value returned by {@link #isActive()} may change, and the processor must be
+   * {@link #flush() flushed} before queueing more data.
+   *
+   * @param speed The requested new playback speed.
+   * @return The actual new playback speed.
+   */
+  public float setSpeed(float speed) {
+    speed = Util.constrainValue(speed, MINIMUM_SPEED, MAXIMUM_SPEED);
+    if (this.speed != speed) {
+      this.speed = speed;
+      pendingWsolaRecreation = true;
+    }
+    return speed;
+  }
+
+  /**
+   * Returns the specified duration scaled to take into account the speedup factor of this instance,
+   * in the same units as {@code duration}.
+   *
+   * @param duration The duration to scale taking into account speedup.
+   * @return The specified duration scaled to take into account speedup, in the same units as
+   *     {@code duration}.
+   */
+  public long scaleDurationForSpeedup(long duration) {
+    if (outputBytes >= MIN_BYTES_FOR_SPEEDUP_CALCULATION) {
+      return Util.scaleLargeTimestamp(duration, inputBytes, outputBytes);
+    } else {
+      return (long) ((double) speed * duration);
+    }
+  }
+
+  @Override
+  public AudioFormat configure(AudioFormat inputAudioFormat) throws UnhandledAudioFormatException {
+    if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT) {
+      throw new UnhandledAudioFormatException(inputAudioFormat);
+    }
+    pendingAudioFormat = inputAudioFormat;
+    pendingWsolaRecreation = true;
+    return pendingAudioFormat;
+  }
+
+  @Override
+  public boolean isActive() {
+    return pendingAudioFormat.sampleRate != Format.NO_VALUE
+        && Math.abs(speed - 1f) >= CLOSE_THRESHOLD;
+  }
+
+  @Override
+  public void queueInput(ByteBuffer inputBuffer) {
+    Wsola wsola = Assertions.checkNotNull(this.wsola);
+    if (inputBuffer.hasRemaining()) {
+      ShortBuffer shortBuffer = inputBuffer.asShortBuffer();
+      int inputSize = inputBuffer.remaining();
+      inputBytes += inputSize;
+      wsola.queueInput(shortBuffer);
+      inputBuffer.position(inputBuffer.position() + inputSize);
+    }
+    int outputSize = wsola.getOutputSize();
+    if (outputSize > 0) {
+      if (buffer.capacity() < outputSize) {
+        buffer = ByteBuffer.allocateDirect(outputSize).order(ByteOrder.nativeOrder());
+        shortBuffer = buffer.asShortBuffer();
+      } else {
+        buffer.clear();
+        shortBuffer.clear();
+      }
+      wsola.getOutput(shortBuffer);
+      outputBytes += outputSize;
+      buffer.limit(outputSize);
+      outputBuffer = buffer;
+    }
+  }
+
+  @Override
+  public void queueEndOfStream() {
+    if (wsola != null) {
+      wsola.queueEndOfStream();
+    }
+    inputEnded = true;
+  }
+
+  @Override
+  public ByteBuffer getOutput() {
+    ByteBuffer outputBuffer = this.outputBuffer;
+    this.outputBuffer = EMPTY_BUFFER;
+    return outputBuffer;
+  }
+
+  @Override
+  public boolean isEnded() {
+    return inputEnded && (wsola == null || wsola.getOutputSize() == 0);
+  }
+
+  @Override
+  public void flush() {
+    if (isActive()) {
+      audioFormat = pendingAudioFormat;
+      if (pendingWsolaRecreation) {
+        wsola = new Wsola(audioFormat.sampleRate, audioFormat.channelCount, speed);
+        pendingWsolaRecreation = false;
+      } else if (wsola != null) {
+        wsola.flush();
+      }
+    }
+    outputBuffer = EMPTY_BUFFER;
+    inputBytes = 0;
+    outputBytes = 0;
+    inputEnded = false;
+  }
+
+  @Override
+  public void reset() {
+    speed = 1f;
+    pendingAudioFormat = AudioFormat.NOT_SET;
+    audioFormat = AudioFormat.NOT_SET;
+    buffer = EMPTY_BUFFER;
+    shortBuffer = buffer.asShortBuffer();
+    outputBuffer = EMPTY_BUFFER;
+    pendingWsolaRecreation = false;
+    wsola = null;
+    inputBytes = 0;
+    outputBytes = 0;
+    inputEnded = false;
+  }
+}
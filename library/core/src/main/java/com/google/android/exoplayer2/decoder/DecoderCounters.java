@@ -32,6 +32,11 @@ public final class DecoderCounters {
    * The number of times a decoder has been released.
    */
   public int decoderReleaseCount;
+  /**
+   * The number of times the renderer was asked to render by the player. Each call corresponds to a
+   * wakeup of the playback thread's rendering loop whilst the renderer was enabled.
+   */
+  public int renderCount;
   /**
    * The number of queued input buffers.
    */
@@ -73,6 +78,21 @@ public final class DecoderCounters {
    * dropped from the source to advance to the keyframe.
    */
   public int droppedToKeyframeCount;
+  /**
+   * The total time during which the decoder was starved of input, in microseconds.
+   * <p>
+   * The decoder is starved of input whilst the renderer is started, the input stream has not ended,
+   * and no input could be read from the source. Only reported by renderers that measure it.
+   */
+  public long decoderStarvedTimeUs;
+  /**
+   * The total time during which the sink was starved of output from the decoder, in microseconds.
+   * <p>
+   * The sink is starved of output whilst the renderer is started, the sink can accept more data and
+   * the decoder is still decoding queued input, but no decoded output is available. Only reported
+   * by renderers that measure it.
+   */
+  public long sinkStarvedTimeUs;
 
   /**
    * Should be called to ensure counter values are made visible across threads. The playback thread
@@ -92,6 +112,7 @@ public final class DecoderCounters {
   public void merge(DecoderCounters other) {
     decoderInitCount += other.decoderInitCount;
     decoderReleaseCount += other.decoderReleaseCount;
+    renderCount += other.renderCount;
     inputBufferCount += other.inputBufferCount;
     skippedInputBufferCount += other.skippedInputBufferCount;
     renderedOutputBufferCount += other.renderedOutputBufferCount;
@@ -100,6 +121,8 @@ public final class DecoderCounters {
     maxConsecutiveDroppedBufferCount = Math.max(maxConsecutiveDroppedBufferCount,
         other.maxConsecutiveDroppedBufferCount);
     droppedToKeyframeCount += other.droppedToKeyframeCount;
+    decoderStarvedTimeUs += other.decoderStarvedTimeUs;
+    sinkStarvedTimeUs += other.sinkStarvedTimeUs;
   }
 
 }
@@ -20,14 +20,34 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
 
-/** Base class for {@link Decoder}s that use their own decode thread. */
+/**
+ * Base class for {@link Decoder}s that use their own decode thread.
+ *
+ * <p>By default, buffers are handed between the caller's thread and the decode thread under a
+ * lock, with the decode thread waiting on the lock when it has nothing to do. Alternatively, a
+ * lock-free handoff can be enabled via {@link #SimpleDecoder(DecoderInputBuffer[], OutputBuffer[],
+ * boolean)}. In this mode buffers are exchanged through single-producer single-consumer ring
+ * buffers, and the decode thread spins briefly before parking when it has nothing to do. This
+ * reduces the per-buffer handoff latency and the number of context switches, at the cost of some
+ * spinning on the decode thread. In both modes, all methods other than {@link
+ * #releaseOutputBuffer(OutputBuffer)} must be called from a single thread.
+ */
 @SuppressWarnings("UngroupedOverloads")
 public abstract class SimpleDecoder<
         I extends DecoderInputBuffer, O extends OutputBuffer, E extends Exception>
     implements Decoder<I, O, E> {
 
+  /**
+   * The number of times the decode thread polls for work before parking, when the lock-free handoff
+   * is used.
+   */
+  private static final int MAX_SPIN_COUNT = 64;
+
   private final Thread decodeThread;
+  @Nullable private final LockFreeHandoff lockFreeHandoff;
 
   private final Object lock;
   private final ArrayDeque<I> queuedInputBuffers;
@@ -49,6 +69,16 @@ public abstract class SimpleDecoder<
    * @param outputBuffers An array of nulls that will be used to store references to output buffers.
    */
   protected SimpleDecoder(I[] inputBuffers, O[] outputBuffers) {
+    this(inputBuffers, outputBuffers, /* useLockFreeHandoff= */ false);
+  }
+
+  /**
+   * @param inputBuffers An array of nulls that will be used to store references to input buffers.
+   * @param outputBuffers An array of nulls that will be used to store references to output buffers.
+   * @param useLockFreeHandoff Whether buffers are handed to and from the decode thread using
+   *     lock-free queues, rather than under a lock.
+   */
+  protected SimpleDecoder(I[] inputBuffers, O[] outputBuffers, boolean useLockFreeHandoff) {
     lock = new Object();
     queuedInputBuffers = new ArrayDeque<>();
     queuedOutputBuffers = new ArrayDeque<>();
@@ -62,6 +92,10 @@ public abstract class SimpleDecoder<
     for (int i = 0; i < availableOutputBufferCount; i++) {
       availableOutputBuffers[i] = createOutputBuffer();
     }
+    lockFreeHandoff =
+        useLockFreeHandoff
+            ? new LockFreeHandoff(inputBuffers.clone(), outputBuffers.clone())
+            : null;
     decodeThread = new Thread() {
       @Override
       public void run() {
@@ -80,7 +114,10 @@ public abstract class SimpleDecoder<
    * @param size The required input buffer size.
    */
   protected final void setInitialInputBufferSize(int size) {
-    Assertions.checkState(availableInputBufferCount == availableInputBuffers.length);
+    Assertions.checkState(
+        lockFreeHandoff != null
+            ? lockFreeHandoff.allInputBuffersAvailable()
+            : availableInputBufferCount == availableInputBuffers.length);
     for (I inputBuffer : availableInputBuffers) {
       inputBuffer.ensureSpaceForWrite(size);
     }
@@ -89,6 +126,9 @@ public abstract class SimpleDecoder<
   @Override
   @Nullable
   public final I dequeueInputBuffer() throws E {
+    if (lockFreeHandoff != null) {
+      return lockFreeHandoff.dequeueInputBuffer();
+    }
     synchronized (lock) {
       maybeThrowException();
       Assertions.checkState(dequeuedInputBuffer == null);
@@ -100,6 +140,10 @@ public abstract class SimpleDecoder<
 
   @Override
   public final void queueInputBuffer(I inputBuffer) throws E {
+    if (lockFreeHandoff != null) {
+      lockFreeHandoff.queueInputBuffer(inputBuffer);
+      return;
+    }
     synchronized (lock) {
       maybeThrowException();
       Assertions.checkArgument(inputBuffer == dequeuedInputBuffer);
@@ -112,6 +156,9 @@ public abstract class SimpleDecoder<
   @Override
   @Nullable
   public final O dequeueOutputBuffer() throws E {
+    if (lockFreeHandoff != null) {
+      return lockFreeHandoff.dequeueOutputBuffer();
+    }
     synchronized (lock) {
       maybeThrowException();
       if (queuedOutputBuffers.isEmpty()) {
@@ -128,6 +175,10 @@ public abstract class SimpleDecoder<
    */
   @CallSuper
   protected void releaseOutputBuffer(O outputBuffer) {
+    if (lockFreeHandoff != null) {
+      lockFreeHandoff.releaseOutputBuffer(outputBuffer);
+      return;
+    }
     synchronized (lock) {
       releaseOutputBufferInternal(outputBuffer);
       maybeNotifyDecodeLoop();
@@ -136,6 +187,10 @@ public abstract class SimpleDecoder<
 
   @Override
   public final void flush() {
+    if (lockFreeHandoff != null) {
+      lockFreeHandoff.flush();
+      return;
+    }
     synchronized (lock) {
       flushed = true;
       skippedOutputBufferCount = 0;
@@ -153,12 +208,31 @@ public abstract class SimpleDecoder<
     }
   }
 
+  /**
+   * Returns the number of output buffers that have been skipped because they were decode-only, but
+   * that haven't yet been reported through {@link OutputBuffer#skippedOutputBufferCount} of a
+   * dequeued output buffer. Skipped output buffers are only reported once a subsequent output
+   * buffer is queued, which may not happen for some time after a seek.
+   */
+  public final int getPendingSkippedOutputBufferCount() {
+    if (lockFreeHandoff != null) {
+      return lockFreeHandoff.getPendingSkippedOutputBufferCount();
+    }
+    synchronized (lock) {
+      return skippedOutputBufferCount;
+    }
+  }
+
   @CallSuper
   @Override
   public void release() {
-    synchronized (lock) {
-      released = true;
-      lock.notify();
+    if (lockFreeHandoff != null) {
+      lockFreeHandoff.release();
+    } else {
+      synchronized (lock) {
+        released = true;
+        lock.notify();
+      }
     }
     try {
       decodeThread.join();
@@ -191,6 +265,10 @@ public abstract class SimpleDecoder<
   }
 
   private void run() {
+    if (lockFreeHandoff != null) {
+      lockFreeHandoff.decodeLoop();
+      return;
+    }
     try {
       while (decode()) {
         // Do nothing.
@@ -220,31 +298,12 @@ public abstract class SimpleDecoder<
       flushed = false;
     }
 
-    if (inputBuffer.isEndOfStream()) {
-      outputBuffer.addFlag(C.BUFFER_FLAG_END_OF_STREAM);
-    } else {
-      if (inputBuffer.isDecodeOnly()) {
-        outputBuffer.addFlag(C.BUFFER_FLAG_DECODE_ONLY);
-      }
-      @Nullable E exception;
-      try {
-        exception = decode(inputBuffer, outputBuffer, resetDecoder);
-      } catch (RuntimeException e) {
-        // This can occur if a sample is malformed in a way that the decoder is not robust against.
-        // We don't want the process to die in this case, but we do want to propagate the error.
-        exception = createUnexpectedDecodeException(e);
-      } catch (OutOfMemoryError e) {
-        // This can occur if a sample is malformed in a way that causes the decoder to think it
-        // needs to allocate a large amount of memory. We don't want the process to die in this
-        // case, but we do want to propagate the error.
-        exception = createUnexpectedDecodeException(e);
-      }
-      if (exception != null) {
-        synchronized (lock) {
-          this.exception = exception;
-        }
-        return false;
+    @Nullable E exception = decodeBuffer(inputBuffer, outputBuffer, resetDecoder);
+    if (exception != null) {
+      synchronized (lock) {
+        this.exception = exception;
       }
+      return false;
     }
 
     synchronized (lock) {
@@ -258,13 +317,47 @@ public abstract class SimpleDecoder<
         skippedOutputBufferCount = 0;
         queuedOutputBuffers.addLast(outputBuffer);
       }
-      // Make the input buffer available again.
-      releaseInputBufferInternal(inputBuffer);
+      if (!flushed && hasRemainingInput(inputBuffer)) {
+        // Decode the rest of the input buffer into the next output buffer.
+        queuedInputBuffers.addFirst(inputBuffer);
+      } else {
+        // Make the input buffer available again.
+        releaseInputBufferInternal(inputBuffer);
+      }
     }
 
     return true;
   }
 
+  /**
+   * Decodes {@code inputBuffer} into {@code outputBuffer}, handling end of stream and decode-only
+   * flags.
+   *
+   * @return A decoder exception if an error occurred, or null if decoding was successful.
+   */
+  @Nullable
+  private E decodeBuffer(I inputBuffer, O outputBuffer, boolean resetDecoder) {
+    if (inputBuffer.isEndOfStream()) {
+      outputBuffer.addFlag(C.BUFFER_FLAG_END_OF_STREAM);
+      return null;
+    }
+    if (inputBuffer.isDecodeOnly()) {
+      outputBuffer.addFlag(C.BUFFER_FLAG_DECODE_ONLY);
+    }
+    try {
+      return decode(inputBuffer, outputBuffer, resetDecoder);
+    } catch (RuntimeException e) {
+      // This can occur if a sample is malformed in a way that the decoder is not robust against.
+      // We don't want the process to die in this case, but we do want to propagate the error.
+      return createUnexpectedDecodeException(e);
+    } catch (OutOfMemoryError e) {
+      // This can occur if a sample is malformed in a way that causes the decoder to think it
+      // needs to allocate a large amount of memory. We don't want the process to die in this
+      // case, but we do want to propagate the error.
+      return createUnexpectedDecodeException(e);
+    }
+  }
+
   private boolean canDecodeBuffer() {
     return !queuedInputBuffers.isEmpty() && availableOutputBufferCount > 0;
   }
@@ -297,6 +390,21 @@ public abstract class SimpleDecoder<
    */
   protected abstract E createUnexpectedDecodeException(Throwable error);
 
+  /**
+   * Returns whether {@code inputBuffer}, which has just been decoded, holds further data to be
+   * decoded into the next available output buffer. If so, the input buffer is decoded again rather
+   * than being made available for reuse, unless the decoder is flushed in the meantime. This allows
+   * a single input buffer to be decoded into more than one output buffer.
+   *
+   * <p>Called on the decode thread. The default implementation returns false.
+   *
+   * @param inputBuffer The input buffer that has just been decoded.
+   * @return Whether the input buffer should be decoded again.
+   */
+  protected boolean hasRemainingInput(I inputBuffer) {
+    return false;
+  }
+
   /**
    * Decodes the {@code inputBuffer} and stores any decoded output in {@code outputBuffer}.
    *
@@ -311,4 +419,276 @@ public abstract class SimpleDecoder<
    */
   @Nullable
   protected abstract E decode(I inputBuffer, O outputBuffer, boolean reset);
+
+  /**
+   * Lock-free handoff of buffers between the thread using the decoder and the decode thread.
+   *
+   * <p>Buffers are referred to by their index in {@link #inputBuffers} and {@link #outputBuffers}.
+   * Queued input buffers are passed to the decode thread and decoded input buffers are returned
+   * through single-producer single-consumer queues. Output buffers are returned through a flag per
+   * buffer, since they may be released from any thread.
+   *
+   * <p>Flushing increments a generation counter rather than synchronizing with the decode thread.
+   * Every queued input buffer and decoded output buffer is tagged with the generation in which it
+   * was queued, and buffers from a previous generation are discarded when they're next seen.
+   */
+  private final class LockFreeHandoff {
+
+    private final I[] inputBuffers;
+    private final O[] outputBuffers;
+    private final int[] inputBufferGenerations;
+    private final int[] outputBufferGenerations;
+    private final SpscIntQueue queuedInputBufferIndices;
+    private final SpscIntQueue decodedInputBufferIndices;
+    private final SpscIntQueue queuedOutputBufferIndices;
+    // 1 if the output buffer at the corresponding index is available to the decode thread.
+    private final AtomicIntegerArray outputBufferAvailable;
+
+    // Accessed only on the caller's thread.
+    private final int[] availableInputBufferIndices;
+    private int availableInputBufferIndexCount;
+    private int dequeuedInputBufferIndex;
+
+    // Accessed only on the decode thread.
+    private int decodeGeneration;
+
+    // Written only on the decode thread.
+    private volatile int skippedOutputBufferCount;
+    private volatile boolean decodeThreadParked;
+
+    // Written only on the caller's thread.
+    private volatile int flushGeneration;
+    private volatile boolean released;
+
+    // Set on the decode thread, and cleared on the caller's thread when flushing.
+    @Nullable private volatile E exception;
+
+    public LockFreeHandoff(I[] inputBuffers, O[] outputBuffers) {
+      this.inputBuffers = inputBuffers;
+      this.outputBuffers = outputBuffers;
+      inputBufferGenerations = new int[inputBuffers.length];
+      outputBufferGenerations = new int[outputBuffers.length];
+      queuedInputBufferIndices = new SpscIntQueue(inputBuffers.length);
+      decodedInputBufferIndices = new SpscIntQueue(inputBuffers.length);
+      queuedOutputBufferIndices = new SpscIntQueue(outputBuffers.length);
+      outputBufferAvailable = new AtomicIntegerArray(outputBuffers.length);
+      for (int i = 0; i < outputBuffers.length; i++) {
+        outputBufferAvailable.set(i, 1);
+      }
+      availableInputBufferIndices = new int[inputBuffers.length];
+      availableInputBufferIndexCount = inputBuffers.length;
+      for (int i = 0; i < inputBuffers.length; i++) {
+        availableInputBufferIndices[i] = inputBuffers.length - 1 - i;
+      }
+      dequeuedInputBufferIndex = C.INDEX_UNSET;
+    }
+
+    public boolean allInputBuffersAvailable() {
+      return availableInputBufferIndexCount == inputBuffers.length;
+    }
+
+    // Methods called on the caller's thread.
+
+    @Nullable
+    public I dequeueInputBuffer() throws E {
+      maybeThrowException();
+      Assertions.checkState(dequeuedInputBufferIndex == C.INDEX_UNSET);
+      if (availableInputBufferIndexCount == 0) {
+        int index;
+        while ((index = decodedInputBufferIndices.poll()) != C.INDEX_UNSET) {
+          availableInputBufferIndices[availableInputBufferIndexCount++] = index;
+        }
+        if (availableInputBufferIndexCount == 0) {
+          return null;
+        }
+      }
+      dequeuedInputBufferIndex = availableInputBufferIndices[--availableInputBufferIndexCount];
+      return inputBuffers[dequeuedInputBufferIndex];
+    }
+
+    public void queueInputBuffer(I inputBuffer) throws E {
+      maybeThrowException();
+      Assertions.checkArgument(
+          dequeuedInputBufferIndex != C.INDEX_UNSET
+              && inputBuffer == inputBuffers[dequeuedInputBufferIndex]);
+      inputBufferGenerations[dequeuedInputBufferIndex] = flushGeneration;
+      queuedInputBufferIndices.offer(dequeuedInputBufferIndex);
+      dequeuedInputBufferIndex = C.INDEX_UNSET;
+      maybeUnparkDecodeThread();
+    }
+
+    @Nullable
+    public O dequeueOutputBuffer() throws E {
+      maybeThrowException();
+      int index;
+      while ((index = queuedOutputBufferIndices.poll()) != C.INDEX_UNSET) {
+        O outputBuffer = outputBuffers[index];
+        if (outputBufferGenerations[index] == flushGeneration) {
+          return outputBuffer;
+        }
+        // The buffer was decoded before the most recent flush.
+        outputBuffer.release();
+      }
+      return null;
+    }
+
+    public void flush() {
+      flushGeneration++;
+      if (dequeuedInputBufferIndex != C.INDEX_UNSET) {
+        inputBuffers[dequeuedInputBufferIndex].clear();
+        availableInputBufferIndices[availableInputBufferIndexCount++] = dequeuedInputBufferIndex;
+        dequeuedInputBufferIndex = C.INDEX_UNSET;
+      }
+      int index;
+      while ((index = queuedOutputBufferIndices.poll()) != C.INDEX_UNSET) {
+        outputBuffers[index].release();
+      }
+      // Input buffers that are still queued are discarded and returned by the decode thread.
+      maybeUnparkDecodeThread();
+      exception = null;
+    }
+
+    public void release() {
+      released = true;
+      LockSupport.unpark(decodeThread);
+    }
+
+    public int getPendingSkippedOutputBufferCount() {
+      return skippedOutputBufferCount;
+    }
+
+    // Methods that may be called on any thread.
+
+    public void releaseOutputBuffer(O outputBuffer) {
+      outputBuffer.clear();
+      for (int i = 0; i < outputBuffers.length; i++) {
+        if (outputBuffers[i] == outputBuffer) {
+          outputBufferAvailable.set(i, 1);
+          break;
+        }
+      }
+      maybeUnparkDecodeThread();
+    }
+
+    // Methods called on the decode thread.
+
+    public void decodeLoop() {
+      while (true) {
+        int inputIndex = awaitQueuedInputBuffer();
+        if (inputIndex == C.INDEX_UNSET) {
+          return;
+        }
+        I inputBuffer = inputBuffers[inputIndex];
+        int generation = inputBufferGenerations[inputIndex];
+        if (generation != flushGeneration) {
+          // The buffer was queued before the most recent flush.
+          releaseDecodedInputBuffer(inputIndex);
+          continue;
+        }
+        boolean hasRemainingInput;
+        do {
+          int outputIndex = awaitAvailableOutputBuffer();
+          if (outputIndex == C.INDEX_UNSET) {
+            return;
+          }
+          O outputBuffer = outputBuffers[outputIndex];
+          boolean resetDecoder = generation != decodeGeneration;
+          if (resetDecoder) {
+            decodeGeneration = generation;
+            skippedOutputBufferCount = 0;
+          }
+          @Nullable E exception = decodeBuffer(inputBuffer, outputBuffer, resetDecoder);
+          if (exception != null) {
+            this.exception = exception;
+            return;
+          }
+          if (generation != flushGeneration) {
+            outputBuffer.release();
+          } else if (outputBuffer.isDecodeOnly()) {
+            skippedOutputBufferCount++;
+            outputBuffer.release();
+          } else {
+            outputBuffer.skippedOutputBufferCount = skippedOutputBufferCount;
+            skippedOutputBufferCount = 0;
+            outputBufferGenerations[outputIndex] = generation;
+            queuedOutputBufferIndices.offer(outputIndex);
+          }
+          hasRemainingInput = generation == flushGeneration && hasRemainingInput(inputBuffer);
+        } while (hasRemainingInput);
+        releaseDecodedInputBuffer(inputIndex);
+      }
+    }
+
+    private int awaitQueuedInputBuffer() {
+      int spinCount = 0;
+      while (!released) {
+        int index = queuedInputBufferIndices.poll();
+        if (index != C.INDEX_UNSET) {
+          return index;
+        }
+        if (spinCount < MAX_SPIN_COUNT) {
+          spinCount++;
+          Thread.yield();
+        } else {
+          decodeThreadParked = true;
+          // Check again after publishing that we're about to park, so that a buffer queued
+          // concurrently is guaranteed to either be seen here or to unpark the thread.
+          if (!released && queuedInputBufferIndices.isEmpty()) {
+            LockSupport.park(this);
+          }
+          decodeThreadParked = false;
+        }
+      }
+      return C.INDEX_UNSET;
+    }
+
+    private int awaitAvailableOutputBuffer() {
+      int spinCount = 0;
+      while (!released) {
+        int index = findAvailableOutputBuffer();
+        if (index != C.INDEX_UNSET) {
+          outputBufferAvailable.set(index, 0);
+          return index;
+        }
+        if (spinCount < MAX_SPIN_COUNT) {
+          spinCount++;
+          Thread.yield();
+        } else {
+          decodeThreadParked = true;
+          if (!released && findAvailableOutputBuffer() == C.INDEX_UNSET) {
+            LockSupport.park(this);
+          }
+          decodeThreadParked = false;
+        }
+      }
+      return C.INDEX_UNSET;
+    }
+
+    private int findAvailableOutputBuffer() {
+      for (int i = 0; i < outputBuffers.length; i++) {
+        if (outputBufferAvailable.get(i) == 1) {
+          return i;
+        }
+      }
+      return C.INDEX_UNSET;
+    }
+
+    private void releaseDecodedInputBuffer(int index) {
+      inputBuffers[index].clear();
+      decodedInputBufferIndices.offer(index);
+    }
+
+    private void maybeUnparkDecodeThread() {
+      if (decodeThreadParked) {
+        LockSupport.unpark(decodeThread);
+      }
+    }
+
+    private void maybeThrowException() throws E {
+      @Nullable E exception = this.exception;
+      if (exception != null) {
+        throw exception;
+      }
+    }
+  }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.decoder;
+
+import com.google.android.exoplayer2.C;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free, single-producer single-consumer queue of non-negative integers, backed by a
+ * ring buffer.
+ *
+ * <p>{@link #offer(int)} must only be called from a single producer thread, and {@link #poll()}
+ * from a single consumer thread. {@link #isEmpty()} may be called from either thread.
+ */
+/* package */ final class SpscIntQueue {
+
+  private final int[] elements;
+  private final int mask;
+  // Index of the next element to be polled. Written by the consumer only.
+  private final AtomicLong head;
+  // Index of the next element to be offered. Written by the producer only.
+  private final AtomicLong tail;
+
+  // Producer-local snapshot of head, to avoid reading the shared value on every offer.
+  private long producerHeadCache;
+  // Consumer-local snapshot of tail, to avoid reading the shared value on every poll.
+  private long consumerTailCache;
+
+  /**
+   * @param minCapacity The minimum number of elements the queue must be able to hold. The actual
+   *     capacity is rounded up to the next power of two.
+   */
+  public SpscIntQueue(int minCapacity) {
+    int capacity = Integer.highestOneBit(Math.max(1, minCapacity - 1)) << 1;
+    elements = new int[capacity];
+    mask = capacity - 1;
+    head = new AtomicLong();
+    tail = new AtomicLong();
+  }
+
+  /**
+   * Adds an element to the tail of the queue. Must only be called from the producer thread.
+   *
+   * @param element The element to add. Must be non-negative.
+   * @return Whether the element was added. False if the queue is full.
+   */
+  public boolean offer(int element) {
+    long currentTail = tail.get();
+    if (currentTail - producerHeadCache > mask) {
+      producerHeadCache = head.get();
+      if (currentTail - producerHeadCache > mask) {
+        return false;
+      }
+    }
+    elements[(int) currentTail & mask] = element;
+    // A full volatile write is used (rather than a lazy one) so that a consumer checking whether to
+    // park after reading an empty queue can't miss this element. See SimpleDecoder.
+    tail.set(currentTail + 1);
+    return true;
+  }
+
+  /**
+   * Removes and returns the element at the head of the queue. Must only be called from the
+   * consumer thread.
+   *
+   * @return The element, or {@link C#INDEX_UNSET} if the queue is empty.
+   */
+  public int poll() {
+    long currentHead = head.get();
+    if (currentHead >= consumerTailCache) {
+      consumerTailCache = tail.get();
+      if (currentHead >= consumerTailCache) {
+        return C.INDEX_UNSET;
+      }
+    }
+    int element = elements[(int) currentHead & mask];
+    head.lazySet(currentHead + 1);
+    return element;
+  }
+
+  /** Returns whether the queue is empty. */
+  public boolean isEmpty() {
+    return head.get() >= tail.get();
+  }
+}
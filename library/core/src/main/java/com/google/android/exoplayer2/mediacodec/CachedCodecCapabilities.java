@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import android.annotation.TargetApi;
+import android.graphics.Point;
+import android.media.MediaCodecInfo.AudioCapabilities;
+import android.media.MediaCodecInfo.CodecCapabilities;
+import android.media.MediaCodecInfo.CodecProfileLevel;
+import android.media.MediaCodecInfo.VideoCapabilities;
+import android.util.Range;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.util.Util;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A snapshot of the {@link CodecCapabilities} of a decoder, which can be persisted and used instead
+ * of querying the decoder again.
+ *
+ * <p>Video size and frame rate support is approximated from the maximum frame rates supported at a
+ * set of standard resolutions. A size is reported as supported at a given frame rate if the
+ * smallest sampled resolution that covers it supports that frame rate.
+ */
+/* package */ final class CachedCodecCapabilities {
+
+  private static final int TYPE_OTHER = 0;
+  private static final int TYPE_VIDEO = 1;
+  private static final int TYPE_AUDIO = 2;
+
+  /** The resolutions, in landscape orientation, at which video frame rate support is sampled. */
+  private static final int[][] SAMPLED_VIDEO_SIZES =
+      new int[][] {
+        {176, 144}, {320, 240}, {352, 288}, {640, 360}, {640, 480}, {854, 480}, {960, 540},
+        {1280, 720}, {1920, 1080}, {2560, 1440}, {3840, 2160}, {4096, 2160}, {7680, 4320}
+      };
+
+  /** The profile levels supported by the decoder. */
+  public final CodecProfileLevel[] profileLevels;
+  /**
+   * The maximum number of supported instances, or {@link
+   * MediaCodecInfo#MAX_SUPPORTED_INSTANCES_UNKNOWN} if unknown.
+   */
+  public final int maxSupportedInstances;
+  /** Whether the decoder has video capabilities. */
+  public final boolean isVideo;
+  /** Whether the decoder has audio capabilities. */
+  public final boolean isAudio;
+  /** The maximum number of input channels, as reported by the decoder. */
+  public final int maxInputChannelCount;
+
+  private final int widthAlignment;
+  private final int heightAlignment;
+  private final int minWidth;
+  private final int maxWidth;
+  private final int minHeight;
+  private final int maxHeight;
+  private final int[] sampledWidths;
+  private final int[] sampledHeights;
+  private final double[] sampledMaxFrameRates;
+  private final int[] sampleRateRanges;
+
+  /**
+   * Creates a snapshot of the given capabilities.
+   *
+   * @param capabilities The {@link CodecCapabilities} of the decoder.
+   * @return The snapshot.
+   */
+  @TargetApi(21)
+  public static CachedCodecCapabilities create(CodecCapabilities capabilities) {
+    CodecProfileLevel[] profileLevels =
+        capabilities.profileLevels == null ? new CodecProfileLevel[0] : capabilities.profileLevels;
+    int maxSupportedInstances =
+        Util.SDK_INT >= 23
+            ? capabilities.getMaxSupportedInstances()
+            : MediaCodecInfo.MAX_SUPPORTED_INSTANCES_UNKNOWN;
+    @Nullable VideoCapabilities videoCapabilities = capabilities.getVideoCapabilities();
+    @Nullable AudioCapabilities audioCapabilities = capabilities.getAudioCapabilities();
+    if (videoCapabilities != null) {
+      int widthAlignment = videoCapabilities.getWidthAlignment();
+      int heightAlignment = videoCapabilities.getHeightAlignment();
+      int[] sampledWidths = new int[SAMPLED_VIDEO_SIZES.length * 2];
+      int[] sampledHeights = new int[SAMPLED_VIDEO_SIZES.length * 2];
+      double[] sampledMaxFrameRates = new double[SAMPLED_VIDEO_SIZES.length * 2];
+      int sampleCount = 0;
+      for (int[] size : SAMPLED_VIDEO_SIZES) {
+        for (int orientation = 0; orientation < 2; orientation++) {
+          int width = Util.ceilDivide(size[orientation], widthAlignment) * widthAlignment;
+          int height = Util.ceilDivide(size[1 - orientation], heightAlignment) * heightAlignment;
+          if (videoCapabilities.isSizeSupported(width, height)) {
+            sampledWidths[sampleCount] = width;
+            sampledHeights[sampleCount] = height;
+            sampledMaxFrameRates[sampleCount] =
+                videoCapabilities.getSupportedFrameRatesFor(width, height).getUpper();
+            sampleCount++;
+          }
+        }
+      }
+      Range<Integer> supportedWidths = videoCapabilities.getSupportedWidths();
+      Range<Integer> supportedHeights = videoCapabilities.getSupportedHeights();
+      return new CachedCodecCapabilities(
+          profileLevels,
+          maxSupportedInstances,
+          TYPE_VIDEO,
+          widthAlignment,
+          heightAlignment,
+          supportedWidths.getLower(),
+          supportedWidths.getUpper(),
+          supportedHeights.getLower(),
+          supportedHeights.getUpper(),
+          Arrays.copyOf(sampledWidths, sampleCount),
+          Arrays.copyOf(sampledHeights, sampleCount),
+          Arrays.copyOf(sampledMaxFrameRates, sampleCount),
+          /* sampleRateRanges= */ new int[0],
+          /* maxInputChannelCount= */ 0);
+    } else if (audioCapabilities != null) {
+      Range<Integer>[] ranges = audioCapabilities.getSupportedSampleRateRanges();
+      int[] sampleRateRanges = new int[ranges.length * 2];
+      for (int i = 0; i < ranges.length; i++) {
+        sampleRateRanges[i * 2] = ranges[i].getLower();
+        sampleRateRanges[i * 2 + 1] = ranges[i].getUpper();
+      }
+      return createWithoutVideoCapabilities(
+          profileLevels,
+          maxSupportedInstances,
+          TYPE_AUDIO,
+          sampleRateRanges,
+          audioCapabilities.getMaxInputChannelCount());
+    } else {
+      return createWithoutVideoCapabilities(
+          profileLevels,
+          maxSupportedInstances,
+          TYPE_OTHER,
+          /* sampleRateRanges= */ new int[0],
+          /* maxInputChannelCount= */ 0);
+    }
+  }
+
+  /**
+   * Reads a snapshot written by {@link #write(DataOutputStream)}.
+   *
+   * @param input The {@link DataInputStream} to read from.
+   * @return The snapshot.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  public static CachedCodecCapabilities read(DataInputStream input) throws IOException {
+    int profileLevelCount = input.readInt();
+    CodecProfileLevel[] profileLevels = new CodecProfileLevel[profileLevelCount];
+    for (int i = 0; i < profileLevelCount; i++) {
+      profileLevels[i] = new CodecProfileLevel();
+      profileLevels[i].profile = input.readInt();
+      profileLevels[i].level = input.readInt();
+    }
+    int maxSupportedInstances = input.readInt();
+    int type = input.readInt();
+    int widthAlignment = input.readInt();
+    int heightAlignment = input.readInt();
+    int minWidth = input.readInt();
+    int maxWidth = input.readInt();
+    int minHeight = input.readInt();
+    int maxHeight = input.readInt();
+    int sampleCount = input.readInt();
+    int[] sampledWidths = new int[sampleCount];
+    int[] sampledHeights = new int[sampleCount];
+    double[] sampledMaxFrameRates = new double[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      sampledWidths[i] = input.readInt();
+      sampledHeights[i] = input.readInt();
+      sampledMaxFrameRates[i] = input.readDouble();
+    }
+    int[] sampleRateRanges = new int[input.readInt()];
+    for (int i = 0; i < sampleRateRanges.length; i++) {
+      sampleRateRanges[i] = input.readInt();
+    }
+    int maxInputChannelCount = input.readInt();
+    return new CachedCodecCapabilities(
+        profileLevels,
+        maxSupportedInstances,
+        type,
+        widthAlignment,
+        heightAlignment,
+        minWidth,
+        maxWidth,
+        minHeight,
+        maxHeight,
+        sampledWidths,
+        sampledHeights,
+        sampledMaxFrameRates,
+        sampleRateRanges,
+        maxInputChannelCount);
+  }
+
+  private CachedCodecCapabilities(
+      CodecProfileLevel[] profileLevels,
+      int maxSupportedInstances,
+      int type,
+      int widthAlignment,
+      int heightAlignment,
+      int minWidth,
+      int maxWidth,
+      int minHeight,
+      int maxHeight,
+      int[] sampledWidths,
+      int[] sampledHeights,
+      double[] sampledMaxFrameRates,
+      int[] sampleRateRanges,
+      int maxInputChannelCount) {
+    this.profileLevels = profileLevels;
+    this.maxSupportedInstances = maxSupportedInstances;
+    isVideo = type == TYPE_VIDEO;
+    isAudio = type == TYPE_AUDIO;
+    this.widthAlignment = widthAlignment;
+    this.heightAlignment = heightAlignment;
+    this.minWidth = minWidth;
+    this.maxWidth = maxWidth;
+    this.minHeight = minHeight;
+    this.maxHeight = maxHeight;
+    this.sampledWidths = sampledWidths;
+    this.sampledHeights = sampledHeights;
+    this.sampledMaxFrameRates = sampledMaxFrameRates;
+    this.sampleRateRanges = sampleRateRanges;
+    this.maxInputChannelCount = maxInputChannelCount;
+  }
+
+  /**
+   * Writes the snapshot.
+   *
+   * @param output The {@link DataOutputStream} to write to.
+   * @throws IOException If an error occurs writing to the output.
+   */
+  public void write(DataOutputStream output) throws IOException {
+    output.writeInt(profileLevels.length);
+    for (CodecProfileLevel profileLevel : profileLevels) {
+      output.writeInt(profileLevel.profile);
+      output.writeInt(profileLevel.level);
+    }
+    output.writeInt(maxSupportedInstances);
+    output.writeInt(isVideo ? TYPE_VIDEO : isAudio ? TYPE_AUDIO : TYPE_OTHER);
+    output.writeInt(widthAlignment);
+    output.writeInt(heightAlignment);
+    output.writeInt(minWidth);
+    output.writeInt(maxWidth);
+    output.writeInt(minHeight);
+    output.writeInt(maxHeight);
+    output.writeInt(sampledWidths.length);
+    for (int i = 0; i < sampledWidths.length; i++) {
+      output.writeInt(sampledWidths[i]);
+      output.writeInt(sampledHeights[i]);
+      output.writeDouble(sampledMaxFrameRates[i]);
+    }
+    output.writeInt(sampleRateRanges.length);
+    for (int sampleRateRangeBound : sampleRateRanges) {
+      output.writeInt(sampleRateRangeBound);
+    }
+    output.writeInt(maxInputChannelCount);
+  }
+
+  /**
+   * Returns the smallest video size greater than or equal to a specified size that also satisfies
+   * the decoder's width and height alignment requirements, or null if the decoder doesn't have
+   * video capabilities.
+   */
+  @Nullable
+  public Point alignVideoSize(int width, int height) {
+    if (!isVideo) {
+      return null;
+    }
+    return new Point(
+        Util.ceilDivide(width, widthAlignment) * widthAlignment,
+        Util.ceilDivide(height, heightAlignment) * heightAlignment);
+  }
+
+  /**
+   * Returns whether the decoder supports video with a given aligned size and frame rate.
+   *
+   * @param width The aligned width in pixels.
+   * @param height The aligned height in pixels.
+   * @param frameRate The frame rate in frames per second, or {@link Format#NO_VALUE} or any value
+   *     less than or equal to 0 to check only the size.
+   * @return Whether the size and frame rate are supported.
+   */
+  public boolean areSizeAndRateSupported(int width, int height, double frameRate) {
+    if (!isVideo
+        || width < minWidth
+        || width > maxWidth
+        || height < minHeight
+        || height > maxHeight) {
+      return false;
+    }
+    // The maximum frame rate decreases with the size, so the smallest sampled size that covers the
+    // given size gives a conservative bound.
+    long coveringArea = Long.MAX_VALUE;
+    double maxFrameRate = Format.NO_VALUE;
+    for (int i = 0; i < sampledWidths.length; i++) {
+      long area = (long) sampledWidths[i] * sampledHeights[i];
+      if (sampledWidths[i] >= width && sampledHeights[i] >= height && area < coveringArea) {
+        coveringArea = area;
+        maxFrameRate = sampledMaxFrameRates[i];
+      }
+    }
+    if (coveringArea == Long.MAX_VALUE) {
+      return false;
+    }
+    return frameRate == Format.NO_VALUE || frameRate <= 0 || Math.floor(frameRate) <= maxFrameRate;
+  }
+
+  /** Returns whether the decoder supports audio with a given sample rate. */
+  public boolean isSampleRateSupported(int sampleRate) {
+    for (int i = 0; i < sampleRateRanges.length; i += 2) {
+      if (sampleRateRanges[i] <= sampleRate && sampleRate <= sampleRateRanges[i + 1]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static CachedCodecCapabilities createWithoutVideoCapabilities(
+      CodecProfileLevel[] profileLevels,
+      int maxSupportedInstances,
+      int type,
+      int[] sampleRateRanges,
+      int maxInputChannelCount) {
+    return new CachedCodecCapabilities(
+        profileLevels,
+        maxSupportedInstances,
+        type,
+        /* widthAlignment= */ 1,
+        /* heightAlignment= */ 1,
+        /* minWidth= */ 0,
+        /* maxWidth= */ 0,
+        /* minHeight= */ 0,
+        /* maxHeight= */ 0,
+        /* sampledWidths= */ new int[0],
+        /* sampledHeights= */ new int[0],
+        /* sampledMaxFrameRates= */ new double[0],
+        sampleRateRanges,
+        maxInputChannelCount);
+  }
+
+}
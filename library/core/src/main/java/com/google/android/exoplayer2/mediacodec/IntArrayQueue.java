@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A queue of primitive integer values, which avoids boxing the values. The queue grows as values
+ * are added. This class isn't thread safe.
+ */
+/* package */ final class IntArrayQueue {
+
+  private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+  // Looping buffer of values.
+  private int[] values;
+  private int first;
+  private int size;
+
+  public IntArrayQueue() {
+    values = new int[DEFAULT_INITIAL_CAPACITY];
+  }
+
+  /** Adds a value to the end of the queue. */
+  public void add(int value) {
+    if (size == values.length) {
+      doubleCapacity();
+    }
+    values[(first + size) % values.length] = value;
+    size++;
+  }
+
+  /**
+   * Removes and returns the value at the head of the queue.
+   *
+   * @throws NoSuchElementException If the queue is empty.
+   */
+  public int remove() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    int value = values[first];
+    first = (first + 1) % values.length;
+    size--;
+    return value;
+  }
+
+  /** Returns whether the queue is empty. */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns the number of values in the queue. */
+  public int size() {
+    return size;
+  }
+
+  /** Removes all values from the queue. */
+  public void clear() {
+    first = 0;
+    size = 0;
+  }
+
+  private void doubleCapacity() {
+    int[] newValues = new int[values.length * 2];
+    int headLength = values.length - first;
+    System.arraycopy(values, first, newValues, 0, headLength);
+    System.arraycopy(values, 0, newValues, headLength, first);
+    values = newValues;
+    first = 0;
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayDeque;
+
+/**
+ * A {@link MediaCodec.Callback} that queues the buffers made available by a {@link MediaCodec}
+ * operating in asynchronous mode, so that a renderer can dequeue them without polling the codec.
+ *
+ * <p>The codec's callbacks are invoked on a dedicated thread, and the queued buffers are dequeued
+ * on the renderer's thread. The queues are guarded by a lock that's only held briefly by both
+ * threads.
+ *
+ * <p>Buffers that the codec made available before it was flushed are invalid. After flushing the
+ * codec, {@link #flush(Runnable)} must be called. It discards the queued buffers once all the
+ * callbacks issued before the flush have been delivered, and then restarts the codec. No buffers
+ * are dequeued in the meantime.
+ */
+@TargetApi(23)
+/* package */ final class MediaCodecAsyncCallback extends MediaCodec.Callback {
+
+  private final Object lock;
+  @Nullable private final HandlerThread callbackThread;
+  private final Handler handler;
+
+  // Guarded by lock.
+  private final IntArrayQueue availableInputBuffers;
+  private final IntArrayQueue availableOutputBuffers;
+  private final ArrayDeque<MediaCodec.BufferInfo> bufferInfos;
+  private final ArrayDeque<MediaFormat> formats;
+  @Nullable private MediaFormat currentFormat;
+  @Nullable private MediaFormat pendingOutputFormat;
+  @Nullable private IllegalStateException pendingException;
+  private int pendingFlushCount;
+  private boolean shutDown;
+
+  /** Creates an instance that receives the codec's callbacks on a new, dedicated thread. */
+  public MediaCodecAsyncCallback() {
+    this(new HandlerThread("ExoPlayer:MediaCodecAsyncCallback"));
+  }
+
+  private MediaCodecAsyncCallback(HandlerThread callbackThread) {
+    this(callbackThread, startAndGetLooper(callbackThread));
+  }
+
+  /**
+   * Creates an instance that receives the codec's callbacks on the given {@link Looper}.
+   *
+   * @param looper The {@link Looper} of the thread on which the codec's callbacks are received.
+   */
+  @VisibleForTesting
+  /* package */ MediaCodecAsyncCallback(Looper looper) {
+    this(/* callbackThread= */ null, looper);
+  }
+
+  private MediaCodecAsyncCallback(@Nullable HandlerThread callbackThread, Looper looper) {
+    this.callbackThread = callbackThread;
+    handler = new Handler(looper);
+    lock = new Object();
+    availableInputBuffers = new IntArrayQueue();
+    availableOutputBuffers = new IntArrayQueue();
+    bufferInfos = new ArrayDeque<>();
+    formats = new ArrayDeque<>();
+  }
+
+  /**
+   * Sets this instance as the callback of a codec. Must be called before the codec is configured.
+   *
+   * @param codec The {@link MediaCodec}.
+   */
+  public void attach(MediaCodec codec) {
+    codec.setCallback(this, handler);
+  }
+
+  /**
+   * Returns the index of an input buffer that's available to be filled, or {@link
+   * MediaCodec#INFO_TRY_AGAIN_LATER} if none is available.
+   *
+   * @throws IllegalStateException If the codec reported an error.
+   */
+  public int dequeueInputBufferIndex() {
+    synchronized (lock) {
+      maybeThrowException();
+      if (pendingFlushCount > 0 || availableInputBuffers.isEmpty()) {
+        return MediaCodec.INFO_TRY_AGAIN_LATER;
+      }
+      return availableInputBuffers.remove();
+    }
+  }
+
+  /**
+   * Returns the index of an output buffer that's available to be processed, {@link
+   * MediaCodec#INFO_OUTPUT_FORMAT_CHANGED} if the output format changed, or {@link
+   * MediaCodec#INFO_TRY_AGAIN_LATER} if neither happened.
+   *
+   * @param bufferInfo A {@link MediaCodec.BufferInfo} that's populated with the metadata of the
+   *     returned output buffer.
+   * @throws IllegalStateException If the codec reported an error.
+   */
+  public int dequeueOutputBufferIndex(MediaCodec.BufferInfo bufferInfo) {
+    synchronized (lock) {
+      maybeThrowException();
+      if (pendingFlushCount > 0 || availableOutputBuffers.isEmpty()) {
+        return MediaCodec.INFO_TRY_AGAIN_LATER;
+      }
+      int bufferIndex = availableOutputBuffers.remove();
+      if (bufferIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+        currentFormat = formats.remove();
+      } else {
+        MediaCodec.BufferInfo nextBufferInfo = bufferInfos.remove();
+        bufferInfo.set(
+            nextBufferInfo.offset,
+            nextBufferInfo.size,
+            nextBufferInfo.presentationTimeUs,
+            nextBufferInfo.flags);
+      }
+      return bufferIndex;
+    }
+  }
+
+  /**
+   * Returns the output format that was last signaled by {@link
+   * #dequeueOutputBufferIndex(MediaCodec.BufferInfo)}.
+   *
+   * @throws IllegalStateException If no output format has been signaled.
+   */
+  public MediaFormat getOutputFormat() {
+    synchronized (lock) {
+      if (currentFormat == null) {
+        throw new IllegalStateException();
+      }
+      return currentFormat;
+    }
+  }
+
+  /**
+   * Discards the queued buffers, and restarts the codec. Must be called after the codec was
+   * flushed. Buffers aren't dequeued until the codec has been restarted.
+   *
+   * @param restartCodec A {@link Runnable} that restarts the flushed codec, by calling {@link
+   *     MediaCodec#start()}. It's run on the callback thread, unless {@link #shutDown()} is called
+   *     first.
+   */
+  public void flush(Runnable restartCodec) {
+    synchronized (lock) {
+      pendingFlushCount++;
+    }
+    // Callbacks issued before the flush are already queued on the callback thread, so the flush
+    // completes after they've been delivered.
+    handler.post(() -> onFlushCompleted(restartCodec));
+  }
+
+  /**
+   * Prevents pending flushes from restarting the codec. Must be called before the codec is stopped
+   * or released.
+   */
+  public void shutDown() {
+    synchronized (lock) {
+      shutDown = true;
+    }
+  }
+
+  /**
+   * Releases the dedicated callback thread, if any. Must be called after the codec has been
+   * released.
+   */
+  public void release() {
+    if (callbackThread != null) {
+      callbackThread.quit();
+    }
+  }
+
+  // MediaCodec.Callback implementation.
+
+  @Override
+  public void onInputBufferAvailable(MediaCodec codec, int index) {
+    synchronized (lock) {
+      availableInputBuffers.add(index);
+    }
+  }
+
+  @Override
+  public void onOutputBufferAvailable(MediaCodec codec, int index, MediaCodec.BufferInfo info) {
+    synchronized (lock) {
+      if (pendingOutputFormat != null) {
+        addOutputFormat(pendingOutputFormat);
+        pendingOutputFormat = null;
+      }
+      availableOutputBuffers.add(index);
+      bufferInfos.add(info);
+    }
+  }
+
+  @Override
+  public void onError(MediaCodec codec, MediaCodec.CodecException e) {
+    synchronized (lock) {
+      pendingException = e;
+    }
+  }
+
+  @Override
+  public void onOutputFormatChanged(MediaCodec codec, MediaFormat format) {
+    synchronized (lock) {
+      addOutputFormat(format);
+      pendingOutputFormat = null;
+    }
+  }
+
+  // Internal methods.
+
+  private void onFlushCompleted(Runnable restartCodec) {
+    synchronized (lock) {
+      if (shutDown) {
+        return;
+      }
+      pendingFlushCount--;
+      if (pendingFlushCount > 0) {
+        // Another flush is pending.
+        return;
+      }
+      // An output format change that's discarded still needs to be signaled before the buffers
+      // that the restarted codec outputs.
+      if (!formats.isEmpty()) {
+        pendingOutputFormat = formats.getLast();
+      }
+      availableInputBuffers.clear();
+      availableOutputBuffers.clear();
+      bufferInfos.clear();
+      formats.clear();
+      try {
+        restartCodec.run();
+      } catch (IllegalStateException e) {
+        pendingException = e;
+      }
+    }
+  }
+
+  private void addOutputFormat(MediaFormat format) {
+    availableOutputBuffers.add(MediaCodec.INFO_OUTPUT_FORMAT_CHANGED);
+    formats.add(format);
+  }
+
+  private void maybeThrowException() {
+    if (pendingException != null) {
+      IllegalStateException exception = pendingException;
+      pendingException = null;
+      throw exception;
+    }
+  }
+
+  private static Looper startAndGetLooper(HandlerThread thread) {
+    thread.start();
+    return Assertions.checkNotNull(thread.getLooper());
+  }
+}
@@ -121,6 +121,8 @@ public final class MediaCodecInfo {
   public final boolean vendor;
 
   private final boolean isVideo;
+  @Nullable private final CachedCodecCapabilities cachedCapabilities;
+  @Nullable private CachedCodecCapabilities capabilitiesSnapshot;
 
   /**
    * Creates an instance representing an audio passthrough decoder.
@@ -134,12 +136,14 @@ public final class MediaCodecInfo {
         /* mimeType= */ null,
         /* codecMimeType= */ null,
         /* capabilities= */ null,
+        /* cachedCapabilities= */ null,
         /* passthrough= */ true,
         /* hardwareAccelerated= */ false,
         /* softwareOnly= */ true,
         /* vendor= */ false,
-        /* forceDisableAdaptive= */ false,
-        /* forceSecure= */ false);
+        /* adaptive= */ false,
+        /* tunneling= */ false,
+        /* secure= */ false);
   }
 
   /**
@@ -173,12 +177,57 @@ public final class MediaCodecInfo {
         mimeType,
         codecMimeType,
         capabilities,
+        /* cachedCapabilities= */ null,
         /* passthrough= */ false,
         hardwareAccelerated,
         softwareOnly,
         vendor,
-        forceDisableAdaptive,
-        forceSecure);
+        /* adaptive= */ !forceDisableAdaptive && capabilities != null && isAdaptive(capabilities),
+        /* tunneling= */ capabilities != null && isTunneling(capabilities),
+        /* secure= */ forceSecure || (capabilities != null && isSecure(capabilities)));
+  }
+
+  /**
+   * Creates an instance from decoder information that was persisted by an earlier application
+   * launch.
+   *
+   * @param name The name of the {@link MediaCodec}.
+   * @param mimeType A mime type supported by the {@link MediaCodec}.
+   * @param codecMimeType The MIME type that the codec uses for media of type {@code #mimeType}.
+   * @param cachedCapabilities The {@link CachedCodecCapabilities} of the {@link MediaCodec}, or
+   *     {@code null} if not known.
+   * @param hardwareAccelerated Whether the {@link MediaCodec} is hardware accelerated.
+   * @param softwareOnly Whether the {@link MediaCodec} is software only.
+   * @param vendor Whether the {@link MediaCodec} is provided by the vendor.
+   * @param adaptive Whether the {@link MediaCodec} supports seamless resolution switches.
+   * @param tunneling Whether the {@link MediaCodec} supports tunneling.
+   * @param secure Whether the {@link MediaCodec} is secure.
+   * @return The created instance.
+   */
+  /* package */ static MediaCodecInfo newCachedInstance(
+      String name,
+      String mimeType,
+      String codecMimeType,
+      @Nullable CachedCodecCapabilities cachedCapabilities,
+      boolean hardwareAccelerated,
+      boolean softwareOnly,
+      boolean vendor,
+      boolean adaptive,
+      boolean tunneling,
+      boolean secure) {
+    return new MediaCodecInfo(
+        name,
+        mimeType,
+        codecMimeType,
+        /* capabilities= */ null,
+        cachedCapabilities,
+        /* passthrough= */ false,
+        hardwareAccelerated,
+        softwareOnly,
+        vendor,
+        adaptive,
+        tunneling,
+        secure);
   }
 
   private MediaCodecInfo(
@@ -186,23 +235,26 @@ public final class MediaCodecInfo {
       @Nullable String mimeType,
       @Nullable String codecMimeType,
       @Nullable CodecCapabilities capabilities,
+      @Nullable CachedCodecCapabilities cachedCapabilities,
       boolean passthrough,
       boolean hardwareAccelerated,
       boolean softwareOnly,
       boolean vendor,
-      boolean forceDisableAdaptive,
-      boolean forceSecure) {
+      boolean adaptive,
+      boolean tunneling,
+      boolean secure) {
     this.name = Assertions.checkNotNull(name);
     this.mimeType = mimeType;
     this.codecMimeType = codecMimeType;
     this.capabilities = capabilities;
+    this.cachedCapabilities = cachedCapabilities;
     this.passthrough = passthrough;
     this.hardwareAccelerated = hardwareAccelerated;
     this.softwareOnly = softwareOnly;
     this.vendor = vendor;
-    adaptive = !forceDisableAdaptive && capabilities != null && isAdaptive(capabilities);
-    tunneling = capabilities != null && isTunneling(capabilities);
-    secure = forceSecure || (capabilities != null && isSecure(capabilities));
+    this.adaptive = adaptive;
+    this.tunneling = tunneling;
+    this.secure = secure;
     isVideo = MimeTypes.isVideo(mimeType);
   }
 
@@ -217,6 +269,9 @@ public final class MediaCodecInfo {
    * @return The profile levels supported by the decoder.
    */
   public CodecProfileLevel[] getProfileLevels() {
+    if (cachedCapabilities != null) {
+      return cachedCapabilities.profileLevels;
+    }
     return capabilities == null || capabilities.profileLevels == null ? new CodecProfileLevel[0]
         : capabilities.profileLevels;
   }
@@ -229,6 +284,9 @@ public final class MediaCodecInfo {
    * @see CodecCapabilities#getMaxSupportedInstances()
    */
   public int getMaxSupportedInstances() {
+    if (cachedCapabilities != null) {
+      return cachedCapabilities.maxSupportedInstances;
+    }
     return (Util.SDK_INT < 23 || capabilities == null)
         ? MAX_SUPPORTED_INSTANCES_UNKNOWN
         : getMaxSupportedInstancesV23(capabilities);
@@ -395,19 +453,27 @@ public final class MediaCodecInfo {
    */
   @TargetApi(21)
   public boolean isVideoSizeAndRateSupportedV21(int width, int height, double frameRate) {
-    if (capabilities == null) {
-      logNoSupport("sizeAndRate.caps");
-      return false;
-    }
-    VideoCapabilities videoCapabilities = capabilities.getVideoCapabilities();
-    if (videoCapabilities == null) {
-      logNoSupport("sizeAndRate.vCaps");
-      return false;
+    @Nullable VideoCapabilities videoCapabilities = null;
+    if (cachedCapabilities != null) {
+      if (!cachedCapabilities.isVideo) {
+        logNoSupport("sizeAndRate.vCaps");
+        return false;
+      }
+    } else {
+      if (capabilities == null) {
+        logNoSupport("sizeAndRate.caps");
+        return false;
+      }
+      videoCapabilities = capabilities.getVideoCapabilities();
+      if (videoCapabilities == null) {
+        logNoSupport("sizeAndRate.vCaps");
+        return false;
+      }
     }
-    if (!areSizeAndRateSupportedV21(videoCapabilities, width, height, frameRate)) {
+    if (!isSizeAndRateSupportedV21(videoCapabilities, width, height, frameRate)) {
       if (width >= height
           || !enableRotatedVerticalResolutionWorkaround(name)
-          || !areSizeAndRateSupportedV21(videoCapabilities, height, width, frameRate)) {
+          || !isSizeAndRateSupportedV21(videoCapabilities, height, width, frameRate)) {
         logNoSupport("sizeAndRate.support, " + width + "x" + height + "x" + frameRate);
         return false;
       }
@@ -430,6 +496,9 @@ public final class MediaCodecInfo {
    */
   @TargetApi(21)
   public Point alignVideoSizeV21(int width, int height) {
+    if (cachedCapabilities != null) {
+      return cachedCapabilities.alignVideoSize(width, height);
+    }
     if (capabilities == null) {
       return null;
     }
@@ -450,6 +519,17 @@ public final class MediaCodecInfo {
    */
   @TargetApi(21)
   public boolean isAudioSampleRateSupportedV21(int sampleRate) {
+    if (cachedCapabilities != null) {
+      if (!cachedCapabilities.isAudio) {
+        logNoSupport("sampleRate.aCaps");
+        return false;
+      }
+      if (!cachedCapabilities.isSampleRateSupported(sampleRate)) {
+        logNoSupport("sampleRate.support, " + sampleRate);
+        return false;
+      }
+      return true;
+    }
     if (capabilities == null) {
       logNoSupport("sampleRate.caps");
       return false;
@@ -476,17 +556,27 @@ public final class MediaCodecInfo {
    */
   @TargetApi(21)
   public boolean isAudioChannelCountSupportedV21(int channelCount) {
-    if (capabilities == null) {
-      logNoSupport("channelCount.caps");
-      return false;
-    }
-    AudioCapabilities audioCapabilities = capabilities.getAudioCapabilities();
-    if (audioCapabilities == null) {
-      logNoSupport("channelCount.aCaps");
-      return false;
+    int reportedMaxInputChannelCount;
+    if (cachedCapabilities != null) {
+      if (!cachedCapabilities.isAudio) {
+        logNoSupport("channelCount.aCaps");
+        return false;
+      }
+      reportedMaxInputChannelCount = cachedCapabilities.maxInputChannelCount;
+    } else {
+      if (capabilities == null) {
+        logNoSupport("channelCount.caps");
+        return false;
+      }
+      AudioCapabilities audioCapabilities = capabilities.getAudioCapabilities();
+      if (audioCapabilities == null) {
+        logNoSupport("channelCount.aCaps");
+        return false;
+      }
+      reportedMaxInputChannelCount = audioCapabilities.getMaxInputChannelCount();
     }
-    int maxInputChannelCount = adjustMaxInputChannelCount(name, mimeType,
-        audioCapabilities.getMaxInputChannelCount());
+    int maxInputChannelCount =
+        adjustMaxInputChannelCount(name, mimeType, reportedMaxInputChannelCount);
     if (maxInputChannelCount < channelCount) {
       logNoSupport("channelCount.support, " + channelCount);
       return false;
@@ -494,6 +584,23 @@ public final class MediaCodecInfo {
     return true;
   }
 
+  /**
+   * Returns a {@link CachedCodecCapabilities} snapshot of the capabilities of the decoder, or null
+   * if they're not known. The snapshot is only taken on the first call, as it requires many queries
+   * of the capabilities.
+   */
+  @TargetApi(21)
+  @Nullable
+  /* package */ CachedCodecCapabilities getCachedCapabilitiesV21() {
+    if (cachedCapabilities != null) {
+      return cachedCapabilities;
+    }
+    if (capabilitiesSnapshot == null && capabilities != null) {
+      capabilitiesSnapshot = CachedCodecCapabilities.create(capabilities);
+    }
+    return capabilitiesSnapshot;
+  }
+
   private void logNoSupport(String message) {
     Log.d(TAG, "NoSupport [" + message + "] [" + name + ", " + mimeType + "] ["
         + Util.DEVICE_DEBUG_INFO + "]");
@@ -565,6 +672,23 @@ public final class MediaCodecInfo {
     return capabilities.isFeatureSupported(CodecCapabilities.FEATURE_SecurePlayback);
   }
 
+  /**
+   * Returns whether the decoder supports video with the given size and frame rate, using the
+   * {@link CachedCodecCapabilities} if this instance has them, or the given {@link
+   * VideoCapabilities} otherwise.
+   */
+  @TargetApi(21)
+  private boolean isSizeAndRateSupportedV21(
+      @Nullable VideoCapabilities capabilities, int width, int height, double frameRate) {
+    if (cachedCapabilities != null) {
+      // Don't ever fail due to alignment. See: https://github.com/google/ExoPlayer/issues/6551.
+      Point alignedSize = Assertions.checkNotNull(cachedCapabilities.alignVideoSize(width, height));
+      return cachedCapabilities.areSizeAndRateSupported(alignedSize.x, alignedSize.y, frameRate);
+    }
+    return areSizeAndRateSupportedV21(
+        Assertions.checkNotNull(capabilities), width, height, frameRate);
+  }
+
   @TargetApi(21)
   private static boolean areSizeAndRateSupportedV21(VideoCapabilities capabilities, int width,
       int height, double frameRate) {
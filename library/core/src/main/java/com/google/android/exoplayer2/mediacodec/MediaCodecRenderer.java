@@ -32,6 +32,7 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.CryptoInfo;
 import com.google.android.exoplayer2.decoder.DecoderCounters;
 import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
 import com.google.android.exoplayer2.drm.DrmSession;
@@ -321,6 +322,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
   private final float assumedMinimumCodecOperatingRate;
   private final DecoderInputBuffer buffer;
   private final DecoderInputBuffer flagsOnlyBuffer;
+  private final DecoderInputBuffer batchedSampleBuffer;
   private final TimedValueQueue<Format> formatQueue;
   private final ArrayList<Long> decodeOnlyPresentationTimestamps;
   private final MediaCodec.BufferInfo outputBufferInfo;
@@ -335,6 +337,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
   private long renderTimeLimitMs;
   private float rendererOperatingRate;
   @Nullable private MediaCodec codec;
+  @Nullable private MediaCodecAsyncCallback codecAsyncCallback;
   @Nullable private Format codecFormat;
   private float codecOperatingRate;
   @Nullable private ArrayDeque<MediaCodecInfo> availableCodecInfos;
@@ -374,6 +377,9 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
   private boolean waitingForFirstSyncSample;
   private boolean waitingForFirstSampleInFormat;
   private boolean skipMediaCodecStopOnRelease;
+  private boolean enableAsynchronousBufferQueueing;
+  private boolean enableInputBatching;
+  private boolean hasPendingBatchedSample;
   private boolean pendingOutputEndOfStream;
 
   protected DecoderCounters decoderCounters;
@@ -411,6 +417,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     this.assumedMinimumCodecOperatingRate = assumedMinimumCodecOperatingRate;
     buffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DISABLED);
     flagsOnlyBuffer = DecoderInputBuffer.newFlagsOnlyInstance();
+    batchedSampleBuffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
     formatQueue = new TimedValueQueue<>();
     decodeOnlyPresentationTimestamps = new ArrayList<>();
     outputBufferInfo = new MediaCodec.BufferInfo();
@@ -452,6 +459,43 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     skipMediaCodecStopOnRelease = enabled;
   }
 
+  /**
+   * Operate the underlying {@link MediaCodec} in asynchronous mode.
+   *
+   * <p>By default, the MediaCodecRenderer polls the {@link MediaCodec} for available input and
+   * output buffers each time it's rendered. If this feature is enabled, the {@link MediaCodec}
+   * instead signals its available buffers through a {@link MediaCodec.Callback} on a dedicated
+   * thread, and the MediaCodecRenderer dequeues them without calling into the {@link MediaCodec}.
+   * The feature is only supported from API level 23, and is ignored on earlier API levels.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release. It should
+   * only be called before the renderer is used.
+   *
+   * @param enabled enable or disable the feature.
+   */
+  public void experimental_setAsynchronousBufferQueueingEnabled(boolean enabled) {
+    enableAsynchronousBufferQueueing = enabled;
+  }
+
+  /**
+   * Batch multiple samples into each input buffer queued to the underlying {@link MediaCodec}.
+   *
+   * <p>By default, the MediaCodecRenderer queues each sample read from the source in its own input
+   * buffer. If this feature is enabled, samples that directly follow each other are read into the
+   * same input buffer, for as long as {@link #getBatchedInputSampleDurationUs(MediaCodecInfo,
+   * Format, int)} indicates that the codec can decode them together. The input buffer is queued
+   * with the timestamp of its first sample, and the codec derives the timestamps of its other
+   * samples from their durations.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release. It should
+   * only be called before the renderer is used.
+   *
+   * @param enabled enable or disable the feature.
+   */
+  public void experimental_setInputBatchingEnabled(boolean enabled) {
+    enableInputBatching = enabled;
+  }
+
   @Override
   @AdaptiveSupport
   public final int supportsMixedMimeTypeAdaptation() {
@@ -576,6 +620,24 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     return false;
   }
 
+  /**
+   * Returns the duration of a sample, if the codec can decode it from an input buffer that also
+   * contains the samples that follow it. Only called if input batching is enabled (see {@link
+   * #experimental_setInputBatchingEnabled(boolean)}).
+   *
+   * <p>The default implementation returns {@link C#TIME_UNSET}, so that no samples are batched.
+   *
+   * @param codecInfo Information about the codec.
+   * @param format The format of the sample.
+   * @param sampleSize The size of the sample in bytes.
+   * @return The duration of the sample in microseconds, or {@link C#TIME_UNSET} if the codec can't
+   *     decode the sample together with the samples that follow it.
+   */
+  protected long getBatchedInputSampleDurationUs(
+      MediaCodecInfo codecInfo, Format format, int sampleSize) {
+    return C.TIME_UNSET;
+  }
+
   /**
    * Polls the pending output format queue for a given buffer timestamp. If a format is present, it
    * is removed and returned. Otherwise returns {@code null}. Subclasses should only call this
@@ -612,6 +674,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     inputStreamEnded = false;
     outputStreamEnded = false;
     pendingOutputEndOfStream = false;
+    hasPendingBatchedSample = false;
     flushOrReinitializeCodec();
     formatQueue.clear();
   }
@@ -666,6 +729,9 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     try {
       if (codec != null) {
         decoderCounters.decoderReleaseCount++;
+        if (codecAsyncCallback != null) {
+          codecAsyncCallback.shutDown();
+        }
         try {
           if (!skipMediaCodecStopOnRelease) {
             codec.stop();
@@ -676,6 +742,10 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       }
     } finally {
       codec = null;
+      if (codecAsyncCallback != null) {
+        codecAsyncCallback.release();
+        codecAsyncCallback = null;
+      }
       try {
         if (mediaCrypto != null) {
           mediaCrypto.release();
@@ -700,6 +770,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
 
   @Override
   public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+    decoderCounters.renderCount++;
     if (pendingOutputEndOfStream) {
       pendingOutputEndOfStream = false;
       processEndOfStream();
@@ -775,6 +846,9 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     }
 
     codec.flush();
+    if (codecAsyncCallback != null) {
+      codecAsyncCallback.flush(codec::start);
+    }
     resetInputBuffer();
     resetOutputBuffer();
     codecHotswapDeadlineMs = C.TIME_UNSET;
@@ -910,6 +984,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     long codecInitializingTimestamp;
     long codecInitializedTimestamp;
     MediaCodec codec = null;
+    MediaCodecAsyncCallback codecAsyncCallback = null;
     String codecName = codecInfo.name;
 
     float codecOperatingRate =
@@ -923,6 +998,10 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       codecInitializingTimestamp = SystemClock.elapsedRealtime();
       TraceUtil.beginSection("createCodec:" + codecName);
       codec = MediaCodec.createByCodecName(codecName);
+      if (enableAsynchronousBufferQueueing && Util.SDK_INT >= 23) {
+        codecAsyncCallback = new MediaCodecAsyncCallback();
+        codecAsyncCallback.attach(codec);
+      }
       TraceUtil.endSection();
       TraceUtil.beginSection("configureCodec");
       configureCodec(codecInfo, codec, inputFormat, crypto, codecOperatingRate);
@@ -935,12 +1014,19 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     } catch (Exception e) {
       if (codec != null) {
         resetCodecBuffers();
+        if (codecAsyncCallback != null) {
+          codecAsyncCallback.shutDown();
+        }
         codec.release();
       }
+      if (codecAsyncCallback != null) {
+        codecAsyncCallback.release();
+      }
       throw e;
     }
 
     this.codec = codec;
+    this.codecAsyncCallback = codecAsyncCallback;
     this.codecInfo = codecInfo;
     this.codecOperatingRate = codecOperatingRate;
     codecFormat = inputFormat;
@@ -1000,6 +1086,18 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     }
   }
 
+  private int dequeueInputBufferIndex() {
+    return codecAsyncCallback != null
+        ? codecAsyncCallback.dequeueInputBufferIndex()
+        : codec.dequeueInputBuffer(/* timeoutUs= */ 0);
+  }
+
+  private int dequeueOutputBufferIndex() {
+    return codecAsyncCallback != null
+        ? codecAsyncCallback.dequeueOutputBufferIndex(outputBufferInfo)
+        : codec.dequeueOutputBuffer(outputBufferInfo, getDequeueOutputBufferTimeoutUs());
+  }
+
   private ByteBuffer getInputBuffer(int inputIndex) {
     if (Util.SDK_INT >= 21) {
       return codec.getInputBuffer(inputIndex);
@@ -1050,7 +1148,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     }
 
     if (inputIndex < 0) {
-      inputIndex = codec.dequeueInputBuffer(0);
+      inputIndex = dequeueInputBufferIndex();
       if (inputIndex < 0) {
         return false;
       }
@@ -1098,7 +1196,12 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
         codecReconfigurationState = RECONFIGURATION_STATE_QUEUE_PENDING;
       }
       adaptiveReconfigurationBytes = buffer.data.position();
-      result = readSource(formatHolder, buffer, false);
+      if (hasPendingBatchedSample) {
+        readPendingBatchedSample();
+        result = C.RESULT_BUFFER_READ;
+      } else {
+        result = readSource(formatHolder, buffer, false);
+      }
     }
 
     if (hasReadStreamToEnd()) {
@@ -1169,6 +1272,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       }
       codecNeedsDiscardToSpsWorkaround = false;
     }
+    boolean batchedFormatRead = false;
     try {
       long presentationTimeUs = buffer.timeUs;
       if (buffer.isDecodeOnly()) {
@@ -1180,6 +1284,13 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       }
       largestQueuedPresentationTimeUs =
           Math.max(largestQueuedPresentationTimeUs, presentationTimeUs);
+      if (enableInputBatching
+          && codecDrmSession == null
+          && !bufferEncrypted
+          && !buffer.isDecodeOnly()
+          && !buffer.hasSupplementalData()) {
+        batchedFormatRead = readBatchedSamples(formatHolder, adaptiveReconfigurationBytes);
+      }
 
       buffer.flip();
       if (buffer.hasSupplementalData()) {
@@ -1201,9 +1312,100 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     } catch (CryptoException e) {
       throw createRendererException(e, inputFormat);
     }
+    if (batchedFormatRead) {
+      onInputFormatChanged(formatHolder);
+    }
     return true;
   }
 
+  /**
+   * Appends the samples that directly follow the sample in {@link #buffer} to it, for as long as
+   * the codec can decode them from a single input buffer. A sample that's read but can't be
+   * appended is held in {@link #batchedSampleBuffer}, and read into the next input buffer.
+   *
+   * <p>The codec outputs the samples of an input buffer together, with the timestamp of the first
+   * sample that's passed when the input buffer is queued. The timestamps of the appended samples
+   * are therefore not tracked as queued timestamps.
+   *
+   * @param formatHolder A {@link FormatHolder} to populate if a format is read.
+   * @param sampleOffset The offset of the sample in the data of {@link #buffer}.
+   * @return Whether a format was read. It must be handled once the input buffer has been queued.
+   */
+  private boolean readBatchedSamples(FormatHolder formatHolder, int sampleOffset) {
+    ByteBuffer data = buffer.data;
+    long sampleDurationUs =
+        getBatchedInputSampleDurationUs(codecInfo, inputFormat, data.position() - sampleOffset);
+    long sampleTimeUs = buffer.timeUs;
+    while (sampleDurationUs != C.TIME_UNSET) {
+      batchedSampleBuffer.clear();
+      int result = readSource(formatHolder, batchedSampleBuffer, /* formatRequired= */ false);
+      if (result == C.RESULT_FORMAT_READ) {
+        return true;
+      } else if (result == C.RESULT_NOTHING_READ) {
+        return false;
+      }
+      // Only append samples whose timestamps the codec derives correctly, allowing for the
+      // rounding of the timestamps to whole microseconds.
+      if (batchedSampleBuffer.isEndOfStream()
+          || batchedSampleBuffer.isDecodeOnly()
+          || batchedSampleBuffer.isEncrypted()
+          || batchedSampleBuffer.hasSupplementalData()
+          || Math.abs(batchedSampleBuffer.timeUs - (sampleTimeUs + sampleDurationUs)) > 1
+          || batchedSampleBuffer.data.position() > data.remaining()) {
+        hasPendingBatchedSample = true;
+        return false;
+      }
+      int sampleSize = batchedSampleBuffer.data.position();
+      batchedSampleBuffer.flip();
+      data.put(batchedSampleBuffer.data);
+      sampleTimeUs = batchedSampleBuffer.timeUs;
+      sampleDurationUs = getBatchedInputSampleDurationUs(codecInfo, inputFormat, sampleSize);
+    }
+    return false;
+  }
+
+  /** Reads the sample held back by {@link #readBatchedSamples} into {@link #buffer}. */
+  private void readPendingBatchedSample() {
+    hasPendingBatchedSample = false;
+    DecoderInputBuffer sample = batchedSampleBuffer;
+    int flags = 0;
+    if (sample.isEndOfStream()) {
+      flags |= C.BUFFER_FLAG_END_OF_STREAM;
+    }
+    if (sample.isDecodeOnly()) {
+      flags |= C.BUFFER_FLAG_DECODE_ONLY;
+    }
+    if (sample.isKeyFrame()) {
+      flags |= C.BUFFER_FLAG_KEY_FRAME;
+    }
+    if (sample.isEncrypted()) {
+      flags |= C.BUFFER_FLAG_ENCRYPTED;
+      CryptoInfo cryptoInfo = sample.cryptoInfo;
+      buffer.cryptoInfo.set(
+          cryptoInfo.numSubSamples,
+          cryptoInfo.numBytesOfClearData,
+          cryptoInfo.numBytesOfEncryptedData,
+          cryptoInfo.key,
+          cryptoInfo.iv,
+          cryptoInfo.mode,
+          cryptoInfo.encryptedBlocks,
+          cryptoInfo.clearBlocks);
+    }
+    buffer.setFlags(flags);
+    buffer.timeUs = sample.timeUs;
+    if (sample.isEndOfStream()) {
+      return;
+    }
+    sample.flip();
+    buffer.ensureSpaceForWrite(sample.data.remaining());
+    buffer.data.put(sample.data);
+    if (sample.hasSupplementalData()) {
+      buffer.addFlag(C.BUFFER_FLAG_HAS_SUPPLEMENTAL_DATA);
+      buffer.resetSupplementalData(sample.supplementalData.remaining());
+      buffer.supplementalData.put(sample.supplementalData);
+    }
+  }
+
   private boolean shouldWaitForKeys(boolean bufferEncrypted) throws ExoPlaybackException {
     if (codecDrmSession == null
         || (!bufferEncrypted
@@ -1505,8 +1707,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       int outputIndex;
       if (codecNeedsEosOutputExceptionWorkaround && codecReceivedEos) {
         try {
-          outputIndex =
-              codec.dequeueOutputBuffer(outputBufferInfo, getDequeueOutputBufferTimeoutUs());
+          outputIndex = dequeueOutputBufferIndex();
         } catch (IllegalStateException e) {
           processEndOfStream();
           if (outputStreamEnded) {
@@ -1516,8 +1717,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
           return false;
         }
       } else {
-        outputIndex =
-            codec.dequeueOutputBuffer(outputBufferInfo, getDequeueOutputBufferTimeoutUs());
+        outputIndex = dequeueOutputBufferIndex();
       }
 
       if (outputIndex < 0) {
@@ -1616,7 +1816,8 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
   /** Processes a new output {@link MediaFormat}. */
   private void processOutputFormat() throws ExoPlaybackException {
     codecHasOutputMediaFormat = true;
-    MediaFormat mediaFormat = codec.getOutputFormat();
+    MediaFormat mediaFormat =
+        codecAsyncCallback != null ? codecAsyncCallback.getOutputFormat() : codec.getOutputFormat();
     if (codecAdaptationWorkaroundMode != ADAPTATION_WORKAROUND_MODE_NEVER
         && mediaFormat.getInteger(MediaFormat.KEY_WIDTH) == ADAPTATION_WORKAROUND_SLICE_WIDTH_HEIGHT
         && mediaFormat.getInteger(MediaFormat.KEY_HEIGHT)
@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.mediacodec;
 
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.media.MediaCodecInfo.CodecCapabilities;
 import android.media.MediaCodecInfo.CodecProfileLevel;
 import android.media.MediaCodecList;
@@ -65,6 +66,7 @@ public final class MediaCodecUtil {
   private static final Pattern PROFILE_PATTERN = Pattern.compile("^\\D?(\\d+)$");
 
   private static final HashMap<CodecKey, List<MediaCodecInfo>> decoderInfosCache = new HashMap<>();
+  @Nullable private static PersistentDecoderInfoCache persistentDecoderInfoCache;
 
   // Codecs to constant mappings.
   // AVC.
@@ -116,6 +118,27 @@ public final class MediaCodecUtil {
     }
   }
 
+  /**
+   * Enables persisting the decoder information returned by {@link #getDecoderInfos(String, boolean,
+   * boolean)} across application launches. Decoder information persisted by an earlier launch is
+   * then returned without enumerating the decoders, provided that the device's build fingerprint
+   * and API level, and the library version, are unchanged. Persisted information is read when
+   * decoder information is first queried.
+   *
+   * <p>Should be called before decoder information is queried for the first time, for example in
+   * {@link android.app.Application#onCreate()}. Does nothing on API levels lower than 21.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param context A {@link Context}.
+   */
+  public static synchronized void experimental_enablePersistentDecoderInfoCache(Context context) {
+    if (Util.SDK_INT >= 21 && persistentDecoderInfoCache == null) {
+      persistentDecoderInfoCache =
+          new PersistentDecoderInfoCache(context.getApplicationContext().getCacheDir());
+    }
+  }
+
   /**
    * Returns information about a decoder suitable for audio passthrough.
    *
@@ -168,6 +191,13 @@ public final class MediaCodecUtil {
     if (cachedDecoderInfos != null) {
       return cachedDecoderInfos;
     }
+    if (persistentDecoderInfoCache != null) {
+      cachedDecoderInfos = persistentDecoderInfoCache.get(key);
+      if (cachedDecoderInfos != null) {
+        decoderInfosCache.put(key, cachedDecoderInfos);
+        return cachedDecoderInfos;
+      }
+    }
     MediaCodecListCompat mediaCodecList =
         Util.SDK_INT >= 21
             ? new MediaCodecListCompatV21(secure, tunneling)
@@ -186,6 +216,9 @@ public final class MediaCodecUtil {
     applyWorkarounds(mimeType, decoderInfos);
     List<MediaCodecInfo> unmodifiableDecoderInfos = Collections.unmodifiableList(decoderInfos);
     decoderInfosCache.put(key, unmodifiableDecoderInfos);
+    if (persistentDecoderInfoCache != null) {
+      persistentDecoderInfoCache.put(key, unmodifiableDecoderInfos);
+    }
     return unmodifiableDecoderInfos;
   }
 
@@ -430,6 +463,7 @@ public final class MediaCodecUtil {
       String name,
       boolean secureDecodersExplicit,
       String mimeType) {
+    // PersistentDecoderInfoCache.VERSION must be incremented when the workarounds change.
     if (info.isEncoder() || (!secureDecodersExplicit && name.endsWith(".secure"))) {
       return false;
     }
@@ -533,6 +567,7 @@ public final class MediaCodecUtil {
    * @param decoderInfos The list to modify.
    */
   private static void applyWorkarounds(String mimeType, List<MediaCodecInfo> decoderInfos) {
+    // PersistentDecoderInfoCache.VERSION must be incremented when the workarounds change.
     if (MimeTypes.AUDIO_RAW.equals(mimeType)) {
       if (Util.SDK_INT < 26
           && Util.DEVICE.equals("R9")
@@ -1048,7 +1083,7 @@ public final class MediaCodecUtil {
 
   }
 
-  private static final class CodecKey {
+  /* package */ static final class CodecKey {
 
     public final String mimeType;
     public final boolean secure;
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import android.os.Build;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.ExoPlayerLibraryInfo;
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil.CodecKey;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Persists the decoder information queried by {@link MediaCodecUtil} in a file, so that it can be
+ * reused by later application launches without enumerating the decoders again.
+ *
+ * <p>The persisted information is only used on the build of the device, and with the version of
+ * the library, that persisted it. It's discarded if the device's build fingerprint or API level, or
+ * the library version, change.
+ *
+ * <p>The decoder information for each key is serialized once, when it's put. The file is written
+ * on a background thread, and puts that happen whilst a write is pending are written together.
+ *
+ * <p>{@link #get(CodecKey)} and {@link #put(CodecKey, List)} must not be called concurrently.
+ * {@link MediaCodecUtil} only calls them whilst holding its lock.
+ */
+/* package */ final class PersistentDecoderInfoCache {
+
+  private static final String TAG = "DecoderInfoCache";
+  private static final String FILE_NAME = "exoplayer_decoder_info_cache";
+  /**
+   * The version of the persisted information. Must be incremented when the file format changes,
+   * and when the workarounds that {@link MediaCodecUtil} applies to the decoder information change.
+   */
+  private static final int VERSION = 2;
+
+  private final AtomicFile atomicFile;
+  private final String buildId;
+  private final Executor writeExecutor;
+  private final HashMap<CodecKey, List<MediaCodecInfo>> decoderInfos;
+
+  // Guarded by this.
+  private final HashMap<CodecKey, byte[]> serializedDecoderInfos;
+  private boolean writePending;
+
+  private boolean loaded;
+
+  /**
+   * Creates an instance.
+   *
+   * @param directory The directory in which to persist the decoder information.
+   */
+  public PersistentDecoderInfoCache(File directory) {
+    this(
+        directory,
+        /* buildId= */ Build.FINGERPRINT
+            + "/"
+            + Util.SDK_INT
+            + "/"
+            + ExoPlayerLibraryInfo.VERSION_INT,
+        Util.newSingleThreadExecutor("ExoPlayer:DecoderInfoCache"));
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param directory The directory in which to persist the decoder information.
+   * @param buildId An identifier of the device build and library version. Persisted information is
+   *     discarded if it was persisted with a different identifier.
+   * @param writeExecutor The {@link Executor} on which the file is written.
+   */
+  /* package */ PersistentDecoderInfoCache(
+      File directory, String buildId, Executor writeExecutor) {
+    atomicFile = new AtomicFile(new File(directory, FILE_NAME));
+    this.buildId = buildId;
+    this.writeExecutor = writeExecutor;
+    decoderInfos = new HashMap<>();
+    serializedDecoderInfos = new HashMap<>();
+  }
+
+  /**
+   * Returns the persisted decoder information for a key, or null if none was persisted. The
+   * persisted information is read on the first call.
+   *
+   * @param key The {@link CodecKey}.
+   * @return An unmodifiable list of {@link MediaCodecInfo}s, or null.
+   */
+  @Nullable
+  public List<MediaCodecInfo> get(CodecKey key) {
+    maybeLoad();
+    return decoderInfos.get(key);
+  }
+
+  /**
+   * Persists the decoder information for a key. The information is written to the file
+   * asynchronously. Failures to write the information are logged and otherwise ignored.
+   *
+   * @param key The {@link CodecKey}.
+   * @param decoderInfos The {@link MediaCodecInfo}s for the key.
+   */
+  public void put(CodecKey key, List<MediaCodecInfo> decoderInfos) {
+    maybeLoad();
+    byte[] serializedKeyDecoderInfos;
+    try {
+      serializedKeyDecoderInfos = serializeDecoderInfos(key, decoderInfos);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to serialize decoder information", e);
+      return;
+    }
+    this.decoderInfos.put(key, decoderInfos);
+    synchronized (this) {
+      serializedDecoderInfos.put(key, serializedKeyDecoderInfos);
+      if (writePending) {
+        // The pending write will include this key.
+        return;
+      }
+      writePending = true;
+    }
+    writeExecutor.execute(this::writeFile);
+  }
+
+  private void maybeLoad() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    if (!atomicFile.exists()) {
+      return;
+    }
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(atomicFile.openRead()));
+      if (input.readInt() != VERSION || !buildId.equals(input.readUTF())) {
+        // The information was persisted by another library version or device build.
+        return;
+      }
+      HashMap<CodecKey, List<MediaCodecInfo>> readDecoderInfos = new HashMap<>();
+      HashMap<CodecKey, byte[]> readSerializedDecoderInfos = new HashMap<>();
+      int keyCount = input.readInt();
+      for (int i = 0; i < keyCount; i++) {
+        byte[] serializedKeyDecoderInfos = new byte[input.readInt()];
+        input.readFully(serializedKeyDecoderInfos);
+        DataInputStream keyInput =
+            new DataInputStream(new ByteArrayInputStream(serializedKeyDecoderInfos));
+        CodecKey key =
+            new CodecKey(
+                /* mimeType= */ keyInput.readUTF(),
+                /* secure= */ keyInput.readBoolean(),
+                /* tunneling= */ keyInput.readBoolean());
+        int decoderInfoCount = keyInput.readInt();
+        ArrayList<MediaCodecInfo> keyDecoderInfos = new ArrayList<>(decoderInfoCount);
+        for (int j = 0; j < decoderInfoCount; j++) {
+          keyDecoderInfos.add(readDecoderInfo(keyInput));
+        }
+        readDecoderInfos.put(key, Collections.unmodifiableList(keyDecoderInfos));
+        readSerializedDecoderInfos.put(key, serializedKeyDecoderInfos);
+      }
+      decoderInfos.putAll(readDecoderInfos);
+      synchronized (this) {
+        serializedDecoderInfos.putAll(readSerializedDecoderInfos);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read persisted decoder information", e);
+      atomicFile.delete();
+    } finally {
+      Util.closeQuietly(input);
+    }
+  }
+
+  private void writeFile() {
+    ArrayList<byte[]> entries;
+    synchronized (this) {
+      writePending = false;
+      entries = new ArrayList<>(serializedDecoderInfos.values());
+    }
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(atomicFile.startWrite()));
+      output.writeInt(VERSION);
+      output.writeUTF(buildId);
+      output.writeInt(entries.size());
+      for (int i = 0; i < entries.size(); i++) {
+        byte[] entry = entries.get(i);
+        output.writeInt(entry.length);
+        output.write(entry);
+      }
+      atomicFile.endWrite(output);
+      // Avoid calling close twice.
+      output = null;
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to persist decoder information", e);
+    } finally {
+      Util.closeQuietly(output);
+    }
+  }
+
+  private static byte[] serializeDecoderInfos(CodecKey key, List<MediaCodecInfo> decoderInfos)
+      throws IOException {
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(byteArrayOutputStream);
+    output.writeUTF(key.mimeType);
+    output.writeBoolean(key.secure);
+    output.writeBoolean(key.tunneling);
+    output.writeInt(decoderInfos.size());
+    for (int i = 0; i < decoderInfos.size(); i++) {
+      writeDecoderInfo(decoderInfos.get(i), output);
+    }
+    output.flush();
+    return byteArrayOutputStream.toByteArray();
+  }
+
+  private static MediaCodecInfo readDecoderInfo(DataInputStream input) throws IOException {
+    String name = input.readUTF();
+    String mimeType = input.readUTF();
+    String codecMimeType = input.readUTF();
+    boolean hardwareAccelerated = input.readBoolean();
+    boolean softwareOnly = input.readBoolean();
+    boolean vendor = input.readBoolean();
+    boolean adaptive = input.readBoolean();
+    boolean tunneling = input.readBoolean();
+    boolean secure = input.readBoolean();
+    @Nullable
+    CachedCodecCapabilities cachedCapabilities =
+        input.readBoolean() ? CachedCodecCapabilities.read(input) : null;
+    return MediaCodecInfo.newCachedInstance(
+        name,
+        mimeType,
+        codecMimeType,
+        cachedCapabilities,
+        hardwareAccelerated,
+        softwareOnly,
+        vendor,
+        adaptive,
+        tunneling,
+        secure);
+  }
+
+  private static void writeDecoderInfo(MediaCodecInfo decoderInfo, DataOutputStream output)
+      throws IOException {
+    output.writeUTF(decoderInfo.name);
+    output.writeUTF(Assertions.checkNotNull(decoderInfo.mimeType));
+    output.writeUTF(Assertions.checkNotNull(decoderInfo.codecMimeType));
+    output.writeBoolean(decoderInfo.hardwareAccelerated);
+    output.writeBoolean(decoderInfo.softwareOnly);
+    output.writeBoolean(decoderInfo.vendor);
+    output.writeBoolean(decoderInfo.adaptive);
+    output.writeBoolean(decoderInfo.tunneling);
+    output.writeBoolean(decoderInfo.secure);
+    @Nullable CachedCodecCapabilities cachedCapabilities = decoderInfo.getCachedCapabilitiesV21();
+    output.writeBoolean(cachedCapabilities != null);
+    if (cachedCapabilities != null) {
+      cachedCapabilities.write(output);
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.RendererCapabilities;
+import com.google.android.exoplayer2.trackselection.TrackSelector;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Preloads the items that follow the current item of a playlist, so that they start playing
+ * without having to wait for their manifest, initialization data and first media samples to load.
+ *
+ * <p>The playlist consists of {@link PreloadMediaSource}s, which are usually also added to the
+ * player, for example through a {@link ConcatenatingMediaSource}. When the current item changes,
+ * the manager prepares the sources of the next few items, selects their tracks with the player's
+ * {@link TrackSelector} and loads the start of their first period, without renderers being
+ * attached. When the player reaches a preloaded item, the preloaded period is handed to it.
+ *
+ * <p>The methods of this class can be called from any thread. The preloads run on the playback
+ * thread of the player that plays the items.
+ */
+public final class PreloadManager {
+
+  /** The default number of items that are preloaded after the current item. */
+  public static final int DEFAULT_PRELOAD_COUNT = 2;
+  /** The default duration of media that's preloaded for each item, in milliseconds. */
+  public static final int DEFAULT_PRELOAD_DURATION_MS = 2000;
+
+  private final Handler playbackHandler;
+  private final TrackSelector trackSelector;
+  private final RendererCapabilities[] rendererCapabilities;
+  private final Allocator allocator;
+  @Nullable private final TransferListener mediaTransferListener;
+  private final int preloadCount;
+  private final long preloadDurationUs;
+
+  // Accessed on the playback thread only.
+  private final ArrayList<PreloadMediaSource> preloadedMediaSources;
+  private List<PreloadMediaSource> mediaSources;
+  private int currentIndex;
+  private boolean released;
+
+  /**
+   * Creates an instance that preloads {@link #DEFAULT_PRELOAD_DURATION_MS} of the {@link
+   * #DEFAULT_PRELOAD_COUNT} items after the current item.
+   *
+   * @param playbackLooper The playback {@link Looper} of the player, as returned by {@link
+   *     com.google.android.exoplayer2.ExoPlayer#getPlaybackLooper()}.
+   * @param trackSelector The {@link TrackSelector} of the player.
+   * @param rendererCapabilities The {@link RendererCapabilities} of the player's renderers.
+   * @param allocator The {@link Allocator} of the player's {@link
+   *     com.google.android.exoplayer2.LoadControl}.
+   * @param bandwidthMeter The {@link BandwidthMeter} of the player.
+   */
+  public PreloadManager(
+      Looper playbackLooper,
+      TrackSelector trackSelector,
+      RendererCapabilities[] rendererCapabilities,
+      Allocator allocator,
+      BandwidthMeter bandwidthMeter) {
+    this(
+        playbackLooper,
+        trackSelector,
+        rendererCapabilities,
+        allocator,
+        bandwidthMeter,
+        DEFAULT_PRELOAD_COUNT,
+        DEFAULT_PRELOAD_DURATION_MS);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param playbackLooper The playback {@link Looper} of the player, as returned by {@link
+   *     com.google.android.exoplayer2.ExoPlayer#getPlaybackLooper()}.
+   * @param trackSelector The {@link TrackSelector} of the player.
+   * @param rendererCapabilities The {@link RendererCapabilities} of the player's renderers.
+   * @param allocator The {@link Allocator} of the player's {@link
+   *     com.google.android.exoplayer2.LoadControl}.
+   * @param bandwidthMeter The {@link BandwidthMeter} of the player.
+   * @param preloadCount The number of items after the current item that are preloaded.
+   * @param preloadDurationMs The duration of media that's preloaded for each item, in
+   *     milliseconds.
+   */
+  public PreloadManager(
+      Looper playbackLooper,
+      TrackSelector trackSelector,
+      RendererCapabilities[] rendererCapabilities,
+      Allocator allocator,
+      BandwidthMeter bandwidthMeter,
+      int preloadCount,
+      int preloadDurationMs) {
+    Assertions.checkArgument(preloadCount >= 0);
+    Assertions.checkArgument(preloadDurationMs > 0);
+    playbackHandler = new Handler(playbackLooper);
+    this.trackSelector = trackSelector;
+    this.rendererCapabilities = rendererCapabilities;
+    this.allocator = allocator;
+    mediaTransferListener = bandwidthMeter.getTransferListener();
+    this.preloadCount = preloadCount;
+    preloadDurationUs = C.msToUs(preloadDurationMs);
+    preloadedMediaSources = new ArrayList<>();
+    mediaSources = Collections.emptyList();
+    currentIndex = C.INDEX_UNSET;
+  }
+
+  /**
+   * Sets the items of the playlist, and the index of the current item.
+   *
+   * @param mediaSources The {@link PreloadMediaSource}s of the items, in playback order.
+   * @param currentIndex The index of the current item, or {@link C#INDEX_UNSET} if no item is
+   *     current yet, in which case the first items are preloaded.
+   */
+  public void setMediaSources(List<PreloadMediaSource> mediaSources, int currentIndex) {
+    List<PreloadMediaSource> mediaSourcesCopy = new ArrayList<>(mediaSources);
+    playbackHandler.post(
+        () -> {
+          this.mediaSources = mediaSourcesCopy;
+          this.currentIndex = currentIndex;
+          updatePreloads();
+        });
+  }
+
+  /**
+   * Sets the index of the current item, for example when the user moves to another item. The
+   * preloads of items that are no longer upcoming are released.
+   *
+   * @param currentIndex The index of the current item.
+   */
+  public void setCurrentIndex(int currentIndex) {
+    playbackHandler.post(
+        () -> {
+          this.currentIndex = currentIndex;
+          updatePreloads();
+        });
+  }
+
+  /**
+   * Releases all preloads. Must be called before the player is released, as the preloads are
+   * released on its playback thread.
+   */
+  public void release() {
+    playbackHandler.post(
+        () -> {
+          released = true;
+          for (int i = 0; i < preloadedMediaSources.size(); i++) {
+            preloadedMediaSources.get(i).releasePreload();
+          }
+          preloadedMediaSources.clear();
+        });
+  }
+
+  private void updatePreloads() {
+    if (released) {
+      return;
+    }
+    int firstUpcomingIndex = currentIndex == C.INDEX_UNSET ? 0 : currentIndex + 1;
+    int lastUpcomingIndex = Math.min(mediaSources.size(), firstUpcomingIndex + preloadCount) - 1;
+    // The preload of the current item is kept, as its preloaded period may not be handed to the
+    // player yet.
+    int firstRetainedIndex = currentIndex == C.INDEX_UNSET ? 0 : currentIndex;
+    for (int i = preloadedMediaSources.size() - 1; i >= 0; i--) {
+      PreloadMediaSource mediaSource = preloadedMediaSources.get(i);
+      int index = mediaSources.indexOf(mediaSource);
+      if (index < firstRetainedIndex || index > lastUpcomingIndex) {
+        mediaSource.releasePreload();
+        preloadedMediaSources.remove(i);
+      }
+    }
+    for (int i = firstUpcomingIndex; i <= lastUpcomingIndex; i++) {
+      PreloadMediaSource mediaSource = mediaSources.get(i);
+      mediaSource.preload(
+          trackSelector, rendererCapabilities, allocator, mediaTransferListener, preloadDurationUs);
+      if (!preloadedMediaSources.contains(mediaSource)) {
+        preloadedMediaSources.add(mediaSource);
+      }
+    }
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.android.exoplayer2.util.Util.castNonNull;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import java.io.IOException;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * Media period that wraps a media period which is prepared, and loads, before it's handed to the
+ * player.
+ *
+ * <p>The wrapped period is preloaded by calling {@link #preload(Callback, long)} and {@link
+ * #selectTracksForPreload(TrackSelection[], long)}. The streams created for the preload load
+ * media using the preload's {@link TrackSelection} instances. When the player later calls {@link
+ * #selectTracks(TrackSelection[], boolean[], SampleStream[], boolean[], long)} at the preload
+ * position, the streams whose selections have the same tracks as the player's, and the media they
+ * have buffered, are handed to the player. If the player's selections are different instances, the
+ * wrapped period is asked to retain those streams and to load them using the player's selections
+ * from then on. The other preloaded streams are replaced by streams for the player's selections.
+ */
+/* package */ final class PreloadMediaPeriod implements MediaPeriod, MediaPeriod.Callback {
+
+  /** The wrapped {@link MediaPeriod}. */
+  public final MediaPeriod mediaPeriod;
+
+  @Nullable private Callback callback;
+  private boolean prepared;
+  private long preloadPositionUs;
+  @Nullable private @NullableType TrackSelection[] preloadSelections;
+  @Nullable private @NullableType SampleStream[] preloadStreams;
+
+  /**
+   * Creates an instance.
+   *
+   * @param mediaPeriod The {@link MediaPeriod} to wrap.
+   */
+  public PreloadMediaPeriod(MediaPeriod mediaPeriod) {
+    this.mediaPeriod = mediaPeriod;
+  }
+
+  /**
+   * Prepares the wrapped period before it's handed to the player.
+   *
+   * @param callback The {@link Callback} notified of preparation and of requests to continue
+   *     loading, until the player prepares this period.
+   * @param positionUs The position from which to preload, in microseconds.
+   */
+  public void preload(Callback callback, long positionUs) {
+    this.callback = callback;
+    preloadPositionUs = positionUs;
+    mediaPeriod.prepare(this, positionUs);
+  }
+
+  /** Returns whether the wrapped period has been prepared. */
+  public boolean isPrepared() {
+    return prepared;
+  }
+
+  /**
+   * Selects the tracks to load while preloading. Must only be called once the wrapped period is
+   * prepared, and before the player has prepared this period.
+   *
+   * @param selections The {@link TrackSelection}s to load, one per renderer.
+   * @param positionUs The position from which to load, in microseconds.
+   */
+  public void selectTracksForPreload(@NullableType TrackSelection[] selections, long positionUs) {
+    @NullableType SampleStream[] streams = new SampleStream[selections.length];
+    preloadPositionUs =
+        mediaPeriod.selectTracks(
+            selections,
+            /* mayRetainStreamFlags= */ new boolean[selections.length],
+            streams,
+            /* streamResetFlags= */ new boolean[selections.length],
+            positionUs);
+    preloadSelections = selections;
+    preloadStreams = streams;
+  }
+
+  /**
+   * Returns the track selections made for the preload, or null if tracks weren't selected or the
+   * selected streams have been handed to the player.
+   */
+  @Nullable
+  public TrackSelection[] getPreloadSelections() {
+    return preloadStreams != null ? preloadSelections : null;
+  }
+
+  @Override
+  public void prepare(Callback callback, long positionUs) {
+    this.callback = callback;
+    if (prepared) {
+      callback.onPrepared(this);
+    }
+  }
+
+  @Override
+  public void maybeThrowPrepareError() throws IOException {
+    mediaPeriod.maybeThrowPrepareError();
+  }
+
+  @Override
+  public TrackGroupArray getTrackGroups() {
+    return mediaPeriod.getTrackGroups();
+  }
+
+  @Override
+  public long selectTracks(
+      @NullableType TrackSelection[] selections,
+      boolean[] mayRetainStreamFlags,
+      @NullableType SampleStream[] streams,
+      boolean[] streamResetFlags,
+      long positionUs) {
+    if (preloadStreams == null) {
+      return mediaPeriod.selectTracks(
+          selections, mayRetainStreamFlags, streams, streamResetFlags, positionUs);
+    }
+    @NullableType TrackSelection[] preloadSelections = castNonNull(this.preloadSelections);
+    @NullableType SampleStream[] preloadStreams = this.preloadStreams;
+    this.preloadStreams = null;
+    disablePreloadSelections(preloadSelections, selections);
+    if (!streamsUnset(streams) || preloadStreams.length != streams.length) {
+      // Not expected. Disable the preloaded streams, and let the wrapped period create new ones.
+      disablePreloadStreams(preloadStreams);
+      return mediaPeriod.selectTracks(
+          selections, mayRetainStreamFlags, streams, streamResetFlags, positionUs);
+    }
+    if (positionUs == preloadPositionUs && selectionsIdentical(preloadSelections, selections)) {
+      // The player takes over the preload's selections, so hand it the preloaded streams and the
+      // media they've buffered.
+      for (int i = 0; i < streams.length; i++) {
+        streams[i] = preloadStreams[i];
+        streamResetFlags[i] = preloadStreams[i] != null;
+      }
+      return preloadPositionUs;
+    }
+    // The preloaded streams load using the preload's selections, which the player doesn't update.
+    // Retain the streams whose tracks remain selected, so that the wrapped period keeps the media
+    // they've buffered and loads them using the player's selections, and replace the others.
+    boolean[] retainStreamFlags = new boolean[streams.length];
+    for (int i = 0; i < streams.length; i++) {
+      retainStreamFlags[i] =
+          positionUs == preloadPositionUs
+              && preloadStreams[i] != null
+              && selectsSameTracks(preloadSelections[i], selections[i]);
+    }
+    System.arraycopy(preloadStreams, 0, streams, 0, streams.length);
+    long selectedPositionUs =
+        mediaPeriod.selectTracks(
+            selections, retainStreamFlags, streams, streamResetFlags, positionUs);
+    for (int i = 0; i < streams.length; i++) {
+      if (retainStreamFlags[i] && streams[i] == preloadStreams[i]) {
+        // The player hasn't read from the preloaded stream before.
+        streamResetFlags[i] = true;
+      }
+    }
+    return selectedPositionUs;
+  }
+
+  @Override
+  public void discardBuffer(long positionUs, boolean toKeyframe) {
+    mediaPeriod.discardBuffer(positionUs, toKeyframe);
+  }
+
+  @Override
+  public long readDiscontinuity() {
+    return mediaPeriod.readDiscontinuity();
+  }
+
+  @Override
+  public long getBufferedPositionUs() {
+    return mediaPeriod.getBufferedPositionUs();
+  }
+
+  @Override
+  public long seekToUs(long positionUs) {
+    return mediaPeriod.seekToUs(positionUs);
+  }
+
+  @Override
+  public long getAdjustedSeekPositionUs(long positionUs, SeekParameters seekParameters) {
+    return mediaPeriod.getAdjustedSeekPositionUs(positionUs, seekParameters);
+  }
+
+  @Override
+  public long getNextLoadPositionUs() {
+    return mediaPeriod.getNextLoadPositionUs();
+  }
+
+  @Override
+  public void reevaluateBuffer(long positionUs) {
+    mediaPeriod.reevaluateBuffer(positionUs);
+  }
+
+  @Override
+  public boolean continueLoading(long positionUs) {
+    return mediaPeriod.continueLoading(positionUs);
+  }
+
+  @Override
+  public boolean isLoading() {
+    return mediaPeriod.isLoading();
+  }
+
+  // MediaPeriod.Callback implementation
+
+  @Override
+  public void onPrepared(MediaPeriod mediaPeriod) {
+    prepared = true;
+    castNonNull(callback).onPrepared(this);
+  }
+
+  @Override
+  public void onContinueLoadingRequested(MediaPeriod source) {
+    castNonNull(callback).onContinueLoadingRequested(this);
+  }
+
+  private void disablePreloadStreams(@NullableType SampleStream[] preloadStreams) {
+    mediaPeriod.selectTracks(
+        new TrackSelection[preloadStreams.length],
+        /* mayRetainStreamFlags= */ new boolean[preloadStreams.length],
+        preloadStreams,
+        /* streamResetFlags= */ new boolean[preloadStreams.length],
+        preloadPositionUs);
+  }
+
+  /**
+   * Disables the preload's selections, except for those the player takes over. The player disables
+   * the selections it uses itself.
+   */
+  private static void disablePreloadSelections(
+      @NullableType TrackSelection[] preloadSelections, @NullableType TrackSelection[] selections) {
+    for (int i = 0; i < preloadSelections.length; i++) {
+      @Nullable TrackSelection preloadSelection = preloadSelections[i];
+      if (preloadSelection != null
+          && (i >= selections.length || selections[i] != preloadSelection)) {
+        preloadSelection.disable();
+      }
+    }
+  }
+
+  private static boolean selectionsIdentical(
+      @NullableType TrackSelection[] preloadSelections, @NullableType TrackSelection[] selections) {
+    if (preloadSelections.length != selections.length) {
+      return false;
+    }
+    for (int i = 0; i < selections.length; i++) {
+      if (preloadSelections[i] != selections[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean selectsSameTracks(
+      @Nullable TrackSelection preloadSelection, @Nullable TrackSelection selection) {
+    if (preloadSelection == null || selection == null) {
+      return false;
+    }
+    if (!preloadSelection.getTrackGroup().equals(selection.getTrackGroup())
+        || preloadSelection.length() != selection.length()) {
+      return false;
+    }
+    for (int i = 0; i < selection.length(); i++) {
+      if (preloadSelection.getIndexInTrackGroup(i) != selection.getIndexInTrackGroup(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean streamsUnset(@NullableType SampleStream[] streams) {
+    for (SampleStream stream : streams) {
+      if (stream != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import android.util.Pair;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.RendererCapabilities;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelector;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Log;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A {@link MediaSource} that can prepare, and start loading, the first period of the wrapped
+ * source before the player gets to it.
+ *
+ * <p>A preload is started with {@link #preload(TrackSelector, RendererCapabilities[], Allocator,
+ * TransferListener, long)}, usually by a {@link PreloadManager}, and loads the tracks selected by
+ * the given {@link TrackSelector} from the default position of the first window. If the player
+ * later creates a period at the same position, the prepared period is handed to it. The preloaded
+ * streams and the media they've buffered are handed over for the tracks the player selects too,
+ * and from then on load using the player's {@link TrackSelection}s. Streams for other tracks are
+ * recreated for the player's selections.
+ *
+ * <p>The methods specific to this class must be called on the playback thread of the player that
+ * will play the source, which is returned by {@link
+ * com.google.android.exoplayer2.ExoPlayer#getPlaybackLooper()}.
+ */
+public final class PreloadMediaSource extends CompositeMediaSource<Void> {
+
+  private static final String TAG = "PreloadMediaSource";
+
+  private final MediaSource mediaSource;
+  private final MediaSourceCaller preloadCaller;
+  private final MediaPeriod.Callback preloadCallback;
+
+  @Nullable private TrackSelector trackSelector;
+  @Nullable private RendererCapabilities[] rendererCapabilities;
+  @Nullable private Allocator allocator;
+  private boolean preloadSourcePrepared;
+  @Nullable private Timeline preloadTimeline;
+  private long preloadDurationUs;
+  @Nullable private MediaPeriodId preloadMediaPeriodId;
+  @Nullable private PreloadMediaPeriod preloadMediaPeriod;
+  private long preloadPositionUs;
+  @Nullable private MediaPeriodId handedOverMediaPeriodId;
+  @Nullable private PreloadMediaPeriod handedOverMediaPeriod;
+
+  /**
+   * Creates an instance.
+   *
+   * @param mediaSource The {@link MediaSource} to wrap.
+   */
+  public PreloadMediaSource(MediaSource mediaSource) {
+    this.mediaSource = mediaSource;
+    preloadCaller = (source, timeline) -> onPreloadSourceInfoRefreshed(timeline);
+    preloadCallback = new PreloadCallback();
+  }
+
+  /**
+   * Starts preloading the wrapped source, or extends a preload that's in progress to a longer
+   * duration. Does nothing if the preloaded period has been handed to the player.
+   *
+   * @param trackSelector The {@link TrackSelector} that selects the tracks to preload. Usually the
+   *     track selector of the player that will play the source.
+   * @param rendererCapabilities The {@link RendererCapabilities} of the player's renderers.
+   * @param allocator The {@link Allocator} from which the preloaded media is allocated. Usually the
+   *     allocator of the player's {@link com.google.android.exoplayer2.LoadControl}.
+   * @param mediaTransferListener The {@link TransferListener} notified of the transfers for the
+   *     preload, or null. Should be the transfer listener of the player's {@link
+   *     com.google.android.exoplayer2.upstream.BandwidthMeter}.
+   * @param preloadDurationUs The duration of media to preload, in microseconds.
+   */
+  public void preload(
+      TrackSelector trackSelector,
+      RendererCapabilities[] rendererCapabilities,
+      Allocator allocator,
+      @Nullable TransferListener mediaTransferListener,
+      long preloadDurationUs) {
+    this.trackSelector = trackSelector;
+    this.rendererCapabilities = rendererCapabilities;
+    this.allocator = allocator;
+    this.preloadDurationUs = preloadDurationUs;
+    if (!preloadSourcePrepared) {
+      preloadSourcePrepared = true;
+      mediaSource.prepareSource(preloadCaller, mediaTransferListener);
+    } else if (preloadMediaPeriod == null
+        && handedOverMediaPeriod == null
+        && preloadTimeline != null) {
+      createPreloadPeriod(preloadTimeline);
+    } else if (preloadMediaPeriod != null) {
+      maybeContinuePreloading(preloadMediaPeriod);
+    }
+  }
+
+  /** Returns whether a preloaded period is held for the player. */
+  public boolean isPreloaded() {
+    return preloadMediaPeriod != null && preloadMediaPeriod.isPrepared();
+  }
+
+  /**
+   * Releases the preloaded period if it hasn't been handed to the player yet, and releases the
+   * wrapped source unless it's also prepared by the player.
+   */
+  public void releasePreload() {
+    if (preloadMediaPeriod != null) {
+      disablePreloadSelections(preloadMediaPeriod);
+      mediaSource.releasePeriod(preloadMediaPeriod.mediaPeriod);
+      preloadMediaPeriod = null;
+    }
+    if (preloadSourcePrepared) {
+      preloadSourcePrepared = false;
+      preloadTimeline = null;
+      mediaSource.releaseSource(preloadCaller);
+    }
+    trackSelector = null;
+    allocator = null;
+  }
+
+  // MediaSource implementation.
+
+  @Override
+  @Nullable
+  public Object getTag() {
+    return mediaSource.getTag();
+  }
+
+  @Override
+  protected void prepareSourceInternal(@Nullable TransferListener mediaTransferListener) {
+    super.prepareSourceInternal(mediaTransferListener);
+    prepareChildSource(/* id= */ null, mediaSource);
+  }
+
+  @Override
+  protected void onChildSourceInfoRefreshed(Void id, MediaSource mediaSource, Timeline timeline) {
+    refreshSourceInfo(timeline);
+  }
+
+  @Override
+  public MediaPeriod createPeriod(MediaPeriodId id, Allocator allocator, long startPositionUs) {
+    if (preloadMediaPeriod != null
+        && Assertions.checkNotNull(preloadMediaPeriodId).periodUid.equals(id.periodUid)
+        && !id.isAd()
+        && id.nextAdGroupIndex == C.INDEX_UNSET
+        && startPositionUs == preloadPositionUs) {
+      handedOverMediaPeriod = preloadMediaPeriod;
+      handedOverMediaPeriodId = id;
+      preloadMediaPeriod = null;
+      createEventDispatcher(id).mediaPeriodCreated();
+      return handedOverMediaPeriod;
+    }
+    return mediaSource.createPeriod(id, allocator, startPositionUs);
+  }
+
+  @Override
+  public void releasePeriod(MediaPeriod mediaPeriod) {
+    if (mediaPeriod == handedOverMediaPeriod) {
+      PreloadMediaPeriod handedOverPeriod = (PreloadMediaPeriod) mediaPeriod;
+      handedOverMediaPeriod = null;
+      // The player may release the period before selecting its tracks.
+      disablePreloadSelections(handedOverPeriod);
+      mediaSource.releasePeriod(handedOverPeriod.mediaPeriod);
+    } else {
+      mediaSource.releasePeriod(mediaPeriod);
+    }
+  }
+
+  @Override
+  @Nullable
+  protected MediaPeriodId getMediaPeriodIdForChildMediaPeriodId(
+      Void id, MediaPeriodId mediaPeriodId) {
+    if (mediaPeriodId.equals(preloadMediaPeriodId)) {
+      // Events of a preloaded period are only reported once it's handed to the player.
+      return preloadMediaPeriod == null ? handedOverMediaPeriodId : null;
+    }
+    return mediaPeriodId;
+  }
+
+  // Internal methods.
+
+  private void onPreloadSourceInfoRefreshed(Timeline timeline) {
+    preloadTimeline = timeline;
+    if (preloadMediaPeriod == null && handedOverMediaPeriod == null) {
+      createPreloadPeriod(timeline);
+    }
+  }
+
+  private void createPreloadPeriod(Timeline timeline) {
+    if (timeline.isEmpty()) {
+      return;
+    }
+    Pair<Object, Long> defaultPosition =
+        timeline.getPeriodPosition(
+            new Timeline.Window(),
+            new Timeline.Period(),
+            timeline.getFirstWindowIndex(/* shuffleModeEnabled= */ false),
+            /* windowPositionUs= */ C.TIME_UNSET);
+    preloadMediaPeriodId = new MediaPeriodId(defaultPosition.first);
+    preloadPositionUs = defaultPosition.second;
+    handedOverMediaPeriodId = null;
+    preloadMediaPeriod =
+        new PreloadMediaPeriod(
+            mediaSource.createPeriod(
+                preloadMediaPeriodId, Assertions.checkNotNull(allocator), preloadPositionUs));
+    preloadMediaPeriod.preload(preloadCallback, preloadPositionUs);
+  }
+
+  private void onPreloadPeriodPrepared(PreloadMediaPeriod mediaPeriod) {
+    @NullableType TrackSelection[] selections;
+    try {
+      selections =
+          Assertions.checkNotNull(trackSelector)
+              .selectTracks(
+                  Assertions.checkNotNull(rendererCapabilities),
+                  mediaPeriod.getTrackGroups(),
+                  Assertions.checkNotNull(preloadMediaPeriodId),
+                  Assertions.checkNotNull(preloadTimeline))
+              .selections
+              .getAll();
+    } catch (ExoPlaybackException e) {
+      // Leave it to the player to select tracks, and to report the error.
+      Log.w(TAG, "Track selection for preload failed", e);
+      return;
+    }
+    for (TrackSelection trackSelection : selections) {
+      if (trackSelection != null) {
+        trackSelection.enable();
+      }
+    }
+    mediaPeriod.selectTracksForPreload(selections, preloadPositionUs);
+    maybeContinuePreloading(mediaPeriod);
+  }
+
+  private void maybeContinuePreloading(PreloadMediaPeriod mediaPeriod) {
+    if (mediaPeriod.getPreloadSelections() == null) {
+      return;
+    }
+    long bufferedPositionUs = mediaPeriod.getBufferedPositionUs();
+    if (bufferedPositionUs != C.TIME_END_OF_SOURCE
+        && bufferedPositionUs - preloadPositionUs < preloadDurationUs) {
+      mediaPeriod.continueLoading(preloadPositionUs);
+    }
+  }
+
+  private static void disablePreloadSelections(PreloadMediaPeriod mediaPeriod) {
+    @Nullable TrackSelection[] preloadSelections = mediaPeriod.getPreloadSelections();
+    if (preloadSelections != null) {
+      for (TrackSelection trackSelection : preloadSelections) {
+        if (trackSelection != null) {
+          trackSelection.disable();
+        }
+      }
+    }
+  }
+
+  private final class PreloadCallback implements MediaPeriod.Callback {
+
+    @Override
+    public void onPrepared(MediaPeriod mediaPeriod) {
+      if (mediaPeriod == preloadMediaPeriod) {
+        onPreloadPeriodPrepared(preloadMediaPeriod);
+      }
+    }
+
+    @Override
+    public void onContinueLoadingRequested(MediaPeriod mediaPeriod) {
+      if (mediaPeriod == preloadMediaPeriod) {
+        maybeContinuePreloading(preloadMediaPeriod);
+      }
+    }
+  }
+}
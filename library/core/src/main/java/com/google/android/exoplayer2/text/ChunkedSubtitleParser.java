@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.text;
+
+/**
+ * Parses a subtitle sample incrementally, outputting a {@link Subtitle} for each chunk of cues as
+ * parsing proceeds. Cues are expected to appear in the sample in order of their start times.
+ *
+ * <p>Each chunk holds the cues that start in it, together with any cues from earlier chunks that
+ * are still displayed at the start time of the chunk. Hence a chunk can be displayed from its start
+ * time until the start time of the next chunk without referring to earlier chunks, and only the
+ * chunks that are displayed or about to be displayed need to be held in memory.
+ */
+public interface ChunkedSubtitleParser {
+
+  /**
+   * Parses the next chunk of cues.
+   *
+   * @return A {@link Subtitle} holding the cues to display from {@link #getChunkStartTimeUs()}
+   *     until the start time of the next chunk, or indefinitely if {@link #isEnded()} returns true.
+   * @throws SubtitleDecoderException If a decoding error occurs.
+   */
+  Subtitle parseNextChunk() throws SubtitleDecoderException;
+
+  /**
+   * Returns the start time of the chunk most recently returned by {@link #parseNextChunk()}, in
+   * microseconds. Start times are non-decreasing from one chunk to the next.
+   */
+  long getChunkStartTimeUs();
+
+  /** Returns whether the whole sample has been parsed. */
+  boolean isEnded();
+}
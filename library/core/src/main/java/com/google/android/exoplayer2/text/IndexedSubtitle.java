@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.text;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link Subtitle} that holds the cues to display between each pair of consecutive event times,
+ * so that looking up cues is a binary search and doesn't allocate.
+ */
+public final class IndexedSubtitle implements Subtitle {
+
+  private final long[] eventTimesUs;
+  /**
+   * The cues to display from each event time until the next one, preceded by the cues to display
+   * before the first event time.
+   */
+  private final List<List<Cue>> cuesByInterval;
+
+  /**
+   * Creates an indexed subtitle holding the same events and cues as {@code subtitle}. The cues
+   * returned by {@code subtitle} are evaluated at each of its event times, so this method should be
+   * called off the playback thread for subtitles with many events.
+   *
+   * @param subtitle The subtitle to index.
+   * @return The indexed subtitle.
+   */
+  public static IndexedSubtitle create(Subtitle subtitle) {
+    if (subtitle instanceof IndexedSubtitle) {
+      return (IndexedSubtitle) subtitle;
+    }
+    int eventTimeCount = subtitle.getEventTimeCount();
+    long[] eventTimesUs = new long[eventTimeCount];
+    List<List<Cue>> cuesByInterval = new ArrayList<>(eventTimeCount + 1);
+    long firstIntervalTimeUs = eventTimeCount == 0 ? 0 : subtitle.getEventTime(0) - 1;
+    cuesByInterval.add(Collections.unmodifiableList(subtitle.getCues(firstIntervalTimeUs)));
+    for (int i = 0; i < eventTimeCount; i++) {
+      eventTimesUs[i] = subtitle.getEventTime(i);
+      if (i > 0 && eventTimesUs[i] == eventTimesUs[i - 1]) {
+        // The cues don't change at a repeated event time.
+        cuesByInterval.add(cuesByInterval.get(i));
+      } else {
+        cuesByInterval.add(Collections.unmodifiableList(subtitle.getCues(eventTimesUs[i])));
+      }
+    }
+    return new IndexedSubtitle(eventTimesUs, cuesByInterval);
+  }
+
+  private IndexedSubtitle(long[] eventTimesUs, List<List<Cue>> cuesByInterval) {
+    this.eventTimesUs = eventTimesUs;
+    this.cuesByInterval = cuesByInterval;
+  }
+
+  @Override
+  public int getNextEventTimeIndex(long timeUs) {
+    int index =
+        Util.binarySearchCeil(
+            eventTimesUs, timeUs, /* inclusive= */ false, /* stayInBounds= */ false);
+    return index < eventTimesUs.length ? index : C.INDEX_UNSET;
+  }
+
+  @Override
+  public int getEventTimeCount() {
+    return eventTimesUs.length;
+  }
+
+  @Override
+  public long getEventTime(int index) {
+    Assertions.checkArgument(index >= 0);
+    Assertions.checkArgument(index < eventTimesUs.length);
+    return eventTimesUs[index];
+  }
+
+  @Override
+  public List<Cue> getCues(long timeUs) {
+    int index =
+        Util.binarySearchFloor(
+            eventTimesUs, timeUs, /* inclusive= */ true, /* stayInBounds= */ false);
+    return cuesByInterval.get(index + 1);
+  }
+}
@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.text;
 
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.decoder.SimpleDecoder;
 import com.google.android.exoplayer2.util.Assertions;
 import java.nio.ByteBuffer;
@@ -30,6 +31,12 @@ public abstract class SimpleSubtitleDecoder extends
 
   private final String name;
 
+  private volatile boolean indexCues;
+  private volatile boolean streamingEnabled;
+
+  // Accessed only on the decode thread.
+  @Nullable private ChunkedSubtitleParser chunkedParser;
+
   /** @param name The name of the decoder. */
   @SuppressWarnings("initialization:method.invocation.invalid")
   protected SimpleSubtitleDecoder(String name) {
@@ -43,6 +50,34 @@ public abstract class SimpleSubtitleDecoder extends
     return name;
   }
 
+  /**
+   * Sets whether decoded subtitles should be converted to {@link IndexedSubtitle}s on the decode
+   * thread, so that looking up their cues during playback is a binary search. This is beneficial
+   * for subtitles with many events, or whose cues are expensive to compute.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param indexCues Whether to index the cues of decoded subtitles.
+   */
+  public final void experimental_setIndexCues(boolean indexCues) {
+    this.indexCues = indexCues;
+  }
+
+  /**
+   * Sets whether samples should be decoded in chunks if the decoder supports it, outputting a
+   * subtitle for each chunk of cues as decoding proceeds rather than a single subtitle once the
+   * whole sample has been decoded. This allows the first cues of a large sample to be displayed
+   * sooner, and bounds the number of decoded cues held in memory. Decoding of further chunks waits
+   * until earlier ones have been released.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param streamingEnabled Whether to decode samples in chunks.
+   */
+  public final void experimental_setStreamingEnabled(boolean streamingEnabled) {
+    this.streamingEnabled = streamingEnabled;
+  }
+
   @Override
   public void setPositionUs(long timeUs) {
     // Do nothing
@@ -73,10 +108,37 @@ public abstract class SimpleSubtitleDecoder extends
   @Nullable
   protected final SubtitleDecoderException decode(
       SubtitleInputBuffer inputBuffer, SubtitleOutputBuffer outputBuffer, boolean reset) {
+    @Nullable ChunkedSubtitleParser chunkedParser = this.chunkedParser;
+    this.chunkedParser = null;
     try {
       ByteBuffer inputData = Assertions.checkNotNull(inputBuffer.data);
-      Subtitle subtitle = decode(inputData.array(), inputData.limit(), reset);
-      outputBuffer.setContent(inputBuffer.timeUs, subtitle, inputBuffer.subsampleOffsetUs);
+      boolean isFirstChunk = chunkedParser == null || reset;
+      if (isFirstChunk) {
+        chunkedParser =
+            streamingEnabled ? createChunkedParser(inputData.array(), inputData.limit()) : null;
+      }
+      long timeUs = inputBuffer.timeUs;
+      long subsampleOffsetUs = inputBuffer.subsampleOffsetUs;
+      Subtitle subtitle;
+      if (chunkedParser == null) {
+        subtitle = decode(inputData.array(), inputData.limit(), reset);
+      } else {
+        subtitle = chunkedParser.parseNextChunk();
+        if (subsampleOffsetUs == Format.OFFSET_SAMPLE_RELATIVE) {
+          subsampleOffsetUs = inputBuffer.timeUs;
+        }
+        if (!isFirstChunk) {
+          // Later chunks replace the previous chunk once their start time is reached.
+          timeUs = Math.max(timeUs, chunkedParser.getChunkStartTimeUs() + subsampleOffsetUs);
+        }
+        if (!chunkedParser.isEnded()) {
+          this.chunkedParser = chunkedParser;
+        }
+      }
+      if (indexCues) {
+        subtitle = IndexedSubtitle.create(subtitle);
+      }
+      outputBuffer.setContent(timeUs, subtitle, subsampleOffsetUs);
       // Clear BUFFER_FLAG_DECODE_ONLY (see [Internal: b/27893809]).
       outputBuffer.clearFlag(C.BUFFER_FLAG_DECODE_ONLY);
       return null;
@@ -85,6 +147,11 @@ public abstract class SimpleSubtitleDecoder extends
     }
   }
 
+  @Override
+  protected final boolean hasRemainingInput(SubtitleInputBuffer inputBuffer) {
+    return chunkedParser != null && !inputBuffer.isEndOfStream();
+  }
+
   /**
    * Decodes data into a {@link Subtitle}.
    *
@@ -97,4 +164,24 @@ public abstract class SimpleSubtitleDecoder extends
   protected abstract Subtitle decode(byte[] data, int size, boolean reset)
       throws SubtitleDecoderException;
 
+  /**
+   * Creates a parser that decodes data in chunks, if the decoder supports doing so. Called instead
+   * of {@link #decode(byte[], int, boolean)} if streaming is {@link
+   * #experimental_setStreamingEnabled(boolean) enabled}. The data remains unchanged until the
+   * parser {@link ChunkedSubtitleParser#isEnded() has ended} or the decoder is reset.
+   *
+   * <p>The default implementation returns null, in which case the data is decoded by {@link
+   * #decode(byte[], int, boolean)}.
+   *
+   * @param data An array holding the data to be decoded, starting at position 0.
+   * @param size The size of the data to be decoded.
+   * @return The parser, or null if the decoder doesn't support decoding in chunks.
+   * @throws SubtitleDecoderException If a decoding error occurs.
+   */
+  @Nullable
+  protected ChunkedSubtitleParser createChunkedParser(byte[] data, int size)
+      throws SubtitleDecoderException {
+    return null;
+  }
+
 }
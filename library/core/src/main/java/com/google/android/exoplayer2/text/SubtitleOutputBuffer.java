@@ -45,6 +45,17 @@ public abstract class SubtitleOutputBuffer extends OutputBuffer implements Subti
         : subsampleOffsetUs;
   }
 
+  /**
+   * Sets the content of the output buffer to be the same as the content of another buffer.
+   *
+   * @param other The buffer whose content should be copied.
+   */
+  /* package */ void setContent(SubtitleOutputBuffer other) {
+    timeUs = other.timeUs;
+    subtitle = other.subtitle;
+    subsampleOffsetUs = other.subsampleOffsetUs;
+  }
+
   @Override
   public int getEventTimeCount() {
     return Assertions.checkNotNull(subtitle).getEventTimeCount();
@@ -88,6 +88,10 @@ public final class TextRenderer extends BaseRenderer implements Callback {
   @Nullable private SubtitleOutputBuffer subtitle;
   @Nullable private SubtitleOutputBuffer nextSubtitle;
   private int nextSubtitleEventIndex;
+  private boolean indexSubtitlesAheadOfTime;
+  private boolean streamSubtitles;
+  @Nullable private RetainedSubtitleOutputBuffer retainedSubtitle;
+  private boolean decoderHasInput;
 
   /**
    * @param output The output.
@@ -120,6 +124,39 @@ public final class TextRenderer extends BaseRenderer implements Callback {
     formatHolder = new FormatHolder();
   }
 
+  /**
+   * Sets whether subtitles should be indexed ahead of time. If enabled, the cues of decoded
+   * subtitles are indexed on the decoder's thread so that looking them up during playback is a
+   * binary search, and the most recently decoded subtitle is retained so that seeking within it
+   * doesn't require decoding it again. This is beneficial for large subtitles that are loaded as a
+   * single sample, such as sideloaded subtitle files. Only applies to decoders that extend {@link
+   * SimpleSubtitleDecoder}, and must be called before the renderer is enabled.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param indexSubtitlesAheadOfTime Whether to index subtitles ahead of time.
+   */
+  public void experimental_setIndexSubtitlesAheadOfTime(boolean indexSubtitlesAheadOfTime) {
+    this.indexSubtitlesAheadOfTime = indexSubtitlesAheadOfTime;
+  }
+
+  /**
+   * Sets whether subtitles should be decoded in chunks where supported. If enabled, the cues of a
+   * large sample such as a sideloaded TTML or WebVTT file are output in chunks as decoding proceeds,
+   * so the first cues are displayed without waiting for the whole sample to be decoded, and only
+   * the chunks around the playback position are held in memory. Decoded subtitles aren't retained
+   * if this is enabled, even if they're {@link #experimental_setIndexSubtitlesAheadOfTime(boolean)
+   * indexed ahead of time}. Only applies to decoders that extend {@link SimpleSubtitleDecoder}, and
+   * must be called before the renderer is enabled.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param streamSubtitles Whether to decode subtitles in chunks.
+   */
+  public void experimental_setStreamSubtitles(boolean streamSubtitles) {
+    this.streamSubtitles = streamSubtitles;
+  }
+
   @Override
   @Capabilities
   public int supportsFormat(Format format) {
@@ -139,7 +176,7 @@ public final class TextRenderer extends BaseRenderer implements Callback {
     if (decoder != null) {
       decoderReplacementState = REPLACEMENT_STATE_SIGNAL_END_OF_STREAM;
     } else {
-      decoder = decoderFactory.createDecoder(streamFormat);
+      decoder = createDecoder(streamFormat);
     }
   }
 
@@ -164,6 +201,7 @@ public final class TextRenderer extends BaseRenderer implements Callback {
         handleDecoderError(e);
         return;
       }
+      maybeRetainSubtitle(nextSubtitle);
     }
 
     if (getState() != STATE_STARTED) {
@@ -237,7 +275,15 @@ public final class TextRenderer extends BaseRenderer implements Callback {
             nextInputBuffer.subsampleOffsetUs = formatHolder.format.subsampleOffsetUs;
             nextInputBuffer.flip();
           }
+          if (!decoderHasInput && nextSubtitle == null && isRetainedSample(nextInputBuffer)) {
+            // The sample was decoded before the renderer was reset, so output it without decoding
+            // it again.
+            nextSubtitle = retainedSubtitle;
+            nextInputBuffer.clear();
+            continue;
+          }
           decoder.queueInputBuffer(nextInputBuffer);
+          decoderHasInput = true;
           nextInputBuffer = null;
         } else if (result == C.RESULT_NOTHING_READ) {
           return;
@@ -254,6 +300,7 @@ public final class TextRenderer extends BaseRenderer implements Callback {
     streamFormat = null;
     clearOutput();
     releaseDecoder();
+    retainedSubtitle = null;
   }
 
   @Override
@@ -290,7 +337,48 @@ public final class TextRenderer extends BaseRenderer implements Callback {
 
   private void replaceDecoder() {
     releaseDecoder();
-    decoder = decoderFactory.createDecoder(streamFormat);
+    retainedSubtitle = null;
+    decoder = createDecoder(streamFormat);
+  }
+
+  private SubtitleDecoder createDecoder(Format format) {
+    SubtitleDecoder decoder = decoderFactory.createDecoder(format);
+    if (decoder instanceof SimpleSubtitleDecoder) {
+      SimpleSubtitleDecoder simpleSubtitleDecoder = (SimpleSubtitleDecoder) decoder;
+      simpleSubtitleDecoder.experimental_setIndexCues(indexSubtitlesAheadOfTime);
+      simpleSubtitleDecoder.experimental_setStreamingEnabled(streamSubtitles);
+    }
+    decoderHasInput = false;
+    return decoder;
+  }
+
+  /**
+   * Retains the content of {@code subtitle} if subtitles are being indexed ahead of time, so that
+   * it can be output again if the renderer is reset. Decoders that extend {@link
+   * SimpleSubtitleDecoder} output exactly one subtitle per sample, at the time of the sample,
+   * unless they're decoding in chunks.
+   */
+  private void maybeRetainSubtitle(@Nullable SubtitleOutputBuffer subtitle) {
+    if (indexSubtitlesAheadOfTime
+        && !streamSubtitles
+        && decoder instanceof SimpleSubtitleDecoder
+        && subtitle != null
+        && !subtitle.isEndOfStream()) {
+      if (retainedSubtitle == null) {
+        retainedSubtitle = new RetainedSubtitleOutputBuffer();
+      }
+      retainedSubtitle.setContent(subtitle);
+    }
+  }
+
+  /**
+   * Returns whether {@code inputBuffer} holds the sample from which the retained subtitle was
+   * decoded. Samples in the same stream with the same time are assumed to be identical.
+   */
+  private boolean isRetainedSample(SubtitleInputBuffer inputBuffer) {
+    return retainedSubtitle != null
+        && !inputBuffer.isEndOfStream()
+        && inputBuffer.timeUs == retainedSubtitle.timeUs;
   }
 
   private long getNextEventTime() {
@@ -345,6 +433,16 @@ public final class TextRenderer extends BaseRenderer implements Callback {
     } else {
       releaseBuffers();
       decoder.flush();
+      decoderHasInput = false;
+    }
+  }
+
+  /** A retained subtitle, which isn't released when the renderer is done with it. */
+  private static final class RetainedSubtitleOutputBuffer extends SubtitleOutputBuffer {
+
+    @Override
+    public void release() {
+      // Do nothing, so that the subtitle can be output again.
     }
   }
 }
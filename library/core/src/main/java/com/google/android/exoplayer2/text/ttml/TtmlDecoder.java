@@ -16,7 +16,9 @@
 package com.google.android.exoplayer2.text.ttml;
 
 import android.text.Layout;
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.text.ChunkedSubtitleParser;
 import com.google.android.exoplayer2.text.Cue;
 import com.google.android.exoplayer2.text.SimpleSubtitleDecoder;
 import com.google.android.exoplayer2.text.Subtitle;
@@ -28,7 +30,11 @@ import com.google.android.exoplayer2.util.XmlPullParserUtil;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -84,6 +90,8 @@ public final class TtmlDecoder extends SimpleSubtitleDecoder {
   private static final Pattern CELL_RESOLUTION = Pattern.compile("^(\\d+) (\\d+)$");
 
   private static final int DEFAULT_FRAME_RATE = 30;
+  /** The number of content elements parsed into each chunk when decoding in chunks. */
+  private static final int CHUNK_CONTENT_NODE_COUNT = 64;
 
   private static final FrameAndTickRate DEFAULT_FRAME_AND_TICK_RATE =
       new FrameAndTickRate(DEFAULT_FRAME_RATE, 1, 1);
@@ -174,6 +182,18 @@ public final class TtmlDecoder extends SimpleSubtitleDecoder {
     }
   }
 
+  @Override
+  protected ChunkedSubtitleParser createChunkedParser(byte[] bytes, int length)
+      throws SubtitleDecoderException {
+    try {
+      XmlPullParser xmlParser = xmlParserFactory.newPullParser();
+      xmlParser.setInput(new ByteArrayInputStream(bytes, 0, length), null);
+      return new ChunkParser(xmlParser);
+    } catch (XmlPullParserException xppe) {
+      throw new SubtitleDecoderException("Unable to decode source", xppe);
+    }
+  }
+
   private FrameAndTickRate parseFrameAndTickRates(XmlPullParser xmlParser)
       throws SubtitleDecoderException {
     int frameRate = DEFAULT_FRAME_RATE;
@@ -720,6 +740,236 @@ public final class TtmlDecoder extends SimpleSubtitleDecoder {
     throw new SubtitleDecoderException("Malformed time expression: " + time);
   }
 
+  /**
+   * Parses a TTML document in chunks. Content elements (paragraphs, and any other elements that
+   * aren't the root, body or a div without an image) aren't attached to the elements that contain
+   * them as they're parsed. Instead, each chunk attaches its content to copies of the containing
+   * elements, so that content is released along with the last chunk that displays it.
+   */
+  private final class ChunkParser implements ChunkedSubtitleParser {
+
+    private final XmlPullParser xmlParser;
+    private final Map<String, TtmlStyle> globalStyles;
+    private final Map<String, TtmlRegion> regionMap;
+    private final Map<String, String> imageMap;
+    private final ArrayDeque<TtmlNode> nodeStack;
+
+    private FrameAndTickRate frameAndTickRate;
+    private CellResolution cellResolution;
+    @Nullable private TtsExtent ttsExtent;
+    private int unsupportedNodeDepth;
+    @Nullable private ContentNode pendingContentNode;
+    private List<ContentNode> chunkContentNodes;
+    private long chunkStartTimeUs;
+    private boolean ended;
+
+    public ChunkParser(XmlPullParser xmlParser) {
+      this.xmlParser = xmlParser;
+      globalStyles = new HashMap<>();
+      regionMap = new HashMap<>();
+      imageMap = new HashMap<>();
+      regionMap.put(TtmlNode.ANONYMOUS_REGION_ID, new TtmlRegion(null));
+      nodeStack = new ArrayDeque<>();
+      frameAndTickRate = DEFAULT_FRAME_AND_TICK_RATE;
+      cellResolution = DEFAULT_CELL_RESOLUTION;
+      chunkContentNodes = Collections.emptyList();
+      chunkStartTimeUs = C.TIME_UNSET;
+    }
+
+    @Override
+    public Subtitle parseNextChunk() throws SubtitleDecoderException {
+      List<ContentNode> newContentNodes = new ArrayList<>();
+      try {
+        int eventType = xmlParser.getEventType();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+          if (eventType == XmlPullParser.START_TAG
+              && unsupportedNodeDepth == 0
+              && pendingContentNode == null
+              && newContentNodes.size() >= CHUNK_CONTENT_NODE_COUNT) {
+            // Leave the element to be parsed as part of the next chunk.
+            break;
+          }
+          parseEvent(eventType, newContentNodes);
+          eventType = xmlParser.next();
+        }
+        ended = eventType == XmlPullParser.END_DOCUMENT;
+      } catch (XmlPullParserException xppe) {
+        throw new SubtitleDecoderException("Unable to decode source", xppe);
+      } catch (IOException e) {
+        throw new IllegalStateException("Unexpected error when reading input.", e);
+      }
+      return buildChunk(newContentNodes);
+    }
+
+    @Override
+    public long getChunkStartTimeUs() {
+      return chunkStartTimeUs;
+    }
+
+    @Override
+    public boolean isEnded() {
+      return ended;
+    }
+
+    private void parseEvent(int eventType, List<ContentNode> contentNodes)
+        throws IOException, XmlPullParserException, SubtitleDecoderException {
+      TtmlNode parent = nodeStack.peek();
+      if (unsupportedNodeDepth == 0) {
+        String name = xmlParser.getName();
+        if (eventType == XmlPullParser.START_TAG) {
+          if (TtmlNode.TAG_TT.equals(name)) {
+            frameAndTickRate = parseFrameAndTickRates(xmlParser);
+            cellResolution = parseCellResolution(xmlParser, DEFAULT_CELL_RESOLUTION);
+            ttsExtent = parseTtsExtent(xmlParser);
+          }
+          if (!isSupportedTag(name)) {
+            Log.i(TAG, "Ignoring unsupported tag: " + xmlParser.getName());
+            unsupportedNodeDepth++;
+          } else if (TtmlNode.TAG_HEAD.equals(name)) {
+            parseHeader(xmlParser, globalStyles, cellResolution, ttsExtent, regionMap, imageMap);
+          } else {
+            try {
+              TtmlNode node = parseNode(xmlParser, parent, regionMap, frameAndTickRate);
+              if (pendingContentNode != null) {
+                parent.addChild(node);
+              } else if (!isContainer(node)) {
+                pendingContentNode = new ContentNode(node, nodeStack);
+              }
+              nodeStack.push(node);
+            } catch (SubtitleDecoderException e) {
+              Log.w(TAG, "Suppressing parser error", e);
+              // Treat the node (and by extension, all of its children) as unsupported.
+              unsupportedNodeDepth++;
+            }
+          }
+        } else if (eventType == XmlPullParser.TEXT) {
+          // Text outside of content elements is ignored when computing cues.
+          if (pendingContentNode != null) {
+            parent.addChild(TtmlNode.buildTextNode(xmlParser.getText()));
+          }
+        } else if (eventType == XmlPullParser.END_TAG) {
+          TtmlNode node = nodeStack.pop();
+          if (pendingContentNode != null && node == pendingContentNode.node) {
+            contentNodes.add(pendingContentNode);
+            pendingContentNode = null;
+          }
+        }
+      } else {
+        if (eventType == XmlPullParser.START_TAG) {
+          unsupportedNodeDepth++;
+        } else if (eventType == XmlPullParser.END_TAG) {
+          unsupportedNodeDepth--;
+        }
+      }
+    }
+
+    private Subtitle buildChunk(List<ContentNode> newContentNodes) {
+      long firstStartTimeUs = C.TIME_UNSET;
+      for (int i = 0; i < newContentNodes.size(); i++) {
+        long startTimeUs = newContentNodes.get(i).startTimeUs;
+        if (startTimeUs != C.TIME_UNSET
+            && (firstStartTimeUs == C.TIME_UNSET || startTimeUs < firstStartTimeUs)) {
+          firstStartTimeUs = startTimeUs;
+        }
+      }
+      if (firstStartTimeUs != C.TIME_UNSET) {
+        // Content that's out of order is displayed from the start of the chunk containing it.
+        chunkStartTimeUs =
+            chunkStartTimeUs == C.TIME_UNSET
+                ? firstStartTimeUs
+                : Math.max(chunkStartTimeUs, firstStartTimeUs);
+      }
+
+      // Carry over content from the previous chunk that's still displayed.
+      List<ContentNode> contentNodes = new ArrayList<>();
+      for (int i = 0; i < chunkContentNodes.size(); i++) {
+        ContentNode contentNode = chunkContentNodes.get(i);
+        if (contentNode.endTimeUs == C.TIME_UNSET || contentNode.endTimeUs > chunkStartTimeUs) {
+          contentNodes.add(contentNode);
+        }
+      }
+      contentNodes.addAll(newContentNodes);
+      chunkContentNodes = contentNodes;
+
+      IdentityHashMap<TtmlNode, TtmlNode> containerCopies = new IdentityHashMap<>();
+      @Nullable TtmlNode root = null;
+      for (int i = 0; i < contentNodes.size(); i++) {
+        ContentNode contentNode = contentNodes.get(i);
+        @Nullable TtmlNode parentCopy = null;
+        for (TtmlNode container : contentNode.containers) {
+          @Nullable TtmlNode copy = containerCopies.get(container);
+          if (copy == null) {
+            copy = container.copyWithoutChildren();
+            containerCopies.put(container, copy);
+            if (parentCopy != null) {
+              parentCopy.addChild(copy);
+            } else {
+              root = copy;
+            }
+          }
+          parentCopy = copy;
+        }
+        if (parentCopy != null) {
+          parentCopy.addChild(contentNode.node);
+        } else {
+          root = contentNode.node;
+        }
+      }
+      if (root == null) {
+        root =
+            TtmlNode.buildNode(
+                TtmlNode.TAG_TT,
+                /* startTimeUs= */ C.TIME_UNSET,
+                /* endTimeUs= */ C.TIME_UNSET,
+                /* style= */ null,
+                /* styleIds= */ null,
+                TtmlNode.ANONYMOUS_REGION_ID,
+                /* imageId= */ null);
+      }
+      return new TtmlSubtitle(root, globalStyles, regionMap, imageMap);
+    }
+  }
+
+  /** Returns whether a node contains content elements, rather than being one. */
+  private static boolean isContainer(TtmlNode node) {
+    return TtmlNode.TAG_TT.equals(node.tag)
+        || TtmlNode.TAG_BODY.equals(node.tag)
+        || (TtmlNode.TAG_DIV.equals(node.tag) && node.imageId == null);
+  }
+
+  /** A content element, together with the elements that contain it. */
+  private static final class ContentNode {
+
+    public final TtmlNode node;
+    /** The elements containing {@link #node}, starting with the root. */
+    public final TtmlNode[] containers;
+    /** The time from which the content is displayed, or {@link C#TIME_UNSET} if unbounded. */
+    public final long startTimeUs;
+    /** The time until which the content is displayed, or {@link C#TIME_UNSET} if unbounded. */
+    public final long endTimeUs;
+
+    public ContentNode(TtmlNode node, ArrayDeque<TtmlNode> containerStack) {
+      this.node = node;
+      containers = new TtmlNode[containerStack.size()];
+      long startTimeUs = node.startTimeUs;
+      long endTimeUs = node.endTimeUs;
+      int index = containers.length;
+      for (TtmlNode container : containerStack) {
+        containers[--index] = container;
+        if (container.startTimeUs != C.TIME_UNSET
+            && (startTimeUs == C.TIME_UNSET || container.startTimeUs > startTimeUs)) {
+          startTimeUs = container.startTimeUs;
+        }
+        if (container.endTimeUs != C.TIME_UNSET
+            && (endTimeUs == C.TIME_UNSET || container.endTimeUs < endTimeUs)) {
+          endTimeUs = container.endTimeUs;
+        }
+      }
+      this.startTimeUs = startTimeUs;
+      this.endTimeUs = endTimeUs;
+    }
+  }
+
   private static final class FrameAndTickRate {
     final float effectiveFrameRate;
     final int subFrameRate;
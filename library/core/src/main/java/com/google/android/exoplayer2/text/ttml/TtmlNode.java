@@ -141,6 +141,11 @@ import java.util.TreeSet;
     nodeEndsByRegion = new HashMap<>();
   }
 
+  /** Returns a copy of this node, without its children. */
+  public TtmlNode copyWithoutChildren() {
+    return new TtmlNode(tag, text, startTimeUs, endTimeUs, style, styleIds, regionId, imageId);
+  }
+
   public boolean isActive(long timeUs) {
     return (startTimeUs == C.TIME_UNSET && endTimeUs == C.TIME_UNSET)
         || (startTimeUs <= timeUs && endTimeUs == C.TIME_UNSET)
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2.text.ttml;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.text.Cue;
@@ -35,6 +36,12 @@ import java.util.Map;
   private final Map<String, TtmlRegion> regionMap;
   private final Map<String, String> imageMap;
 
+  /**
+   * The cues of the most recently requested interval between event times, if any. The cues are
+   * replaced as a whole, so that concurrent calls to {@link #getCues(long)} are safe.
+   */
+  @Nullable private volatile IntervalCues intervalCues;
+
   public TtmlSubtitle(
       TtmlNode root,
       Map<String, TtmlStyle> globalStyles,
@@ -71,11 +78,39 @@ import java.util.Map;
 
   @Override
   public List<Cue> getCues(long timeUs) {
-    return root.getCues(timeUs, globalStyles, regionMap, imageMap);
+    // The cues only change at event times, so the cues for the interval between two event times are
+    // reused until a time outside of the interval is requested. They aren't precomputed for every
+    // interval, as doing so would decode every image in the subtitle up front.
+    int index = Util.binarySearchFloor(eventTimesUs, timeUs, true, false);
+    @Nullable IntervalCues intervalCues = this.intervalCues;
+    if (intervalCues == null || intervalCues.index != index) {
+      long intervalTimeUs = index == -1 ? timeUs : eventTimesUs[index];
+      intervalCues =
+          new IntervalCues(
+              index,
+              Collections.unmodifiableList(
+                  root.getCues(intervalTimeUs, globalStyles, regionMap, imageMap)));
+      this.intervalCues = intervalCues;
+    }
+    return intervalCues.cues;
   }
 
   @VisibleForTesting
   /* package */ Map<String, TtmlStyle> getGlobalStyles() {
     return globalStyles;
   }
+
+  /** The cues of an interval between event times. */
+  private static final class IntervalCues {
+
+    /** The index of the event time at the start of the interval, or -1 if before the first. */
+    public final int index;
+    /** The cues of the interval. */
+    public final List<Cue> cues;
+
+    public IntervalCues(int index, List<Cue> cues) {
+      this.index = index;
+      this.cues = cues;
+    }
+  }
 }
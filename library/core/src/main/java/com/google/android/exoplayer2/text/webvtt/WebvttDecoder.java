@@ -16,12 +16,15 @@
 package com.google.android.exoplayer2.text.webvtt;
 
 import android.text.TextUtils;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.text.ChunkedSubtitleParser;
 import com.google.android.exoplayer2.text.SimpleSubtitleDecoder;
 import com.google.android.exoplayer2.text.Subtitle;
 import com.google.android.exoplayer2.text.SubtitleDecoderException;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -37,6 +40,9 @@ public final class WebvttDecoder extends SimpleSubtitleDecoder {
   private static final int EVENT_STYLE_BLOCK = 2;
   private static final int EVENT_CUE = 3;
 
+  /** The number of cues parsed into each chunk when decoding in chunks. */
+  private static final int CHUNK_CUE_COUNT = 64;
+
   private static final String COMMENT_START = "NOTE";
   private static final String STYLE_START = "STYLE";
 
@@ -46,6 +52,8 @@ public final class WebvttDecoder extends SimpleSubtitleDecoder {
   private final CssParser cssParser;
   private final List<WebvttCssStyle> definedStyles;
 
+  private boolean parsedCue;
+
   public WebvttDecoder() {
     super("WebvttDecoder");
     cueParser = new WebvttCueParser();
@@ -58,10 +66,25 @@ public final class WebvttDecoder extends SimpleSubtitleDecoder {
   @Override
   protected Subtitle decode(byte[] bytes, int length, boolean reset)
       throws SubtitleDecoderException {
+    startParsing(bytes, length);
+    ArrayList<WebvttCue> subtitles = new ArrayList<>();
+    parseCues(subtitles, /* maxCueCount= */ Integer.MAX_VALUE);
+    return new WebvttSubtitle(subtitles);
+  }
+
+  @Override
+  protected ChunkedSubtitleParser createChunkedParser(byte[] bytes, int length)
+      throws SubtitleDecoderException {
+    startParsing(bytes, length);
+    return new ChunkParser();
+  }
+
+  private void startParsing(byte[] bytes, int length) throws SubtitleDecoderException {
     parsableWebvttData.reset(bytes, length);
     // Initialization for consistent starting state.
     webvttCueBuilder.reset();
     definedStyles.clear();
+    parsedCue = false;
 
     // Validate the first line of the header, and skip the remainder.
     try {
@@ -70,26 +93,41 @@ public final class WebvttDecoder extends SimpleSubtitleDecoder {
       throw new SubtitleDecoderException(e);
     }
     while (!TextUtils.isEmpty(parsableWebvttData.readLine())) {}
+  }
 
+  /**
+   * Parses cues from the current position of the input, until {@code maxCueCount} cues have been
+   * parsed or the end of the input is reached.
+   *
+   * @param cues A list to which the parsed cues are added.
+   * @param maxCueCount The maximum number of cues to parse.
+   * @return Whether the end of the input has been reached.
+   * @throws SubtitleDecoderException If a style block is found after the first cue.
+   */
+  private boolean parseCues(List<WebvttCue> cues, int maxCueCount)
+      throws SubtitleDecoderException {
+    int cueCount = 0;
     int event;
-    ArrayList<WebvttCue> subtitles = new ArrayList<>();
-    while ((event = getNextEvent(parsableWebvttData)) != EVENT_END_OF_FILE) {
+    while (cueCount < maxCueCount
+        && (event = getNextEvent(parsableWebvttData)) != EVENT_END_OF_FILE) {
       if (event == EVENT_COMMENT) {
         skipComment(parsableWebvttData);
       } else if (event == EVENT_STYLE_BLOCK) {
-        if (!subtitles.isEmpty()) {
+        if (parsedCue) {
           throw new SubtitleDecoderException("A style block was found after the first cue.");
         }
         parsableWebvttData.readLine(); // Consume the "STYLE" header.
         definedStyles.addAll(cssParser.parseBlock(parsableWebvttData));
       } else if (event == EVENT_CUE) {
         if (cueParser.parseCue(parsableWebvttData, webvttCueBuilder, definedStyles)) {
-          subtitles.add(webvttCueBuilder.build());
+          cues.add(webvttCueBuilder.build());
           webvttCueBuilder.reset();
+          cueCount++;
+          parsedCue = true;
         }
       }
     }
-    return new WebvttSubtitle(subtitles);
+    return getNextEvent(parsableWebvttData) == EVENT_END_OF_FILE;
   }
 
   /**
@@ -122,4 +160,57 @@ public final class WebvttDecoder extends SimpleSubtitleDecoder {
     while (!TextUtils.isEmpty(parsableWebvttData.readLine())) {}
   }
 
+  /**
+   * Parses cues in chunks of {@link #CHUNK_CUE_COUNT}, carrying over cues from the previous chunk
+   * that are still displayed at the start of each chunk.
+   */
+  private final class ChunkParser implements ChunkedSubtitleParser {
+
+    private List<WebvttCue> chunkCues;
+    private long chunkStartTimeUs;
+    private boolean ended;
+
+    public ChunkParser() {
+      chunkCues = Collections.emptyList();
+      chunkStartTimeUs = C.TIME_UNSET;
+    }
+
+    @Override
+    public Subtitle parseNextChunk() throws SubtitleDecoderException {
+      List<WebvttCue> newCues = new ArrayList<>();
+      ended = parseCues(newCues, CHUNK_CUE_COUNT);
+      if (!newCues.isEmpty()) {
+        long firstStartTimeUs = Long.MAX_VALUE;
+        for (int i = 0; i < newCues.size(); i++) {
+          firstStartTimeUs = Math.min(firstStartTimeUs, newCues.get(i).startTime);
+        }
+        // Cues that are out of order are displayed from the start of the chunk containing them.
+        chunkStartTimeUs =
+            chunkStartTimeUs == C.TIME_UNSET
+                ? firstStartTimeUs
+                : Math.max(chunkStartTimeUs, firstStartTimeUs);
+      }
+      List<WebvttCue> cues = new ArrayList<>();
+      for (int i = 0; i < chunkCues.size(); i++) {
+        WebvttCue cue = chunkCues.get(i);
+        if (cue.endTime > chunkStartTimeUs) {
+          cues.add(cue);
+        }
+      }
+      cues.addAll(newCues);
+      chunkCues = cues;
+      return new WebvttSubtitle(cues);
+    }
+
+    @Override
+    public long getChunkStartTimeUs() {
+      return chunkStartTimeUs;
+    }
+
+    @Override
+    public boolean isEnded() {
+      return ended;
+    }
+  }
+
 }
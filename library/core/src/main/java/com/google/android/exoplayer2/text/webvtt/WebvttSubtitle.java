@@ -23,33 +23,67 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * A representation of a WebVTT subtitle.
  */
 /* package */ final class WebvttSubtitle implements Subtitle {
 
-  private final List<WebvttCue> cues;
-  private final int numCues;
-  private final long[] cueTimesUs;
   private final long[] sortedCueTimesUs;
+  /** The cues to display from each time in {@link #sortedCueTimesUs} until the next one. */
+  private final List<List<Cue>> cuesByEventIndex;
 
   /**
    * @param cues A list of the cues in this subtitle.
    */
   public WebvttSubtitle(List<WebvttCue> cues) {
-    this.cues = cues;
-    numCues = cues.size();
-    cueTimesUs = new long[2 * numCues];
+    int numCues = cues.size();
+    sortedCueTimesUs = new long[2 * numCues];
+    Integer[] cueIndicesByStartTime = new Integer[numCues];
+    Integer[] cueIndicesByEndTime = new Integer[numCues];
     for (int cueIndex = 0; cueIndex < numCues; cueIndex++) {
       WebvttCue cue = cues.get(cueIndex);
       int arrayIndex = cueIndex * 2;
-      cueTimesUs[arrayIndex] = cue.startTime;
-      cueTimesUs[arrayIndex + 1] = cue.endTime;
+      sortedCueTimesUs[arrayIndex] = cue.startTime;
+      sortedCueTimesUs[arrayIndex + 1] = cue.endTime;
+      cueIndicesByStartTime[cueIndex] = cueIndex;
+      cueIndicesByEndTime[cueIndex] = cueIndex;
     }
-    sortedCueTimesUs = Arrays.copyOf(cueTimesUs, cueTimesUs.length);
     Arrays.sort(sortedCueTimesUs);
+    Arrays.sort(
+        cueIndicesByStartTime,
+        (a, b) -> Long.compare(cues.get(a).startTime, cues.get(b).startTime));
+    Arrays.sort(
+        cueIndicesByEndTime, (a, b) -> Long.compare(cues.get(a).endTime, cues.get(b).endTime));
+
+    // Sweep through the event times, tracking the active cues in their original order.
+    cuesByEventIndex = new ArrayList<>(sortedCueTimesUs.length);
+    TreeSet<Integer> activeCueIndices = new TreeSet<>();
+    int startIndex = 0;
+    int endIndex = 0;
+    for (int i = 0; i < sortedCueTimesUs.length; i++) {
+      long timeUs = sortedCueTimesUs[i];
+      if (i > 0 && timeUs == sortedCueTimesUs[i - 1]) {
+        cuesByEventIndex.add(cuesByEventIndex.get(i - 1));
+        continue;
+      }
+      while (startIndex < numCues
+          && cues.get(cueIndicesByStartTime[startIndex]).startTime <= timeUs) {
+        WebvttCue cue = cues.get(cueIndicesByStartTime[startIndex]);
+        if (cue.startTime < cue.endTime) {
+          activeCueIndices.add(cueIndicesByStartTime[startIndex]);
+        }
+        startIndex++;
+      }
+      while (endIndex < numCues && cues.get(cueIndicesByEndTime[endIndex]).endTime <= timeUs) {
+        activeCueIndices.remove(cueIndicesByEndTime[endIndex++]);
+      }
+      cuesByEventIndex.add(getActiveCues(cues, activeCueIndices));
+    }
   }
 
   @Override
@@ -72,34 +106,47 @@ import java.util.List;
 
   @Override
   public List<Cue> getCues(long timeUs) {
+    int index = Util.binarySearchFloor(sortedCueTimesUs, timeUs, true, false);
+    return index == -1 ? Collections.emptyList() : cuesByEventIndex.get(index);
+  }
+
+  /**
+   * Returns the cues to display when the cues in {@code activeCueIndices} are active.
+   *
+   * @param cues All of the cues in the subtitle.
+   * @param activeCueIndices The indices in {@code cues} of the active cues, in ascending order.
+   * @return The cues to display.
+   */
+  private static List<Cue> getActiveCues(List<WebvttCue> cues, Set<Integer> activeCueIndices) {
+    if (activeCueIndices.isEmpty()) {
+      return Collections.emptyList();
+    }
     List<Cue> list = new ArrayList<>();
     WebvttCue firstNormalCue = null;
     SpannableStringBuilder normalCueTextBuilder = null;
 
-    for (int i = 0; i < numCues; i++) {
-      if ((cueTimesUs[i * 2] <= timeUs) && (timeUs < cueTimesUs[i * 2 + 1])) {
-        WebvttCue cue = cues.get(i);
-        // TODO(ibaker): Replace this with a closer implementation of the WebVTT spec (keeping
-        // individual cues, but tweaking their `line` value):
-        // https://www.w3.org/TR/webvtt1/#cue-computed-line
-        if (cue.isNormalCue()) {
-          // we want to merge all of the normal cues into a single cue to ensure they are drawn
-          // correctly (i.e. don't overlap) and to emulate roll-up, but only if there are multiple
-          // normal cues, otherwise we can just append the single normal cue
-          if (firstNormalCue == null) {
-            firstNormalCue = cue;
-          } else if (normalCueTextBuilder == null) {
-            normalCueTextBuilder = new SpannableStringBuilder();
-            normalCueTextBuilder
-                .append(Assertions.checkNotNull(firstNormalCue.text))
-                .append("\n")
-                .append(Assertions.checkNotNull(cue.text));
-          } else {
-            normalCueTextBuilder.append("\n").append(Assertions.checkNotNull(cue.text));
-          }
+    for (int i : activeCueIndices) {
+      WebvttCue cue = cues.get(i);
+      // TODO(ibaker): Replace this with a closer implementation of the WebVTT spec (keeping
+      // individual cues, but tweaking their `line` value):
+      // https://www.w3.org/TR/webvtt1/#cue-computed-line
+      if (cue.isNormalCue()) {
+        // we want to merge all of the normal cues into a single cue to ensure they are drawn
+        // correctly (i.e. don't overlap) and to emulate roll-up, but only if there are multiple
+        // normal cues, otherwise we can just append the single normal cue
+        if (firstNormalCue == null) {
+          firstNormalCue = cue;
+        } else if (normalCueTextBuilder == null) {
+          normalCueTextBuilder = new SpannableStringBuilder();
+          normalCueTextBuilder
+              .append(Assertions.checkNotNull(firstNormalCue.text))
+              .append("\n")
+              .append(Assertions.checkNotNull(cue.text));
         } else {
-          list.add(cue);
+          normalCueTextBuilder.append("\n").append(Assertions.checkNotNull(cue.text));
         }
+      } else {
+        list.add(cue);
       }
     }
     if (normalCueTextBuilder != null) {
@@ -109,7 +156,7 @@ import java.util.List;
       // there was only a single normal cue, so just add it to the list
       list.add(firstNormalCue);
     }
-    return list;
+    return Collections.unmodifiableList(list);
   }
 
 }
@@ -43,6 +43,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
@@ -1450,11 +1451,15 @@ public class DefaultTrackSelector extends MappingTrackSelector {
   private static final float FRACTION_TO_CONSIDER_FULLSCREEN = 0.98f;
   private static final int[] NO_TRACKS = new int[0];
   private static final int WITHIN_RENDERER_CAPABILITIES_BONUS = 1000;
+  /** The maximum number of selections held in the selection cache. */
+  private static final int SELECTION_CACHE_SIZE = 8;
 
   private final TrackSelection.Factory trackSelectionFactory;
   private final AtomicReference<Parameters> parametersReference;
+  private final LinkedHashMap<SelectionCacheKey, CachedSelection> selectionCache;
 
   private boolean allowMultipleAdaptiveSelections;
+  private volatile boolean selectionCacheEnabled;
 
   /** @deprecated Use {@link #DefaultTrackSelector(Context)} instead. */
   @Deprecated
@@ -1500,6 +1505,15 @@ public class DefaultTrackSelector extends MappingTrackSelector {
   public DefaultTrackSelector(Parameters parameters, TrackSelection.Factory trackSelectionFactory) {
     this.trackSelectionFactory = trackSelectionFactory;
     parametersReference = new AtomicReference<>(parameters);
+    selectionCache =
+        new LinkedHashMap<SelectionCacheKey, CachedSelection>(
+            SELECTION_CACHE_SIZE, /* loadFactor= */ 1, /* accessOrder= */ true) {
+          @Override
+          protected boolean removeEldestEntry(
+              Map.Entry<SelectionCacheKey, CachedSelection> eldest) {
+            return size() > SELECTION_CACHE_SIZE;
+          }
+        };
   }
 
   /**
@@ -1603,6 +1617,39 @@ public class DefaultTrackSelector extends MappingTrackSelector {
    */
   public void experimental_allowMultipleAdaptiveSelections() {
     this.allowMultipleAdaptiveSelections = true;
+    clearSelectionCache();
+  }
+
+  /**
+   * Sets whether track selections should be cached. If enabled, the tracks selected for each
+   * renderer are reused when selecting tracks for a period whose track groups, format support and
+   * selection parameters are all equal to those of a recent selection, as is typically the case for
+   * consecutive items in a playlist of identically encoded media. New {@link TrackSelection}
+   * instances are still created for each selection.
+   *
+   * <p>Subclasses whose selections depend on state other than the inputs listed above must call
+   * {@link #experimental_invalidateSelectionCache()} when that state changes.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param selectionCacheEnabled Whether to cache track selections.
+   */
+  public void experimental_setSelectionCacheEnabled(boolean selectionCacheEnabled) {
+    this.selectionCacheEnabled = selectionCacheEnabled;
+    if (!selectionCacheEnabled) {
+      clearSelectionCache();
+    }
+  }
+
+  /**
+   * Clears the track selection cache and invalidates the current track selections, so that tracks
+   * are selected again without reusing cached selections.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   */
+  public void experimental_invalidateSelectionCache() {
+    clearSelectionCache();
+    invalidate();
   }
 
   // MappingTrackSelector implementation.
@@ -1617,7 +1664,7 @@ public class DefaultTrackSelector extends MappingTrackSelector {
     Parameters params = parametersReference.get();
     int rendererCount = mappedTrackInfo.getRendererCount();
     TrackSelection.@NullableType Definition[] definitions =
-        selectAllTracks(
+        selectAllTracksUsingCache(
             mappedTrackInfo,
             rendererFormatSupports,
             rendererMixedMimeTypeAdaptationSupports,
@@ -1673,6 +1720,58 @@ public class DefaultTrackSelector extends MappingTrackSelector {
 
   // Track selection prior to overrides and disabled flags being applied.
 
+  /**
+   * Returns the result of {@link #selectAllTracks(MappedTrackInfo, int[][][], int[], Parameters)},
+   * reusing a cached result if the selection cache is enabled and holds a selection for equal
+   * inputs.
+   */
+  private TrackSelection.@NullableType Definition[] selectAllTracksUsingCache(
+      MappedTrackInfo mappedTrackInfo,
+      @Capabilities int[][][] rendererFormatSupports,
+      @AdaptiveSupport int[] rendererMixedMimeTypeAdaptationSupports,
+      Parameters params)
+      throws ExoPlaybackException {
+    if (!selectionCacheEnabled) {
+      return selectAllTracks(
+          mappedTrackInfo,
+          rendererFormatSupports,
+          rendererMixedMimeTypeAdaptationSupports,
+          params);
+    }
+    SelectionCacheKey key =
+        new SelectionCacheKey(
+            mappedTrackInfo,
+            rendererFormatSupports,
+            rendererMixedMimeTypeAdaptationSupports,
+            params);
+    @Nullable CachedSelection cachedSelection;
+    synchronized (selectionCache) {
+      cachedSelection = selectionCache.get(key);
+    }
+    if (cachedSelection != null) {
+      return cachedSelection.getDefinitions(mappedTrackInfo);
+    }
+    TrackSelection.@NullableType Definition[] definitions =
+        selectAllTracks(
+            mappedTrackInfo,
+            rendererFormatSupports,
+            rendererMixedMimeTypeAdaptationSupports,
+            params);
+    cachedSelection = CachedSelection.create(mappedTrackInfo, definitions);
+    if (cachedSelection != null) {
+      synchronized (selectionCache) {
+        selectionCache.put(key, cachedSelection);
+      }
+    }
+    return definitions;
+  }
+
+  private void clearSelectionCache() {
+    synchronized (selectionCache) {
+      selectionCache.clear();
+    }
+  }
+
   /**
    * Called from {@link #selectTracks(MappedTrackInfo, int[][][], int[])} to make a track selection
    * for each renderer, prior to overrides and disabled flags being applied.
@@ -2705,6 +2804,119 @@ public class DefaultTrackSelector extends MappingTrackSelector {
     }
   }
 
+  /** The inputs to {@link #selectAllTracks(MappedTrackInfo, int[][][], int[], Parameters)}. */
+  private static final class SelectionCacheKey {
+
+    private final int[] rendererTrackTypes;
+    private final TrackGroupArray[] rendererTrackGroups;
+    @Capabilities private final int[][][] rendererFormatSupports;
+    @AdaptiveSupport private final int[] rendererMixedMimeTypeAdaptationSupports;
+    private final Parameters parameters;
+    private final int hashCode;
+
+    public SelectionCacheKey(
+        MappedTrackInfo mappedTrackInfo,
+        @Capabilities int[][][] rendererFormatSupports,
+        @AdaptiveSupport int[] rendererMixedMimeTypeAdaptationSupports,
+        Parameters parameters) {
+      int rendererCount = mappedTrackInfo.getRendererCount();
+      rendererTrackTypes = new int[rendererCount];
+      rendererTrackGroups = new TrackGroupArray[rendererCount];
+      for (int i = 0; i < rendererCount; i++) {
+        rendererTrackTypes[i] = mappedTrackInfo.getRendererType(i);
+        rendererTrackGroups[i] = mappedTrackInfo.getTrackGroups(i);
+      }
+      this.rendererFormatSupports = rendererFormatSupports;
+      this.rendererMixedMimeTypeAdaptationSupports = rendererMixedMimeTypeAdaptationSupports;
+      this.parameters = parameters;
+      int result = Arrays.hashCode(rendererTrackTypes);
+      result = 31 * result + Arrays.hashCode(rendererTrackGroups);
+      result = 31 * result + Arrays.deepHashCode(rendererFormatSupports);
+      result = 31 * result + Arrays.hashCode(rendererMixedMimeTypeAdaptationSupports);
+      result = 31 * result + parameters.hashCode();
+      hashCode = result;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      SelectionCacheKey other = (SelectionCacheKey) obj;
+      return hashCode == other.hashCode
+          && Arrays.equals(rendererTrackTypes, other.rendererTrackTypes)
+          && Arrays.equals(rendererTrackGroups, other.rendererTrackGroups)
+          && Arrays.deepEquals(rendererFormatSupports, other.rendererFormatSupports)
+          && Arrays.equals(
+              rendererMixedMimeTypeAdaptationSupports,
+              other.rendererMixedMimeTypeAdaptationSupports)
+          && parameters.equals(other.parameters);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * The definitions selected for each renderer, recorded by the index of the selected group so that
+   * they can be applied to other, equal track groups.
+   */
+  private static final class CachedSelection {
+
+    private final TrackSelection.@NullableType Definition[] definitions;
+    private final int[] groupIndices;
+
+    /**
+     * Returns a cached selection for {@code definitions}, or null if they can't be cached because a
+     * definition's group isn't mapped to the corresponding renderer.
+     */
+    @Nullable
+    public static CachedSelection create(
+        MappedTrackInfo mappedTrackInfo, TrackSelection.@NullableType Definition[] definitions) {
+      int[] groupIndices = new int[definitions.length];
+      for (int i = 0; i < definitions.length; i++) {
+        @Nullable TrackSelection.Definition definition = definitions[i];
+        if (definition != null) {
+          groupIndices[i] = mappedTrackInfo.getTrackGroups(i).indexOf(definition.group);
+          if (groupIndices[i] == C.INDEX_UNSET) {
+            return null;
+          }
+        }
+      }
+      return new CachedSelection(definitions.clone(), groupIndices);
+    }
+
+    private CachedSelection(
+        TrackSelection.@NullableType Definition[] definitions, int[] groupIndices) {
+      this.definitions = definitions;
+      this.groupIndices = groupIndices;
+    }
+
+    /** Returns the cached definitions, applied to the track groups of {@code mappedTrackInfo}. */
+    public TrackSelection.@NullableType Definition[] getDefinitions(
+        MappedTrackInfo mappedTrackInfo) {
+      TrackSelection.@NullableType Definition[] result =
+          new TrackSelection.Definition[definitions.length];
+      for (int i = 0; i < definitions.length; i++) {
+        @Nullable TrackSelection.Definition definition = definitions[i];
+        if (definition != null) {
+          result[i] =
+              new TrackSelection.Definition(
+                  mappedTrackInfo.getTrackGroups(i).get(groupIndices[i]),
+                  definition.tracks.clone(),
+                  definition.reason,
+                  definition.data);
+        }
+      }
+      return result;
+    }
+  }
+
   private static final class AudioConfigurationTuple {
 
     public final int channelCount;
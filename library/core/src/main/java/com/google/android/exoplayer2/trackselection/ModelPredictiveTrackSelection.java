@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * An adaptive {@link TrackSelection} that selects tracks using model predictive control. Each time
+ * the selection is updated, the sequence of tracks to load for the next few chunks is chosen to
+ * maximize a quality of experience score, predicted from the sizes of the upcoming chunks, the
+ * current buffer and the bandwidth estimate. The first track of the best sequence is selected.
+ *
+ * <p>The score of a sequence is the sum of the quality of each chunk, minus a penalty proportional
+ * to the change in quality between consecutive chunks and a penalty proportional to the predicted
+ * rebuffering time. The quality of a track is the logarithm of its bitrate relative to the lowest
+ * bitrate in the selection, and can be customized by overriding {@link #getQuality(Format)}.
+ *
+ * <p>Chunk sizes are taken from the {@link MediaChunkIterator}s passed to {@link
+ * #updateSelectedTrack(long, long, long, List, MediaChunkIterator[])} where available, and
+ * estimated from the track bitrates otherwise.
+ */
+public class ModelPredictiveTrackSelection extends BaseTrackSelection {
+
+  /** Factory for {@link ModelPredictiveTrackSelection} instances. */
+  public static class Factory implements TrackSelection.Factory {
+
+    private final int horizonChunkCount;
+    private final float bandwidthFraction;
+    private final float rebufferPenalty;
+    private final float switchPenalty;
+    private final int maxBufferMs;
+    private final Clock clock;
+
+    /** Creates a factory with default parameters. */
+    public Factory() {
+      this(
+          DEFAULT_HORIZON_CHUNK_COUNT,
+          DEFAULT_BANDWIDTH_FRACTION,
+          DEFAULT_REBUFFER_PENALTY,
+          DEFAULT_SWITCH_PENALTY,
+          DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+          Clock.DEFAULT);
+    }
+
+    /**
+     * Creates a factory.
+     *
+     * @param horizonChunkCount The maximum number of upcoming chunks for which sequences of tracks
+     *     are evaluated. The number of evaluated chunks is reduced for selections with many tracks,
+     *     to bound the number of evaluated sequences.
+     * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+     *     consider available for use. Setting to a value less than 1 is recommended to account for
+     *     inaccuracies in the bandwidth estimator.
+     * @param rebufferPenalty The penalty for each second of predicted rebuffering, in units of
+     *     quality.
+     * @param switchPenalty The penalty for each unit of change in quality between consecutive
+     *     chunks.
+     * @param maxBufferMs The maximum duration of media that the player will attempt to buffer, in
+     *     milliseconds. This should match the configuration of the {@link
+     *     com.google.android.exoplayer2.LoadControl}.
+     * @param clock A {@link Clock}.
+     */
+    public Factory(
+        int horizonChunkCount,
+        float bandwidthFraction,
+        float rebufferPenalty,
+        float switchPenalty,
+        int maxBufferMs,
+        Clock clock) {
+      Assertions.checkArgument(horizonChunkCount > 0);
+      this.horizonChunkCount = horizonChunkCount;
+      this.bandwidthFraction = bandwidthFraction;
+      this.rebufferPenalty = rebufferPenalty;
+      this.switchPenalty = switchPenalty;
+      this.maxBufferMs = maxBufferMs;
+      this.clock = clock;
+    }
+
+    @Override
+    public final @NullableType TrackSelection[] createTrackSelections(
+        @NullableType Definition[] definitions, BandwidthMeter bandwidthMeter) {
+      long totalFixedBandwidth = 0;
+      for (Definition definition : definitions) {
+        if (definition != null && definition.tracks.length == 1) {
+          int trackBitrate = definition.group.getFormat(definition.tracks[0]).bitrate;
+          if (trackBitrate != Format.NO_VALUE) {
+            totalFixedBandwidth += trackBitrate;
+          }
+        }
+      }
+      long reservedBandwidth = totalFixedBandwidth;
+      return TrackSelectionUtil.createTrackSelectionsForDefinitions(
+          definitions,
+          definition ->
+              new ModelPredictiveTrackSelection(
+                  definition.group,
+                  definition.tracks,
+                  bandwidthMeter,
+                  reservedBandwidth,
+                  horizonChunkCount,
+                  bandwidthFraction,
+                  rebufferPenalty,
+                  switchPenalty,
+                  maxBufferMs,
+                  clock));
+    }
+  }
+
+  public static final int DEFAULT_HORIZON_CHUNK_COUNT = 5;
+  public static final float DEFAULT_BANDWIDTH_FRACTION =
+      AdaptiveTrackSelection.DEFAULT_BANDWIDTH_FRACTION;
+  public static final float DEFAULT_REBUFFER_PENALTY = 4.3f;
+  public static final float DEFAULT_SWITCH_PENALTY = 1f;
+
+  /** The maximum number of track sequences evaluated each time the selection is updated. */
+  private static final int MAX_EVALUATED_SEQUENCE_COUNT = 4096;
+  /** The chunk duration assumed if no information about chunk durations is available. */
+  private static final long DEFAULT_CHUNK_DURATION_US = 4_000_000;
+  /** The number of recent bandwidth estimate errors used to discount the bandwidth forecast. */
+  private static final int BANDWIDTH_ERROR_SAMPLE_COUNT = 5;
+
+  private final BandwidthMeter bandwidthMeter;
+  private final long reservedBandwidth;
+  private final float bandwidthFraction;
+  private final double rebufferPenalty;
+  private final double switchPenalty;
+  private final double maxBufferSec;
+  private final Clock clock;
+  private final int horizonChunkCount;
+  private final int lowestBitrate;
+  private final double[] trackQualities;
+  private final boolean[] trackAllowed;
+  private final double[][] chunkDownloadBits;
+  private final double[] chunkDurationsSec;
+  private final double[] bandwidthErrors;
+
+  private float playbackSpeed;
+  private int selectedIndex;
+  private int reason;
+  private long lastBitrateEstimate;
+  private int bandwidthErrorCount;
+
+  // State of the search for the best sequence of tracks.
+  private int evaluatedChunkCount;
+  private double bitsPerSecond;
+  private double bestScore;
+  private int bestFirstIndex;
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   */
+  public ModelPredictiveTrackSelection(
+      TrackGroup group, int[] tracks, BandwidthMeter bandwidthMeter) {
+    this(
+        group,
+        tracks,
+        bandwidthMeter,
+        /* reservedBandwidth= */ 0,
+        DEFAULT_HORIZON_CHUNK_COUNT,
+        DEFAULT_BANDWIDTH_FRACTION,
+        DEFAULT_REBUFFER_PENALTY,
+        DEFAULT_SWITCH_PENALTY,
+        DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+        Clock.DEFAULT);
+  }
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param reservedBandwidth The reserved bandwidth, which shouldn't be considered available for
+   *     use, in bits per second.
+   * @param horizonChunkCount The maximum number of upcoming chunks for which sequences of tracks
+   *     are evaluated.
+   * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+   *     consider available for use.
+   * @param rebufferPenalty The penalty for each second of predicted rebuffering, in units of
+   *     quality.
+   * @param switchPenalty The penalty for each unit of change in quality between consecutive
+   *     chunks.
+   * @param maxBufferMs The maximum duration of media that the player will attempt to buffer, in
+   *     milliseconds.
+   * @param clock A {@link Clock}.
+   */
+  public ModelPredictiveTrackSelection(
+      TrackGroup group,
+      int[] tracks,
+      BandwidthMeter bandwidthMeter,
+      long reservedBandwidth,
+      int horizonChunkCount,
+      float bandwidthFraction,
+      float rebufferPenalty,
+      float switchPenalty,
+      int maxBufferMs,
+      Clock clock) {
+    super(group, tracks);
+    this.bandwidthMeter = bandwidthMeter;
+    this.reservedBandwidth = reservedBandwidth;
+    this.bandwidthFraction = bandwidthFraction;
+    this.rebufferPenalty = rebufferPenalty;
+    this.switchPenalty = switchPenalty;
+    this.maxBufferSec = maxBufferMs / 1000d;
+    this.clock = clock;
+    int maxHorizonChunkCount = 1;
+    while (maxHorizonChunkCount < horizonChunkCount
+        && Math.pow(length, maxHorizonChunkCount + 1) <= MAX_EVALUATED_SEQUENCE_COUNT) {
+      maxHorizonChunkCount++;
+    }
+    this.horizonChunkCount = maxHorizonChunkCount;
+    lowestBitrate = Math.max(1, getFormat(length - 1).bitrate);
+    trackQualities = new double[length];
+    trackAllowed = new boolean[length];
+    chunkDownloadBits = new double[length][maxHorizonChunkCount];
+    chunkDurationsSec = new double[maxHorizonChunkCount];
+    bandwidthErrors = new double[BANDWIDTH_ERROR_SAMPLE_COUNT];
+    playbackSpeed = 1f;
+    reason = C.SELECTION_REASON_UNKNOWN;
+  }
+
+  @Override
+  public void onPlaybackSpeed(float playbackSpeed) {
+    this.playbackSpeed = playbackSpeed;
+  }
+
+  @Override
+  public void updateSelectedTrack(
+      long playbackPositionUs,
+      long bufferedDurationUs,
+      long availableDurationUs,
+      List<? extends MediaChunk> queue,
+      MediaChunkIterator[] mediaChunkIterators) {
+    long nowMs = clock.elapsedRealtime();
+    for (int i = 0; i < length; i++) {
+      trackQualities[i] = getQuality(getFormat(i));
+      trackAllowed[i] = !isBlacklisted(i, nowMs);
+    }
+    long defaultChunkDurationUs =
+        queue.isEmpty()
+            ? DEFAULT_CHUNK_DURATION_US
+            : queue.get(queue.size() - 1).endTimeUs - queue.get(queue.size() - 1).startTimeUs;
+    evaluatedChunkCount = updateChunkInfo(mediaChunkIterators, defaultChunkDurationUs);
+    bitsPerSecond = Math.max(1, getBandwidthForecast() - reservedBandwidth);
+
+    int previousIndex = reason == C.SELECTION_REASON_UNKNOWN ? C.INDEX_UNSET : selectedIndex;
+    bestScore = Double.NEGATIVE_INFINITY;
+    bestFirstIndex = length - 1;
+    for (int i = 0; i < length; i++) {
+      if (trackAllowed[i]) {
+        evaluateSequences(
+            /* chunkIndex= */ 0,
+            /* trackIndex= */ i,
+            /* firstTrackIndex= */ i,
+            previousIndex,
+            /* bufferSec= */ Math.max(0, bufferedDurationUs) / (double) C.MICROS_PER_SECOND,
+            /* score= */ 0);
+      }
+    }
+
+    if (reason == C.SELECTION_REASON_UNKNOWN) {
+      reason = C.SELECTION_REASON_INITIAL;
+    } else if (bestFirstIndex != selectedIndex) {
+      reason = C.SELECTION_REASON_ADAPTIVE;
+    }
+    selectedIndex = bestFirstIndex;
+  }
+
+  @Override
+  public int getSelectedIndex() {
+    return selectedIndex;
+  }
+
+  @Override
+  public int getSelectionReason() {
+    return reason;
+  }
+
+  @Override
+  @Nullable
+  public Object getSelectionData() {
+    return null;
+  }
+
+  /**
+   * Returns the quality of a track, used to score sequences of tracks. Higher values indicate
+   * higher quality.
+   *
+   * @param format The {@link Format} of the track.
+   * @return The quality of the track.
+   */
+  protected double getQuality(Format format) {
+    return Math.log(Math.max(lowestBitrate, format.bitrate) / (double) lowestBitrate);
+  }
+
+  /**
+   * Returns the bandwidth to assume when predicting download times, in bits per second. As in
+   * robust model predictive control, the bandwidth estimate is discounted by the largest recent
+   * relative change in the estimate, so that the selection is conservative while the bandwidth is
+   * unstable.
+   */
+  private long getBandwidthForecast() {
+    long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+    if (lastBitrateEstimate > 0 && bitrateEstimate > 0 && bitrateEstimate != lastBitrateEstimate) {
+      bandwidthErrors[bandwidthErrorCount++ % BANDWIDTH_ERROR_SAMPLE_COUNT] =
+          Math.abs(lastBitrateEstimate - bitrateEstimate) / (double) bitrateEstimate;
+    }
+    lastBitrateEstimate = bitrateEstimate;
+    double maxBandwidthError = 0;
+    for (int i = 0; i < Math.min(bandwidthErrorCount, BANDWIDTH_ERROR_SAMPLE_COUNT); i++) {
+      maxBandwidthError = Math.max(maxBandwidthError, bandwidthErrors[i]);
+    }
+    return (long) (bitrateEstimate * bandwidthFraction / (1 + maxBandwidthError));
+  }
+
+  /**
+   * Evaluates all sequences of tracks starting with the given track at the given chunk index, and
+   * updates the best first track if a sequence with a higher score is found.
+   */
+  private void evaluateSequences(
+      int chunkIndex,
+      int trackIndex,
+      int firstTrackIndex,
+      int previousTrackIndex,
+      double bufferSec,
+      double score) {
+    double downloadTimeSec = chunkDownloadBits[trackIndex][chunkIndex] / bitsPerSecond;
+    double rebufferSec = Math.max(0, downloadTimeSec - bufferSec);
+    bufferSec = Math.max(0, bufferSec - downloadTimeSec) + chunkDurationsSec[chunkIndex];
+    // Loading is paused while the buffer is full, so the excess is played out without rebuffering.
+    bufferSec = Math.min(bufferSec, maxBufferSec);
+    score += trackQualities[trackIndex] - rebufferPenalty * rebufferSec;
+    if (previousTrackIndex != C.INDEX_UNSET) {
+      score -=
+          switchPenalty
+              * Math.abs(trackQualities[trackIndex] - trackQualities[previousTrackIndex]);
+    }
+    if (chunkIndex == evaluatedChunkCount - 1) {
+      // Ties are resolved in favor of the lower quality track, which is evaluated later.
+      if (score >= bestScore) {
+        bestScore = score;
+        bestFirstIndex = firstTrackIndex;
+      }
+      return;
+    }
+    for (int i = 0; i < length; i++) {
+      if (trackAllowed[i]) {
+        evaluateSequences(chunkIndex + 1, i, firstTrackIndex, trackIndex, bufferSec, score);
+      }
+    }
+  }
+
+  /**
+   * Updates the size and duration of the upcoming chunks of each track, and returns the number of
+   * chunks to evaluate.
+   */
+  private int updateChunkInfo(
+      MediaChunkIterator[] mediaChunkIterators, long defaultChunkDurationUs) {
+    int chunkCount = horizonChunkCount;
+    boolean haveChunkDurations = false;
+    for (int i = 0; i < horizonChunkCount; i++) {
+      chunkDurationsSec[i] = defaultChunkDurationUs / (double) C.MICROS_PER_SECOND;
+    }
+    // Use the chunk durations of the first track for which upcoming chunks are known.
+    for (int i = 0; i < mediaChunkIterators.length && !haveChunkDurations; i++) {
+      MediaChunkIterator iterator = mediaChunkIterators[i];
+      iterator.reset();
+      int knownChunkCount = 0;
+      while (knownChunkCount < horizonChunkCount && iterator.next()) {
+        chunkDurationsSec[knownChunkCount++] =
+            (iterator.getChunkEndTimeUs() - iterator.getChunkStartTimeUs())
+                / (double) C.MICROS_PER_SECOND;
+      }
+      if (knownChunkCount > 0) {
+        haveChunkDurations = true;
+        // Don't look past the end of the available media.
+        chunkCount = knownChunkCount;
+      }
+    }
+    for (int i = 0; i < length; i++) {
+      @Nullable
+      MediaChunkIterator iterator = i < mediaChunkIterators.length ? mediaChunkIterators[i] : null;
+      if (iterator != null) {
+        iterator.reset();
+      }
+      for (int j = 0; j < chunkCount; j++) {
+        long chunkLength =
+            iterator != null && iterator.next() ? iterator.getDataSpec().length : C.LENGTH_UNSET;
+        chunkDownloadBits[i][j] =
+            chunkLength != C.LENGTH_UNSET
+                ? chunkLength * C.BITS_PER_BYTE
+                : Math.max(0, getFormat(i).bitrate) * chunkDurationsSec[j];
+      }
+    }
+    // Media is played out at the playback speed, so a chunk lasts less time at higher speeds.
+    for (int i = 0; i < chunkCount; i++) {
+      chunkDurationsSec[i] /= playbackSpeed;
+    }
+    return chunkCount;
+  }
+}
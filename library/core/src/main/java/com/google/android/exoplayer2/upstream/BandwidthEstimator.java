@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.C;
+
+/**
+ * Estimates the throughput and latency of a network connection from samples measured by a {@link
+ * DefaultBandwidthMeter}.
+ *
+ * <p>Throughput samples exclude the time taken to open connections, which is reported separately
+ * as latency samples. The time to download a chunk of {@code n} bytes can therefore be predicted
+ * as {@code getLatencyEstimateMs() + n * 8000 / getBitrateEstimate()} milliseconds.
+ *
+ * <p>Implementations don't need to be thread safe. Calls are serialized by the bandwidth meter.
+ */
+public interface BandwidthEstimator {
+
+  /** Creates {@link BandwidthEstimator} instances. */
+  interface Factory {
+
+    /**
+     * Creates an estimator for a network type.
+     *
+     * @param networkType The {@link C.NetworkType} of the connection the estimator is for.
+     * @param initialBitrateEstimate The bitrate estimate to return until samples are added, in bits
+     *     per second.
+     * @param initialLatencyEstimateMs The latency estimate to return until samples are added, in
+     *     milliseconds, or {@link C#TIME_UNSET} if unknown.
+     * @return The estimator.
+     */
+    BandwidthEstimator createBandwidthEstimator(
+        @C.NetworkType int networkType, long initialBitrateEstimate, long initialLatencyEstimateMs);
+  }
+
+  /**
+   * Adds a throughput sample.
+   *
+   * @param bytesTransferred The number of bytes transferred.
+   * @param elapsedTimeMs The time taken to transfer the bytes, in milliseconds. Greater than zero.
+   * @param nowMs The current time in the timebase of {@link
+   *     com.google.android.exoplayer2.util.Clock#elapsedRealtime()}.
+   */
+  void addThroughputSample(long bytesTransferred, long elapsedTimeMs, long nowMs);
+
+  /**
+   * Adds a latency sample, measured from when a connection started opening until it was open.
+   *
+   * @param latencyMs The latency, in milliseconds.
+   * @param nowMs The current time in the timebase of {@link
+   *     com.google.android.exoplayer2.util.Clock#elapsedRealtime()}.
+   */
+  void addLatencySample(long latencyMs, long nowMs);
+
+  /** Returns the estimated throughput of the connection, in bits per second. */
+  long getBitrateEstimate();
+
+  /**
+   * Returns the estimated latency of opening a connection, in milliseconds, or {@link
+   * C#TIME_UNSET} if unknown.
+   */
+  long getLatencyEstimateMs();
+}
@@ -19,11 +19,14 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Clock;
@@ -34,7 +37,11 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
@@ -44,6 +51,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
  * time a transfer ends. The initial estimate is based on the current operator's network country
  * code or the locale of the user, as well as the network connection type. This can be configured in
  * the {@link Builder}.
+ *
+ * <p>Alternatively, the estimate can be calculated by a {@link BandwidthEstimator} for each network
+ * type, set using {@link Builder#experimental_setBandwidthEstimatorFactory}, whose learned
+ * estimates can be persisted across app launches.
  */
 public final class DefaultBandwidthMeter implements BandwidthMeter, TransferListener {
 
@@ -90,6 +101,10 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     private int slidingWindowMaxWeight;
     private Clock clock;
     private boolean resetOnNetworkTypeChange;
+    @Nullable private BandwidthEstimator.Factory bandwidthEstimatorFactory;
+    private boolean persistBandwidthEstimates;
+    @Nullable private Executor persistedEstimatesLoadingExecutor;
+    private long idleGapThresholdMs;
 
     /**
      * Creates a builder with default parameters and without listener.
@@ -103,6 +118,7 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       slidingWindowMaxWeight = DEFAULT_SLIDING_WINDOW_MAX_WEIGHT;
       clock = Clock.DEFAULT;
       resetOnNetworkTypeChange = true;
+      idleGapThresholdMs = C.TIME_UNSET;
     }
 
     /**
@@ -181,6 +197,77 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return this;
     }
 
+    /**
+     * Sets a factory for {@link BandwidthEstimator}s that calculate the bitrate estimate instead of
+     * the sliding percentile. A separate estimator is created for each network type, and its state
+     * is kept when the network type changes, so that switching back to a network type restores the
+     * estimate learned on it. Initial bitrate estimates are passed to each estimator when it's
+     * created.
+     *
+     * <p>This method is experimental, and will be renamed or removed in a future release.
+     *
+     * @param bandwidthEstimatorFactory The {@link BandwidthEstimator.Factory}.
+     * @return This builder.
+     */
+    public Builder experimental_setBandwidthEstimatorFactory(
+        BandwidthEstimator.Factory bandwidthEstimatorFactory) {
+      this.bandwidthEstimatorFactory = bandwidthEstimatorFactory;
+      return this;
+    }
+
+    /**
+     * Sets whether the estimates of the {@link BandwidthEstimator}s for each network type are
+     * persisted, and used as initial estimates by bandwidth meters created later, including after
+     * the app is restarted. Only applies if a {@link BandwidthEstimator.Factory} is set and the
+     * builder was created with a context. The default value is {@code false}.
+     *
+     * <p>This method is experimental, and will be renamed or removed in a future release.
+     *
+     * @param persistBandwidthEstimates Whether to persist bandwidth estimates.
+     * @return This builder.
+     */
+    public Builder experimental_setPersistBandwidthEstimates(boolean persistBandwidthEstimates) {
+      this.persistBandwidthEstimates = persistBandwidthEstimates;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Executor} on which persisted bandwidth estimates are loaded. By default, they
+     * are loaded on a new background thread.
+     *
+     * @param persistedEstimatesLoadingExecutor The {@link Executor}.
+     * @return This builder.
+     */
+    @VisibleForTesting
+    /* package */ Builder setPersistedEstimatesLoadingExecutor(
+        Executor persistedEstimatesLoadingExecutor) {
+      this.persistedEstimatesLoadingExecutor = persistedEstimatesLoadingExecutor;
+      return this;
+    }
+
+    /**
+     * Sets the minimum time without transferred bytes that is considered an idle gap, or {@link
+     * C#TIME_UNSET} to disable idle gap detection. The default value is {@link C#TIME_UNSET}.
+     *
+     * <p>If enabled, idle gaps and the bytes read right after them are excluded from bandwidth
+     * samples, so that the estimate reflects the network throughput during bursts of data. This is
+     * useful for low-latency live streams delivered with chunked transfer encoding, for which the
+     * server sends each chunk as soon as it's encoded, and the time to transfer a segment is
+     * therefore limited by the encoder rather than by the network. The threshold should be longer
+     * than the time between reads while data is flowing, and shorter than the duration of the
+     * chunks. If most bytes of a sample are read after idle gaps, for example because the network
+     * is very slow, the sample falls back to the total elapsed time.
+     *
+     * <p>This method is experimental, and will be renamed or removed in a future release.
+     *
+     * @param idleGapThresholdMs The idle gap threshold in milliseconds, or {@link C#TIME_UNSET}.
+     * @return This builder.
+     */
+    public Builder experimental_setIdleGapThresholdMs(long idleGapThresholdMs) {
+      this.idleGapThresholdMs = idleGapThresholdMs;
+      return this;
+    }
+
     /**
      * Builds the bandwidth meter.
      *
@@ -192,7 +279,11 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
           initialBitrateEstimates,
           slidingWindowMaxWeight,
           clock,
-          resetOnNetworkTypeChange);
+          resetOnNetworkTypeChange,
+          bandwidthEstimatorFactory,
+          persistBandwidthEstimates,
+          persistedEstimatesLoadingExecutor,
+          idleGapThresholdMs);
     }
 
     private static SparseArray<Long> getInitialBitrateEstimatesForCountry(String countryCode) {
@@ -233,15 +324,30 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   private static final int ELAPSED_MILLIS_FOR_ESTIMATE = 2000;
   private static final int BYTES_TRANSFERRED_FOR_ESTIMATE = 512 * 1024;
 
+  private static final String BANDWIDTH_ESTIMATES_PREFERENCES_NAME =
+      "ExoPlayerBandwidthEstimates";
+  private static final String KEY_PREFIX_BITRATE_ESTIMATE = "bitrate_";
+  private static final String KEY_PREFIX_LATENCY_ESTIMATE = "latency_ms_";
+  private static final int MIN_TIME_BETWEEN_PERSISTED_ESTIMATES_MS = 10_000;
+  private static final int MAX_TRANSFER_INITIALIZING_TIME_MS = 60_000;
+
   @Nullable private final Context context;
   private final SparseArray<Long> initialBitrateEstimates;
   private final EventDispatcher<EventListener> eventDispatcher;
   private final SlidingPercentile slidingPercentile;
   private final Clock clock;
+  @Nullable private final BandwidthEstimator.Factory bandwidthEstimatorFactory;
+  private final SparseArray<BandwidthEstimator> bandwidthEstimators;
+  private final SparseBooleanArray sampledNetworkTypes;
+  private final IdentityHashMap<DataSource, Long> transferInitializingTimesMs;
+  private final long idleGapThresholdMs;
 
   private int streamCount;
   private long sampleStartTimeMs;
   private long sampleBytesTransferred;
+  private long sampleBurstElapsedTimeMs;
+  private long sampleBurstBytesTransferred;
+  private long lastTransferActivityTimeMs;
 
   @C.NetworkType private int networkType;
   private long totalElapsedTimeMs;
@@ -252,6 +358,11 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   private boolean networkTypeOverrideSet;
   @C.NetworkType private int networkTypeOverride;
 
+  @Nullable private BandwidthEstimator bandwidthEstimator;
+  @C.NetworkType private int bandwidthEstimatorNetworkType;
+  @Nullable private SharedPreferences bandwidthEstimatePreferences;
+  private long lastPersistedEstimateTimeMs;
+
   /** @deprecated Use {@link Builder} instead. */
   @Deprecated
   public DefaultBandwidthMeter() {
@@ -260,7 +371,11 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
         /* initialBitrateEstimates= */ new SparseArray<>(),
         DEFAULT_SLIDING_WINDOW_MAX_WEIGHT,
         Clock.DEFAULT,
-        /* resetOnNetworkTypeChange= */ false);
+        /* resetOnNetworkTypeChange= */ false,
+        /* bandwidthEstimatorFactory= */ null,
+        /* persistBandwidthEstimates= */ false,
+        /* persistedEstimatesLoadingExecutor= */ null,
+        /* idleGapThresholdMs= */ C.TIME_UNSET);
   }
 
   private DefaultBandwidthMeter(
@@ -268,21 +383,40 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       SparseArray<Long> initialBitrateEstimates,
       int maxWeight,
       Clock clock,
-      boolean resetOnNetworkTypeChange) {
+      boolean resetOnNetworkTypeChange,
+      @Nullable BandwidthEstimator.Factory bandwidthEstimatorFactory,
+      boolean persistBandwidthEstimates,
+      @Nullable Executor persistedEstimatesLoadingExecutor,
+      long idleGapThresholdMs) {
     this.context = context == null ? null : context.getApplicationContext();
     this.initialBitrateEstimates = initialBitrateEstimates;
     this.eventDispatcher = new EventDispatcher<>();
     this.slidingPercentile = new SlidingPercentile(maxWeight);
     this.clock = clock;
+    this.bandwidthEstimatorFactory = bandwidthEstimatorFactory;
+    bandwidthEstimators = new SparseArray<>();
+    sampledNetworkTypes = new SparseBooleanArray();
+    transferInitializingTimesMs = new IdentityHashMap<>();
+    this.idleGapThresholdMs = idleGapThresholdMs;
+    lastPersistedEstimateTimeMs = C.TIME_UNSET;
     // Set the initial network type and bitrate estimate
     networkType = context == null ? C.NETWORK_TYPE_UNKNOWN : Util.getNetworkType(context);
-    bitrateEstimate = getInitialBitrateEstimateForNetworkType(networkType);
+    if (bandwidthEstimatorFactory != null) {
+      setBandwidthEstimator(networkType);
+    } else {
+      bitrateEstimate = getInitialBitrateEstimateForNetworkType(networkType);
+    }
     // Register to receive connectivity actions if possible.
     if (context != null && resetOnNetworkTypeChange) {
       ConnectivityActionReceiver connectivityActionReceiver =
           ConnectivityActionReceiver.getInstance(context);
       connectivityActionReceiver.register(/* bandwidthMeter= */ this);
     }
+    // Reading shared preferences blocks until they're loaded from disk, so the persisted estimates
+    // are loaded in the background and applied when they arrive.
+    if (this.context != null && bandwidthEstimatorFactory != null && persistBandwidthEstimates) {
+      loadBandwidthEstimatePreferences(this.context, persistedEstimatesLoadingExecutor);
+    }
   }
 
   /**
@@ -304,6 +438,16 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     return bitrateEstimate;
   }
 
+  /**
+   * Returns the estimated latency of opening a network connection in milliseconds, or {@link
+   * C#TIME_UNSET} if unknown or if no {@link BandwidthEstimator.Factory} is set.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   */
+  public synchronized long experimental_getLatencyEstimateMs() {
+    return bandwidthEstimator != null ? bandwidthEstimator.getLatencyEstimateMs() : C.TIME_UNSET;
+  }
+
   @Override
   @Nullable
   public TransferListener getTransferListener() {
@@ -321,8 +465,13 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   }
 
   @Override
-  public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
-    // Do nothing.
+  public synchronized void onTransferInitializing(
+      DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (isNetwork && bandwidthEstimator != null) {
+      long nowMs = clock.elapsedRealtime();
+      discardStaleTransferInitializingTimes(nowMs);
+      transferInitializingTimesMs.put(source, nowMs);
+    }
   }
 
   @Override
@@ -331,9 +480,16 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     if (!isNetwork) {
       return;
     }
+    @Nullable Long transferInitializingTimeMs = transferInitializingTimesMs.remove(source);
+    if (transferInitializingTimeMs != null && bandwidthEstimator != null) {
+      long nowMs = clock.elapsedRealtime();
+      bandwidthEstimator.addLatencySample(nowMs - transferInitializingTimeMs, nowMs);
+      sampledNetworkTypes.put(bandwidthEstimatorNetworkType, true);
+    }
     if (streamCount == 0) {
       sampleStartTimeMs = clock.elapsedRealtime();
     }
+    lastTransferActivityTimeMs = clock.elapsedRealtime();
     streamCount++;
   }
 
@@ -344,6 +500,15 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return;
     }
     sampleBytesTransferred += bytes;
+    if (idleGapThresholdMs != C.TIME_UNSET) {
+      long nowMs = clock.elapsedRealtime();
+      long timeSinceLastActivityMs = nowMs - lastTransferActivityTimeMs;
+      if (timeSinceLastActivityMs <= idleGapThresholdMs) {
+        sampleBurstElapsedTimeMs += timeSinceLastActivityMs;
+        sampleBurstBytesTransferred += bytes;
+      } // Else the bytes were read after an idle gap, so their transfer time is unknown.
+      lastTransferActivityTimeMs = nowMs;
+    }
   }
 
   @Override
@@ -353,19 +518,38 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     }
     Assertions.checkState(streamCount > 0);
     long nowMs = clock.elapsedRealtime();
-    int sampleElapsedTimeMs = (int) (nowMs - sampleStartTimeMs);
+    int sampleElapsedTimeMs;
+    long sampleBytes;
+    if (idleGapThresholdMs != C.TIME_UNSET
+        && sampleBurstBytesTransferred * 2 >= sampleBytesTransferred) {
+      // Only measure the throughput during bursts of data.
+      sampleElapsedTimeMs = (int) sampleBurstElapsedTimeMs;
+      sampleBytes = sampleBurstBytesTransferred;
+    } else {
+      sampleElapsedTimeMs = (int) (nowMs - sampleStartTimeMs);
+      sampleBytes = sampleBytesTransferred;
+    }
     totalElapsedTimeMs += sampleElapsedTimeMs;
-    totalBytesTransferred += sampleBytesTransferred;
+    totalBytesTransferred += sampleBytes;
     if (sampleElapsedTimeMs > 0) {
-      float bitsPerSecond = (sampleBytesTransferred * 8000f) / sampleElapsedTimeMs;
-      slidingPercentile.addSample((int) Math.sqrt(sampleBytesTransferred), bitsPerSecond);
-      if (totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
-          || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE) {
-        bitrateEstimate = (long) slidingPercentile.getPercentile(0.5f);
+      if (bandwidthEstimator != null) {
+        bandwidthEstimator.addThroughputSample(sampleBytes, sampleElapsedTimeMs, nowMs);
+        sampledNetworkTypes.put(bandwidthEstimatorNetworkType, true);
+        bitrateEstimate = bandwidthEstimator.getBitrateEstimate();
+        maybePersistBandwidthEstimate(nowMs);
+      } else {
+        float bitsPerSecond = (sampleBytes * 8000f) / sampleElapsedTimeMs;
+        slidingPercentile.addSample((int) Math.sqrt(sampleBytes), bitsPerSecond);
+        if (totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
+            || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE) {
+          bitrateEstimate = (long) slidingPercentile.getPercentile(0.5f);
+        }
       }
-      maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, bitrateEstimate);
+      maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytes, bitrateEstimate);
       sampleStartTimeMs = nowMs;
       sampleBytesTransferred = 0;
+      sampleBurstElapsedTimeMs = 0;
+      sampleBurstBytesTransferred = 0;
     } // Else any sample bytes transferred will be carried forward into the next sample.
     streamCount--;
   }
@@ -387,8 +571,13 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return;
     }
 
-    // Reset the bitrate estimate and report it, along with any bytes transferred.
-    this.bitrateEstimate = getInitialBitrateEstimateForNetworkType(networkType);
+    // Reset the bitrate estimate and report it, along with any bytes transferred. When using
+    // estimators, the estimate learned on the new network type is restored instead.
+    if (bandwidthEstimatorFactory != null) {
+      setBandwidthEstimator(networkType);
+    } else {
+      this.bitrateEstimate = getInitialBitrateEstimateForNetworkType(networkType);
+    }
     long nowMs = clock.elapsedRealtime();
     int sampleElapsedTimeMs = streamCount > 0 ? (int) (nowMs - sampleStartTimeMs) : 0;
     maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, bitrateEstimate);
@@ -396,6 +585,8 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     // Reset the remainder of the state.
     sampleStartTimeMs = nowMs;
     sampleBytesTransferred = 0;
+    sampleBurstElapsedTimeMs = 0;
+    sampleBurstBytesTransferred = 0;
     totalBytesTransferred = 0;
     totalElapsedTimeMs = 0;
     slidingPercentile.reset();
@@ -411,6 +602,96 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
         listener -> listener.onBandwidthSample(elapsedMs, bytesTransferred, bitrateEstimate));
   }
 
+  private void loadBandwidthEstimatePreferences(Context context, @Nullable Executor executor) {
+    Runnable loadPreferences =
+        () -> {
+          SharedPreferences preferences =
+              context.getSharedPreferences(
+                  BANDWIDTH_ESTIMATES_PREFERENCES_NAME, Context.MODE_PRIVATE);
+          // Block until the preferences have been read from disk.
+          preferences.getAll();
+          onBandwidthEstimatePreferencesLoaded(preferences);
+        };
+    if (executor != null) {
+      executor.execute(loadPreferences);
+    } else {
+      ExecutorService executorService =
+          Util.newSingleThreadExecutor("ExoPlayer:BandwidthEstimates");
+      executorService.execute(loadPreferences);
+      executorService.shutdown();
+    }
+  }
+
+  private synchronized void onBandwidthEstimatePreferencesLoaded(SharedPreferences preferences) {
+    bandwidthEstimatePreferences = preferences;
+    // Estimators that haven't been sampled yet are recreated with the persisted estimates.
+    for (int i = bandwidthEstimators.size() - 1; i >= 0; i--) {
+      if (!sampledNetworkTypes.get(bandwidthEstimators.keyAt(i))) {
+        bandwidthEstimators.removeAt(i);
+      }
+    }
+    setBandwidthEstimator(bandwidthEstimatorNetworkType);
+    maybeNotifyBandwidthSample(/* elapsedMs= */ 0, /* bytesTransferred= */ 0, bitrateEstimate);
+  }
+
+  private void setBandwidthEstimator(@C.NetworkType int networkType) {
+    bandwidthEstimator = getBandwidthEstimator(networkType);
+    bandwidthEstimatorNetworkType = networkType;
+    bitrateEstimate = bandwidthEstimator.getBitrateEstimate();
+  }
+
+  private BandwidthEstimator getBandwidthEstimator(@C.NetworkType int networkType) {
+    @Nullable BandwidthEstimator bandwidthEstimator = bandwidthEstimators.get(networkType);
+    if (bandwidthEstimator == null) {
+      long initialBitrateEstimate = getInitialBitrateEstimateForNetworkType(networkType);
+      long initialLatencyEstimateMs = C.TIME_UNSET;
+      if (bandwidthEstimatePreferences != null) {
+        initialBitrateEstimate =
+            bandwidthEstimatePreferences.getLong(
+                KEY_PREFIX_BITRATE_ESTIMATE + networkType, initialBitrateEstimate);
+        initialLatencyEstimateMs =
+            bandwidthEstimatePreferences.getLong(
+                KEY_PREFIX_LATENCY_ESTIMATE + networkType, initialLatencyEstimateMs);
+      }
+      bandwidthEstimator =
+          Assertions.checkNotNull(bandwidthEstimatorFactory)
+              .createBandwidthEstimator(
+                  networkType, initialBitrateEstimate, initialLatencyEstimateMs);
+      bandwidthEstimators.put(networkType, bandwidthEstimator);
+    }
+    return bandwidthEstimator;
+  }
+
+  private void maybePersistBandwidthEstimate(long nowMs) {
+    if (bandwidthEstimatePreferences == null
+        || bandwidthEstimator == null
+        || (lastPersistedEstimateTimeMs != C.TIME_UNSET
+            && nowMs - lastPersistedEstimateTimeMs < MIN_TIME_BETWEEN_PERSISTED_ESTIMATES_MS)) {
+      return;
+    }
+    lastPersistedEstimateTimeMs = nowMs;
+    bandwidthEstimatePreferences
+        .edit()
+        .putLong(
+            KEY_PREFIX_BITRATE_ESTIMATE + bandwidthEstimatorNetworkType,
+            bandwidthEstimator.getBitrateEstimate())
+        .putLong(
+            KEY_PREFIX_LATENCY_ESTIMATE + bandwidthEstimatorNetworkType,
+            bandwidthEstimator.getLatencyEstimateMs())
+        .apply();
+  }
+
+  private void discardStaleTransferInitializingTimes(long nowMs) {
+    // Transfers that fail to open are never started, so their initializing times are discarded
+    // once they're too old to be meaningful latency samples.
+    Iterator<Long> iterator = transferInitializingTimesMs.values().iterator();
+    while (iterator.hasNext()) {
+      if (nowMs - iterator.next() > MAX_TRANSFER_INITIALIZING_TIME_MS) {
+        iterator.remove();
+      }
+    }
+  }
+
   private long getInitialBitrateEstimateForNetworkType(@C.NetworkType int networkType) {
     Long initialBitrateEstimate = initialBitrateEstimates.get(networkType);
     if (initialBitrateEstimate == null) {
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.C;
+
+/**
+ * A {@link BandwidthEstimator} that tracks throughput with a Kalman filter and latency with an
+ * exponentially weighted moving average.
+ *
+ * <p>The filter tracks the logarithm of the throughput, since throughput fluctuations are roughly
+ * proportional to the throughput. The uncertainty of the estimate grows with the time since the
+ * last sample, so that samples taken after an idle period outweigh the old estimate, and samples
+ * of small transfers are trusted less than samples of large transfers. A sample that deviates from
+ * the estimate by more than can be explained by noise is treated as a change in network
+ * conditions, which resets the uncertainty so that the estimate follows sudden drops quickly.
+ */
+public final class KalmanBandwidthEstimator implements BandwidthEstimator {
+
+  /** Factory for {@link KalmanBandwidthEstimator} instances. */
+  public static final class Factory implements BandwidthEstimator.Factory {
+
+    private final double processNoisePerSecond;
+    private final double referenceMeasurementNoise;
+    private final float latencySmoothingFactor;
+
+    /** Creates a factory with default parameters. */
+    public Factory() {
+      this(
+          DEFAULT_PROCESS_NOISE_PER_SECOND,
+          DEFAULT_REFERENCE_MEASUREMENT_NOISE,
+          DEFAULT_LATENCY_SMOOTHING_FACTOR);
+    }
+
+    /**
+     * Creates a factory.
+     *
+     * @param processNoisePerSecond The variance added to the log-throughput estimate per second
+     *     since the last sample.
+     * @param referenceMeasurementNoise The variance of a log-throughput sample of {@link
+     *     #REFERENCE_SAMPLE_BYTES} bytes. The variance of other samples is inversely proportional
+     *     to their size.
+     * @param latencySmoothingFactor The weight of each new latency sample in the moving average,
+     *     between 0 and 1.
+     */
+    public Factory(
+        double processNoisePerSecond,
+        double referenceMeasurementNoise,
+        float latencySmoothingFactor) {
+      this.processNoisePerSecond = processNoisePerSecond;
+      this.referenceMeasurementNoise = referenceMeasurementNoise;
+      this.latencySmoothingFactor = latencySmoothingFactor;
+    }
+
+    @Override
+    public BandwidthEstimator createBandwidthEstimator(
+        @C.NetworkType int networkType,
+        long initialBitrateEstimate,
+        long initialLatencyEstimateMs) {
+      return new KalmanBandwidthEstimator(
+          initialBitrateEstimate,
+          initialLatencyEstimateMs,
+          processNoisePerSecond,
+          referenceMeasurementNoise,
+          latencySmoothingFactor);
+    }
+  }
+
+  /** The sample size to which {@link Factory}'s reference measurement noise applies. */
+  public static final long REFERENCE_SAMPLE_BYTES = 512 * 1024;
+
+  public static final double DEFAULT_PROCESS_NOISE_PER_SECOND = 0.01;
+  public static final double DEFAULT_REFERENCE_MEASUREMENT_NOISE = 0.1;
+  public static final float DEFAULT_LATENCY_SMOOTHING_FACTOR = 0.25f;
+
+  /** The variance of the initial estimate, which is quickly outweighed by actual samples. */
+  private static final double INITIAL_VARIANCE = 1;
+  /** The largest measurement variance, for samples of very small transfers. */
+  private static final double MAX_MEASUREMENT_NOISE = 100;
+  /** The number of standard deviations beyond which a sample indicates changed conditions. */
+  private static final double CHANGE_DETECTION_THRESHOLD = 3;
+
+  private final double processNoisePerSecond;
+  private final double referenceMeasurementNoise;
+  private final float latencySmoothingFactor;
+
+  private double logBitrateEstimate;
+  private double variance;
+  private long lastSampleTimeMs;
+  private long latencyEstimateMs;
+
+  private KalmanBandwidthEstimator(
+      long initialBitrateEstimate,
+      long initialLatencyEstimateMs,
+      double processNoisePerSecond,
+      double referenceMeasurementNoise,
+      float latencySmoothingFactor) {
+    this.processNoisePerSecond = processNoisePerSecond;
+    this.referenceMeasurementNoise = referenceMeasurementNoise;
+    this.latencySmoothingFactor = latencySmoothingFactor;
+    logBitrateEstimate = Math.log(Math.max(1, initialBitrateEstimate));
+    variance = INITIAL_VARIANCE;
+    lastSampleTimeMs = C.TIME_UNSET;
+    latencyEstimateMs = initialLatencyEstimateMs;
+  }
+
+  @Override
+  public void addThroughputSample(long bytesTransferred, long elapsedTimeMs, long nowMs) {
+    if (bytesTransferred <= 0 || elapsedTimeMs <= 0) {
+      return;
+    }
+    if (lastSampleTimeMs != C.TIME_UNSET) {
+      variance += processNoisePerSecond * Math.max(0, nowMs - lastSampleTimeMs) / 1000;
+    }
+    lastSampleTimeMs = nowMs;
+    double logBitrate = Math.log(bytesTransferred * 8000d / elapsedTimeMs);
+    double measurementNoise =
+        Math.min(
+            MAX_MEASUREMENT_NOISE,
+            referenceMeasurementNoise * REFERENCE_SAMPLE_BYTES / bytesTransferred);
+    double innovation = logBitrate - logBitrateEstimate;
+    double threshold = CHANGE_DETECTION_THRESHOLD * Math.sqrt(variance + measurementNoise);
+    if (Math.abs(innovation) > threshold) {
+      // The network conditions have probably changed, so the current estimate is unreliable.
+      variance += innovation * innovation;
+    }
+    double gain = variance / (variance + measurementNoise);
+    logBitrateEstimate += gain * innovation;
+    variance *= 1 - gain;
+  }
+
+  @Override
+  public void addLatencySample(long latencyMs, long nowMs) {
+    if (latencyEstimateMs == C.TIME_UNSET) {
+      latencyEstimateMs = latencyMs;
+    } else {
+      latencyEstimateMs =
+          Math.round(
+              latencySmoothingFactor * latencyMs
+                  + (1 - latencySmoothingFactor) * latencyEstimateMs);
+    }
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    return Math.round(Math.exp(logBitrateEstimate));
+  }
+
+  @Override
+  public long getLatencyEstimateMs() {
+    return latencyEstimateMs;
+  }
+}
@@ -346,6 +346,11 @@ public class EventLogger implements AnalyticsListener {
         null);
   }
 
+  @Override
+  public void onSilenceSkipped(EventTime eventTime, long skippedDurationUs) {
+    logd(eventTime, "silenceSkipped", getTimeString(skippedDurationUs / 1000));
+  }
+
   @Override
   public void onDroppedVideoFrames(EventTime eventTime, int count, long elapsedMs) {
     logd(eventTime, "droppedFrames", Integer.toString(count));
@@ -415,6 +420,25 @@ public class EventLogger implements AnalyticsListener {
     // Do nothing.
   }
 
+  @Override
+  public void onBufferTargetsChanged(
+      EventTime eventTime,
+      int targetBufferBytes,
+      long minBufferUs,
+      long maxBufferUs,
+      int bitrate) {
+    logd(
+        eventTime,
+        "bufferTargets",
+        targetBufferBytes
+            + ", "
+            + getTimeString(minBufferUs / 1000)
+            + ", "
+            + getTimeString(maxBufferUs / 1000)
+            + ", "
+            + bitrate);
+  }
+
   @Override
   public void onSurfaceSizeChanged(EventTime eventTime, int width, int height) {
     logd(eventTime, "surfaceSize", width + ", " + height);
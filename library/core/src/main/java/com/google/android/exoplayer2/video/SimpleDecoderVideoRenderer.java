@@ -165,6 +165,7 @@ public abstract class SimpleDecoderVideoRenderer extends BaseRenderer {
 
   @Override
   public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+    decoderCounters.renderCount++;
     if (outputStreamEnded) {
       return;
     }
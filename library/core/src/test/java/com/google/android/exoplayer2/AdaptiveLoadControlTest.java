@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.testutil.FakeRenderer;
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit tests for {@link AdaptiveLoadControl}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class AdaptiveLoadControlTest {
+
+  private static final float SPEED = 1f;
+  private static final int MEMORY_BUDGET_BYTES = 10_000_000;
+  private static final long MAX_BUFFER_US = C.msToUs(AdaptiveLoadControl.DEFAULT_MAX_BUFFER_MS);
+
+  private DefaultAllocator allocator;
+  private AdaptiveLoadControl loadControl;
+
+  @Before
+  public void setUp() {
+    allocator = new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    loadControl =
+        new AdaptiveLoadControl.Builder()
+            .setAllocator(allocator)
+            .setMemoryBudgetBytes(MEMORY_BUDGET_BYTES)
+            .createAdaptiveLoadControl();
+  }
+
+  @Test
+  public void shouldContinueLoading_withHighBitrate_untilMemoryBudgetDurationReached() {
+    // 10 MB hold 10 seconds of 8 Mbit/s video.
+    selectVideoFormat(/* bitrate= */ 8_000_000);
+
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isTrue();
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 9_999_999, SPEED))
+        .isTrue();
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 10_000_000, SPEED))
+        .isFalse();
+  }
+
+  @Test
+  public void shouldContinueLoading_withLowBitrate_untilMaxBufferReached() {
+    // 10 MB hold 160 seconds of 500 kbit/s video, which is more than the maximum buffer duration.
+    selectVideoFormat(/* bitrate= */ 500_000);
+
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isTrue();
+    assertThat(loadControl.shouldContinueLoading(MAX_BUFFER_US - 1, SPEED)).isTrue();
+    assertThat(loadControl.shouldContinueLoading(MAX_BUFFER_US, SPEED)).isFalse();
+  }
+
+  @Test
+  public void shouldContinueLoading_withTargetBufferBytesReached_returnsFalse() {
+    selectVideoFormat(/* bitrate= */ 8_000_000);
+    while (allocator.getTotalBytesAllocated() < MEMORY_BUDGET_BYTES) {
+      allocator.allocate();
+    }
+
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isFalse();
+    assertThat(
+            loadControl.shouldStartPlayback(
+                /* bufferedDurationUs= */ 0, SPEED, /* rebuffering= */ false))
+        .isTrue();
+  }
+
+  @Test
+  public void bufferTargets_areReportedOnTrackSelectionAndObservedBitrateChange() {
+    List<long[]> bufferTargets = new ArrayList<>();
+    loadControl.addEventListener(
+        new Handler(Looper.getMainLooper()),
+        (targetBufferBytes, minBufferUs, maxBufferUs, bitrate) ->
+            bufferTargets.add(new long[] {targetBufferBytes, minBufferUs, maxBufferUs, bitrate}));
+
+    selectVideoFormat(/* bitrate= */ 8_000_000);
+    // The buffered media takes up about twice as much memory as the declared bitrate suggests.
+    for (int i = 0; i < 64; i++) {
+      allocator.allocate();
+    }
+    loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 2_000_000, SPEED);
+    shadowOf(Looper.getMainLooper()).idle();
+
+    assertThat(bufferTargets).hasSize(2);
+    assertThat(bufferTargets.get(0))
+        .asList()
+        .containsExactly(10_000_000L, 10_000_000L, 10_000_000L, 8_000_000L)
+        .inOrder();
+    assertThat(bufferTargets.get(1))
+        .asList()
+        .containsExactly(10_000_000L, 4_768_371L, 4_768_371L, 16_777_216L)
+        .inOrder();
+  }
+
+  @Test
+  public void shouldTrimBuffer_whenArbitratedMemoryBudgetIsExceeded_returnsTrue() {
+    BufferArbitrator bufferArbitrator = new BufferArbitrator(MEMORY_BUDGET_BYTES);
+    loadControl =
+        new AdaptiveLoadControl.Builder()
+            .setAllocator(allocator)
+            .setBufferArbitrator(bufferArbitrator, BufferArbitrator.PRIORITY_FOREGROUND)
+            .createAdaptiveLoadControl();
+    AdaptiveLoadControl otherLoadControl =
+        new AdaptiveLoadControl.Builder()
+            .setBufferArbitrator(bufferArbitrator, BufferArbitrator.PRIORITY_BACKGROUND)
+            .createAdaptiveLoadControl();
+    selectVideoFormat(/* bitrate= */ 1_000_000);
+    otherLoadControl.onPrepared();
+    while (allocator.getTotalBytesAllocated() < 5_000_000) {
+      allocator.allocate();
+    }
+    boolean shouldTrimBufferAsForegroundPlayer = loadControl.shouldTrimBuffer();
+
+    // Moving the player to the background reduces its share of the budget from 8 MB to 5 MB.
+    loadControl.setPriority(BufferArbitrator.PRIORITY_BACKGROUND);
+
+    assertThat(shouldTrimBufferAsForegroundPlayer).isFalse();
+    assertThat(loadControl.shouldTrimBuffer()).isTrue();
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isFalse();
+  }
+
+  @Test
+  public void onReleased_withBufferArbitrator_releasesShareOfMemoryBudget() {
+    BufferArbitrator bufferArbitrator = new BufferArbitrator(MEMORY_BUDGET_BYTES);
+    loadControl =
+        new AdaptiveLoadControl.Builder()
+            .setAllocator(allocator)
+            .setBufferArbitrator(bufferArbitrator, BufferArbitrator.PRIORITY_FOREGROUND)
+            .createAdaptiveLoadControl();
+    AdaptiveLoadControl otherLoadControl =
+        new AdaptiveLoadControl.Builder()
+            .setBufferArbitrator(bufferArbitrator, BufferArbitrator.PRIORITY_FOREGROUND)
+            .createAdaptiveLoadControl();
+    selectVideoFormat(/* bitrate= */ 1_000_000);
+    otherLoadControl.onPrepared();
+    while (allocator.getTotalBytesAllocated() < 6_000_000) {
+      allocator.allocate();
+    }
+    boolean shouldTrimBufferWithSharedBudget = loadControl.shouldTrimBuffer();
+
+    otherLoadControl.onReleased();
+
+    assertThat(shouldTrimBufferWithSharedBudget).isTrue();
+    assertThat(loadControl.shouldTrimBuffer()).isFalse();
+  }
+
+  private void selectVideoFormat(int bitrate) {
+    Format format =
+        Format.createVideoSampleFormat(
+            /* id= */ null,
+            MimeTypes.VIDEO_H264,
+            /* codecs= */ null,
+            bitrate,
+            /* maxInputSize= */ Format.NO_VALUE,
+            /* width= */ 1920,
+            /* height= */ 1080,
+            /* frameRate= */ Format.NO_VALUE,
+            /* initializationData= */ null,
+            /* drmInitData= */ null);
+    TrackGroup trackGroup = new TrackGroup(format);
+    loadControl.onPrepared();
+    loadControl.onTracksSelected(
+        new Renderer[] {new FakeRenderer(format)},
+        new TrackGroupArray(trackGroup),
+        new TrackSelectionArray(new FixedTrackSelection(trackGroup, /* track= */ 0)));
+  }
+}
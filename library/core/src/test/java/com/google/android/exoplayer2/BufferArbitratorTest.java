@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link BufferArbitrator}. */
+@RunWith(AndroidJUnit4.class)
+public final class BufferArbitratorTest {
+
+  private static final int TOTAL_MEMORY_BUDGET_BYTES = 10_000_000;
+
+  private BufferArbitrator bufferArbitrator;
+  private FakeParticipant foregroundParticipant;
+  private FakeParticipant backgroundParticipant;
+
+  @Before
+  public void setUp() {
+    bufferArbitrator = new BufferArbitrator(TOTAL_MEMORY_BUDGET_BYTES);
+    foregroundParticipant = new FakeParticipant();
+    backgroundParticipant = new FakeParticipant();
+  }
+
+  @Test
+  public void register_singleParticipant_receivesTotalBudget() {
+    bufferArbitrator.register(foregroundParticipant, BufferArbitrator.PRIORITY_FOREGROUND);
+
+    assertThat(foregroundParticipant.memoryBudgetBytes).isEqualTo(TOTAL_MEMORY_BUDGET_BYTES);
+  }
+
+  @Test
+  public void register_multipleParticipants_distributesBudgetByPriority() {
+    bufferArbitrator.register(foregroundParticipant, BufferArbitrator.PRIORITY_FOREGROUND);
+    bufferArbitrator.register(backgroundParticipant, BufferArbitrator.PRIORITY_BACKGROUND);
+
+    assertThat(foregroundParticipant.memoryBudgetBytes).isEqualTo(8_000_000);
+    assertThat(backgroundParticipant.memoryBudgetBytes).isEqualTo(2_000_000);
+  }
+
+  @Test
+  public void setPriority_redistributesBudget() {
+    bufferArbitrator.register(foregroundParticipant, BufferArbitrator.PRIORITY_FOREGROUND);
+    bufferArbitrator.register(backgroundParticipant, BufferArbitrator.PRIORITY_BACKGROUND);
+
+    bufferArbitrator.setPriority(foregroundParticipant, BufferArbitrator.PRIORITY_BACKGROUND);
+    bufferArbitrator.setPriority(backgroundParticipant, BufferArbitrator.PRIORITY_FOREGROUND);
+
+    assertThat(foregroundParticipant.memoryBudgetBytes).isEqualTo(2_000_000);
+    assertThat(backgroundParticipant.memoryBudgetBytes).isEqualTo(8_000_000);
+  }
+
+  @Test
+  public void unregister_givesBudgetToRemainingParticipants() {
+    bufferArbitrator.register(foregroundParticipant, BufferArbitrator.PRIORITY_FOREGROUND);
+    bufferArbitrator.register(backgroundParticipant, BufferArbitrator.PRIORITY_BACKGROUND);
+    int budgetChangeCount = backgroundParticipant.budgetChangeCount;
+
+    bufferArbitrator.unregister(foregroundParticipant);
+    bufferArbitrator.setPriority(foregroundParticipant, BufferArbitrator.PRIORITY_BACKGROUND);
+
+    assertThat(backgroundParticipant.memoryBudgetBytes).isEqualTo(TOTAL_MEMORY_BUDGET_BYTES);
+    assertThat(backgroundParticipant.budgetChangeCount).isEqualTo(budgetChangeCount + 1);
+  }
+
+  private static final class FakeParticipant implements BufferArbitrator.Participant {
+
+    public int memoryBudgetBytes;
+    public int budgetChangeCount;
+
+    @Override
+    public void onMemoryBudgetChanged(int memoryBudgetBytes) {
+      this.memoryBudgetBytes = memoryBudgetBytes;
+      budgetChangeCount++;
+    }
+  }
+}
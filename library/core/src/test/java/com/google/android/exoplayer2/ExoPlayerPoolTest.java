@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.AutoAdvancingFakeClock;
+import com.google.android.exoplayer2.testutil.ExoPlayerTestRunner.Builder;
+import com.google.android.exoplayer2.testutil.FakeMediaSource;
+import com.google.android.exoplayer2.testutil.FakeRenderer;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit tests for {@link ExoPlayerPool}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class ExoPlayerPoolTest {
+
+  private List<SimpleExoPlayer> createdPlayers;
+  private ExoPlayerPool.PlayerFactory playerFactory;
+
+  @Before
+  public void setUp() {
+    createdPlayers = new ArrayList<>();
+    playerFactory =
+        () -> {
+          SimpleExoPlayer player =
+              new SimpleExoPlayer.Builder(
+                      ApplicationProvider.getApplicationContext(),
+                      (eventHandler,
+                          videoRendererEventListener,
+                          audioRendererEventListener,
+                          textRendererOutput,
+                          metadataRendererOutput,
+                          drmSessionManager) ->
+                          new Renderer[] {new FakeRenderer(Builder.VIDEO_FORMAT)})
+                  .setClock(new AutoAdvancingFakeClock())
+                  .build();
+          createdPlayers.add(player);
+          return player;
+        };
+  }
+
+  @After
+  public void tearDown() {
+    for (SimpleExoPlayer player : createdPlayers) {
+      player.release();
+    }
+  }
+
+  @Test
+  public void acquire_afterRelease_returnsPooledPlayer() {
+    ExoPlayerPool pool = new ExoPlayerPool(playerFactory);
+    SimpleExoPlayer player = pool.acquire();
+
+    pool.release(player);
+    SimpleExoPlayer reacquiredPlayer = pool.acquire();
+
+    assertThat(reacquiredPlayer).isSameInstanceAs(player);
+    assertThat(createdPlayers).hasSize(1);
+    assertThat(pool.getIdlePlayerCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void release_resetsPlayer() {
+    ExoPlayerPool pool = new ExoPlayerPool(playerFactory);
+    SimpleExoPlayer player =
+        pool.acquire(new FakeMediaSource(new FakeTimeline(/* windowCount= */ 1)));
+    player.setPlayWhenReady(true);
+    player.setRepeatMode(Player.REPEAT_MODE_ALL);
+
+    pool.release(player);
+
+    assertThat(player.getPlaybackState()).isEqualTo(Player.STATE_IDLE);
+    assertThat(player.getPlayWhenReady()).isFalse();
+    assertThat(player.getRepeatMode()).isEqualTo(Player.REPEAT_MODE_OFF);
+    assertThat(player.getCurrentTimeline().isEmpty()).isTrue();
+  }
+
+  @Test
+  public void release_toFullPool_doesNotKeepPlayer() {
+    ExoPlayerPool pool =
+        new ExoPlayerPool(playerFactory, /* maxIdlePlayerCount= */ 1, /* retainDecoders= */ false);
+    SimpleExoPlayer player1 = pool.acquire();
+    SimpleExoPlayer player2 = pool.acquire();
+
+    pool.release(player1);
+    pool.release(player2);
+    // The second player is released by the pool.
+    createdPlayers.remove(player2);
+
+    assertThat(pool.getIdlePlayerCount()).isEqualTo(1);
+    assertThat(pool.acquire()).isSameInstanceAs(player1);
+  }
+
+  @Test
+  public void prewarm_createsPlayersUpToMaxIdlePlayerCount() {
+    ExoPlayerPool pool =
+        new ExoPlayerPool(playerFactory, /* maxIdlePlayerCount= */ 2, /* retainDecoders= */ false);
+
+    pool.prewarm(/* idlePlayerCount= */ 3);
+
+    assertThat(pool.getIdlePlayerCount()).isEqualTo(2);
+    assertThat(createdPlayers).hasSize(2);
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.AutoAdvancingFakeClock;
+import com.google.android.exoplayer2.testutil.ExoPlayerTestRunner.Builder;
+import com.google.android.exoplayer2.testutil.FakeMediaSource;
+import com.google.android.exoplayer2.testutil.FakeRenderer;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.util.Log;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+
+/**
+ * Benchmark measuring the time from acquiring a player for a new item to the player being ready,
+ * with a new player per item and with players from an {@link ExoPlayerPool}.
+ */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class ExoPlayerPoolThroughputTest {
+
+  private static final String TAG = "ExoPlayerPoolBenchmark";
+  private static final int ITEM_COUNT = 50;
+  private static final int WARM_UP_ITEM_COUNT = 5;
+  private static final long TIMEOUT_MS = 10_000;
+
+  @Test
+  public void withoutPool() throws Exception {
+    runBenchmark(/* pool= */ null);
+  }
+
+  @Test
+  public void withPool() throws Exception {
+    ExoPlayerPool pool = new ExoPlayerPool(ExoPlayerPoolThroughputTest::createPlayer);
+    pool.prewarm(/* idlePlayerCount= */ 1);
+    runBenchmark(pool);
+    pool.releaseIdlePlayers();
+  }
+
+  private static void runBenchmark(@Nullable ExoPlayerPool pool) throws TimeoutException {
+    for (int i = 0; i < WARM_UP_ITEM_COUNT; i++) {
+      startPlayback(pool);
+    }
+    long startupTimeNs = 0;
+    for (int i = 0; i < ITEM_COUNT; i++) {
+      startupTimeNs += startPlayback(pool);
+    }
+    Log.i(
+        TAG,
+        (pool != null ? "With pool" : "Without pool")
+            + ": "
+            + (startupTimeNs / ITEM_COUNT / 1000)
+            + " us/startup");
+  }
+
+  /**
+   * Plays an item with a player from the pool, or with a new player if the pool is null, and
+   * returns the time it took for the player to become ready, in nanoseconds.
+   */
+  private static long startPlayback(@Nullable ExoPlayerPool pool) throws TimeoutException {
+    FakeMediaSource mediaSource =
+        new FakeMediaSource(new FakeTimeline(/* windowCount= */ 1), Builder.VIDEO_FORMAT);
+    long startTimeNs = System.nanoTime();
+    SimpleExoPlayer player = pool != null ? pool.acquire(mediaSource) : createPlayer();
+    if (pool == null) {
+      player.prepare(mediaSource);
+    }
+    runMainLooperUntilReady(player);
+    long startupTimeNs = System.nanoTime() - startTimeNs;
+    assertThat(player.getPlaybackState()).isEqualTo(Player.STATE_READY);
+    if (pool != null) {
+      pool.release(player);
+    } else {
+      player.release();
+    }
+    return startupTimeNs;
+  }
+
+  private static SimpleExoPlayer createPlayer() {
+    return new SimpleExoPlayer.Builder(
+            ApplicationProvider.getApplicationContext(),
+            (eventHandler,
+                videoRendererEventListener,
+                audioRendererEventListener,
+                textRendererOutput,
+                metadataRendererOutput,
+                drmSessionManager) ->
+                new Renderer[] {new FakeRenderer(Builder.VIDEO_FORMAT)})
+        .setClock(new AutoAdvancingFakeClock())
+        .build();
+  }
+
+  private static void runMainLooperUntilReady(Player player) throws TimeoutException {
+    long deadlineNs = System.nanoTime() + TIMEOUT_MS * 1_000_000;
+    while (player.getPlaybackState() != Player.STATE_READY) {
+      if (System.nanoTime() > deadlineNs) {
+        throw new TimeoutException();
+      }
+      shadowOf(Looper.getMainLooper()).idle();
+    }
+  }
+}
@@ -68,6 +68,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -188,6 +189,232 @@ public final class ExoPlayerTest {
     assertThat(renderer.isEnded).isTrue();
   }
 
+  /** Tests that dynamic scheduling uses the duration to progress reported by the renderers. */
+  @Test
+  public void testDynamicSchedulingUsesRendererDurationToProgress() throws Exception {
+    Timeline timeline = new FakeTimeline(/* windowCount= */ 1);
+    final int[] renderCount = new int[1];
+    FakeRenderer renderer =
+        new FakeRenderer(Builder.AUDIO_FORMAT) {
+          @Override
+          public void render(long positionUs, long elapsedRealtimeUs)
+              throws ExoPlaybackException {
+            renderCount[0]++;
+            super.render(positionUs, elapsedRealtimeUs);
+          }
+
+          @Override
+          public long getDurationToProgressUs(long positionUs, long elapsedRealtimeUs) {
+            return 100_000;
+          }
+        };
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("testDynamicSchedulingUsesRendererDurationToProgress")
+            .executeRunnable(
+                new PlayerRunnable() {
+                  @Override
+                  public void run(SimpleExoPlayer player) {
+                    player.experimental_setDynamicSchedulingEnabled(true);
+                  }
+                })
+            .build();
+    new Builder()
+        .setTimeline(timeline)
+        .setRenderers(renderer)
+        .setActionSchedule(actionSchedule)
+        .build(context)
+        .start()
+        .blockUntilActionScheduleFinished(TIMEOUT_MS)
+        .blockUntilEnded(TIMEOUT_MS);
+    // Playing 10 seconds of media at a fixed 10ms interval would require around 1000 iterations.
+    assertThat(renderer.isEnded).isTrue();
+    assertThat(renderCount[0]).isLessThan(200);
+  }
+
+  /**
+   * Tests that parallel rendering overlaps the render calls of slow renderers. The video and audio
+   * renderers stay slow for many iterations of the playback loop, and the rate at which the audio
+   * renderer is rendered, measured against wall clock time, must exceed the rate that sequential
+   * rendering would allow.
+   */
+  @Test
+  public void testParallelRenderingOverlapsSlowRenderers() throws Exception {
+    Timeline timeline = new FakeTimeline(/* windowCount= */ 1);
+    final int slowIterationCount = 40;
+    final long videoRenderTimeMs = 30;
+    final long audioRenderTimeMs = 20;
+    final AtomicInteger slowVideoRenderCount = new AtomicInteger();
+    final AtomicLong slowPeriodStartTimeMs = new AtomicLong(C.TIME_UNSET);
+    final AtomicLong slowPeriodEndTimeMs = new AtomicLong(C.TIME_UNSET);
+    final List<Long> audioRenderTimesMs = Collections.synchronizedList(new ArrayList<>());
+    FakeRenderer videoRenderer =
+        new FakeRenderer(Builder.VIDEO_FORMAT) {
+          @Override
+          public void render(long positionUs, long elapsedRealtimeUs)
+              throws ExoPlaybackException {
+            if (slowVideoRenderCount.get() < slowIterationCount) {
+              slowPeriodStartTimeMs.compareAndSet(C.TIME_UNSET, System.currentTimeMillis());
+              sleep(videoRenderTimeMs);
+              if (slowVideoRenderCount.incrementAndGet() == slowIterationCount) {
+                slowPeriodEndTimeMs.set(System.currentTimeMillis());
+              }
+            }
+            super.render(positionUs, elapsedRealtimeUs);
+          }
+        };
+    FakeRenderer audioRenderer =
+        new FakeRenderer(Builder.AUDIO_FORMAT) {
+          @Override
+          public void render(long positionUs, long elapsedRealtimeUs)
+              throws ExoPlaybackException {
+            if (slowVideoRenderCount.get() < slowIterationCount) {
+              audioRenderTimesMs.add(System.currentTimeMillis());
+              sleep(audioRenderTimeMs);
+            }
+            super.render(positionUs, elapsedRealtimeUs);
+          }
+        };
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("testParallelRenderingOverlapsSlowRenderers")
+            .executeRunnable(
+                new PlayerRunnable() {
+                  @Override
+                  public void run(SimpleExoPlayer player) {
+                    player.experimental_setParallelRenderingEnabled(true);
+                  }
+                })
+            .build();
+    new Builder()
+        .setTimeline(timeline)
+        .setRenderers(videoRenderer, audioRenderer)
+        .setActionSchedule(actionSchedule)
+        .build(context)
+        .start()
+        .blockUntilActionScheduleFinished(TIMEOUT_MS)
+        .blockUntilEnded(TIMEOUT_MS);
+
+    assertThat(videoRenderer.isEnded).isTrue();
+    assertThat(audioRenderer.isEnded).isTrue();
+    long startTimeMs = slowPeriodStartTimeMs.get();
+    long endTimeMs = slowPeriodEndTimeMs.get();
+    long slowPeriodDurationMs = endTimeMs - startTimeMs;
+    int audioRenderCount = 0;
+    for (long renderTimeMs : audioRenderTimesMs) {
+      if (renderTimeMs >= startTimeMs && renderTimeMs <= endTimeMs) {
+        audioRenderCount++;
+      }
+    }
+    // Sequential rendering would render audio at most once per videoRenderTimeMs +
+    // audioRenderTimeMs, whereas parallel rendering renders it about once per videoRenderTimeMs.
+    long sequentialAudioRenderIntervalMs = videoRenderTimeMs + audioRenderTimeMs;
+    assertThat(audioRenderCount * sequentialAudioRenderIntervalMs)
+        .isGreaterThan(slowPeriodDurationMs * 5 / 4);
+  }
+
+  /**
+   * Tests that a renderer that's disabled for a playlist item isn't reset if it's enabled again
+   * within the renderer keep-alive duration, so that it can reuse its resources.
+   */
+  @Test
+  public void testRendererKeepAliveDefersResetOfDisabledRenderer() throws Exception {
+    Timeline timeline = new FakeTimeline(/* windowCount= */ 1);
+    MediaSource mediaSource =
+        new ConcatenatingMediaSource(
+            new FakeMediaSource(timeline, Builder.VIDEO_FORMAT, Builder.AUDIO_FORMAT),
+            new FakeMediaSource(timeline, Builder.AUDIO_FORMAT),
+            new FakeMediaSource(timeline, Builder.VIDEO_FORMAT, Builder.AUDIO_FORMAT));
+    final List<Integer> resetCountsAtEnable = new ArrayList<>();
+    FakeRenderer videoRenderer =
+        new FakeRenderer(Builder.VIDEO_FORMAT) {
+          private int resetCount;
+
+          @Override
+          protected void onEnabled(boolean joining) throws ExoPlaybackException {
+            super.onEnabled(joining);
+            resetCountsAtEnable.add(resetCount);
+          }
+
+          @Override
+          protected void onReset() {
+            resetCount++;
+          }
+        };
+    FakeRenderer audioRenderer = new FakeRenderer(Builder.AUDIO_FORMAT);
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("testRendererKeepAliveDefersResetOfDisabledRenderer")
+            .executeRunnable(
+                new PlayerRunnable() {
+                  @Override
+                  public void run(SimpleExoPlayer player) {
+                    player.experimental_setRendererKeepAliveMs(60_000);
+                  }
+                })
+            .build();
+    new Builder()
+        .setMediaSource(mediaSource)
+        .setRenderers(videoRenderer, audioRenderer)
+        .setActionSchedule(actionSchedule)
+        .build(context)
+        .start()
+        .blockUntilActionScheduleFinished(TIMEOUT_MS)
+        .blockUntilEnded(TIMEOUT_MS);
+    assertThat(resetCountsAtEnable).containsExactly(0, 0).inOrder();
+    assertThat(videoRenderer.isEnded).isTrue();
+  }
+
+  /**
+   * Tests that a renderer that's kept alive is reset once the keep-alive duration has elapsed, even
+   * if playback has ended and the playback loop has stopped.
+   */
+  @Test
+  public void testRendererKeepAliveResetsDisabledRendererAfterPlaybackEnds() throws Exception {
+    Timeline timeline = new FakeTimeline(/* windowCount= */ 1);
+    MediaSource mediaSource =
+        new ConcatenatingMediaSource(
+            new FakeMediaSource(timeline, Builder.VIDEO_FORMAT, Builder.AUDIO_FORMAT),
+            new FakeMediaSource(timeline, Builder.AUDIO_FORMAT));
+    final CountDownLatch videoRendererResetLatch = new CountDownLatch(1);
+    FakeRenderer videoRenderer =
+        new FakeRenderer(Builder.VIDEO_FORMAT) {
+          @Override
+          protected void onReset() {
+            videoRendererResetLatch.countDown();
+          }
+        };
+    FakeRenderer audioRenderer = new FakeRenderer(Builder.AUDIO_FORMAT);
+    final AtomicBoolean resetBeforeRelease = new AtomicBoolean();
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("testRendererKeepAliveResetsDisabledRendererAfterPlaybackEnds")
+            .executeRunnable(
+                new PlayerRunnable() {
+                  @Override
+                  public void run(SimpleExoPlayer player) {
+                    // Longer than the remaining playback after the video renderer is disabled.
+                    player.experimental_setRendererKeepAliveMs(60_000);
+                  }
+                })
+            .waitForPlaybackState(Player.STATE_ENDED)
+            .executeRunnable(
+                () -> {
+                  try {
+                    resetBeforeRelease.set(
+                        videoRendererResetLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                })
+            .build();
+    new Builder()
+        .setMediaSource(mediaSource)
+        .setRenderers(videoRenderer, audioRenderer)
+        .setActionSchedule(actionSchedule)
+        .build(context)
+        .start()
+        .blockUntilActionScheduleFinished(TIMEOUT_MS)
+        .blockUntilEnded(TIMEOUT_MS);
+    assertThat(resetBeforeRelease.get()).isTrue();
+  }
+
   /**
    * Tests that the player does not unnecessarily reset renderers when playing a multi-period
    * source.
@@ -2893,6 +3120,62 @@ public final class ExoPlayerTest {
     assertThat(seenPlaybackSuppression.get()).isFalse();
   }
 
+  @Test
+  public void shouldTrimBuffer_defersPreparingNextPeriodUntilTrimmingStops() throws Exception {
+    FakeTimeline timeline = new FakeTimeline(/* windowCount= */ 2);
+    Object secondPeriodUid = timeline.getUidOfPeriod(/* periodIndex= */ 1);
+    AtomicInteger secondPeriodCreationCount = new AtomicInteger();
+    FakeMediaSource mediaSource =
+        new FakeMediaSource(timeline, Builder.VIDEO_FORMAT) {
+          @Override
+          protected FakeMediaPeriod createFakeMediaPeriod(
+              MediaPeriodId id,
+              TrackGroupArray trackGroupArray,
+              Allocator allocator,
+              EventDispatcher eventDispatcher,
+              @Nullable TransferListener transferListener) {
+            if (id.periodUid.equals(secondPeriodUid)) {
+              secondPeriodCreationCount.incrementAndGet();
+            }
+            return super.createFakeMediaPeriod(
+                id, trackGroupArray, allocator, eventDispatcher, transferListener);
+          }
+        };
+    AtomicBoolean trimBuffer = new AtomicBoolean(true);
+    LoadControl loadControl =
+        new DefaultLoadControl() {
+          @Override
+          public boolean shouldTrimBuffer() {
+            return trimBuffer.get();
+          }
+        };
+    AtomicInteger secondPeriodCreationCountWhileTrimming = new AtomicInteger();
+    ActionSchedule actionSchedule =
+        new ActionSchedule.Builder("shouldTrimBuffer")
+            .pause()
+            .waitForPlaybackState(Player.STATE_READY)
+            // The first period is fully buffered, so let the player do some work while paused.
+            .delay(/* delayMs= */ 5000)
+            .executeRunnable(
+                () -> {
+                  secondPeriodCreationCountWhileTrimming.set(secondPeriodCreationCount.get());
+                  trimBuffer.set(false);
+                })
+            .play()
+            .build();
+
+    new ExoPlayerTestRunner.Builder()
+        .setMediaSource(mediaSource)
+        .setLoadControl(loadControl)
+        .setActionSchedule(actionSchedule)
+        .build(context)
+        .start()
+        .blockUntilEnded(TIMEOUT_MS);
+
+    assertThat(secondPeriodCreationCountWhileTrimming.get()).isEqualTo(0);
+    assertThat(secondPeriodCreationCount.get()).isEqualTo(1);
+  }
+
   @Test
   public void audioFocusDenied() throws Exception {
     ShadowAudioManager shadowAudioManager = shadowOf(context.getSystemService(AudioManager.class));
@@ -2953,6 +3236,14 @@ public final class ExoPlayerTest {
     shadowOf(Looper.getMainLooper()).idle();
   }
 
+  private static void sleep(long durationMs) {
+    try {
+      Thread.sleep(durationMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   // Internal classes.
 
   private static final class PositionGrabbingMessageTarget extends PlayerTarget {
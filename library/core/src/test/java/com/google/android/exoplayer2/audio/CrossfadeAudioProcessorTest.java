@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link CrossfadeAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class CrossfadeAudioProcessorTest {
+
+  private static final AudioFormat AUDIO_FORMAT =
+      new AudioFormat(/* sampleRate= */ 1000, /* channelCount= */ 1, C.ENCODING_PCM_16BIT);
+  private static final long CROSSFADE_DURATION_US = 10_000;
+  private static final int CROSSFADE_FRAME_COUNT = 10;
+
+  private CrossfadeAudioProcessor crossfadeAudioProcessor;
+  private ShortBuffer output;
+
+  @Before
+  public void setUp() {
+    crossfadeAudioProcessor = new CrossfadeAudioProcessor();
+    output = ShortBuffer.allocate(1000);
+  }
+
+  @Test
+  public void testZeroDuration_isNotActive() throws Exception {
+    crossfadeAudioProcessor.configure(AUDIO_FORMAT);
+
+    assertThat(crossfadeAudioProcessor.isActive()).isFalse();
+  }
+
+  @Test
+  public void testWithoutTransition_outputsInputDelayedByCrossfadeDuration() throws Exception {
+    configureAndFlush();
+
+    queueInput(createConstantSamples(/* value= */ 1000, /* count= */ 15));
+
+    assertThat(output.position()).isEqualTo(15 - CROSSFADE_FRAME_COUNT);
+    queueInput(createConstantSamples(/* value= */ 2000, /* count= */ 15));
+    queueEndOfStream();
+    short[] samples = getOutputSamples();
+    assertThat(samples).hasLength(30);
+    assertThat(Arrays.copyOfRange(samples, 0, 15)).isEqualTo(createConstantSamples(1000, 15));
+    assertThat(Arrays.copyOfRange(samples, 15, 30)).isEqualTo(createConstantSamples(2000, 15));
+    assertThat(crossfadeAudioProcessor.getOverlappedFrameCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testTransition_overlapsStreams() throws Exception {
+    configureAndFlush();
+
+    queueInput(createConstantSamples(/* value= */ 1000, /* count= */ 20));
+    crossfadeAudioProcessor.startCrossfade();
+    queueInput(createConstantSamples(/* value= */ 2000, /* count= */ 20));
+    queueEndOfStream();
+
+    short[] samples = getOutputSamples();
+    assertThat(samples).hasLength(40 - CROSSFADE_FRAME_COUNT);
+    assertThat(crossfadeAudioProcessor.getOverlappedFrameCount())
+        .isEqualTo(CROSSFADE_FRAME_COUNT);
+    assertThat(Arrays.copyOfRange(samples, 0, 10)).isEqualTo(createConstantSamples(1000, 10));
+    assertThat(Arrays.copyOfRange(samples, 20, 30)).isEqualTo(createConstantSamples(2000, 10));
+    // The overlapping section fades from the first stream to the second.
+    assertThat(samples[10]).isLessThan((short) 1200);
+    assertThat(samples[19]).isGreaterThan((short) 1800);
+    for (int i = 10; i < 20; i++) {
+      assertThat(samples[i]).isAtLeast((short) 1000);
+    }
+  }
+
+  @Test
+  public void testEndOfStreamDuringTransition_fadesOutPreviousStream() throws Exception {
+    configureAndFlush();
+
+    queueInput(createConstantSamples(/* value= */ 1000, /* count= */ 20));
+    crossfadeAudioProcessor.startCrossfade();
+    queueInput(createConstantSamples(/* value= */ 2000, /* count= */ 4));
+    queueEndOfStream();
+
+    short[] samples = getOutputSamples();
+    assertThat(samples).hasLength(20);
+    assertThat(crossfadeAudioProcessor.getOverlappedFrameCount()).isEqualTo(4);
+    assertThat(samples[19]).isLessThan((short) 200);
+  }
+
+  @Test
+  public void testStreamShorterThanCrossfade_outputsFadeOutTailAfterOverlap() throws Exception {
+    configureAndFlush();
+
+    queueInput(createConstantSamples(/* value= */ 1000, /* count= */ 20));
+    crossfadeAudioProcessor.startCrossfade();
+    queueInput(createConstantSamples(/* value= */ 2000, /* count= */ 4));
+    queueEndOfStream();
+
+    short[] samples = getOutputSamples();
+    assertThat(samples).hasLength(20);
+    assertThat(Arrays.copyOfRange(samples, 0, 10)).isEqualTo(createConstantSamples(1000, 10));
+    // The second stream overlaps the start of the first stream's fade-out.
+    for (int i = 10; i < 14; i++) {
+      assertThat(samples[i]).isAtLeast((short) 1000);
+    }
+    // The rest of the fade-out follows, against silence.
+    for (int i = 14; i < 20; i++) {
+      assertThat(samples[i]).isLessThan(samples[i - 1]);
+      assertThat(samples[i]).isLessThan((short) 1000);
+    }
+  }
+
+  private void configureAndFlush() throws Exception {
+    crossfadeAudioProcessor.setCrossfadeDurationUs(CROSSFADE_DURATION_US);
+    crossfadeAudioProcessor.configure(AUDIO_FORMAT);
+    crossfadeAudioProcessor.flush();
+    assertThat(crossfadeAudioProcessor.isActive()).isTrue();
+  }
+
+  private void queueInput(short[] samples) {
+    ByteBuffer inputBuffer =
+        ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+    inputBuffer.asShortBuffer().put(samples);
+    crossfadeAudioProcessor.queueInput(inputBuffer);
+    assertThat(inputBuffer.hasRemaining()).isFalse();
+    output.put(crossfadeAudioProcessor.getOutput().asShortBuffer());
+  }
+
+  private void queueEndOfStream() {
+    crossfadeAudioProcessor.queueEndOfStream();
+    output.put(crossfadeAudioProcessor.getOutput().asShortBuffer());
+    assertThat(crossfadeAudioProcessor.isEnded()).isTrue();
+  }
+
+  private short[] getOutputSamples() {
+    short[] samples = new short[output.position()];
+    output.flip();
+    output.get(samples);
+    return samples;
+  }
+
+  private static short[] createConstantSamples(int value, int count) {
+    short[] samples = new short[count];
+    Arrays.fill(samples, (short) value);
+    return samples;
+  }
+}
@@ -19,9 +19,11 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.robolectric.annotation.Config.OLDEST_SDK;
 import static org.robolectric.annotation.Config.TARGET_SDK;
 
+import android.media.AudioTrack;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.common.collect.Range;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
@@ -29,6 +31,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
 
 /**
  * Unit tests for {@link DefaultAudioSink}.
@@ -49,6 +52,7 @@ public final class DefaultAudioSinkTest {
   private static final int CHANNEL_COUNT_STEREO = 2;
   private static final int BYTES_PER_FRAME_16_BIT = 2;
   private static final int SAMPLE_RATE_44_1 = 44100;
+  private static final int SAMPLE_RATE_48 = 48000;
   private static final int TRIM_100_MS_FRAME_COUNT = 4410;
   private static final int TRIM_10_MS_FRAME_COUNT = 441;
 
@@ -169,6 +173,79 @@ public final class DefaultAudioSinkTest {
                 * (SAMPLE_RATE_44_1 - TRIM_100_MS_FRAME_COUNT - TRIM_10_MS_FRAME_COUNT)));
   }
 
+  @Test
+  public void sampleRateChange_recreatesAudioTrackByDefault() throws Exception {
+    configureDefaultAudioSink(CHANNEL_COUNT_STEREO);
+    defaultAudioSink.handleBuffer(createEmptyBuffer(), /* presentationTimeUs= */ 0);
+
+    configureDefaultAudioSink(CHANNEL_COUNT_STEREO, SAMPLE_RATE_48);
+    defaultAudioSink.handleBuffer(
+        createSilenceBuffer(SAMPLE_RATE_48), /* presentationTimeUs= */ C.MICROS_PER_SECOND);
+
+    assertThat(arrayAudioBufferSink.sampleRateHz).isEqualTo(SAMPLE_RATE_48);
+    assertThat(arrayAudioBufferSink.output)
+        .hasLength(BYTES_PER_FRAME_16_BIT * CHANNEL_COUNT_STEREO * SAMPLE_RATE_48);
+  }
+
+  @Test
+  public void sampleRateChange_withAudioTrackReuse_convertsToCurrentSampleRate() throws Exception {
+    defaultAudioSink.experimental_setReuseAudioTrackOnSampleRateChange(true);
+    configureDefaultAudioSink(CHANNEL_COUNT_STEREO);
+    defaultAudioSink.handleBuffer(createEmptyBuffer(), /* presentationTimeUs= */ 0);
+
+    configureDefaultAudioSink(CHANNEL_COUNT_STEREO, SAMPLE_RATE_48);
+    defaultAudioSink.handleBuffer(
+        createSilenceBuffer(SAMPLE_RATE_48), /* presentationTimeUs= */ C.MICROS_PER_SECOND);
+
+    // The converter holds back the last few frames until the end of the stream.
+    assertThat(arrayAudioBufferSink.sampleRateHz).isEqualTo(SAMPLE_RATE_44_1);
+    assertThat(arrayAudioBufferSink.output.length / (BYTES_PER_FRAME_16_BIT * CHANNEL_COUNT_STEREO))
+        .isIn(Range.closed(SAMPLE_RATE_44_1 - 20, SAMPLE_RATE_44_1));
+  }
+
+  @Test
+  public void sampleRateChange_withAudioTrackReuse_usesInputSampleRateAfterFlush()
+      throws Exception {
+    defaultAudioSink.experimental_setReuseAudioTrackOnSampleRateChange(true);
+    configureDefaultAudioSink(CHANNEL_COUNT_STEREO);
+    defaultAudioSink.handleBuffer(createEmptyBuffer(), /* presentationTimeUs= */ 0);
+    configureDefaultAudioSink(CHANNEL_COUNT_STEREO, SAMPLE_RATE_48);
+    defaultAudioSink.handleBuffer(
+        createSilenceBuffer(SAMPLE_RATE_48), /* presentationTimeUs= */ C.MICROS_PER_SECOND);
+    int convertedAudioTrackSampleRate = getAudioTrack().getSampleRate();
+
+    defaultAudioSink.flush();
+    defaultAudioSink.handleBuffer(
+        createSilenceBuffer(SAMPLE_RATE_48), /* presentationTimeUs= */ 2 * C.MICROS_PER_SECOND);
+
+    assertThat(convertedAudioTrackSampleRate).isEqualTo(SAMPLE_RATE_44_1);
+    assertThat(getAudioTrack().getSampleRate()).isEqualTo(SAMPLE_RATE_48);
+    assertThat(arrayAudioBufferSink.sampleRateHz).isEqualTo(SAMPLE_RATE_48);
+    assertThat(arrayAudioBufferSink.output)
+        .hasLength(BYTES_PER_FRAME_16_BIT * CHANNEL_COUNT_STEREO * SAMPLE_RATE_48);
+  }
+
+  @Test
+  public void skipSilence_withSampleRateConversion_reportsDurationAtOutputSampleRate()
+      throws Exception {
+    SilenceSkippedListener listener = new SilenceSkippedListener();
+    defaultAudioSink.setListener(listener);
+    defaultAudioSink.setPlaybackParameters(
+        new PlaybackParameters(/* speed= */ 1f, /* pitch= */ 1f, /* skipSilence= */ true));
+    defaultAudioSink.experimental_setReuseAudioTrackOnSampleRateChange(true);
+    configureDefaultAudioSink(CHANNEL_COUNT_STEREO);
+    defaultAudioSink.handleBuffer(createEmptyBuffer(), /* presentationTimeUs= */ 0);
+    configureDefaultAudioSink(CHANNEL_COUNT_STEREO, SAMPLE_RATE_48);
+    defaultAudioSink.handleBuffer(
+        createSilenceBuffer(SAMPLE_RATE_48), /* presentationTimeUs= */ C.MICROS_PER_SECOND);
+
+    defaultAudioSink.flush();
+
+    // One second of silence is skipped, except for 20 ms of padding and the few frames held back
+    // by the sample rate converter.
+    assertThat(listener.skippedDurationUs).isIn(Range.closed(975_000L, 980_000L));
+  }
+
   @Test
   public void getCurrentPosition_returnsPositionFromFirstBuffer() throws Exception {
     configureDefaultAudioSink(CHANNEL_COUNT_STEREO);
@@ -203,6 +280,22 @@ public final class DefaultAudioSinkTest {
     configureDefaultAudioSink(channelCount, /* trimStartFrames= */ 0, /* trimEndFrames= */ 0);
   }
 
+  private AudioTrack getAudioTrack() {
+    return ReflectionHelpers.getField(defaultAudioSink, "audioTrack");
+  }
+
+  private void configureDefaultAudioSink(int channelCount, int sampleRate)
+      throws AudioSink.ConfigurationException {
+    defaultAudioSink.configure(
+        C.ENCODING_PCM_16BIT,
+        channelCount,
+        sampleRate,
+        /* specifiedBufferSize= */ 0,
+        /* outputChannels= */ null,
+        /* trimStartFrames= */ 0,
+        /* trimEndFrames= */ 0);
+  }
+
   private void configureDefaultAudioSink(int channelCount, int trimStartFrames, int trimEndFrames)
       throws AudioSink.ConfigurationException {
     defaultAudioSink.configure(
@@ -217,14 +310,42 @@ public final class DefaultAudioSinkTest {
 
   /** Creates a one second silence buffer for 44.1 kHz stereo 16-bit audio. */
   private static ByteBuffer createDefaultSilenceBuffer() {
-    return ByteBuffer.allocateDirect(
-            SAMPLE_RATE_44_1 * CHANNEL_COUNT_STEREO * BYTES_PER_FRAME_16_BIT)
+    return createSilenceBuffer(SAMPLE_RATE_44_1);
+  }
+
+  /** Creates a one second silence buffer for stereo 16-bit audio at the given sample rate. */
+  private static ByteBuffer createSilenceBuffer(int sampleRate) {
+    return ByteBuffer.allocateDirect(sampleRate * CHANNEL_COUNT_STEREO * BYTES_PER_FRAME_16_BIT)
         .order(ByteOrder.nativeOrder());
   }
 
+  private static ByteBuffer createEmptyBuffer() {
+    return ByteBuffer.allocateDirect(0).order(ByteOrder.nativeOrder());
+  }
+
+  private static final class SilenceSkippedListener implements AudioSink.Listener {
+
+    private long skippedDurationUs;
+
+    @Override
+    public void onAudioSessionId(int audioSessionId) {}
+
+    @Override
+    public void onPositionDiscontinuity() {}
+
+    @Override
+    public void onUnderrun(int bufferSize, long bufferSizeMs, long elapsedSinceLastFeedMs) {}
+
+    @Override
+    public void onSilenceSkipped(long skippedDurationUs) {
+      this.skippedDurationUs += skippedDurationUs;
+    }
+  }
+
   private static final class ArrayAudioBufferSink implements TeeAudioProcessor.AudioBufferSink {
 
     private byte[] output;
+    private int sampleRateHz;
 
     public ArrayAudioBufferSink() {
       output = new byte[0];
@@ -233,6 +354,7 @@ public final class DefaultAudioSinkTest {
     @Override
     public void flush(int sampleRateHz, int channelCount, int encoding) {
       output = new byte[0];
+      this.sampleRateHz = sampleRateHz;
     }
 
     @Override
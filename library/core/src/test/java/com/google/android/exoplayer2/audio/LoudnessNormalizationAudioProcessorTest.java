@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import com.google.android.exoplayer2.metadata.Metadata;
+import com.google.android.exoplayer2.metadata.flac.VorbisComment;
+import com.google.android.exoplayer2.metadata.id3.CommentFrame;
+import com.google.android.exoplayer2.metadata.id3.TextInformationFrame;
+import com.google.common.collect.Range;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link LoudnessNormalizationAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class LoudnessNormalizationAudioProcessorTest {
+
+  private static final int SAMPLE_RATE = 48000;
+  private static final int CHANNEL_COUNT = 2;
+  private static final AudioFormat AUDIO_FORMAT =
+      new AudioFormat(SAMPLE_RATE, CHANNEL_COUNT, C.ENCODING_PCM_16BIT);
+  private static final int INPUT_BUFFER_FRAME_COUNT = 1024;
+
+  private LoudnessNormalizationAudioProcessor loudnessNormalizationAudioProcessor;
+
+  @Before
+  public void setUp() {
+    loudnessNormalizationAudioProcessor = new LoudnessNormalizationAudioProcessor();
+  }
+
+  @Test
+  public void testGetTrackGainDb_fromVorbisComment() {
+    Metadata metadata = new Metadata(new VorbisComment("replaygain_track_gain", "-6.50 dB"));
+
+    assertThat(LoudnessNormalizationAudioProcessor.getTrackGainDbFromMetadata(metadata))
+        .isWithin(0.001f)
+        .of(-6.5f);
+  }
+
+  @Test
+  public void testGetTrackGainDb_fromId3UserTextFrame_isLimitedByPeak() {
+    Metadata metadata =
+        new Metadata(
+            new TextInformationFrame("TXXX", "REPLAYGAIN_TRACK_GAIN", "+3.20 dB"),
+            new TextInformationFrame("TXXX", "REPLAYGAIN_TRACK_PEAK", "0.9"));
+
+    assertThat(LoudnessNormalizationAudioProcessor.getTrackGainDbFromMetadata(metadata))
+        .isWithin(0.001f)
+        .of(0.915f);
+  }
+
+  @Test
+  public void testGetTrackGainDb_fromSoundCheckComment() {
+    Metadata metadata =
+        new Metadata(
+            new CommentFrame(
+                "eng",
+                "iTunNORM",
+                " 00000FA0 00000BB8 00004C7E 00005A3F 0002B5B2 0002B5B2 00007E0A 00007E0A"));
+
+    assertThat(LoudnessNormalizationAudioProcessor.getTrackGainDbFromMetadata(metadata))
+        .isWithin(0.001f)
+        .of(-6.021f);
+  }
+
+  @Test
+  public void testGetTrackGainDb_withoutTags_returnsNull() {
+    Metadata metadata = new Metadata(new VorbisComment("TITLE", "Title"));
+
+    assertThat(LoudnessNormalizationAudioProcessor.getTrackGainDbFromMetadata(metadata)).isNull();
+  }
+
+  @Test(expected = AudioProcessor.UnhandledAudioFormatException.class)
+  public void testNon16BitInput_throws() throws Exception {
+    loudnessNormalizationAudioProcessor.configure(
+        new AudioFormat(SAMPLE_RATE, CHANNEL_COUNT, C.ENCODING_PCM_FLOAT));
+  }
+
+  @Test
+  public void testTrackGainTag_isAppliedImmediately() throws Exception {
+    loudnessNormalizationAudioProcessor.setMetadata(
+        new Metadata(new VorbisComment("REPLAYGAIN_TRACK_GAIN", "-6.0206 dB")));
+    configureAndFlush();
+
+    short[] output = process(new short[] {10000, -10000, 20000, -20000});
+
+    assertSamplesWithinOne(output, new short[] {5000, -5000, 10000, -10000});
+  }
+
+  @Test
+  public void testTrackGainTag_isRelativeToTargetLoudnessAndLimited() throws Exception {
+    loudnessNormalizationAudioProcessor.setTargetLoudnessLufs(-12f);
+    loudnessNormalizationAudioProcessor.setMetadata(
+        new Metadata(new VorbisComment("REPLAYGAIN_TRACK_GAIN", "0 dB")));
+    configureAndFlush();
+
+    short[] output = process(new short[] {10000, -10000, 20000, -20000});
+
+    // The gain is 6 dB, as the target is 6 dB louder than the ReplayGain reference loudness. The
+    // limiter reduces the gain for the second frame so that it doesn't clip.
+    assertSamplesWithinOne(
+        output, new short[] {19953, -19953, Short.MAX_VALUE, -Short.MAX_VALUE});
+  }
+
+  @Test
+  public void testLimiter_scalesLoudSineWaveWithoutClipping() throws Exception {
+    // A Sound Check scale factor of 0.062 asks for a gain of more than 12 dB, which the tag's
+    // lack of a peak value doesn't limit.
+    loudnessNormalizationAudioProcessor.setMetadata(
+        new Metadata(new CommentFrame("eng", "iTunNORM", " 0000003E 0000003E")));
+    configureAndFlush();
+    short[] input = createSineWave(/* amplitude= */ 0.5, /* frameCount= */ 4800);
+
+    short[] output = process(input);
+
+    // Without the limiter the sine wave's peaks would be flattened at full scale. With it, the
+    // output stays a sine wave that peaks at full scale, so its gain is close to 2 throughout.
+    int firstPeriodFrameCount = SAMPLE_RATE / 997 + 1;
+    for (int i = firstPeriodFrameCount * CHANNEL_COUNT; i < input.length; i++) {
+      if (Math.abs(input[i]) > 1000) {
+        assertThat((double) output[i] / input[i]).isWithin(0.1).of(2);
+      }
+    }
+  }
+
+  @Test
+  public void testStartStream_rampsToNewStreamGainWithoutFlush() throws Exception {
+    loudnessNormalizationAudioProcessor.setMetadata(
+        new Metadata(new VorbisComment("REPLAYGAIN_TRACK_GAIN", "0 dB")));
+    configureAndFlush();
+    short[] input = new short[INPUT_BUFFER_FRAME_COUNT * CHANNEL_COUNT];
+    Arrays.fill(input, (short) 10000);
+    short[] firstStreamOutput = process(input);
+
+    loudnessNormalizationAudioProcessor.startStream(
+        new Metadata(new VorbisComment("REPLAYGAIN_TRACK_GAIN", "-6.0206 dB")));
+    short[] rampOutput = process(input);
+    short[] secondStreamOutput = process(input);
+
+    assertThat(firstStreamOutput).isEqualTo(input);
+    // The gain ramps from the first stream's gain to the second's over the first buffer.
+    assertThat(rampOutput[0]).isEqualTo(10000);
+    assertThat((int) rampOutput[rampOutput.length - 1]).isIn(Range.closed(4999, 5010));
+    short[] expectedSecondStreamOutput = new short[input.length];
+    Arrays.fill(expectedSecondStreamOutput, (short) 5000);
+    assertSamplesWithinOne(secondStreamOutput, expectedSecondStreamOutput);
+    assertThat(loudnessNormalizationAudioProcessor.getGainDb()).isWithin(0.001f).of(-6.0206f);
+  }
+
+  private void configureAndFlush() throws Exception {
+    loudnessNormalizationAudioProcessor.configure(AUDIO_FORMAT);
+    loudnessNormalizationAudioProcessor.flush();
+    assertThat(loudnessNormalizationAudioProcessor.isActive()).isTrue();
+  }
+
+  private static void assertSamplesWithinOne(short[] actual, short[] expected) {
+    assertThat(actual).hasLength(expected.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertThat(Math.abs(actual[i] - expected[i])).isAtMost(1);
+    }
+  }
+
+  private static short[] createSineWave(double amplitude, int frameCount) {
+    short[] samples = new short[frameCount * CHANNEL_COUNT];
+    for (int frame = 0; frame < frameCount; frame++) {
+      short sample =
+          (short) (amplitude * Short.MAX_VALUE * Math.sin(2 * Math.PI * 997 * frame / SAMPLE_RATE));
+      for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+        samples[frame * CHANNEL_COUNT + channel] = sample;
+      }
+    }
+    return samples;
+  }
+
+  private void processSineWave(double amplitude, int durationSeconds) {
+    short[] samples = new short[INPUT_BUFFER_FRAME_COUNT * CHANNEL_COUNT];
+    int frameIndex = 0;
+    int bufferCount = durationSeconds * SAMPLE_RATE / INPUT_BUFFER_FRAME_COUNT;
+    for (int i = 0; i < bufferCount; i++) {
+      for (int frame = 0; frame < INPUT_BUFFER_FRAME_COUNT; frame++) {
+        short sample =
+            (short)
+                (amplitude
+                    * Short.MAX_VALUE
+                    * Math.sin(2 * Math.PI * 997 * frameIndex++ / SAMPLE_RATE));
+        for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+          samples[frame * CHANNEL_COUNT + channel] = sample;
+        }
+      }
+      process(samples);
+    }
+  }
+
+  private short[] process(short[] input) {
+    ByteBuffer inputBuffer =
+        ByteBuffer.allocateDirect(input.length * 2).order(ByteOrder.nativeOrder());
+    inputBuffer.asShortBuffer().put(input);
+    loudnessNormalizationAudioProcessor.queueInput(inputBuffer);
+    assertThat(inputBuffer.hasRemaining()).isFalse();
+    ShortBuffer output = loudnessNormalizationAudioProcessor.getOutput().asShortBuffer();
+    short[] samples = new short[output.remaining()];
+    output.get(samples);
+    return samples;
+  }
+}
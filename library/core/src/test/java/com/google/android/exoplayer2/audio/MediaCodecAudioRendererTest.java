@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.mediacodec.MediaCodecInfo;
+import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
+import com.google.android.exoplayer2.util.MimeTypes;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MediaCodecAudioRenderer}. */
+@RunWith(AndroidJUnit4.class)
+public final class MediaCodecAudioRendererTest {
+
+  private static final Format PCM_FORMAT =
+      createAudioFormat(MimeTypes.AUDIO_RAW, /* sampleRate= */ 44100, C.ENCODING_PCM_16BIT);
+  private static final Format MP3_FORMAT =
+      createAudioFormat(MimeTypes.AUDIO_MPEG, /* sampleRate= */ 44100, Format.NO_VALUE);
+
+  private MediaCodecAudioRenderer renderer;
+
+  @Before
+  public void setUp() {
+    renderer =
+        new MediaCodecAudioRenderer(
+            ApplicationProvider.getApplicationContext(), MediaCodecSelector.DEFAULT);
+  }
+
+  @Test
+  public void getBatchedInputSampleDurationUs_withPcmFrames_returnsDurationOfFrames() {
+    MediaCodecInfo codecInfo = createCodecInfo(MimeTypes.AUDIO_RAW, /* softwareOnly= */ true);
+
+    // 4410 stereo 16-bit PCM frames.
+    assertThat(
+            renderer.getBatchedInputSampleDurationUs(
+                codecInfo, PCM_FORMAT, /* sampleSize= */ 4410 * 4))
+        .isEqualTo(100_000);
+  }
+
+  @Test
+  public void getBatchedInputSampleDurationUs_withPartialPcmFrame_returnsTimeUnset() {
+    MediaCodecInfo codecInfo = createCodecInfo(MimeTypes.AUDIO_RAW, /* softwareOnly= */ true);
+
+    assertThat(renderer.getBatchedInputSampleDurationUs(codecInfo, PCM_FORMAT, /* sampleSize= */ 6))
+        .isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void getBatchedInputSampleDurationUs_withMp3OnSoftwareDecoder_returnsFrameDuration() {
+    MediaCodecInfo codecInfo = createCodecInfo(MimeTypes.AUDIO_MPEG, /* softwareOnly= */ true);
+
+    assertThat(
+            renderer.getBatchedInputSampleDurationUs(
+                codecInfo, MP3_FORMAT, /* sampleSize= */ 417))
+        .isEqualTo(1152 * C.MICROS_PER_SECOND / 44100);
+  }
+
+  @Test
+  public void getBatchedInputSampleDurationUs_withMp3OnHardwareDecoder_returnsTimeUnset() {
+    MediaCodecInfo codecInfo = createCodecInfo(MimeTypes.AUDIO_MPEG, /* softwareOnly= */ false);
+
+    assertThat(
+            renderer.getBatchedInputSampleDurationUs(
+                codecInfo, MP3_FORMAT, /* sampleSize= */ 417))
+        .isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void getBatchedInputSampleDurationUs_withPassthroughDecoder_returnsTimeUnset() {
+    MediaCodecInfo codecInfo = MediaCodecInfo.newPassthroughInstance("passthrough");
+
+    assertThat(
+            renderer.getBatchedInputSampleDurationUs(
+                codecInfo, PCM_FORMAT, /* sampleSize= */ 4410 * 4))
+        .isEqualTo(C.TIME_UNSET);
+  }
+
+  private static Format createAudioFormat(String sampleMimeType, int sampleRate, int pcmEncoding) {
+    return Format.createAudioSampleFormat(
+        /* id= */ null,
+        sampleMimeType,
+        /* codecs= */ null,
+        /* bitrate= */ Format.NO_VALUE,
+        /* maxInputSize= */ Format.NO_VALUE,
+        /* channelCount= */ 2,
+        sampleRate,
+        pcmEncoding,
+        /* initializationData= */ null,
+        /* drmInitData= */ null,
+        /* selectionFlags= */ 0,
+        /* language= */ null);
+  }
+
+  private static MediaCodecInfo createCodecInfo(String mimeType, boolean softwareOnly) {
+    return MediaCodecInfo.newInstance(
+        /* name= */ "decoder",
+        mimeType,
+        /* codecMimeType= */ mimeType,
+        /* capabilities= */ null,
+        /* hardwareAccelerated= */ !softwareOnly,
+        softwareOnly,
+        /* vendor= */ !softwareOnly,
+        /* forceDisableAdaptive= */ false,
+        /* forceSecure= */ false);
+  }
+}
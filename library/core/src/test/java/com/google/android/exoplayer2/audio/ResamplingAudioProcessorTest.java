@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ResamplingAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class ResamplingAudioProcessorTest {
+
+  private ResamplingAudioProcessor resamplingAudioProcessor;
+
+  @Before
+  public void setUp() {
+    resamplingAudioProcessor = new ResamplingAudioProcessor();
+  }
+
+  @Test
+  public void testPcm16BitInput_isNotActive() throws Exception {
+    resamplingAudioProcessor.configure(createAudioFormat(C.ENCODING_PCM_16BIT, 2));
+
+    assertThat(resamplingAudioProcessor.isActive()).isFalse();
+  }
+
+  @Test
+  public void testPcm8BitInput_outputsScaledSamples() throws Exception {
+    configure(createAudioFormat(C.ENCODING_PCM_8BIT, /* channelCount= */ 1));
+
+    short[] output = process(new byte[] {0, (byte) 128, (byte) 255});
+
+    assertThat(output).isEqualTo(new short[] {-32768, 0, 32512});
+  }
+
+  @Test
+  public void testPcm16BitBigEndianInput_outputsSwappedSamples() throws Exception {
+    configure(createAudioFormat(C.ENCODING_PCM_16BIT_BIG_ENDIAN, /* channelCount= */ 1));
+
+    short[] output = process(new byte[] {0x12, 0x34, (byte) 0xFF, (byte) 0xFE});
+
+    assertThat(output).isEqualTo(new short[] {0x1234, -2});
+  }
+
+  @Test
+  public void testPcm24BitInput_dropsLeastSignificantByte() throws Exception {
+    configure(createAudioFormat(C.ENCODING_PCM_24BIT, /* channelCount= */ 1));
+
+    short[] output = process(new byte[] {0x01, 0x34, 0x12, 0x01, 0x00, (byte) 0x80});
+
+    assertThat(output).isEqualTo(new short[] {0x1234, Short.MIN_VALUE});
+  }
+
+  @Test
+  public void testPcm32BitInput_dropsTwoLeastSignificantBytes() throws Exception {
+    configure(createAudioFormat(C.ENCODING_PCM_32BIT, /* channelCount= */ 1));
+
+    short[] output = process(new byte[] {0x01, 0x02, 0x34, 0x12});
+
+    assertThat(output).isEqualTo(new short[] {0x1234});
+  }
+
+  @Test
+  public void testPcmFloatInput_outputsScaledSamples() throws Exception {
+    configure(createAudioFormat(C.ENCODING_PCM_FLOAT, /* channelCount= */ 1));
+    ByteBuffer input = ByteBuffer.allocateDirect(12).order(ByteOrder.nativeOrder());
+    input.asFloatBuffer().put(new float[] {-1f, 0f, 1f});
+
+    short[] output = process(input);
+
+    assertThat(output).isEqualTo(new short[] {-Short.MAX_VALUE, 0, Short.MAX_VALUE});
+  }
+
+  @Test
+  public void testChannelMap_isAppliedWhenConverting() throws Exception {
+    resamplingAudioProcessor.setChannelMap(new int[] {1, 0, 1});
+    AudioFormat outputFormat =
+        configure(createAudioFormat(C.ENCODING_PCM_16BIT_BIG_ENDIAN, /* channelCount= */ 2));
+
+    short[] output = process(new byte[] {0, 1, 0, 2, 0, 3, 0, 4});
+
+    assertThat(outputFormat.channelCount).isEqualTo(3);
+    assertThat(output).isEqualTo(new short[] {2, 1, 2, 4, 3, 4});
+  }
+
+  @Test(expected = AudioProcessor.UnhandledAudioFormatException.class)
+  public void testChannelMapWithInvalidChannel_throws() throws Exception {
+    resamplingAudioProcessor.setChannelMap(new int[] {2});
+    resamplingAudioProcessor.configure(createAudioFormat(C.ENCODING_PCM_8BIT, 2));
+  }
+
+  private AudioFormat configure(AudioFormat inputAudioFormat) throws Exception {
+    AudioFormat outputAudioFormat = resamplingAudioProcessor.configure(inputAudioFormat);
+    resamplingAudioProcessor.flush();
+    return outputAudioFormat;
+  }
+
+  private short[] process(byte[] input) {
+    ByteBuffer inputBuffer = ByteBuffer.allocateDirect(input.length).order(ByteOrder.nativeOrder());
+    inputBuffer.put(input).flip();
+    return process(inputBuffer);
+  }
+
+  private short[] process(ByteBuffer inputBuffer) {
+    resamplingAudioProcessor.queueInput(inputBuffer);
+    assertThat(inputBuffer.hasRemaining()).isFalse();
+    ShortBuffer output = resamplingAudioProcessor.getOutput().asShortBuffer();
+    short[] samples = new short[output.remaining()];
+    output.get(samples);
+    return samples;
+  }
+
+  private static AudioFormat createAudioFormat(@C.PcmEncoding int encoding, int channelCount) {
+    return new AudioFormat(/* sampleRate= */ 44100, channelCount, encoding);
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link RmsSilenceSkippingAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class RmsSilenceSkippingAudioProcessorTest {
+
+  private static final int SAMPLE_RATE = 1000;
+  private static final int CHANNEL_COUNT = 2;
+  private static final int INPUT_BUFFER_FRAME_COUNT = 77;
+  private static final int MINIMUM_SILENCE_FRAME_COUNT = 100;
+  private static final int PADDING_FRAME_COUNT = 20;
+
+  private RmsSilenceSkippingAudioProcessor silenceSkippingAudioProcessor;
+  private boolean isFloat;
+
+  @Before
+  public void setUp() {
+    silenceSkippingAudioProcessor = new RmsSilenceSkippingAudioProcessor();
+  }
+
+  @Test
+  public void testDefaultProcessor_isNotActive() throws Exception {
+    silenceSkippingAudioProcessor.configure(createAudioFormat(C.ENCODING_PCM_16BIT));
+
+    assertThat(silenceSkippingAudioProcessor.isActive()).isFalse();
+  }
+
+  @Test(expected = AudioProcessor.UnhandledAudioFormatException.class)
+  public void testUnsupportedEncoding_throws() throws Exception {
+    silenceSkippingAudioProcessor.setEnabled(true);
+    silenceSkippingAudioProcessor.configure(createAudioFormat(C.ENCODING_PCM_24BIT));
+  }
+
+  @Test
+  public void testShortSilence_isNotSkipped() throws Exception {
+    configureAndFlush(C.ENCODING_PCM_16BIT);
+
+    float[] output = process(createSignal(/* noise= */ 200, /* silence= */ 90, /* noise= */ 200));
+
+    assertThat(output).hasLength(490 * CHANNEL_COUNT);
+    assertThat(silenceSkippingAudioProcessor.getSkippedFrames()).isEqualTo(0);
+  }
+
+  @Test
+  public void testLongSilence_isShortenedToMinimumDurationAndPadding() throws Exception {
+    configureAndFlush(C.ENCODING_PCM_16BIT);
+
+    float[] output = process(createSignal(/* noise= */ 200, /* silence= */ 1005, /* noise= */ 200));
+
+    int silenceFrameCount = MINIMUM_SILENCE_FRAME_COUNT + PADDING_FRAME_COUNT;
+    assertThat(output).hasLength((400 + silenceFrameCount) * CHANNEL_COUNT);
+    assertThat(silenceSkippingAudioProcessor.getSkippedFrames())
+        .isEqualTo(1005 - silenceFrameCount);
+    // The padding ends exactly at the first noise frame following the silence.
+    assertThat(getFirstNoiseFrameIndex(output, /* startFrameIndex= */ 200))
+        .isEqualTo(200 + silenceFrameCount);
+  }
+
+  @Test
+  public void testFloatInput_isSkipped() throws Exception {
+    configureAndFlush(C.ENCODING_PCM_FLOAT);
+
+    float[] output = process(createSignal(/* noise= */ 200, /* silence= */ 1005, /* noise= */ 200));
+
+    int silenceFrameCount = MINIMUM_SILENCE_FRAME_COUNT + PADDING_FRAME_COUNT;
+    assertThat(output).hasLength((400 + silenceFrameCount) * CHANNEL_COUNT);
+    assertThat(getFirstNoiseFrameIndex(output, /* startFrameIndex= */ 200))
+        .isEqualTo(200 + silenceFrameCount);
+  }
+
+  @Test
+  public void testQuietNoise_isClassifiedAsSilence() throws Exception {
+    configureAndFlush(C.ENCODING_PCM_16BIT);
+    float[] input = createSignal(/* noise= */ 200, /* silence= */ 1000, /* noise= */ 200);
+    // Add a noise floor well below the default threshold to the silent section.
+    for (int i = 200 * CHANNEL_COUNT; i < 1200 * CHANNEL_COUNT; i++) {
+      input[i] = i % 2 == 0 ? 0.001f : -0.001f;
+    }
+
+    process(input);
+
+    assertThat(silenceSkippingAudioProcessor.getSkippedFrames())
+        .isEqualTo(1000 - MINIMUM_SILENCE_FRAME_COUNT - PADDING_FRAME_COUNT);
+  }
+
+  @Test
+  public void testSilenceAtEndOfStream_isSkipped() throws Exception {
+    configureAndFlush(C.ENCODING_PCM_16BIT);
+
+    float[] output = process(createSignal(/* noise= */ 200, /* silence= */ 500, /* noise= */ 0));
+
+    assertThat(output).hasLength((200 + MINIMUM_SILENCE_FRAME_COUNT) * CHANNEL_COUNT);
+    assertThat(silenceSkippingAudioProcessor.getSkippedFrames())
+        .isEqualTo(500 - MINIMUM_SILENCE_FRAME_COUNT);
+  }
+
+  private void configureAndFlush(@C.PcmEncoding int encoding) throws Exception {
+    isFloat = encoding == C.ENCODING_PCM_FLOAT;
+    silenceSkippingAudioProcessor.setEnabled(true);
+    silenceSkippingAudioProcessor.configure(createAudioFormat(encoding));
+    silenceSkippingAudioProcessor.flush();
+    assertThat(silenceSkippingAudioProcessor.isActive()).isTrue();
+  }
+
+  /**
+   * Queues {@code input} in small buffers followed by the end of stream, and returns the output
+   * samples as floats. The samples in {@code input} and the output are interleaved.
+   */
+  private float[] process(float[] input) {
+    int bytesPerSample = isFloat ? 4 : 2;
+    ByteBuffer output =
+        ByteBuffer.allocate(input.length * bytesPerSample).order(ByteOrder.nativeOrder());
+    int sampleIndex = 0;
+    while (sampleIndex < input.length) {
+      int sampleCount =
+          Math.min(INPUT_BUFFER_FRAME_COUNT * CHANNEL_COUNT, input.length - sampleIndex);
+      ByteBuffer inputBuffer =
+          ByteBuffer.allocateDirect(sampleCount * bytesPerSample).order(ByteOrder.nativeOrder());
+      for (int i = 0; i < sampleCount; i++) {
+        float sample = input[sampleIndex++];
+        if (isFloat) {
+          inputBuffer.putFloat(sample);
+        } else {
+          inputBuffer.putShort((short) (sample * Short.MAX_VALUE));
+        }
+      }
+      inputBuffer.flip();
+      silenceSkippingAudioProcessor.queueInput(inputBuffer);
+      assertThat(inputBuffer.hasRemaining()).isFalse();
+      output.put(silenceSkippingAudioProcessor.getOutput());
+    }
+    silenceSkippingAudioProcessor.queueEndOfStream();
+    output.put(silenceSkippingAudioProcessor.getOutput());
+    assertThat(silenceSkippingAudioProcessor.isEnded()).isTrue();
+
+    output.flip();
+    float[] samples = new float[output.remaining() / bytesPerSample];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = isFloat ? output.getFloat() : (float) output.getShort() / Short.MAX_VALUE;
+    }
+    return samples;
+  }
+
+  private static AudioFormat createAudioFormat(@C.PcmEncoding int encoding) {
+    return new AudioFormat(SAMPLE_RATE, CHANNEL_COUNT, encoding);
+  }
+
+  /**
+   * Returns interleaved samples with the specified number of frames of square wave noise, followed
+   * by digital silence and further noise.
+   */
+  private static float[] createSignal(
+      int noiseFrameCount, int silenceFrameCount, int trailingNoiseFrameCount) {
+    int frameCount = noiseFrameCount + silenceFrameCount + trailingNoiseFrameCount;
+    float[] samples = new float[frameCount * CHANNEL_COUNT];
+    for (int frame = 0; frame < frameCount; frame++) {
+      boolean silent = frame >= noiseFrameCount && frame < noiseFrameCount + silenceFrameCount;
+      float sample = silent ? 0 : (frame % 2 == 0 ? 0.3f : -0.3f);
+      for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+        samples[frame * CHANNEL_COUNT + channel] = sample;
+      }
+    }
+    return samples;
+  }
+
+  /** Returns the index of the first frame at or after {@code startFrameIndex} that isn't silent. */
+  private static int getFirstNoiseFrameIndex(float[] samples, int startFrameIndex) {
+    for (int i = startFrameIndex * CHANNEL_COUNT; i < samples.length; i++) {
+      if (samples[i] != 0) {
+        return i / CHANNEL_COUNT;
+      }
+    }
+    return -1;
+  }
+}
@@ -20,6 +20,8 @@ import static com.google.android.exoplayer2.RendererCapabilities.FORMAT_HANDLED;
 import static com.google.android.exoplayer2.RendererCapabilities.TUNNELING_NOT_SUPPORTED;
 import static com.google.android.exoplayer2.RendererCapabilities.TUNNELING_SUPPORTED;
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -28,12 +30,16 @@ import androidx.annotation.Nullable;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.Renderer;
 import com.google.android.exoplayer2.RendererConfiguration;
 import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
 import com.google.android.exoplayer2.decoder.SimpleDecoder;
 import com.google.android.exoplayer2.decoder.SimpleOutputBuffer;
 import com.google.android.exoplayer2.drm.DrmSessionManager;
 import com.google.android.exoplayer2.drm.ExoMediaCrypto;
+import com.google.android.exoplayer2.source.SampleStream;
 import com.google.android.exoplayer2.testutil.FakeSampleStream;
 import com.google.android.exoplayer2.util.MimeTypes;
 import org.junit.Before;
@@ -48,9 +54,12 @@ import org.robolectric.annotation.Config;
 public class SimpleDecoderAudioRendererTest {
 
   private static final Format FORMAT = Format.createSampleFormat(null, MimeTypes.AUDIO_RAW, 0);
+  private static final long SAMPLE_DURATION_US = 10_000;
 
   @Mock private AudioSink mockAudioSink;
   private SimpleDecoderAudioRenderer audioRenderer;
+  private int decoderInputBufferCount;
+  private int decoderOutputBufferCount;
 
   @Before
   public void setUp() throws Exception {
@@ -68,6 +77,8 @@ public class SimpleDecoderAudioRendererTest {
           protected SimpleDecoder<
                   DecoderInputBuffer, ? extends SimpleOutputBuffer, ? extends AudioDecoderException>
               createDecoder(Format format, @Nullable ExoMediaCrypto mediaCrypto) {
+            decoderInputBufferCount = getDecoderInputBufferCount();
+            decoderOutputBufferCount = getDecoderOutputBufferCount();
             return new FakeDecoder();
           }
 
@@ -113,6 +124,147 @@ public class SimpleDecoderAudioRendererTest {
     verify(mockAudioSink, times(1)).reset();
   }
 
+  @Test
+  public void testDecoderCreatedWithConfiguredBufferCounts() throws Exception {
+    audioRenderer.experimental_setDecoderBufferCounts(
+        /* inputBufferCount= */ 4, /* outputBufferCount= */ 6);
+    audioRenderer.enable(
+        RendererConfiguration.DEFAULT,
+        new Format[] {FORMAT},
+        new FakeSampleStream(FORMAT, /* eventDispatcher= */ null, /* shouldOutputSample= */ false),
+        0,
+        false,
+        0);
+
+    audioRenderer.render(0, 0);
+
+    assertThat(decoderInputBufferCount).isEqualTo(4);
+    assertThat(decoderOutputBufferCount).isEqualTo(6);
+    audioRenderer.disable();
+  }
+
+  @Test
+  public void testDecodeAheadLimitAfterSeekPastLimitPlaysToEnd() throws Exception {
+    when(mockAudioSink.getPlaybackParameters()).thenReturn(PlaybackParameters.DEFAULT);
+    when(mockAudioSink.handleBuffer(any(), anyLong())).thenReturn(true);
+    when(mockAudioSink.isEnded()).thenReturn(true);
+    audioRenderer.experimental_setDecodeAheadBufferCount(2);
+    // Seek to the tenth sample, so that more decode-only samples than the limit precede it.
+    long seekPositionUs = 9 * SAMPLE_DURATION_US;
+    audioRenderer.enable(
+        RendererConfiguration.DEFAULT,
+        new Format[] {FORMAT},
+        new FakeSeekedSampleStream(/* sampleCount= */ 12, seekPositionUs),
+        /* positionUs= */ 0,
+        /* joining= */ false,
+        /* offsetUs= */ 0);
+    audioRenderer.setCurrentStreamFinal();
+    audioRenderer.resetPosition(seekPositionUs);
+
+    // The decoder outputs on its own thread, so allow some time for it to catch up.
+    long timeoutMs = System.currentTimeMillis() + 10_000;
+    while (!audioRenderer.isEnded() && System.currentTimeMillis() < timeoutMs) {
+      audioRenderer.render(seekPositionUs, /* elapsedRealtimeUs= */ 0);
+      Thread.sleep(1);
+    }
+
+    assertThat(audioRenderer.isEnded()).isTrue();
+    // Only the samples from the seek position onwards are output.
+    verify(mockAudioSink, times(3)).handleBuffer(any(), anyLong());
+    verify(mockAudioSink).playToEndOfStream();
+    audioRenderer.disable();
+  }
+
+  @Test
+  public void testDurationToProgressWithFullSinkIsDefaultUnlessStarted() throws Exception {
+    when(mockAudioSink.getPlaybackParameters()).thenReturn(PlaybackParameters.DEFAULT);
+    when(mockAudioSink.handleBuffer(any(), anyLong())).thenReturn(false);
+    when(mockAudioSink.getAudioTrackBufferSizeUs()).thenReturn(500_000L);
+    audioRenderer.enable(
+        RendererConfiguration.DEFAULT,
+        new Format[] {FORMAT},
+        new FakeSeekedSampleStream(/* sampleCount= */ 10, /* seekPositionUs= */ 0),
+        /* positionUs= */ 0,
+        /* joining= */ false,
+        /* offsetUs= */ 0);
+    audioRenderer.start();
+
+    // Render until the decoder has output a buffer, which the sink doesn't accept.
+    long timeoutMs = System.currentTimeMillis() + 10_000;
+    long durationToProgressUs = Renderer.DEFAULT_DURATION_TO_PROGRESS_US;
+    while (durationToProgressUs == Renderer.DEFAULT_DURATION_TO_PROGRESS_US
+        && System.currentTimeMillis() < timeoutMs) {
+      audioRenderer.render(/* positionUs= */ 0, /* elapsedRealtimeUs= */ 0);
+      durationToProgressUs =
+          audioRenderer.getDurationToProgressUs(/* positionUs= */ 0, /* elapsedRealtimeUs= */ 0);
+      Thread.sleep(1);
+    }
+    // When the player is buffering the renderer is stopped, but the sink is still full.
+    audioRenderer.stop();
+
+    assertThat(durationToProgressUs).isEqualTo(250_000);
+    assertThat(
+            audioRenderer.getDurationToProgressUs(
+                /* positionUs= */ 0, /* elapsedRealtimeUs= */ 0))
+        .isEqualTo(Renderer.DEFAULT_DURATION_TO_PROGRESS_US);
+    audioRenderer.disable();
+  }
+
+  /**
+   * Outputs {@link #FORMAT}, a number of samples where those before a seek position are
+   * decode-only, then end of stream.
+   */
+  private static final class FakeSeekedSampleStream implements SampleStream {
+
+    private final int sampleCount;
+    private final long seekPositionUs;
+
+    private boolean readFormat;
+    private int readSampleCount;
+
+    public FakeSeekedSampleStream(int sampleCount, long seekPositionUs) {
+      this.sampleCount = sampleCount;
+      this.seekPositionUs = seekPositionUs;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void maybeThrowError() {
+      // Do nothing.
+    }
+
+    @Override
+    public int readData(
+        FormatHolder formatHolder, DecoderInputBuffer buffer, boolean formatRequired) {
+      if (formatRequired || !readFormat) {
+        formatHolder.format = FORMAT;
+        readFormat = true;
+        return C.RESULT_FORMAT_READ;
+      }
+      if (readSampleCount == sampleCount) {
+        buffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
+        return C.RESULT_BUFFER_READ;
+      }
+      buffer.timeUs = readSampleCount * SAMPLE_DURATION_US;
+      if (buffer.timeUs < seekPositionUs) {
+        buffer.addFlag(C.BUFFER_FLAG_DECODE_ONLY);
+      }
+      buffer.ensureSpaceForWrite(1);
+      buffer.data.put((byte) 0);
+      readSampleCount++;
+      return C.RESULT_BUFFER_READ;
+    }
+
+    @Override
+    public int skipData(long positionUs) {
+      return 0;
+    }
+  }
+
   private static final class FakeDecoder
       extends SimpleDecoder<DecoderInputBuffer, SimpleOutputBuffer, AudioDecoderException> {
 
@@ -145,6 +297,8 @@ public class SimpleDecoderAudioRendererTest {
         SimpleOutputBuffer outputBuffer, boolean reset) {
       if (inputBuffer.isEndOfStream()) {
         outputBuffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
+      } else {
+        outputBuffer.init(inputBuffer.timeUs, /* size= */ 0);
       }
       return null;
     }
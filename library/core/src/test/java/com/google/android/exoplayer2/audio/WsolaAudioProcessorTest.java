@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.audio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.audio.AudioProcessor.AudioFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link WsolaAudioProcessor}. */
+@RunWith(AndroidJUnit4.class)
+public final class WsolaAudioProcessorTest {
+
+  private static final int SAMPLE_RATE = 48000;
+  private static final int CHANNEL_COUNT = 2;
+  private static final AudioFormat AUDIO_FORMAT =
+      new AudioFormat(SAMPLE_RATE, CHANNEL_COUNT, C.ENCODING_PCM_16BIT);
+  private static final int TEST_SIGNAL_FREQUENCY_HZ = 440;
+  private static final int TEST_SIGNAL_FRAME_COUNT = SAMPLE_RATE;
+  private static final int INPUT_BUFFER_FRAME_COUNT = 1024;
+
+  private WsolaAudioProcessor wsolaAudioProcessor;
+
+  @Before
+  public void setUp() {
+    wsolaAudioProcessor = new WsolaAudioProcessor();
+  }
+
+  @Test
+  public void testDefaultSpeed_isNotActive() throws Exception {
+    wsolaAudioProcessor.configure(AUDIO_FORMAT);
+
+    assertThat(wsolaAudioProcessor.isActive()).isFalse();
+  }
+
+  @Test
+  public void testSpeed_isConstrained() {
+    assertThat(wsolaAudioProcessor.setSpeed(100f)).isEqualTo(WsolaAudioProcessor.MAXIMUM_SPEED);
+    assertThat(wsolaAudioProcessor.setSpeed(0f)).isEqualTo(WsolaAudioProcessor.MINIMUM_SPEED);
+  }
+
+  @Test(expected = AudioProcessor.UnhandledAudioFormatException.class)
+  public void testNon16BitInput_throws() throws Exception {
+    wsolaAudioProcessor.configure(
+        new AudioFormat(SAMPLE_RATE, CHANNEL_COUNT, C.ENCODING_PCM_FLOAT));
+  }
+
+  @Test
+  public void testDoubleSpeed_halvesDurationAndPreservesFrequency() throws Exception {
+    assertOutputDurationAndFrequency(/* speed= */ 2f);
+  }
+
+  @Test
+  public void testTripleSpeed_thirdsDurationAndPreservesFrequency() throws Exception {
+    assertOutputDurationAndFrequency(/* speed= */ 3f);
+  }
+
+  @Test
+  public void testHalfSpeed_doublesDurationAndPreservesFrequency() throws Exception {
+    assertOutputDurationAndFrequency(/* speed= */ 0.5f);
+  }
+
+  private void assertOutputDurationAndFrequency(float speed) throws Exception {
+    wsolaAudioProcessor.setSpeed(speed);
+    wsolaAudioProcessor.configure(AUDIO_FORMAT);
+    wsolaAudioProcessor.flush();
+    assertThat(wsolaAudioProcessor.isActive()).isTrue();
+
+    short[] output = process(createSineWave());
+
+    int outputFrameCount = output.length / CHANNEL_COUNT;
+    assertThat(outputFrameCount).isEqualTo(Math.round(TEST_SIGNAL_FRAME_COUNT / speed));
+    double outputDurationSeconds = (double) outputFrameCount / SAMPLE_RATE;
+    double outputFrequencyHz = countZeroCrossings(output) / 2.0 / outputDurationSeconds;
+    assertThat(outputFrequencyHz).isWithin(5.0).of(TEST_SIGNAL_FREQUENCY_HZ);
+  }
+
+  private short[] process(short[] input) {
+    ShortBuffer output = ShortBuffer.allocate(input.length * 4);
+    ByteBuffer inputBuffer =
+        ByteBuffer.allocateDirect(INPUT_BUFFER_FRAME_COUNT * AUDIO_FORMAT.bytesPerFrame)
+            .order(ByteOrder.nativeOrder());
+    int inputIndex = 0;
+    while (inputIndex < input.length) {
+      int sampleCount =
+          Math.min(INPUT_BUFFER_FRAME_COUNT * CHANNEL_COUNT, input.length - inputIndex);
+      inputBuffer.clear();
+      inputBuffer.asShortBuffer().put(input, inputIndex, sampleCount);
+      inputBuffer.limit(sampleCount * 2);
+      inputIndex += sampleCount;
+      wsolaAudioProcessor.queueInput(inputBuffer);
+      assertThat(inputBuffer.hasRemaining()).isFalse();
+      output.put(wsolaAudioProcessor.getOutput().asShortBuffer());
+    }
+    wsolaAudioProcessor.queueEndOfStream();
+    while (!wsolaAudioProcessor.isEnded()) {
+      wsolaAudioProcessor.queueInput(AudioProcessor.EMPTY_BUFFER);
+      output.put(wsolaAudioProcessor.getOutput().asShortBuffer());
+    }
+    short[] samples = new short[output.position()];
+    output.flip();
+    output.get(samples);
+    return samples;
+  }
+
+  private static short[] createSineWave() {
+    short[] samples = new short[TEST_SIGNAL_FRAME_COUNT * CHANNEL_COUNT];
+    for (int i = 0; i < TEST_SIGNAL_FRAME_COUNT; i++) {
+      short sample =
+          (short) (10000 * Math.sin(2 * Math.PI * TEST_SIGNAL_FREQUENCY_HZ * i / SAMPLE_RATE));
+      for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+        samples[i * CHANNEL_COUNT + channel] = sample;
+      }
+    }
+    return samples;
+  }
+
+  private static int countZeroCrossings(short[] samples) {
+    int zeroCrossingCount = 0;
+    for (int i = CHANNEL_COUNT; i < samples.length; i += CHANNEL_COUNT) {
+      if ((samples[i - CHANNEL_COUNT] < 0) != (samples[i] < 0)) {
+        zeroCrossingCount++;
+      }
+    }
+    return zeroCrossingCount;
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.decoder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeSimpleDecoder;
+import com.google.android.exoplayer2.testutil.FakeSimpleDecoder.FakeDecoderException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link SimpleDecoder}. */
+@RunWith(AndroidJUnit4.class)
+public final class SimpleDecoderTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+
+  @Nullable private FakeSimpleDecoder decoder;
+
+  @After
+  public void tearDown() {
+    if (decoder != null) {
+      decoder.release();
+    }
+  }
+
+  @Test
+  public void decode_withLock_outputsAllBuffersInOrder() throws Exception {
+    decoder = createDecoder(/* useLockFreeHandoff= */ false);
+    assertOutputsAllBuffersInOrder(decoder, /* bufferCount= */ 1000);
+  }
+
+  @Test
+  public void decode_lockFree_outputsAllBuffersInOrder() throws Exception {
+    decoder = createDecoder(/* useLockFreeHandoff= */ true);
+    assertOutputsAllBuffersInOrder(decoder, /* bufferCount= */ 1000);
+  }
+
+  @Test
+  public void decode_lockFree_skipsDecodeOnlyBuffers() throws Exception {
+    decoder = createDecoder(/* useLockFreeHandoff= */ true);
+    queueInputBuffer(decoder, /* timeUs= */ 0, /* flags= */ C.BUFFER_FLAG_DECODE_ONLY);
+    queueInputBuffer(decoder, /* timeUs= */ 1, /* flags= */ C.BUFFER_FLAG_DECODE_ONLY);
+    queueInputBuffer(decoder, /* timeUs= */ 2, /* flags= */ 0);
+
+    SimpleOutputBuffer outputBuffer = awaitOutputBuffer(decoder);
+
+    assertThat(outputBuffer.timeUs).isEqualTo(2);
+    assertThat(outputBuffer.skippedOutputBufferCount).isEqualTo(2);
+    outputBuffer.release();
+  }
+
+  @Test
+  public void flush_lockFree_discardsPendingBuffersAndResetsDecoder() throws Exception {
+    decoder = createDecoder(/* useLockFreeHandoff= */ true);
+    for (int i = 0; i < 4; i++) {
+      queueInputBuffer(decoder, /* timeUs= */ i, /* flags= */ 0);
+    }
+
+    decoder.flush();
+    queueInputBuffer(decoder, /* timeUs= */ 100, /* flags= */ 0);
+    SimpleOutputBuffer outputBuffer = awaitOutputBuffer(decoder);
+
+    assertThat(outputBuffer.timeUs).isEqualTo(100);
+    assertThat(decoder.getResetCount()).isEqualTo(1);
+    outputBuffer.release();
+    // All input buffers are eventually made available again.
+    List<DecoderInputBuffer> inputBuffers = new ArrayList<>();
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (inputBuffers.size() < 4 && System.currentTimeMillis() < deadlineMs) {
+      DecoderInputBuffer inputBuffer = decoder.dequeueInputBuffer();
+      if (inputBuffer != null) {
+        inputBuffers.add(inputBuffer);
+        inputBuffer.setFlags(C.BUFFER_FLAG_DECODE_ONLY);
+        decoder.queueInputBuffer(inputBuffer);
+      }
+    }
+    assertThat(inputBuffers).hasSize(4);
+  }
+
+  @Test
+  public void decode_lockFree_propagatesDecodeErrors() throws Exception {
+    decoder = createDecoder(/* useLockFreeHandoff= */ true);
+    decoder.setFailingTimeUs(1);
+    queueInputBuffer(decoder, /* timeUs= */ 0, /* flags= */ 0);
+    queueInputBuffer(decoder, /* timeUs= */ 1, /* flags= */ 0);
+    awaitOutputBuffer(decoder).release();
+
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (System.currentTimeMillis() < deadlineMs) {
+      try {
+        decoder.dequeueOutputBuffer();
+      } catch (FakeDecoderException e) {
+        return;
+      }
+      Thread.sleep(1);
+    }
+    fail();
+  }
+
+  private static FakeSimpleDecoder createDecoder(boolean useLockFreeHandoff) {
+    return new FakeSimpleDecoder(
+        /* inputBufferCount= */ 8,
+        /* outputBufferCount= */ 8,
+        useLockFreeHandoff,
+        /* decodeDurationNs= */ 0);
+  }
+
+  private static void assertOutputsAllBuffersInOrder(FakeSimpleDecoder decoder, int bufferCount)
+      throws Exception {
+    int queuedBufferCount = 0;
+    int outputBufferCount = 0;
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (outputBufferCount <= bufferCount && System.currentTimeMillis() < deadlineMs) {
+      if (queuedBufferCount <= bufferCount) {
+        DecoderInputBuffer inputBuffer = decoder.dequeueInputBuffer();
+        if (inputBuffer != null) {
+          if (queuedBufferCount == bufferCount) {
+            inputBuffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
+          } else {
+            fillInputBuffer(inputBuffer, /* timeUs= */ queuedBufferCount, /* flags= */ 0);
+          }
+          decoder.queueInputBuffer(inputBuffer);
+          queuedBufferCount++;
+        }
+      }
+      SimpleOutputBuffer outputBuffer = decoder.dequeueOutputBuffer();
+      if (outputBuffer != null) {
+        if (outputBufferCount == bufferCount) {
+          assertThat(outputBuffer.isEndOfStream()).isTrue();
+        } else {
+          assertThat(outputBuffer.timeUs).isEqualTo(outputBufferCount);
+          assertThat(outputBuffer.data.get(0)).isEqualTo((byte) outputBufferCount);
+        }
+        outputBuffer.release();
+        outputBufferCount++;
+      }
+    }
+    assertThat(outputBufferCount).isEqualTo(bufferCount + 1);
+  }
+
+  private static void queueInputBuffer(FakeSimpleDecoder decoder, long timeUs, int flags)
+      throws Exception {
+    DecoderInputBuffer inputBuffer = decoder.dequeueInputBuffer();
+    assertThat(inputBuffer).isNotNull();
+    fillInputBuffer(inputBuffer, timeUs, flags);
+    decoder.queueInputBuffer(inputBuffer);
+  }
+
+  private static void fillInputBuffer(DecoderInputBuffer inputBuffer, long timeUs, int flags) {
+    inputBuffer.setFlags(flags);
+    inputBuffer.timeUs = timeUs;
+    inputBuffer.ensureSpaceForWrite(1);
+    inputBuffer.data.put((byte) timeUs);
+    inputBuffer.flip();
+  }
+
+  private static SimpleOutputBuffer awaitOutputBuffer(FakeSimpleDecoder decoder)
+      throws Exception {
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (System.currentTimeMillis() < deadlineMs) {
+      SimpleOutputBuffer outputBuffer = decoder.dequeueOutputBuffer();
+      if (outputBuffer != null) {
+        return outputBuffer;
+      }
+      Thread.sleep(1);
+    }
+    throw new AssertionError("Timed out waiting for an output buffer.");
+  }
+}
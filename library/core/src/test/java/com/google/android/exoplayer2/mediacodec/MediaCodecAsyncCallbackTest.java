@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Looper;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+/** Unit tests for {@link MediaCodecAsyncCallback}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class MediaCodecAsyncCallbackTest {
+
+  private MediaCodecAsyncCallback callback;
+  private MediaCodec codec;
+
+  @Before
+  public void setUp() throws IOException {
+    callback = new MediaCodecAsyncCallback(Looper.getMainLooper());
+    codec = MediaCodec.createByCodecName("h264");
+  }
+
+  @After
+  public void tearDown() {
+    codec.release();
+  }
+
+  @Test
+  public void dequeueInputBufferIndex_withoutAvailableBuffers_returnsTryAgainLater() {
+    assertThat(callback.dequeueInputBufferIndex()).isEqualTo(MediaCodec.INFO_TRY_AGAIN_LATER);
+  }
+
+  @Test
+  public void dequeueInputBufferIndex_returnsAvailableBuffersInOrder() {
+    callback.onInputBufferAvailable(codec, 2);
+    callback.onInputBufferAvailable(codec, 0);
+
+    assertThat(callback.dequeueInputBufferIndex()).isEqualTo(2);
+    assertThat(callback.dequeueInputBufferIndex()).isEqualTo(0);
+    assertThat(callback.dequeueInputBufferIndex()).isEqualTo(MediaCodec.INFO_TRY_AGAIN_LATER);
+  }
+
+  @Test
+  public void dequeueOutputBufferIndex_signalsFormatChangeBeforeFollowingBuffers() {
+    MediaFormat format = new MediaFormat();
+    callback.onOutputFormatChanged(codec, format);
+    callback.onOutputBufferAvailable(codec, 1, createBufferInfo(/* presentationTimeUs= */ 100));
+
+    MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    assertThat(callback.dequeueOutputBufferIndex(bufferInfo))
+        .isEqualTo(MediaCodec.INFO_OUTPUT_FORMAT_CHANGED);
+    assertThat(callback.getOutputFormat()).isSameInstanceAs(format);
+    assertThat(callback.dequeueOutputBufferIndex(bufferInfo)).isEqualTo(1);
+    assertThat(bufferInfo.presentationTimeUs).isEqualTo(100);
+    assertThat(bufferInfo.size).isEqualTo(10);
+    assertThat(callback.dequeueOutputBufferIndex(bufferInfo))
+        .isEqualTo(MediaCodec.INFO_TRY_AGAIN_LATER);
+  }
+
+  @Test
+  public void dequeueInputBufferIndex_afterError_throwsError() {
+    MediaCodec.CodecException error = createCodecException();
+    callback.onInputBufferAvailable(codec, 0);
+    callback.onError(codec, error);
+
+    try {
+      callback.dequeueInputBufferIndex();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).isSameInstanceAs(error);
+    }
+  }
+
+  @Test
+  public void flush_discardsQueuedBuffersAndRestartsCodecOnceCallbacksAreDelivered() {
+    AtomicInteger restartCount = new AtomicInteger();
+    callback.onInputBufferAvailable(codec, 0);
+    callback.onOutputBufferAvailable(codec, 1, createBufferInfo(/* presentationTimeUs= */ 100));
+
+    callback.flush(restartCount::incrementAndGet);
+
+    // No buffers are dequeued until the flush completes.
+    assertThat(callback.dequeueInputBufferIndex()).isEqualTo(MediaCodec.INFO_TRY_AGAIN_LATER);
+    assertThat(restartCount.get()).isEqualTo(0);
+    shadowOf(Looper.getMainLooper()).idle();
+    assertThat(restartCount.get()).isEqualTo(1);
+    assertThat(callback.dequeueInputBufferIndex()).isEqualTo(MediaCodec.INFO_TRY_AGAIN_LATER);
+    assertThat(callback.dequeueOutputBufferIndex(new MediaCodec.BufferInfo()))
+        .isEqualTo(MediaCodec.INFO_TRY_AGAIN_LATER);
+    // Buffers made available by the restarted codec are dequeued.
+    callback.onInputBufferAvailable(codec, 3);
+    assertThat(callback.dequeueInputBufferIndex()).isEqualTo(3);
+  }
+
+  @Test
+  public void flush_withDiscardedFormatChange_signalsFormatBeforeNextBuffer() {
+    MediaFormat format = new MediaFormat();
+    callback.onOutputFormatChanged(codec, format);
+
+    callback.flush(() -> {});
+    shadowOf(Looper.getMainLooper()).idle();
+    callback.onOutputBufferAvailable(codec, 2, createBufferInfo(/* presentationTimeUs= */ 200));
+
+    MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    assertThat(callback.dequeueOutputBufferIndex(bufferInfo))
+        .isEqualTo(MediaCodec.INFO_OUTPUT_FORMAT_CHANGED);
+    assertThat(callback.getOutputFormat()).isSameInstanceAs(format);
+    assertThat(callback.dequeueOutputBufferIndex(bufferInfo)).isEqualTo(2);
+  }
+
+  @Test
+  public void flush_afterShutDown_doesNotRestartCodec() {
+    AtomicInteger restartCount = new AtomicInteger();
+
+    callback.flush(restartCount::incrementAndGet);
+    callback.shutDown();
+    shadowOf(Looper.getMainLooper()).idle();
+
+    assertThat(restartCount.get()).isEqualTo(0);
+  }
+
+  private static MediaCodec.BufferInfo createBufferInfo(long presentationTimeUs) {
+    MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    bufferInfo.set(/* newOffset= */ 0, /* newSize= */ 10, presentationTimeUs, /* newFlags= */ 0);
+    return bufferInfo;
+  }
+
+  private static MediaCodec.CodecException createCodecException() {
+    // CodecException has no public constructor.
+    return ReflectionHelpers.callConstructor(
+        MediaCodec.CodecException.class,
+        ClassParameter.from(int.class, /* errorCode= */ 0),
+        ClassParameter.from(int.class, /* actionCode= */ 0),
+        ClassParameter.from(String.class, "error"));
+  }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.media.MediaCodec;
+import android.media.MediaCrypto;
+import android.media.MediaFormat;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.RendererCapabilities;
+import com.google.android.exoplayer2.RendererConfiguration;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
+import com.google.android.exoplayer2.source.SampleStream;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for input batching in {@link MediaCodecRenderer}. */
+@RunWith(AndroidJUnit4.class)
+public final class MediaCodecRendererTest {
+
+  private static final int MAX_INPUT_SIZE = 512;
+  private static final long SAMPLE_DURATION_US = 1000;
+  private static final int MAX_RENDER_COUNT = 10;
+
+  private static final Format FORMAT = createAudioFormat(/* id= */ "1");
+  private static final Format OTHER_FORMAT = createAudioFormat(/* id= */ "2");
+
+  private FakeMediaCodecRenderer renderer;
+
+  @Before
+  public void setUp() {
+    renderer = new FakeMediaCodecRenderer();
+    // Robolectric's MediaCodec only supports asynchronous operation.
+    renderer.experimental_setAsynchronousBufferQueueingEnabled(true);
+    renderer.experimental_setInputBatchingEnabled(true);
+  }
+
+  @After
+  public void tearDown() {
+    renderer.disable();
+    renderer.reset();
+  }
+
+  @Test
+  public void render_withContiguousSamples_queuesSamplesInOneInputBuffer() throws Exception {
+    enableRenderer(
+        /* streamIsFinal= */ false,
+        createSample(/* timeUs= */ 0, /* id= */ 0, /* size= */ 10),
+        createSample(/* timeUs= */ 1000, /* id= */ 1, /* size= */ 10),
+        createSample(/* timeUs= */ 2000, /* id= */ 2, /* size= */ 10));
+
+    render(/* count= */ 2);
+
+    assertThat(renderer.queuedTimesUs).containsExactly(0L);
+    assertThat(renderer.queuedData.get(0))
+        .isEqualTo(
+            TestUtil.joinByteArrays(
+                createSampleData(/* id= */ 0, /* size= */ 10),
+                createSampleData(/* id= */ 1, /* size= */ 10),
+                createSampleData(/* id= */ 2, /* size= */ 10)));
+  }
+
+  @Test
+  public void render_withTimestampGap_queuesHeldSampleInNextInputBuffer() throws Exception {
+    enableRenderer(
+        /* streamIsFinal= */ false,
+        createSample(/* timeUs= */ 0, /* id= */ 0, /* size= */ 10),
+        createSample(/* timeUs= */ 1000, /* id= */ 1, /* size= */ 10),
+        createSample(/* timeUs= */ 3000, /* id= */ 2, /* size= */ 10),
+        createSample(/* timeUs= */ 4000, /* id= */ 3, /* size= */ 10));
+
+    render(/* count= */ 2);
+
+    assertThat(renderer.queuedTimesUs).containsExactly(0L, 3000L).inOrder();
+    assertThat(renderer.queuedData.get(0))
+        .isEqualTo(
+            TestUtil.joinByteArrays(
+                createSampleData(/* id= */ 0, /* size= */ 10),
+                createSampleData(/* id= */ 1, /* size= */ 10)));
+    assertThat(renderer.queuedData.get(1))
+        .isEqualTo(
+            TestUtil.joinByteArrays(
+                createSampleData(/* id= */ 2, /* size= */ 10),
+                createSampleData(/* id= */ 3, /* size= */ 10)));
+  }
+
+  @Test
+  public void render_withSampleOverflowingInputBuffer_queuesHeldSampleInNextInputBuffer()
+      throws Exception {
+    enableRenderer(
+        /* streamIsFinal= */ false,
+        createSample(/* timeUs= */ 0, /* id= */ 0, /* size= */ 200),
+        createSample(/* timeUs= */ 1000, /* id= */ 1, /* size= */ 200),
+        createSample(/* timeUs= */ 2000, /* id= */ 2, /* size= */ 200));
+
+    render(/* count= */ 2);
+
+    assertThat(renderer.queuedTimesUs).containsExactly(0L, 2000L).inOrder();
+    assertThat(renderer.queuedData.get(0))
+        .isEqualTo(
+            TestUtil.joinByteArrays(
+                createSampleData(/* id= */ 0, /* size= */ 200),
+                createSampleData(/* id= */ 1, /* size= */ 200)));
+    assertThat(renderer.queuedData.get(1))
+        .isEqualTo(createSampleData(/* id= */ 2, /* size= */ 200));
+  }
+
+  @Test
+  public void render_withFormatWithinBatch_queuesFollowingSamplesInNextInputBuffer()
+      throws Exception {
+    enableRenderer(
+        /* streamIsFinal= */ false,
+        createSample(/* timeUs= */ 0, /* id= */ 0, /* size= */ 10),
+        createSample(/* timeUs= */ 1000, /* id= */ 1, /* size= */ 10),
+        OTHER_FORMAT,
+        createSample(/* timeUs= */ 2000, /* id= */ 2, /* size= */ 10));
+
+    render(/* count= */ 2);
+
+    assertThat(renderer.inputFormats).containsExactly(FORMAT, OTHER_FORMAT).inOrder();
+    assertThat(renderer.queuedTimesUs).containsExactly(0L, 2000L).inOrder();
+    assertThat(renderer.queuedData.get(0))
+        .isEqualTo(
+            TestUtil.joinByteArrays(
+                createSampleData(/* id= */ 0, /* size= */ 10),
+                createSampleData(/* id= */ 1, /* size= */ 10)));
+    assertThat(renderer.queuedData.get(1)).isEqualTo(createSampleData(/* id= */ 2, /* size= */ 10));
+  }
+
+  @Test
+  public void render_withEndOfStreamAfterBatch_queuesHeldEndOfStream() throws Exception {
+    enableRenderer(
+        /* streamIsFinal= */ true,
+        createSample(/* timeUs= */ 0, /* id= */ 0, /* size= */ 10),
+        createSample(/* timeUs= */ 1000, /* id= */ 1, /* size= */ 10));
+
+    renderUntilEnded();
+
+    assertThat(renderer.isEnded()).isTrue();
+    assertThat(renderer.queuedTimesUs).containsExactly(0L);
+    assertThat(renderer.queuedData.get(0))
+        .isEqualTo(
+            TestUtil.joinByteArrays(
+                createSampleData(/* id= */ 0, /* size= */ 10),
+                createSampleData(/* id= */ 1, /* size= */ 10)));
+  }
+
+  @Test
+  public void render_withBatchAtEndOfStream_reportsBatchOutputBufferAsLastBuffer()
+      throws Exception {
+    enableRenderer(
+        /* streamIsFinal= */ true,
+        createSample(/* timeUs= */ 0, /* id= */ 0, /* size= */ 10),
+        createSample(/* timeUs= */ 1000, /* id= */ 1, /* size= */ 10),
+        createSample(/* timeUs= */ 3000, /* id= */ 2, /* size= */ 10),
+        createSample(/* timeUs= */ 4000, /* id= */ 3, /* size= */ 10));
+
+    renderUntilEnded();
+
+    // The codec outputs each batch with the timestamp of its first sample.
+    assertThat(renderer.outputTimesUs).containsExactly(0L, 3000L).inOrder();
+    assertThat(renderer.lastOutputTimeUs).isEqualTo(3000);
+  }
+
+  private void enableRenderer(boolean streamIsFinal, Object... items) throws Exception {
+    renderer.enable(
+        RendererConfiguration.DEFAULT,
+        new Format[] {FORMAT},
+        new FakeSampleListStream(FORMAT, items),
+        /* positionUs= */ 0,
+        /* joining= */ false,
+        /* offsetUs= */ 0);
+    if (streamIsFinal) {
+      renderer.setCurrentStreamFinal();
+    }
+  }
+
+  private void render(int count) throws ExoPlaybackException {
+    for (int i = 0; i < count; i++) {
+      renderer.render(/* positionUs= */ 0, /* elapsedRealtimeUs= */ 0);
+    }
+  }
+
+  private void renderUntilEnded() throws ExoPlaybackException {
+    for (int i = 0; i < MAX_RENDER_COUNT && !renderer.isEnded(); i++) {
+      renderer.render(/* positionUs= */ 0, /* elapsedRealtimeUs= */ 0);
+    }
+  }
+
+  private static FakeSample createSample(long timeUs, int id, int size) {
+    return new FakeSample(timeUs, createSampleData(id, size));
+  }
+
+  private static byte[] createSampleData(int id, int size) {
+    byte[] data = new byte[size];
+    Arrays.fill(data, (byte) id);
+    return data;
+  }
+
+  private static Format createAudioFormat(String id) {
+    return Format.createAudioSampleFormat(
+        id,
+        MimeTypes.AUDIO_RAW,
+        /* codecs= */ null,
+        /* bitrate= */ Format.NO_VALUE,
+        MAX_INPUT_SIZE,
+        /* channelCount= */ 2,
+        /* sampleRate= */ 44100,
+        C.ENCODING_PCM_16BIT,
+        /* initializationData= */ null,
+        /* drmInitData= */ null,
+        /* selectionFlags= */ 0,
+        /* language= */ null);
+  }
+
+  /** A key frame sample output by a {@link FakeSampleListStream}. */
+  private static final class FakeSample {
+
+    public final long timeUs;
+    public final byte[] data;
+
+    public FakeSample(long timeUs, byte[] data) {
+      this.timeUs = timeUs;
+      this.data = data;
+    }
+  }
+
+  /**
+   * Fake {@link SampleStream} that outputs a {@link Format}, a list of {@link FakeSample}s and
+   * {@link Format}s, then end of stream.
+   */
+  private static final class FakeSampleListStream implements SampleStream {
+
+    private final Object[] items;
+
+    private Format format;
+    private boolean readFormat;
+    private int nextItemIndex;
+
+    public FakeSampleListStream(Format format, Object... items) {
+      this.format = format;
+      this.items = items;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public int readData(
+        FormatHolder formatHolder, DecoderInputBuffer buffer, boolean formatRequired) {
+      if (formatRequired || !readFormat) {
+        formatHolder.format = format;
+        readFormat = true;
+        return C.RESULT_FORMAT_READ;
+      }
+      if (nextItemIndex == items.length) {
+        buffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
+        return C.RESULT_BUFFER_READ;
+      }
+      Object item = items[nextItemIndex++];
+      if (item instanceof Format) {
+        format = (Format) item;
+        formatHolder.format = format;
+        return C.RESULT_FORMAT_READ;
+      }
+      FakeSample sample = (FakeSample) item;
+      buffer.setFlags(C.BUFFER_FLAG_KEY_FRAME);
+      buffer.timeUs = sample.timeUs;
+      buffer.ensureSpaceForWrite(sample.data.length);
+      buffer.data.put(sample.data);
+      return C.RESULT_BUFFER_READ;
+    }
+
+    @Override
+    public void maybeThrowError() {
+      // Do nothing.
+    }
+
+    @Override
+    public int skipData(long positionUs) {
+      return 0;
+    }
+  }
+
+  /**
+   * Fake {@link MediaCodecRenderer} that batches samples of {@link #SAMPLE_DURATION_US}, and
+   * records the input buffers it queues and the output buffers it processes.
+   */
+  private static final class FakeMediaCodecRenderer extends MediaCodecRenderer {
+
+    public final List<Format> inputFormats;
+    public final List<Long> queuedTimesUs;
+    public final List<byte[]> queuedData;
+    public final List<Long> outputTimesUs;
+    public long lastOutputTimeUs;
+
+    public FakeMediaCodecRenderer() {
+      super(
+          C.TRACK_TYPE_AUDIO,
+          MediaCodecSelector.DEFAULT,
+          /* drmSessionManager= */ null,
+          /* playClearSamplesWithoutKeys= */ false,
+          /* enableDecoderFallback= */ false,
+          /* assumedMinimumCodecOperatingRate= */ 44100);
+      inputFormats = new ArrayList<>();
+      queuedTimesUs = new ArrayList<>();
+      queuedData = new ArrayList<>();
+      outputTimesUs = new ArrayList<>();
+      lastOutputTimeUs = C.TIME_UNSET;
+    }
+
+    @Override
+    @Capabilities
+    protected int supportsFormat(
+        MediaCodecSelector mediaCodecSelector,
+        @Nullable DrmSessionManager<FrameworkMediaCrypto> drmSessionManager,
+        Format format) {
+      return RendererCapabilities.create(FORMAT_HANDLED);
+    }
+
+    @Override
+    protected List<MediaCodecInfo> getDecoderInfos(
+        MediaCodecSelector mediaCodecSelector, Format format, boolean requiresSecureDecoder) {
+      return Collections.singletonList(
+          MediaCodecInfo.newInstance(
+              /* name= */ "decoder",
+              format.sampleMimeType,
+              /* codecMimeType= */ format.sampleMimeType,
+              /* capabilities= */ null,
+              /* hardwareAccelerated= */ false,
+              /* softwareOnly= */ true,
+              /* vendor= */ false,
+              /* forceDisableAdaptive= */ false,
+              /* forceSecure= */ false));
+    }
+
+    @Override
+    protected void configureCodec(
+        MediaCodecInfo codecInfo,
+        MediaCodec codec,
+        Format format,
+        @Nullable MediaCrypto crypto,
+        float codecOperatingRate) {
+      MediaFormat mediaFormat =
+          MediaFormat.createAudioFormat(format.sampleMimeType, format.sampleRate, 2);
+      mediaFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, format.maxInputSize);
+      codec.configure(mediaFormat, /* surface= */ null, crypto, /* flags= */ 0);
+    }
+
+    @Override
+    protected long getBatchedInputSampleDurationUs(
+        MediaCodecInfo codecInfo, Format format, int sampleSize) {
+      return SAMPLE_DURATION_US;
+    }
+
+    @Override
+    protected @KeepCodecResult int canKeepCodec(
+        MediaCodec codec, MediaCodecInfo codecInfo, Format oldFormat, Format newFormat) {
+      return KEEP_CODEC_RESULT_YES_WITHOUT_RECONFIGURATION;
+    }
+
+    @Override
+    protected void onInputFormatChanged(FormatHolder formatHolder) throws ExoPlaybackException {
+      super.onInputFormatChanged(formatHolder);
+      inputFormats.add(formatHolder.format);
+    }
+
+    @Override
+    protected void onQueueInputBuffer(DecoderInputBuffer buffer) {
+      byte[] data = new byte[buffer.data.remaining()];
+      buffer.data.duplicate().get(data);
+      queuedTimesUs.add(buffer.timeUs);
+      queuedData.add(data);
+    }
+
+    @Override
+    protected boolean processOutputBuffer(
+        long positionUs,
+        long elapsedRealtimeUs,
+        MediaCodec codec,
+        ByteBuffer buffer,
+        int bufferIndex,
+        int bufferFlags,
+        long bufferPresentationTimeUs,
+        boolean isDecodeOnlyBuffer,
+        boolean isLastBuffer,
+        Format format) {
+      codec.releaseOutputBuffer(bufferIndex, /* render= */ false);
+      outputTimesUs.add(bufferPresentationTimeUs);
+      if (isLastBuffer) {
+        lastOutputTimeUs = bufferPresentationTimeUs;
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.media.MediaCodecInfo.CodecCapabilities;
+import android.media.MediaCodecInfo.CodecProfileLevel;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil.CodecKey;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PersistentDecoderInfoCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class PersistentDecoderInfoCacheTest {
+
+  private static final String BUILD_ID = "build";
+  private static final CodecKey KEY =
+      new CodecKey(MimeTypes.VIDEO_H264, /* secure= */ false, /* tunneling= */ false);
+
+  private File directory;
+  private MediaCodecInfo decoderInfo;
+
+  @Before
+  public void setUp() throws IOException {
+    directory =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    decoderInfo =
+        MediaCodecInfo.newInstance(
+            "decoder",
+            MimeTypes.VIDEO_H264,
+            MimeTypes.VIDEO_H264,
+            CodecCapabilities.createFromProfileLevel(
+                MimeTypes.VIDEO_H264,
+                CodecProfileLevel.AVCProfileHigh,
+                CodecProfileLevel.AVCLevel4),
+            /* hardwareAccelerated= */ true,
+            /* softwareOnly= */ false,
+            /* vendor= */ true,
+            /* forceDisableAdaptive= */ false,
+            /* forceSecure= */ false);
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(directory);
+  }
+
+  @Test
+  public void get_afterPutByEarlierInstance_returnsPersistedDecoderInfo() {
+    new PersistentDecoderInfoCache(directory, BUILD_ID, Runnable::run)
+        .put(KEY, Collections.singletonList(decoderInfo));
+
+    List<MediaCodecInfo> decoderInfos =
+        new PersistentDecoderInfoCache(directory, BUILD_ID, Runnable::run).get(KEY);
+
+    assertThat(decoderInfos).hasSize(1);
+    MediaCodecInfo persistedDecoderInfo = decoderInfos.get(0);
+    assertThat(persistedDecoderInfo.name).isEqualTo(decoderInfo.name);
+    assertThat(persistedDecoderInfo.mimeType).isEqualTo(decoderInfo.mimeType);
+    assertThat(persistedDecoderInfo.hardwareAccelerated).isTrue();
+    assertThat(persistedDecoderInfo.softwareOnly).isFalse();
+    assertThat(persistedDecoderInfo.vendor).isTrue();
+    assertThat(persistedDecoderInfo.adaptive).isEqualTo(decoderInfo.adaptive);
+    assertThat(persistedDecoderInfo.tunneling).isEqualTo(decoderInfo.tunneling);
+    assertThat(persistedDecoderInfo.secure).isEqualTo(decoderInfo.secure);
+    CodecProfileLevel[] profileLevels = persistedDecoderInfo.getProfileLevels();
+    assertThat(profileLevels).hasLength(1);
+    assertThat(profileLevels[0].profile).isEqualTo(CodecProfileLevel.AVCProfileHigh);
+    assertThat(profileLevels[0].level).isEqualTo(CodecProfileLevel.AVCLevel4);
+    assertThat(persistedDecoderInfo.isVideoSizeAndRateSupportedV21(1280, 720, 30))
+        .isEqualTo(decoderInfo.isVideoSizeAndRateSupportedV21(1280, 720, 30));
+    assertThat(persistedDecoderInfo.isVideoSizeAndRateSupportedV21(7680, 4320, 60))
+        .isEqualTo(decoderInfo.isVideoSizeAndRateSupportedV21(7680, 4320, 60));
+    assertThat(persistedDecoderInfo.alignVideoSizeV21(1279, 719))
+        .isEqualTo(decoderInfo.alignVideoSizeV21(1279, 719));
+  }
+
+  @Test
+  public void put_whilstWriteIsPending_writesFileOnce() {
+    List<Runnable> pendingWrites = new ArrayList<>();
+    PersistentDecoderInfoCache cache =
+        new PersistentDecoderInfoCache(directory, BUILD_ID, pendingWrites::add);
+    CodecKey otherKey =
+        new CodecKey(MimeTypes.VIDEO_H264, /* secure= */ true, /* tunneling= */ false);
+
+    cache.put(KEY, Collections.singletonList(decoderInfo));
+    cache.put(otherKey, Collections.singletonList(decoderInfo));
+
+    assertThat(pendingWrites).hasSize(1);
+    pendingWrites.get(0).run();
+    PersistentDecoderInfoCache readCache =
+        new PersistentDecoderInfoCache(directory, BUILD_ID, Runnable::run);
+    assertThat(readCache.get(KEY)).hasSize(1);
+    assertThat(readCache.get(otherKey)).hasSize(1);
+  }
+
+  @Test
+  public void get_afterPutWithOtherBuildId_returnsNull() {
+    new PersistentDecoderInfoCache(directory, BUILD_ID, Runnable::run)
+        .put(KEY, Collections.singletonList(decoderInfo));
+
+    assertThat(new PersistentDecoderInfoCache(directory, "otherBuild", Runnable::run).get(KEY))
+        .isNull();
+  }
+
+  @Test
+  public void get_withCorruptFile_returnsNull() throws IOException {
+    new PersistentDecoderInfoCache(directory, BUILD_ID, Runnable::run)
+        .put(KEY, Collections.singletonList(decoderInfo));
+    for (File file : directory.listFiles()) {
+      try (FileOutputStream outputStream = new FileOutputStream(file)) {
+        outputStream.write(new byte[] {0, 0, 0, 1, 0});
+      }
+    }
+
+    assertThat(new PersistentDecoderInfoCache(directory, BUILD_ID, Runnable::run).get(KEY))
+        .isNull();
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.RendererCapabilities;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
+import com.google.android.exoplayer2.testutil.FakeMediaPeriod;
+import com.google.android.exoplayer2.testutil.FakeMediaSource;
+import com.google.android.exoplayer2.testutil.FakeRenderer;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.testutil.FakeTrackSelection;
+import com.google.android.exoplayer2.testutil.FakeTrackSelector;
+import com.google.android.exoplayer2.testutil.MediaSourceTestRunner;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.LooperMode.Mode;
+
+/** Unit tests for {@link PreloadMediaSource}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(Mode.PAUSED)
+public final class PreloadMediaSourceTest {
+
+  private static final Format VIDEO_FORMAT =
+      Format.createVideoSampleFormat(
+          /* id= */ null,
+          MimeTypes.VIDEO_H264,
+          /* codecs= */ null,
+          /* bitrate= */ 1_000_000,
+          /* maxInputSize= */ Format.NO_VALUE,
+          /* width= */ 1280,
+          /* height= */ 720,
+          /* frameRate= */ Format.NO_VALUE,
+          /* initializationData= */ null,
+          /* drmInitData= */ null);
+  private static final long PRELOAD_DURATION_US = 2_000_000;
+
+  private List<SampleStream> createdSampleStreams;
+  private FakeMediaSource fakeMediaSource;
+  private PreloadMediaSource preloadMediaSource;
+  private FakeTrackSelector trackSelector;
+  private RendererCapabilities[] rendererCapabilities;
+  private Allocator allocator;
+  private MediaSourceTestRunner testRunner;
+
+  @Before
+  public void setUp() {
+    createdSampleStreams = new ArrayList<>();
+    fakeMediaSource =
+        new FakeMediaSource(new FakeTimeline(/* windowCount= */ 1), VIDEO_FORMAT) {
+          @Override
+          protected FakeMediaPeriod createFakeMediaPeriod(
+              MediaPeriodId id,
+              TrackGroupArray trackGroupArray,
+              Allocator allocator,
+              EventDispatcher eventDispatcher,
+              @Nullable TransferListener transferListener) {
+            return new FakeMediaPeriod(trackGroupArray, eventDispatcher) {
+              @Override
+              protected SampleStream createSampleStream(TrackSelection selection) {
+                SampleStream sampleStream = super.createSampleStream(selection);
+                createdSampleStreams.add(sampleStream);
+                return sampleStream;
+              }
+            };
+          }
+        };
+    preloadMediaSource = new PreloadMediaSource(fakeMediaSource);
+    trackSelector = new FakeTrackSelector();
+    rendererCapabilities = new RendererCapabilities[] {new FakeRenderer(VIDEO_FORMAT)};
+    allocator = new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    testRunner = new MediaSourceTestRunner(preloadMediaSource, allocator);
+  }
+
+  @After
+  public void tearDown() {
+    testRunner.release();
+  }
+
+  @Test
+  public void selectTracks_withPreloadSelections_handsOverPreloadedStreams() throws Exception {
+    trackSelector = new FakeTrackSelector(/* mayReuseTrackSelection= */ true);
+    testRunner.runOnPlaybackThread(this::preload);
+    Timeline timeline = testRunner.prepareSource();
+    MediaPeriodId mediaPeriodId =
+        new MediaPeriodId(
+            timeline.getUidOfPeriod(/* periodIndex= */ 0), /* windowSequenceNumber= */ 0);
+
+    MediaPeriod mediaPeriod = testRunner.createPeriod(mediaPeriodId, /* startPositionUs= */ 0);
+    CountDownLatch preparedLatch = testRunner.preparePeriod(mediaPeriod, /* positionUs= */ 0);
+    assertThat(preparedLatch.await(MediaSourceTestRunner.TIMEOUT_MS, TimeUnit.MILLISECONDS))
+        .isTrue();
+    SampleStream[] streams = new SampleStream[1];
+    boolean[] streamResetFlags = new boolean[1];
+    testRunner.runOnPlaybackThread(
+        () ->
+            mediaPeriod.selectTracks(
+                selectTracks(mediaPeriod, mediaPeriodId, timeline),
+                /* mayRetainStreamFlags= */ new boolean[1],
+                streams,
+                streamResetFlags,
+                /* positionUs= */ 0));
+
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(1);
+    assertThat(createdSampleStreams).hasSize(1);
+    assertThat(streams[0]).isSameInstanceAs(createdSampleStreams.get(0));
+    assertThat(streamResetFlags[0]).isTrue();
+    // The player took over the preload's selection.
+    assertThat(trackSelector.getAllTrackSelections()).hasSize(1);
+    assertThat(trackSelector.getAllTrackSelections().get(0).isEnabled).isTrue();
+    testRunner.releasePeriod(mediaPeriod);
+    testRunner.releaseSource();
+    testRunner.runOnPlaybackThread(preloadMediaSource::releasePreload);
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void selectTracks_withNewSelectionsOfPreloadedTracks_retainsPreloadedStreams()
+      throws Exception {
+    testRunner.runOnPlaybackThread(this::preload);
+    Timeline timeline = testRunner.prepareSource();
+    MediaPeriodId mediaPeriodId =
+        new MediaPeriodId(
+            timeline.getUidOfPeriod(/* periodIndex= */ 0), /* windowSequenceNumber= */ 0);
+
+    MediaPeriod mediaPeriod = testRunner.createPeriod(mediaPeriodId, /* startPositionUs= */ 0);
+    CountDownLatch preparedLatch = testRunner.preparePeriod(mediaPeriod, /* positionUs= */ 0);
+    assertThat(preparedLatch.await(MediaSourceTestRunner.TIMEOUT_MS, TimeUnit.MILLISECONDS))
+        .isTrue();
+    SampleStream[] streams = new SampleStream[1];
+    boolean[] streamResetFlags = new boolean[1];
+    testRunner.runOnPlaybackThread(
+        () -> {
+          TrackSelection[] selections = selectTracks(mediaPeriod, mediaPeriodId, timeline);
+          selections[0].enable();
+          mediaPeriod.selectTracks(
+              selections,
+              /* mayRetainStreamFlags= */ new boolean[1],
+              streams,
+              streamResetFlags,
+              /* positionUs= */ 0);
+        });
+
+    // The player's selection is a new instance for the same track, so the preloaded stream is
+    // retained and the preload's selection is replaced by the player's.
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(1);
+    assertThat(createdSampleStreams).hasSize(1);
+    assertThat(streams[0]).isSameInstanceAs(createdSampleStreams.get(0));
+    assertThat(streamResetFlags[0]).isTrue();
+    List<FakeTrackSelection> trackSelections = trackSelector.getAllTrackSelections();
+    assertThat(trackSelections).hasSize(2);
+    assertThat(trackSelections.get(0).isEnabled).isFalse();
+    assertThat(trackSelections.get(1).isEnabled).isTrue();
+    testRunner.releasePeriod(mediaPeriod);
+    testRunner.releaseSource();
+    testRunner.runOnPlaybackThread(preloadMediaSource::releasePreload);
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void selectTracks_withoutSelections_removesPreloadedStreams() throws Exception {
+    testRunner.runOnPlaybackThread(this::preload);
+    Timeline timeline = testRunner.prepareSource();
+    MediaPeriodId mediaPeriodId =
+        new MediaPeriodId(
+            timeline.getUidOfPeriod(/* periodIndex= */ 0), /* windowSequenceNumber= */ 0);
+
+    MediaPeriod mediaPeriod = testRunner.createPeriod(mediaPeriodId, /* startPositionUs= */ 0);
+    CountDownLatch preparedLatch = testRunner.preparePeriod(mediaPeriod, /* positionUs= */ 0);
+    assertThat(preparedLatch.await(MediaSourceTestRunner.TIMEOUT_MS, TimeUnit.MILLISECONDS))
+        .isTrue();
+    SampleStream[] streams = new SampleStream[1];
+    boolean[] streamResetFlags = new boolean[1];
+    testRunner.runOnPlaybackThread(
+        () ->
+            mediaPeriod.selectTracks(
+                new TrackSelection[1],
+                /* mayRetainStreamFlags= */ new boolean[1],
+                streams,
+                streamResetFlags,
+                /* positionUs= */ 0));
+
+    assertThat(createdSampleStreams).hasSize(1);
+    assertThat(streams[0]).isNull();
+    assertThat(streamResetFlags[0]).isFalse();
+    List<FakeTrackSelection> trackSelections = trackSelector.getAllTrackSelections();
+    assertThat(trackSelections).hasSize(1);
+    assertThat(trackSelections.get(0).isEnabled).isFalse();
+    testRunner.releasePeriod(mediaPeriod);
+    testRunner.releaseSource();
+    testRunner.runOnPlaybackThread(preloadMediaSource::releasePreload);
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void createPeriod_atOtherPosition_createsNewPeriod() throws Exception {
+    testRunner.runOnPlaybackThread(this::preload);
+    Timeline timeline = testRunner.prepareSource();
+    MediaPeriodId mediaPeriodId =
+        new MediaPeriodId(
+            timeline.getUidOfPeriod(/* periodIndex= */ 0), /* windowSequenceNumber= */ 0);
+
+    MediaPeriod mediaPeriod = testRunner.createPeriod(mediaPeriodId, /* startPositionUs= */ 1000);
+
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(2);
+    assertThat(preloadMediaSource.isPreloaded()).isTrue();
+    testRunner.releasePeriod(mediaPeriod);
+    testRunner.releaseSource();
+    testRunner.runOnPlaybackThread(preloadMediaSource::releasePreload);
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void releasePreload_releasesPreloadedPeriodAndSource() {
+    testRunner.runOnPlaybackThread(this::preload);
+    boolean isPreloaded = preloadMediaSource.isPreloaded();
+
+    testRunner.runOnPlaybackThread(preloadMediaSource::releasePreload);
+
+    assertThat(isPreloaded).isTrue();
+    assertThat(preloadMediaSource.isPreloaded()).isFalse();
+    assertThat(fakeMediaSource.isPrepared()).isFalse();
+  }
+
+  private void preload() {
+    preloadMediaSource.preload(
+        trackSelector,
+        rendererCapabilities,
+        allocator,
+        /* mediaTransferListener= */ null,
+        PRELOAD_DURATION_US);
+  }
+
+  private TrackSelection[] selectTracks(
+      MediaPeriod mediaPeriod, MediaPeriodId mediaPeriodId, Timeline timeline) {
+    try {
+      return trackSelector
+          .selectTracks(rendererCapabilities, mediaPeriod.getTrackGroups(), mediaPeriodId, timeline)
+          .selections
+          .getAll();
+    } catch (ExoPlaybackException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.text;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link IndexedSubtitle}. */
+@RunWith(AndroidJUnit4.class)
+public final class IndexedSubtitleTest {
+
+  private static final Cue FIRST_CUE = new Cue("first");
+  private static final Cue SECOND_CUE = new Cue("second");
+  private static final Cue THIRD_CUE = new Cue("third");
+
+  @Test
+  public void testEventTimes_matchSubtitle() {
+    Subtitle subtitle = createOverlappingSubtitle();
+
+    IndexedSubtitle indexedSubtitle = IndexedSubtitle.create(subtitle);
+
+    assertThat(indexedSubtitle.getEventTimeCount()).isEqualTo(subtitle.getEventTimeCount());
+    for (int i = 0; i < subtitle.getEventTimeCount(); i++) {
+      assertThat(indexedSubtitle.getEventTime(i)).isEqualTo(subtitle.getEventTime(i));
+    }
+    assertThat(indexedSubtitle.getNextEventTimeIndex(0)).isEqualTo(0);
+    assertThat(indexedSubtitle.getNextEventTimeIndex(1_000_000)).isEqualTo(1);
+    assertThat(indexedSubtitle.getNextEventTimeIndex(5_000_000)).isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void testOverlappingCues_matchSubtitle() {
+    Subtitle subtitle = createOverlappingSubtitle();
+
+    IndexedSubtitle indexedSubtitle = IndexedSubtitle.create(subtitle);
+
+    for (long timeUs = -500_000; timeUs <= 6_000_000; timeUs += 250_000) {
+      assertThat(indexedSubtitle.getCues(timeUs)).isEqualTo(subtitle.getCues(timeUs));
+    }
+    assertThat(indexedSubtitle.getCues(2_500_000))
+        .containsExactly(FIRST_CUE, SECOND_CUE, THIRD_CUE)
+        .inOrder();
+    assertThat(indexedSubtitle.getCues(5_000_000)).isEmpty();
+  }
+
+  @Test
+  public void testGetCues_returnsSameListWithinInterval() {
+    IndexedSubtitle indexedSubtitle = IndexedSubtitle.create(createOverlappingSubtitle());
+
+    assertThat(indexedSubtitle.getCues(2_600_000))
+        .isSameInstanceAs(indexedSubtitle.getCues(2_900_000));
+  }
+
+  @Test
+  public void testCreate_withIndexedSubtitle_returnsSameInstance() {
+    IndexedSubtitle indexedSubtitle = IndexedSubtitle.create(createOverlappingSubtitle());
+
+    assertThat(IndexedSubtitle.create(indexedSubtitle)).isSameInstanceAs(indexedSubtitle);
+  }
+
+  /**
+   * Returns a subtitle with overlapping cues from 1 to 4 seconds, 2 to 3 seconds and 2.5 to 5
+   * seconds.
+   */
+  private static Subtitle createOverlappingSubtitle() {
+    return new FakeSubtitle(
+        new Cue[] {FIRST_CUE, SECOND_CUE, THIRD_CUE},
+        new long[] {1_000_000, 2_000_000, 2_500_000},
+        new long[] {4_000_000, 3_000_000, 5_000_000});
+  }
+
+  /** A subtitle that computes its cues by checking every cue, as some formats do. */
+  private static final class FakeSubtitle implements Subtitle {
+
+    private final Cue[] cues;
+    private final long[] startTimesUs;
+    private final long[] endTimesUs;
+    private final long[] eventTimesUs;
+
+    public FakeSubtitle(Cue[] cues, long[] startTimesUs, long[] endTimesUs) {
+      this.cues = cues;
+      this.startTimesUs = startTimesUs;
+      this.endTimesUs = endTimesUs;
+      TreeSet<Long> eventTimes = new TreeSet<>();
+      for (int i = 0; i < cues.length; i++) {
+        eventTimes.add(startTimesUs[i]);
+        eventTimes.add(endTimesUs[i]);
+      }
+      eventTimesUs = new long[eventTimes.size()];
+      int index = 0;
+      for (long eventTimeUs : eventTimes) {
+        eventTimesUs[index++] = eventTimeUs;
+      }
+    }
+
+    @Override
+    public int getNextEventTimeIndex(long timeUs) {
+      for (int i = 0; i < eventTimesUs.length; i++) {
+        if (eventTimesUs[i] > timeUs) {
+          return i;
+        }
+      }
+      return C.INDEX_UNSET;
+    }
+
+    @Override
+    public int getEventTimeCount() {
+      return eventTimesUs.length;
+    }
+
+    @Override
+    public long getEventTime(int index) {
+      return eventTimesUs[index];
+    }
+
+    @Override
+    public List<Cue> getCues(long timeUs) {
+      List<Cue> activeCues = new ArrayList<>();
+      for (int i = 0; i < cues.length; i++) {
+        if (startTimesUs[i] <= timeUs && timeUs < endTimesUs[i]) {
+          activeCues.add(cues[i]);
+        }
+      }
+      return activeCues;
+    }
+  }
+}
@@ -33,10 +33,14 @@ import android.text.style.UnderlineSpan;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.text.ChunkedSubtitleParser;
 import com.google.android.exoplayer2.text.Cue;
+import com.google.android.exoplayer2.text.Subtitle;
 import com.google.android.exoplayer2.text.SubtitleDecoderException;
 import com.google.android.exoplayer2.util.ColorParser;
+import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import org.junit.Test;
@@ -259,6 +263,56 @@ public final class TtmlDecoderTest {
         null);
   }
 
+  @Test
+  public void testGetCuesWithinEventInterval_returnsSameCues()
+      throws IOException, SubtitleDecoderException {
+    TtmlSubtitle subtitle = getSubtitle(MULTIPLE_REGIONS_TTML_FILE);
+
+    List<Cue> cues = subtitle.getCues(subtitle.getEventTime(0));
+
+    assertThat(subtitle.getCues(subtitle.getEventTime(1) - 1)).isSameInstanceAs(cues);
+    assertThat(subtitle.getCues(subtitle.getEventTime(1))).isNotSameInstanceAs(cues);
+  }
+
+  @Test
+  public void testDecodeInChunks_matchesDecodingWholeSample() throws Exception {
+    // Each paragraph overlaps the following two paragraphs, so some paragraphs are displayed across
+    // chunks.
+    StringBuilder ttml =
+        new StringBuilder("<tt xmlns=\"http://www.w3.org/ns/ttml\"><body><div begin=\"1s\">");
+    for (int i = 0; i < 200; i++) {
+      ttml.append("<p begin=\"")
+          .append(i * 1000)
+          .append("ms\" end=\"")
+          .append(i * 1000 + 2500)
+          .append("ms\">paragraph ")
+          .append(i)
+          .append("</p>");
+    }
+    ttml.append("</div></body></tt>");
+    byte[] bytes = Util.getUtf8Bytes(ttml.toString());
+    TtmlDecoder decoder = new TtmlDecoder();
+    Subtitle subtitle = decoder.decode(bytes, bytes.length, /* reset= */ false);
+
+    ChunkedSubtitleParser chunkedParser = decoder.createChunkedParser(bytes, bytes.length);
+    List<Subtitle> chunks = new ArrayList<>();
+    List<Long> chunkStartTimesUs = new ArrayList<>();
+    do {
+      chunks.add(chunkedParser.parseNextChunk());
+      chunkStartTimesUs.add(chunkedParser.getChunkStartTimeUs());
+    } while (!chunkedParser.isEnded());
+
+    assertThat(chunks).hasSize(4);
+    int chunkIndex = 0;
+    for (long timeUs = 0; timeUs < 205_000_000; timeUs += 250_000) {
+      while (chunkIndex + 1 < chunks.size() && chunkStartTimesUs.get(chunkIndex + 1) <= timeUs) {
+        chunkIndex++;
+      }
+      assertThat(getCueTexts(chunks.get(chunkIndex).getCues(timeUs)))
+          .isEqualTo(getCueTexts(subtitle.getCues(timeUs)));
+    }
+  }
+
   @Test
   public void testMultipleRegions() throws IOException, SubtitleDecoderException {
     TtmlSubtitle subtitle = getSubtitle(MULTIPLE_REGIONS_TTML_FILE);
@@ -686,6 +740,14 @@ public final class TtmlDecoderTest {
     }
   }
 
+  private static List<String> getCueTexts(List<Cue> cues) {
+    List<String> cueTexts = new ArrayList<>();
+    for (Cue cue : cues) {
+      cueTexts.add(String.valueOf(cue.text));
+    }
+    return cueTexts;
+  }
+
   private TtmlNode queryChildrenForTag(TtmlNode node, String tag, int pos) {
     int count = 0;
     for (int i = 0; i < node.getChildCount(); i++) {
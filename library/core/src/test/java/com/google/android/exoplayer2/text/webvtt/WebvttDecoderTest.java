@@ -30,11 +30,16 @@ import androidx.annotation.Nullable;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.text.ChunkedSubtitleParser;
 import com.google.android.exoplayer2.text.Cue;
+import com.google.android.exoplayer2.text.Subtitle;
 import com.google.android.exoplayer2.text.SubtitleDecoderException;
+import com.google.android.exoplayer2.util.Util;
 import com.google.common.truth.Expect;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -396,6 +401,42 @@ public class WebvttDecoderTest {
         .isEqualTo(Typeface.ITALIC);
   }
 
+  @Test
+  public void testDecodeInChunks_matchesDecodingWholeSample() throws Exception {
+    // Each cue overlaps the following two cues, so some cues are displayed across chunks.
+    StringBuilder webvtt = new StringBuilder("WEBVTT\n\n");
+    for (int i = 0; i < 200; i++) {
+      webvtt
+          .append(formatTimestamp(i * 1000))
+          .append(" --> ")
+          .append(formatTimestamp(i * 1000 + 2500))
+          .append("\ncue ")
+          .append(i)
+          .append("\n\n");
+    }
+    byte[] bytes = Util.getUtf8Bytes(webvtt.toString());
+    WebvttDecoder decoder = new WebvttDecoder();
+    Subtitle subtitle = decoder.decode(bytes, bytes.length, /* reset= */ false);
+
+    ChunkedSubtitleParser chunkedParser = decoder.createChunkedParser(bytes, bytes.length);
+    List<Subtitle> chunks = new ArrayList<>();
+    List<Long> chunkStartTimesUs = new ArrayList<>();
+    do {
+      chunks.add(chunkedParser.parseNextChunk());
+      chunkStartTimesUs.add(chunkedParser.getChunkStartTimeUs());
+    } while (!chunkedParser.isEnded());
+
+    assertThat(chunks).hasSize(4);
+    int chunkIndex = 0;
+    for (long timeUs = 0; timeUs < 205_000_000; timeUs += 250_000) {
+      while (chunkIndex + 1 < chunks.size() && chunkStartTimesUs.get(chunkIndex + 1) <= timeUs) {
+        chunkIndex++;
+      }
+      assertThat(getCueTexts(chunks.get(chunkIndex).getCues(timeUs)))
+          .isEqualTo(getCueTexts(subtitle.getCues(timeUs)));
+    }
+  }
+
   private WebvttSubtitle getSubtitleForTestAsset(String asset)
       throws IOException, SubtitleDecoderException {
     WebvttDecoder decoder = new WebvttDecoder();
@@ -403,6 +444,24 @@ public class WebvttDecoderTest {
     return (WebvttSubtitle) decoder.decode(bytes, bytes.length, /* reset= */ false);
   }
 
+  private static String formatTimestamp(long timeMs) {
+    return String.format(
+        Locale.US,
+        "%02d:%02d:%02d.%03d",
+        timeMs / 3_600_000,
+        (timeMs / 60_000) % 60,
+        (timeMs / 1000) % 60,
+        timeMs % 1000);
+  }
+
+  private static List<String> getCueTexts(List<Cue> cues) {
+    List<String> cueTexts = new ArrayList<>();
+    for (Cue cue : cues) {
+      cueTexts.add(String.valueOf(cue.text));
+    }
+    return cueTexts;
+  }
+
   private Spanned getUniqueSpanTextAt(WebvttSubtitle sub, long timeUs) {
     return (Spanned) sub.getCues(timeUs).get(0).text;
   }
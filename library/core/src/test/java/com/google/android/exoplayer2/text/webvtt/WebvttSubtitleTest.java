@@ -188,6 +188,28 @@ public class WebvttSubtitleTest {
     assertSingleCueEmpty(overlappingSubtitle.getCues(Long.MAX_VALUE));
   }
 
+  @Test
+  public void testOverlappingSubtitleCuesWithinEventInterval_areSameInstance() {
+    List<Cue> cues = overlappingSubtitle.getCues(2000000);
+
+    assertThat(overlappingSubtitle.getCues(2999999)).isSameInstanceAs(cues);
+    assertThat(overlappingSubtitle.getCues(3000000)).isNotSameInstanceAs(cues);
+  }
+
+  @Test
+  public void testMalformedCue_isIgnored() {
+    WebvttCue cue =
+        new WebvttCue.Builder()
+            .setStartTime(2000000)
+            .setEndTime(1000000)
+            .setText(FIRST_SUBTITLE_STRING)
+            .build();
+    WebvttSubtitle subtitle = new WebvttSubtitle(Collections.singletonList(cue));
+
+    assertSingleCueEmpty(subtitle.getCues(1500000));
+    assertSingleCueEmpty(subtitle.getCues(2500000));
+  }
+
   @Test
   public void testNestedSubtitleEventTimes() {
     testSubtitleEventTimesHelper(nestedSubtitle);
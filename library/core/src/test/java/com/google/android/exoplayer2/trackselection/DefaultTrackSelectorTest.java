@@ -37,6 +37,8 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.RendererCapabilities;
+import com.google.android.exoplayer2.RendererCapabilities.AdaptiveSupport;
+import com.google.android.exoplayer2.RendererCapabilities.Capabilities;
 import com.google.android.exoplayer2.RendererConfiguration;
 import com.google.android.exoplayer2.Timeline;
 import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
@@ -46,11 +48,13 @@ import com.google.android.exoplayer2.testutil.FakeTimeline;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector.Parameters;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector.ParametersBuilder;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector.SelectionOverride;
+import com.google.android.exoplayer2.trackselection.MappingTrackSelector.MappedTrackInfo;
 import com.google.android.exoplayer2.trackselection.TrackSelector.InvalidationListener;
 import com.google.android.exoplayer2.upstream.BandwidthMeter;
 import com.google.android.exoplayer2.util.MimeTypes;
 import java.util.HashMap;
 import java.util.Map;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -1571,6 +1575,58 @@ public final class DefaultTrackSelectorTest {
     assertAdaptiveSelection(result.selections.get(0), trackGroups.get(0), 1, 2);
   }
 
+  @Test
+  public void testSelectTracksWithSelectionCache_reusesSelectionForEqualTrackGroups()
+      throws Exception {
+    CountingDefaultTrackSelector trackSelector =
+        new CountingDefaultTrackSelector(ApplicationProvider.getApplicationContext());
+    trackSelector.init(invalidationListener, bandwidthMeter);
+    trackSelector.experimental_setSelectionCacheEnabled(true);
+    Format[] videoFormats = {buildVideoFormat("0"), buildVideoFormat("1"), buildVideoFormat("2")};
+    TrackGroupArray trackGroups = singleTrackGroup(videoFormats);
+    TrackGroupArray equalTrackGroups = singleTrackGroup(videoFormats);
+
+    TrackSelectorResult result =
+        trackSelector.selectTracks(
+            new RendererCapabilities[] {VIDEO_CAPABILITIES}, trackGroups, periodId, TIMELINE);
+    TrackSelectorResult cachedResult =
+        trackSelector.selectTracks(
+            new RendererCapabilities[] {VIDEO_CAPABILITIES}, equalTrackGroups, periodId, TIMELINE);
+
+    assertThat(trackSelector.selectAllTracksCount).isEqualTo(1);
+    assertAdaptiveSelection(result.selections.get(0), trackGroups.get(0), 0, 1, 2);
+    assertAdaptiveSelection(cachedResult.selections.get(0), equalTrackGroups.get(0), 0, 1, 2);
+    assertThat(cachedResult.selections.get(0).getTrackGroup())
+        .isSameInstanceAs(equalTrackGroups.get(0));
+    assertThat(cachedResult.selections.get(0)).isNotSameInstanceAs(result.selections.get(0));
+  }
+
+  @Test
+  public void testSelectTracksWithSelectionCache_selectsAgainIfInputsChange() throws Exception {
+    CountingDefaultTrackSelector trackSelector =
+        new CountingDefaultTrackSelector(ApplicationProvider.getApplicationContext());
+    trackSelector.init(invalidationListener, bandwidthMeter);
+    trackSelector.experimental_setSelectionCacheEnabled(true);
+    TrackGroupArray trackGroups = singleTrackGroup(buildVideoFormat("0"), buildVideoFormat("1"));
+    RendererCapabilities[] rendererCapabilities = {VIDEO_CAPABILITIES};
+
+    trackSelector.selectTracks(rendererCapabilities, trackGroups, periodId, TIMELINE);
+    trackSelector.setParameters(defaultParameters.buildUpon().setMaxVideoBitrate(1000));
+    trackSelector.selectTracks(rendererCapabilities, trackGroups, periodId, TIMELINE);
+    trackSelector.selectTracks(
+        new RendererCapabilities[] {
+          new FakeRendererCapabilities(C.TRACK_TYPE_VIDEO, FORMAT_EXCEEDS_CAPABILITIES)
+        },
+        trackGroups,
+        periodId,
+        TIMELINE);
+    trackSelector.experimental_invalidateSelectionCache();
+    trackSelector.selectTracks(rendererCapabilities, trackGroups, periodId, TIMELINE);
+
+    assertThat(trackSelector.selectAllTracksCount).isEqualTo(4);
+    verify(invalidationListener, times(2)).onTrackSelectionsInvalidated();
+  }
+
   private static void assertSelections(TrackSelectorResult result, TrackSelection[] expected) {
     assertThat(result.length).isEqualTo(expected.length);
     for (int i = 0; i < expected.length; i++) {
@@ -1759,6 +1815,28 @@ public final class DefaultTrackSelectorTest {
         language);
   }
 
+  /** A {@link DefaultTrackSelector} that counts how many times all tracks are selected. */
+  private static final class CountingDefaultTrackSelector extends DefaultTrackSelector {
+
+    public int selectAllTracksCount;
+
+    public CountingDefaultTrackSelector(Context context) {
+      super(context);
+    }
+
+    @Override
+    protected TrackSelection.@NullableType Definition[] selectAllTracks(
+        MappedTrackInfo mappedTrackInfo,
+        @Capabilities int[][][] rendererFormatSupports,
+        @AdaptiveSupport int[] rendererMixedMimeTypeAdaptationSupports,
+        Parameters params)
+        throws ExoPlaybackException {
+      selectAllTracksCount++;
+      return super.selectAllTracks(
+          mappedTrackInfo, rendererFormatSupports, rendererMixedMimeTypeAdaptationSupports, params);
+    }
+  }
+
   /**
    * A {@link RendererCapabilities} that advertises support for all formats of a given type using
    * a provided support value. For any format that does not have the given track type,
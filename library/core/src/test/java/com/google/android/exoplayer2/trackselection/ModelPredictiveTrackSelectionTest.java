@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.testutil.AbrSimulator;
+import com.google.android.exoplayer2.testutil.AbrSimulator.NetworkTrace;
+import com.google.android.exoplayer2.testutil.AbrSimulator.QoeMetrics;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeMediaChunkIterator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+/** Unit test for {@link ModelPredictiveTrackSelection}. */
+@RunWith(AndroidJUnit4.class)
+public final class ModelPredictiveTrackSelectionTest {
+
+  private static final long[] CHUNK_TIME_BOUNDARIES_SEC = {0, 4, 8, 12, 16, 20};
+
+  @Mock private BandwidthMeter mockBandwidthMeter;
+  private FakeClock fakeClock;
+
+  @Before
+  public void setUp() {
+    initMocks(this);
+    fakeClock = new FakeClock(0);
+  }
+
+  @Test
+  public void testSelectInitialIndex_withHighBandwidthEstimate_selectsHighestQuality() {
+    Format format1 = videoFormat(/* bitrate= */ 500_000, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1_000_000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2_000_000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(20_000_000L);
+
+    TrackSelection trackSelection =
+        updatedTrackSelection(
+            trackGroup,
+            /* bufferedDurationUs= */ 0,
+            new MediaChunkIterator[] {
+              constantBitrateChunkIterator(format3),
+              constantBitrateChunkIterator(format2),
+              constantBitrateChunkIterator(format1)
+            });
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void testSelectInitialIndex_withLowBandwidthEstimate_selectsLowestQuality() {
+    Format format1 = videoFormat(/* bitrate= */ 500_000, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1_000_000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2_000_000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(400_000L);
+
+    TrackSelection trackSelection =
+        updatedTrackSelection(
+            trackGroup,
+            /* bufferedDurationUs= */ 0,
+            new MediaChunkIterator[] {
+              MediaChunkIterator.EMPTY, MediaChunkIterator.EMPTY, MediaChunkIterator.EMPTY
+            });
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format1);
+  }
+
+  @Test
+  public void testUpdateSelectedTrack_withLargeUpcomingChunks_selectsLowerQuality() {
+    Format format1 = videoFormat(/* bitrate= */ 500_000, /* width= */ 320, /* height= */ 240);
+    Format format2 = videoFormat(/* bitrate= */ 1_000_000, /* width= */ 640, /* height= */ 480);
+    Format format3 = videoFormat(/* bitrate= */ 2_000_000, /* width= */ 960, /* height= */ 720);
+    TrackGroup trackGroup = new TrackGroup(format1, format2, format3);
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(2_500_000L);
+
+    TrackSelection constantBitrateTrackSelection =
+        updatedTrackSelection(
+            trackGroup,
+            /* bufferedDurationUs= */ 10_000_000,
+            new MediaChunkIterator[] {
+              constantBitrateChunkIterator(format3),
+              constantBitrateChunkIterator(format2),
+              constantBitrateChunkIterator(format1)
+            });
+    // The upcoming chunks of the highest quality track are three times larger than its bitrate
+    // suggests, as may happen for a scene with a lot of motion.
+    long largeChunkLength = 3 * getChunkLength(format3);
+    TrackSelection variableBitrateTrackSelection =
+        updatedTrackSelection(
+            trackGroup,
+            /* bufferedDurationUs= */ 10_000_000,
+            new MediaChunkIterator[] {
+              new FakeMediaChunkIterator(
+                  CHUNK_TIME_BOUNDARIES_SEC,
+                  new long[] {
+                    largeChunkLength,
+                    largeChunkLength,
+                    largeChunkLength,
+                    largeChunkLength,
+                    largeChunkLength
+                  }),
+              constantBitrateChunkIterator(format2),
+              constantBitrateChunkIterator(format1)
+            });
+
+    assertThat(constantBitrateTrackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(variableBitrateTrackSelection.getSelectedFormat()).isEqualTo(format2);
+  }
+
+  @Test
+  public void testSimulatedPlayback_withConstantBandwidth_loadsHigherQualityWithoutRebuffering() {
+    AbrSimulator simulator = createSimulator();
+    NetworkTrace networkTrace = NetworkTrace.constant(/* bitrate= */ 3_000_000);
+
+    QoeMetrics modelPredictiveMetrics =
+        simulator.simulate(new ModelPredictiveTrackSelection.Factory(), networkTrace);
+    QoeMetrics adaptiveMetrics =
+        simulator.simulate(new AdaptiveTrackSelection.Factory(), networkTrace);
+
+    assertThat(modelPredictiveMetrics.rebufferDurationMs).isEqualTo(0);
+    assertThat(modelPredictiveMetrics.averageBitrate).isGreaterThan(adaptiveMetrics.averageBitrate);
+  }
+
+  @Test
+  public void testSimulatedPlayback_withBandwidthDrops_doesNotRebuffer() {
+    AbrSimulator simulator = createSimulator();
+    NetworkTrace networkTrace =
+        new NetworkTrace(
+            /* durationsMs= */ new long[] {20_000, 60_000},
+            /* bitrates= */ new long[] {6_000_000, 1_000_000});
+
+    QoeMetrics metrics =
+        simulator.simulate(new ModelPredictiveTrackSelection.Factory(), networkTrace);
+
+    assertThat(metrics.rebufferDurationMs).isEqualTo(0);
+  }
+
+  private TrackSelection updatedTrackSelection(
+      TrackGroup trackGroup,
+      long bufferedDurationUs,
+      MediaChunkIterator[] mediaChunkIterators) {
+    int[] tracks = new int[trackGroup.length];
+    for (int i = 0; i < tracks.length; i++) {
+      tracks[i] = i;
+    }
+    ModelPredictiveTrackSelection trackSelection =
+        new ModelPredictiveTrackSelection(
+            trackGroup,
+            tracks,
+            mockBandwidthMeter,
+            /* reservedBandwidth= */ 0,
+            ModelPredictiveTrackSelection.DEFAULT_HORIZON_CHUNK_COUNT,
+            /* bandwidthFraction= */ 1f,
+            ModelPredictiveTrackSelection.DEFAULT_REBUFFER_PENALTY,
+            ModelPredictiveTrackSelection.DEFAULT_SWITCH_PENALTY,
+            DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+            fakeClock);
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        bufferedDurationUs,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        mediaChunkIterators);
+    return trackSelection;
+  }
+
+  private static AbrSimulator createSimulator() {
+    int[] bitrates = {300_000, 750_000, 1_200_000, 1_850_000, 2_850_000, 4_300_000};
+    int[] heights = {240, 360, 480, 720, 1080, 1440};
+    Format[] formats = new Format[bitrates.length];
+    for (int i = 0; i < formats.length; i++) {
+      formats[i] = videoFormat(bitrates[i], /* width= */ heights[i] * 16 / 9, heights[i]);
+    }
+    return new AbrSimulator(formats, /* chunkDurationUs= */ 4_000_000, /* chunkCount= */ 48);
+  }
+
+  private static MediaChunkIterator constantBitrateChunkIterator(Format format) {
+    long chunkLength = getChunkLength(format);
+    return new FakeMediaChunkIterator(
+        CHUNK_TIME_BOUNDARIES_SEC,
+        new long[] {chunkLength, chunkLength, chunkLength, chunkLength, chunkLength});
+  }
+
+  private static long getChunkLength(Format format) {
+    long chunkDurationSec = CHUNK_TIME_BOUNDARIES_SEC[1] - CHUNK_TIME_BOUNDARIES_SEC[0];
+    return format.bitrate * chunkDurationSec / C.BITS_PER_BYTE;
+  }
+
+  private static Format videoFormat(int bitrate, int width, int height) {
+    return Format.createVideoSampleFormat(
+        /* id= */ null,
+        /* sampleMimeType= */ MimeTypes.VIDEO_H264,
+        /* codecs= */ null,
+        /* bitrate= */ bitrate,
+        /* maxInputSize= */ Format.NO_VALUE,
+        /* width= */ width,
+        /* height= */ height,
+        /* frameRate= */ Format.NO_VALUE,
+        /* initializationData= */ null,
+        /* drmInitData= */ null);
+  }
+}
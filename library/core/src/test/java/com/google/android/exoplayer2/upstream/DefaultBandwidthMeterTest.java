@@ -28,6 +28,8 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.testutil.FakeClock;
 import com.google.android.exoplayer2.testutil.FakeDataSource;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import org.junit.Before;
 import org.junit.Test;
@@ -557,6 +559,234 @@ public final class DefaultBandwidthMeterTest {
     assertThat(initialEstimateWithoutBuilder).isLessThan(50_000_000L);
   }
 
+  @Test
+  public void bandwidthEstimator_estimatesThroughputAndLatencySeparately() {
+    setActiveNetworkInfo(networkInfoWifi);
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .experimental_setBandwidthEstimatorFactory(new KalmanBandwidthEstimator.Factory())
+            .build();
+
+    for (int i = 0; i < 10; i++) {
+      // 1 MB in 1600 ms is 5 Mbit/s, regardless of the time taken to open the connection.
+      simulateTransfer(
+          bandwidthMeter,
+          clock,
+          /* latencyMs= */ 500,
+          /* bytes= */ 1_000_000,
+          /* transferDurationMs= */ 1600);
+    }
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isWithin(250_000).of(5_000_000);
+    assertThat(bandwidthMeter.experimental_getLatencyEstimateMs()).isEqualTo(500);
+  }
+
+  @Test
+  public void bandwidthEstimator_restoresEstimateLearnedOnNetworkTypeAfterNetworkTypeChange() {
+    setActiveNetworkInfo(networkInfoWifi);
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .experimental_setBandwidthEstimatorFactory(new KalmanBandwidthEstimator.Factory())
+            .build();
+    long initialWifiEstimate = bandwidthMeter.getBitrateEstimate();
+    for (int i = 0; i < 10; i++) {
+      simulateTransfer(
+          bandwidthMeter,
+          clock,
+          /* latencyMs= */ 50,
+          /* bytes= */ 2_000_000,
+          /* transferDurationMs= */ 800);
+    }
+    long learnedWifiEstimate = bandwidthMeter.getBitrateEstimate();
+
+    bandwidthMeter.setNetworkTypeOverride(C.NETWORK_TYPE_2G);
+    long initial2gEstimate = bandwidthMeter.getBitrateEstimate();
+    bandwidthMeter.setNetworkTypeOverride(C.NETWORK_TYPE_WIFI);
+
+    assertThat(learnedWifiEstimate).isNotEqualTo(initialWifiEstimate);
+    assertThat(initial2gEstimate).isLessThan(learnedWifiEstimate);
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(learnedWifiEstimate);
+  }
+
+  @Test
+  public void persistedBandwidthEstimate_isInitialEstimateOfNewBandwidthMeter() {
+    setActiveNetworkInfo(networkInfo4g);
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .experimental_setBandwidthEstimatorFactory(new KalmanBandwidthEstimator.Factory())
+            .experimental_setPersistBandwidthEstimates(true)
+            .setPersistedEstimatesLoadingExecutor(Runnable::run)
+            .build();
+    simulateTransfer(
+        bandwidthMeter,
+        clock,
+        /* latencyMs= */ 120,
+        /* bytes= */ 5_000_000,
+        /* transferDurationMs= */ 2000);
+
+    DefaultBandwidthMeter newBandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .experimental_setBandwidthEstimatorFactory(new KalmanBandwidthEstimator.Factory())
+            .experimental_setPersistBandwidthEstimates(true)
+            .setPersistedEstimatesLoadingExecutor(Runnable::run)
+            .build();
+
+    assertThat(newBandwidthMeter.getBitrateEstimate())
+        .isEqualTo(bandwidthMeter.getBitrateEstimate());
+    assertThat(newBandwidthMeter.experimental_getLatencyEstimateMs()).isEqualTo(120);
+  }
+
+  @Test
+  public void persistedBandwidthEstimate_isAppliedOnceLoaded() {
+    setActiveNetworkInfo(networkInfo4g);
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .experimental_setBandwidthEstimatorFactory(new KalmanBandwidthEstimator.Factory())
+            .experimental_setPersistBandwidthEstimates(true)
+            .setPersistedEstimatesLoadingExecutor(Runnable::run)
+            .build();
+    long initialEstimate = bandwidthMeter.getBitrateEstimate();
+    simulateTransfer(
+        bandwidthMeter,
+        clock,
+        /* latencyMs= */ 120,
+        /* bytes= */ 5_000_000,
+        /* transferDurationMs= */ 2000);
+    List<Runnable> pendingLoads = new ArrayList<>();
+
+    DefaultBandwidthMeter newBandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .experimental_setBandwidthEstimatorFactory(new KalmanBandwidthEstimator.Factory())
+            .experimental_setPersistBandwidthEstimates(true)
+            .setPersistedEstimatesLoadingExecutor(pendingLoads::add)
+            .build();
+    long estimateBeforeLoading = newBandwidthMeter.getBitrateEstimate();
+    long latencyEstimateBeforeLoadingMs = newBandwidthMeter.experimental_getLatencyEstimateMs();
+    for (Runnable pendingLoad : pendingLoads) {
+      pendingLoad.run();
+    }
+
+    assertThat(estimateBeforeLoading).isEqualTo(initialEstimate);
+    assertThat(latencyEstimateBeforeLoadingMs).isEqualTo(C.TIME_UNSET);
+    assertThat(newBandwidthMeter.getBitrateEstimate())
+        .isEqualTo(bandwidthMeter.getBitrateEstimate());
+    assertThat(newBandwidthMeter.experimental_getLatencyEstimateMs()).isEqualTo(120);
+  }
+
+  @Test
+  public void idleGapDetection_withChunkedTransfer_estimatesThroughputDuringBursts() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .build();
+    DefaultBandwidthMeter idleGapDetectingBandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .experimental_setIdleGapThresholdMs(100)
+            .build();
+
+    // A 1 Mbit/s live stream whose 500 ms chunks are each delivered within 50 ms, at 10 Mbit/s.
+    simulateChunkedTransfer(
+        bandwidthMeter,
+        clock,
+        /* chunkCount= */ 20,
+        /* chunkIntervalMs= */ 500,
+        /* readsPerChunk= */ 5,
+        /* readIntervalMs= */ 10,
+        /* bytesPerRead= */ 12_500);
+    simulateChunkedTransfer(
+        idleGapDetectingBandwidthMeter,
+        clock,
+        /* chunkCount= */ 20,
+        /* chunkIntervalMs= */ 500,
+        /* readsPerChunk= */ 5,
+        /* readIntervalMs= */ 10,
+        /* bytesPerRead= */ 12_500);
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(1_000_000);
+    assertThat(idleGapDetectingBandwidthMeter.getBitrateEstimate()).isEqualTo(10_000_000);
+  }
+
+  @Test
+  public void idleGapDetection_withContinuousTransfer_doesNotChangeEstimate() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .build();
+    DefaultBandwidthMeter idleGapDetectingBandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .experimental_setIdleGapThresholdMs(100)
+            .build();
+
+    simulateChunkedTransfer(
+        bandwidthMeter,
+        clock,
+        /* chunkCount= */ 1,
+        /* chunkIntervalMs= */ 3000,
+        /* readsPerChunk= */ 300,
+        /* readIntervalMs= */ 10,
+        /* bytesPerRead= */ 5000);
+    simulateChunkedTransfer(
+        idleGapDetectingBandwidthMeter,
+        clock,
+        /* chunkCount= */ 1,
+        /* chunkIntervalMs= */ 3000,
+        /* readsPerChunk= */ 300,
+        /* readIntervalMs= */ 10,
+        /* bytesPerRead= */ 5000);
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(4_000_000);
+    assertThat(idleGapDetectingBandwidthMeter.getBitrateEstimate()).isEqualTo(4_000_000);
+  }
+
+  @Test
+  public void idleGapDetection_withBytesMostlyReadAfterIdleGaps_usesTotalElapsedTime() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .build();
+    DefaultBandwidthMeter idleGapDetectingBandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .experimental_setIdleGapThresholdMs(100)
+            .build();
+
+    // A slow network, on which each read blocks for longer than the idle gap threshold.
+    simulateChunkedTransfer(
+        bandwidthMeter,
+        clock,
+        /* chunkCount= */ 1,
+        /* chunkIntervalMs= */ 3000,
+        /* readsPerChunk= */ 10,
+        /* readIntervalMs= */ 300,
+        /* bytesPerRead= */ 60_000);
+    simulateChunkedTransfer(
+        idleGapDetectingBandwidthMeter,
+        clock,
+        /* chunkCount= */ 1,
+        /* chunkIntervalMs= */ 3000,
+        /* readsPerChunk= */ 10,
+        /* readIntervalMs= */ 300,
+        /* bytesPerRead= */ 60_000);
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(1_600_000);
+    assertThat(idleGapDetectingBandwidthMeter.getBitrateEstimate()).isEqualTo(1_600_000);
+  }
+
   private void setActiveNetworkInfo(NetworkInfo networkInfo) {
     Shadows.shadowOf(connectivityManager).setActiveNetworkInfo(networkInfo);
   }
@@ -565,6 +795,49 @@ public final class DefaultBandwidthMeterTest {
     Shadows.shadowOf(telephonyManager).setNetworkCountryIso(countryIso);
   }
 
+  private static void simulateTransfer(
+      DefaultBandwidthMeter bandwidthMeter,
+      FakeClock clock,
+      long latencyMs,
+      int bytes,
+      long transferDurationMs) {
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://dummy.com"));
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+    clock.advanceTime(latencyMs);
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    clock.advanceTime(transferDurationMs);
+    bandwidthMeter.onBytesTransferred(dataSource, dataSpec, /* isNetwork= */ true, bytes);
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+  }
+
+  /**
+   * Simulates a transfer of chunks that are each made available after {@code chunkIntervalMs}, and
+   * are then read in {@code readsPerChunk} reads that each take {@code readIntervalMs}.
+   */
+  private static void simulateChunkedTransfer(
+      DefaultBandwidthMeter bandwidthMeter,
+      FakeClock clock,
+      int chunkCount,
+      long chunkIntervalMs,
+      int readsPerChunk,
+      long readIntervalMs,
+      int bytesPerRead) {
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://dummy.com"));
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    for (int i = 0; i < chunkCount; i++) {
+      clock.advanceTime(chunkIntervalMs - readsPerChunk * readIntervalMs);
+      for (int j = 0; j < readsPerChunk; j++) {
+        clock.advanceTime(readIntervalMs);
+        bandwidthMeter.onBytesTransferred(
+            dataSource, dataSpec, /* isNetwork= */ true, bytesPerRead);
+      }
+    }
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+  }
+
   private static long[] simulateTransfers(DefaultBandwidthMeter bandwidthMeter, FakeClock clock) {
     long[] bitrateEstimates = new long[SIMULATED_TRANSFER_COUNT];
     Random random = new Random(/* seed= */ 0);
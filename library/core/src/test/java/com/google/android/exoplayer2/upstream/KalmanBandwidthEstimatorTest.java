@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link KalmanBandwidthEstimator}. */
+@RunWith(AndroidJUnit4.class)
+public final class KalmanBandwidthEstimatorTest {
+
+  @Test
+  public void initialEstimates_areReturnedBeforeSamples() {
+    BandwidthEstimator estimator =
+        createEstimator(
+            /* initialBitrateEstimate= */ 3_000_000, /* initialLatencyEstimateMs= */ 80);
+
+    assertThat(estimator.getBitrateEstimate()).isEqualTo(3_000_000);
+    assertThat(estimator.getLatencyEstimateMs()).isEqualTo(80);
+  }
+
+  @Test
+  public void bitrateEstimate_convergesToConstantThroughput() {
+    BandwidthEstimator estimator =
+        createEstimator(
+            /* initialBitrateEstimate= */ 1_000_000, /* initialLatencyEstimateMs= */ C.TIME_UNSET);
+
+    long nowMs = 0;
+    for (int i = 0; i < 5; i++) {
+      // 1 MB in 1600 ms is 5 Mbit/s.
+      nowMs += 2000;
+      estimator.addThroughputSample(
+          /* bytesTransferred= */ 1_000_000, /* elapsedTimeMs= */ 1600, nowMs);
+    }
+
+    assertThat(estimator.getBitrateEstimate()).isWithin(50_000).of(5_000_000);
+  }
+
+  @Test
+  public void bitrateEstimate_followsSuddenDropWithinTwoSamples() {
+    BandwidthEstimator estimator =
+        createEstimator(
+            /* initialBitrateEstimate= */ 1_000_000, /* initialLatencyEstimateMs= */ C.TIME_UNSET);
+    long nowMs = 0;
+    for (int i = 0; i < 20; i++) {
+      nowMs += 2000;
+      estimator.addThroughputSample(
+          /* bytesTransferred= */ 1_000_000, /* elapsedTimeMs= */ 1600, nowMs);
+    }
+
+    for (int i = 0; i < 2; i++) {
+      // 1 MB in 8000 ms is 1 Mbit/s.
+      nowMs += 9000;
+      estimator.addThroughputSample(
+          /* bytesTransferred= */ 1_000_000, /* elapsedTimeMs= */ 8000, nowMs);
+    }
+
+    assertThat(estimator.getBitrateEstimate()).isLessThan(1_250_000);
+  }
+
+  @Test
+  public void smallTransfers_haveLessInfluenceThanLargeTransfers() {
+    BandwidthEstimator smallTransferEstimator =
+        createEstimator(
+            /* initialBitrateEstimate= */ 1_000_000, /* initialLatencyEstimateMs= */ C.TIME_UNSET);
+    BandwidthEstimator largeTransferEstimator =
+        createEstimator(
+            /* initialBitrateEstimate= */ 1_000_000, /* initialLatencyEstimateMs= */ C.TIME_UNSET);
+
+    // Both samples measure 2 Mbit/s.
+    smallTransferEstimator.addThroughputSample(
+        /* bytesTransferred= */ 2_500, /* elapsedTimeMs= */ 10, /* nowMs= */ 1000);
+    largeTransferEstimator.addThroughputSample(
+        /* bytesTransferred= */ 2_500_000, /* elapsedTimeMs= */ 10_000, /* nowMs= */ 1000);
+
+    assertThat(smallTransferEstimator.getBitrateEstimate())
+        .isLessThan(largeTransferEstimator.getBitrateEstimate());
+    assertThat(largeTransferEstimator.getBitrateEstimate()).isWithin(200_000).of(2_000_000);
+  }
+
+  @Test
+  public void latencyEstimate_isMovingAverageOfSamples() {
+    BandwidthEstimator estimator =
+        createEstimator(
+            /* initialBitrateEstimate= */ 1_000_000, /* initialLatencyEstimateMs= */ C.TIME_UNSET);
+
+    estimator.addLatencySample(/* latencyMs= */ 100, /* nowMs= */ 0);
+    long firstLatencyEstimateMs = estimator.getLatencyEstimateMs();
+    estimator.addLatencySample(/* latencyMs= */ 300, /* nowMs= */ 1000);
+
+    assertThat(firstLatencyEstimateMs).isEqualTo(100);
+    assertThat(estimator.getLatencyEstimateMs()).isEqualTo(150);
+  }
+
+  private static BandwidthEstimator createEstimator(
+      long initialBitrateEstimate, long initialLatencyEstimateMs) {
+    return new KalmanBandwidthEstimator.Factory()
+        .createBandwidthEstimator(
+            C.NETWORK_TYPE_WIFI, initialBitrateEstimate, initialLatencyEstimateMs);
+  }
+}
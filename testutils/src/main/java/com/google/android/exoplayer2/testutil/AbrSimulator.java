@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import android.net.Uri;
+import android.os.Handler;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.BaseMediaChunkIterator;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simulates chunked adaptive streaming of a single track group over a network trace, to compare the
+ * quality of experience provided by {@link TrackSelection} implementations offline.
+ *
+ * <p>The simulation loads one chunk at a time, asking the track selection which track to load
+ * before each chunk. Chunks are downloaded at the bandwidth given by the trace, while media is
+ * played out of the buffer in real time. The bandwidth estimate passed to the track selection is
+ * the harmonic mean of the throughput of the last few chunk downloads.
+ */
+public final class AbrSimulator {
+
+  /** A network trace, as a sequence of intervals of constant bandwidth. */
+  public static final class NetworkTrace {
+
+    private final long[] durationsMs;
+    private final long[] bitrates;
+    private final long totalDurationMs;
+
+    /**
+     * Creates a network trace. The trace is repeated if the simulation outlasts it.
+     *
+     * @param durationsMs The duration of each interval, in milliseconds.
+     * @param bitrates The bandwidth during each interval, in bits per second.
+     */
+    public NetworkTrace(long[] durationsMs, long[] bitrates) {
+      Assertions.checkArgument(durationsMs.length > 0 && durationsMs.length == bitrates.length);
+      long totalDurationMs = 0;
+      for (int i = 0; i < durationsMs.length; i++) {
+        Assertions.checkArgument(durationsMs[i] > 0 && bitrates[i] > 0);
+        totalDurationMs += durationsMs[i];
+      }
+      this.durationsMs = durationsMs;
+      this.bitrates = bitrates;
+      this.totalDurationMs = totalDurationMs;
+    }
+
+    /** Returns a trace with a constant bandwidth, in bits per second. */
+    public static NetworkTrace constant(long bitrate) {
+      return new NetworkTrace(new long[] {1000}, new long[] {bitrate});
+    }
+
+    /**
+     * Returns the time taken to download the given amount of data, starting at the given time.
+     *
+     * @param startTimeMs The time at which the download starts, in milliseconds.
+     * @param bits The amount of data to download, in bits.
+     * @return The time taken by the download, in milliseconds.
+     */
+    public double getDownloadDurationMs(double startTimeMs, double bits) {
+      double timeMs = startTimeMs % totalDurationMs;
+      int index = 0;
+      while (timeMs >= durationsMs[index]) {
+        timeMs -= durationsMs[index];
+        index++;
+      }
+      double elapsedMs = 0;
+      while (true) {
+        double remainingIntervalMs = durationsMs[index] - timeMs;
+        double intervalBits = remainingIntervalMs * bitrates[index] / 1000;
+        if (intervalBits >= bits) {
+          return elapsedMs + bits * 1000 / bitrates[index];
+        }
+        bits -= intervalBits;
+        elapsedMs += remainingIntervalMs;
+        timeMs = 0;
+        index = (index + 1) % durationsMs.length;
+      }
+    }
+  }
+
+  /** Quality of experience metrics for a simulated playback. */
+  public static final class QoeMetrics {
+
+    /** The bitrate of the track loaded for each chunk, in bits per second. */
+    public final int[] chunkBitrates;
+    /** The average of {@link #chunkBitrates}, in bits per second. */
+    public final long averageBitrate;
+    /** The number of times the loaded track changed between consecutive chunks. */
+    public final int switchCount;
+    /** The time taken to load the first chunk, in milliseconds. */
+    public final long startupDelayMs;
+    /** The total time for which playback stalled after starting, in milliseconds. */
+    public final long rebufferDurationMs;
+
+    private QoeMetrics(int[] chunkBitrates, long startupDelayMs, long rebufferDurationMs) {
+      this.chunkBitrates = chunkBitrates;
+      this.startupDelayMs = startupDelayMs;
+      this.rebufferDurationMs = rebufferDurationMs;
+      long totalBitrate = 0;
+      int switchCount = 0;
+      for (int i = 0; i < chunkBitrates.length; i++) {
+        totalBitrate += chunkBitrates[i];
+        if (i > 0 && chunkBitrates[i] != chunkBitrates[i - 1]) {
+          switchCount++;
+        }
+      }
+      this.averageBitrate = chunkBitrates.length == 0 ? 0 : totalBitrate / chunkBitrates.length;
+      this.switchCount = switchCount;
+    }
+
+    /**
+     * Returns a linear quality of experience score: the sum of the chunk bitrates in Mbit/s, minus
+     * the penalized total rebuffering and startup time, minus the penalized sum of the bitrate
+     * changes between consecutive chunks in Mbit/s.
+     *
+     * @param rebufferPenalty The penalty for each second of rebuffering or startup delay.
+     * @param switchPenalty The penalty for each Mbit/s of change in bitrate between chunks.
+     * @return The score.
+     */
+    public double getLinearQoe(double rebufferPenalty, double switchPenalty) {
+      double score = 0;
+      for (int i = 0; i < chunkBitrates.length; i++) {
+        score += chunkBitrates[i] / 1e6;
+        if (i > 0) {
+          score -= switchPenalty * Math.abs(chunkBitrates[i] - chunkBitrates[i - 1]) / 1e6;
+        }
+      }
+      return score - rebufferPenalty * (startupDelayMs + rebufferDurationMs) / 1000d;
+    }
+
+    @Override
+    public String toString() {
+      return "averageBitrate="
+          + averageBitrate
+          + ", switchCount="
+          + switchCount
+          + ", startupDelayMs="
+          + startupDelayMs
+          + ", rebufferDurationMs="
+          + rebufferDurationMs;
+    }
+  }
+
+  private static final int DEFAULT_MAX_BUFFER_MS = 50_000;
+  private static final long DEFAULT_INITIAL_BITRATE_ESTIMATE = 1_000_000;
+  private static final int THROUGHPUT_SAMPLE_COUNT = 5;
+
+  private final TrackGroup trackGroup;
+  private final long chunkDurationUs;
+  private final long[][] chunkLengths;
+
+  private int maxBufferMs;
+  private long initialBitrateEstimate;
+  private long requestLatencyMs;
+
+  /**
+   * Creates a simulator for constant bitrate tracks, whose chunk sizes are derived from the bitrate
+   * of each format.
+   *
+   * @param formats The formats of the tracks. Must all have a bitrate.
+   * @param chunkDurationUs The duration of each chunk, in microseconds.
+   * @param chunkCount The number of chunks in each track.
+   */
+  public AbrSimulator(Format[] formats, long chunkDurationUs, int chunkCount) {
+    this(
+        formats,
+        chunkDurationUs,
+        getConstantBitrateChunkLengths(formats, chunkDurationUs, chunkCount));
+  }
+
+  /**
+   * Creates a simulator.
+   *
+   * @param formats The formats of the tracks.
+   * @param chunkDurationUs The duration of each chunk, in microseconds.
+   * @param chunkLengths The length of each chunk of each track in bytes, indexed by track and then
+   *     by chunk. All tracks must have the same number of chunks.
+   */
+  public AbrSimulator(Format[] formats, long chunkDurationUs, long[][] chunkLengths) {
+    Assertions.checkArgument(formats.length == chunkLengths.length);
+    this.trackGroup = new TrackGroup(formats);
+    this.chunkDurationUs = chunkDurationUs;
+    this.chunkLengths = chunkLengths;
+    maxBufferMs = DEFAULT_MAX_BUFFER_MS;
+    initialBitrateEstimate = DEFAULT_INITIAL_BITRATE_ESTIMATE;
+  }
+
+  /**
+   * Sets the maximum duration of media to buffer. Loading pauses while the buffer is full.
+   *
+   * @param maxBufferMs The maximum buffer duration, in milliseconds.
+   * @return This simulator, for convenience.
+   */
+  public AbrSimulator setMaxBufferMs(int maxBufferMs) {
+    this.maxBufferMs = maxBufferMs;
+    return this;
+  }
+
+  /**
+   * Sets the bandwidth estimate used before the first chunk has been loaded.
+   *
+   * @param initialBitrateEstimate The initial bandwidth estimate, in bits per second.
+   * @return This simulator, for convenience.
+   */
+  public AbrSimulator setInitialBitrateEstimate(long initialBitrateEstimate) {
+    this.initialBitrateEstimate = initialBitrateEstimate;
+    return this;
+  }
+
+  /**
+   * Sets the latency added to each chunk download, during which no data is transferred.
+   *
+   * @param requestLatencyMs The latency, in milliseconds.
+   * @return This simulator, for convenience.
+   */
+  public AbrSimulator setRequestLatencyMs(long requestLatencyMs) {
+    this.requestLatencyMs = requestLatencyMs;
+    return this;
+  }
+
+  /**
+   * Simulates playback of all chunks over the given network trace.
+   *
+   * @param trackSelectionFactory The factory for the track selection under test. It's passed a
+   *     single adaptive definition containing all tracks.
+   * @param networkTrace The {@link NetworkTrace}.
+   * @return The {@link QoeMetrics} of the simulated playback.
+   */
+  public QoeMetrics simulate(
+      TrackSelection.Factory trackSelectionFactory, NetworkTrace networkTrace) {
+    int[] tracks = new int[trackGroup.length];
+    for (int i = 0; i < tracks.length; i++) {
+      tracks[i] = i;
+    }
+    SimulatedBandwidthMeter bandwidthMeter = new SimulatedBandwidthMeter(initialBitrateEstimate);
+    TrackSelection trackSelection =
+        Assertions.checkNotNull(
+            trackSelectionFactory.createTrackSelections(
+                new TrackSelection.Definition[] {new TrackSelection.Definition(trackGroup, tracks)},
+                bandwidthMeter)[0]);
+    trackSelection.enable();
+
+    int chunkCount = chunkLengths[0].length;
+    double chunkDurationMs = chunkDurationUs / 1000d;
+    int[] chunkBitrates = new int[chunkCount];
+    List<MediaChunk> queue = new ArrayList<>();
+    MediaChunkIterator[] chunkIterators = new MediaChunkIterator[trackSelection.length()];
+    double timeMs = 0;
+    double bufferMs = 0;
+    double startupDelayMs = 0;
+    double rebufferDurationMs = 0;
+    for (int chunkIndex = 0; chunkIndex < chunkCount; chunkIndex++) {
+      if (bufferMs + chunkDurationMs > maxBufferMs) {
+        // Wait for the buffer to drain before loading the next chunk.
+        double waitMs = bufferMs + chunkDurationMs - maxBufferMs;
+        timeMs += waitMs;
+        bufferMs -= waitMs;
+      }
+      long playbackPositionUs = chunkIndex * chunkDurationUs - (long) (bufferMs * 1000);
+      while (!queue.isEmpty() && queue.get(0).endTimeUs <= playbackPositionUs) {
+        queue.remove(0);
+      }
+      for (int i = 0; i < chunkIterators.length; i++) {
+        chunkIterators[i] =
+            new SimulatedChunkIterator(chunkIndex, trackSelection.getIndexInTrackGroup(i));
+      }
+      trackSelection.updateSelectedTrack(
+          playbackPositionUs,
+          /* bufferedDurationUs= */ (long) (bufferMs * 1000),
+          /* availableDurationUs= */ C.TIME_UNSET,
+          queue,
+          chunkIterators);
+
+      int trackIndex = trackSelection.getSelectedIndexInTrackGroup();
+      long chunkLength = chunkLengths[trackIndex][chunkIndex];
+      double downloadDurationMs =
+          requestLatencyMs
+              + networkTrace.getDownloadDurationMs(
+                  timeMs + requestLatencyMs, chunkLength * C.BITS_PER_BYTE);
+      if (chunkIndex == 0) {
+        startupDelayMs = downloadDurationMs;
+      } else {
+        rebufferDurationMs += Math.max(0, downloadDurationMs - bufferMs);
+        bufferMs = Math.max(0, bufferMs - downloadDurationMs);
+      }
+      bufferMs += chunkDurationMs;
+      timeMs += downloadDurationMs;
+      bandwidthMeter.addSample(chunkLength, downloadDurationMs);
+
+      Format format = trackGroup.getFormat(trackIndex);
+      chunkBitrates[chunkIndex] = format.bitrate;
+      queue.add(
+          new FakeMediaChunk(
+              format, chunkIndex * chunkDurationUs, (chunkIndex + 1) * chunkDurationUs));
+    }
+    trackSelection.disable();
+    return new QoeMetrics(chunkBitrates, (long) startupDelayMs, (long) rebufferDurationMs);
+  }
+
+  private static long[][] getConstantBitrateChunkLengths(
+      Format[] formats, long chunkDurationUs, int chunkCount) {
+    long[][] chunkLengths = new long[formats.length][chunkCount];
+    for (int i = 0; i < formats.length; i++) {
+      Assertions.checkArgument(formats[i].bitrate != Format.NO_VALUE);
+      long chunkLength =
+          formats[i].bitrate * chunkDurationUs / (C.MICROS_PER_SECOND * C.BITS_PER_BYTE);
+      for (int j = 0; j < chunkCount; j++) {
+        chunkLengths[i][j] = chunkLength;
+      }
+    }
+    return chunkLengths;
+  }
+
+  /** Iterates over the chunks of a track, from a given chunk onwards. */
+  private final class SimulatedChunkIterator extends BaseMediaChunkIterator {
+
+    private final int trackIndex;
+
+    public SimulatedChunkIterator(int fromChunkIndex, int trackIndex) {
+      super(fromChunkIndex, /* toIndex= */ chunkLengths[trackIndex].length - 1);
+      this.trackIndex = trackIndex;
+    }
+
+    @Override
+    public DataSpec getDataSpec() {
+      checkInBounds();
+      return new DataSpec(
+          Uri.EMPTY,
+          /* absoluteStreamPosition= */ 0,
+          chunkLengths[trackIndex][(int) getCurrentIndex()],
+          /* key= */ null);
+    }
+
+    @Override
+    public long getChunkStartTimeUs() {
+      checkInBounds();
+      return getCurrentIndex() * chunkDurationUs;
+    }
+
+    @Override
+    public long getChunkEndTimeUs() {
+      checkInBounds();
+      return (getCurrentIndex() + 1) * chunkDurationUs;
+    }
+  }
+
+  /** Estimates bandwidth as the harmonic mean of the throughput of recent chunk downloads. */
+  private static final class SimulatedBandwidthMeter implements BandwidthMeter {
+
+    private final double[] throughputs;
+
+    private long bitrateEstimate;
+    private int sampleCount;
+
+    public SimulatedBandwidthMeter(long initialBitrateEstimate) {
+      throughputs = new double[THROUGHPUT_SAMPLE_COUNT];
+      bitrateEstimate = initialBitrateEstimate;
+    }
+
+    public void addSample(long bytes, double durationMs) {
+      throughputs[sampleCount++ % throughputs.length] = bytes * C.BITS_PER_BYTE * 1000 / durationMs;
+      int usedSampleCount = Math.min(sampleCount, throughputs.length);
+      double inverseSum = 0;
+      for (int i = 0; i < usedSampleCount; i++) {
+        inverseSum += 1 / throughputs[i];
+      }
+      bitrateEstimate = (long) (usedSampleCount / inverseSum);
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+      return bitrateEstimate;
+    }
+
+    @Override
+    @Nullable
+    public TransferListener getTransferListener() {
+      return null;
+    }
+
+    @Override
+    public void addEventListener(Handler eventHandler, EventListener eventListener) {
+      // Do nothing.
+    }
+
+    @Override
+    public void removeEventListener(EventListener eventListener) {
+      // Do nothing.
+    }
+  }
+}
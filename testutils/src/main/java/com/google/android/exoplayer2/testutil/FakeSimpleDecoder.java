@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.decoder.SimpleDecoder;
+import com.google.android.exoplayer2.decoder.SimpleOutputBuffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Fake {@link SimpleDecoder} that copies the data of each input buffer to an output buffer with
+ * the same timestamp. Decoding fails for input buffers with a timestamp equal to {@link
+ * #setFailingTimeUs(long)}.
+ */
+public final class FakeSimpleDecoder
+    extends SimpleDecoder<
+        DecoderInputBuffer, SimpleOutputBuffer, FakeSimpleDecoder.FakeDecoderException> {
+
+  /** Thrown by {@link FakeSimpleDecoder} when decoding fails. */
+  public static final class FakeDecoderException extends Exception {
+
+    public FakeDecoderException(String message) {
+      super(message);
+    }
+
+    public FakeDecoderException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  private final long decodeDurationNs;
+
+  private volatile long failingTimeUs;
+  private volatile int resetCount;
+
+  /**
+   * @param inputBufferCount The number of input buffers.
+   * @param outputBufferCount The number of output buffers.
+   * @param useLockFreeHandoff Whether the decoder should use a lock-free buffer handoff.
+   * @param decodeDurationNs The time the decode thread spends decoding each buffer, in
+   *     nanoseconds. Used to simulate decoding work.
+   */
+  public FakeSimpleDecoder(
+      int inputBufferCount,
+      int outputBufferCount,
+      boolean useLockFreeHandoff,
+      long decodeDurationNs) {
+    super(
+        new DecoderInputBuffer[inputBufferCount],
+        new SimpleOutputBuffer[outputBufferCount],
+        useLockFreeHandoff);
+    this.decodeDurationNs = decodeDurationNs;
+    failingTimeUs = Long.MIN_VALUE;
+  }
+
+  /** Sets the timestamp of input buffers for which decoding should fail. */
+  public void setFailingTimeUs(long failingTimeUs) {
+    this.failingTimeUs = failingTimeUs;
+  }
+
+  /** Returns the number of times the decoder was reset after a flush. */
+  public int getResetCount() {
+    return resetCount;
+  }
+
+  @Override
+  public String getName() {
+    return "FakeSimpleDecoder";
+  }
+
+  @Override
+  protected DecoderInputBuffer createInputBuffer() {
+    return new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+  }
+
+  @Override
+  protected SimpleOutputBuffer createOutputBuffer() {
+    return new SimpleOutputBuffer(this);
+  }
+
+  @Override
+  protected FakeDecoderException createUnexpectedDecodeException(Throwable error) {
+    return new FakeDecoderException("Unexpected decode error", error);
+  }
+
+  @Override
+  @Nullable
+  protected FakeDecoderException decode(
+      DecoderInputBuffer inputBuffer, SimpleOutputBuffer outputBuffer, boolean reset) {
+    if (reset) {
+      resetCount++;
+    }
+    if (inputBuffer.timeUs == failingTimeUs) {
+      return new FakeDecoderException("Decoding failed at " + failingTimeUs);
+    }
+    ByteBuffer inputData = inputBuffer.data;
+    int size = inputData == null ? 0 : inputData.limit();
+    ByteBuffer outputData = outputBuffer.init(inputBuffer.timeUs, size);
+    if (inputData != null) {
+      inputData.position(0);
+      outputData.put(inputData);
+      outputData.flip();
+    }
+    if (decodeDurationNs > 0) {
+      long endTimeNs = System.nanoTime() + decodeDurationNs;
+      while (System.nanoTime() < endTimeNs) {
+        // Simulate decoding work.
+      }
+    }
+    return null;
+  }
+}
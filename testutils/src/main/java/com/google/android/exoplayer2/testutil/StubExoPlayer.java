@@ -265,4 +265,19 @@ public abstract class StubExoPlayer extends BasePlayer implements ExoPlayer {
   public void setForegroundMode(boolean foregroundMode) {
     throw new UnsupportedOperationException();
   }
+
+  @Override
+  public void experimental_setDynamicSchedulingEnabled(boolean dynamicSchedulingEnabled) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void experimental_setParallelRenderingEnabled(boolean parallelRenderingEnabled) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void experimental_setRendererKeepAliveMs(long rendererKeepAliveMs) {
+    throw new UnsupportedOperationException();
+  }
 }